@@ -0,0 +1,260 @@
+/*
+ * Sample source for the MergeDoc benchmarks.
+ * This file is not compiled. It only has to look like a typical JDK source.
+ */
+package sample;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A resizable list of elements that keeps the order in which the
+ * elements were added.  This class is a sample used to measure how
+ * fast comments are merged; it mimics the layout of the collection
+ * classes in the JDK.
+ *
+ * <p>The following table shows the operations and their cost:
+ *
+ * <table border=1 summary="Cost of the operations">
+ * <tr><th>Operation</th><th>Cost</th></tr>
+ * <tr><td>{@link #add(String) add}</td><td>amortized constant</td></tr>
+ * <tr><td>{@link #get(int) get}</td><td>constant</td></tr>
+ * <tr><td>{@link #remove(Object) remove}</td><td>linear</td></tr>
+ * </table>
+ *
+ * <p>A typical use looks like this:
+ * <pre>
+ *     Sample s = new Sample();
+ *     s.addAll("a", "b", "c");
+ *     String max = Sample.max(s.toList());
+ * </pre>
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a sample concurrently, and at least one of
+ * the threads modifies it structurally, it must be synchronized
+ * externally.
+ *
+ * @author  MergeDoc
+ * @see     Sample.Node
+ * @see     java.util.ArrayList
+ * @since   1.0
+ */
+public class Sample implements Iterable<String> {
+
+    /**
+     * The default initial capacity of a sample.
+     */
+    public static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * The nodes of this sample.
+     */
+    private final List<Node<String>> nodes;
+
+    /**
+     * Constructs an empty sample with the default initial capacity.
+     */
+    public Sample() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty sample with the specified initial capacity.
+     *
+     * @param  initialCapacity  the initial capacity of the sample
+     * @throws IllegalArgumentException if the specified initial capacity
+     *         is negative
+     */
+    public Sample(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: " +
+                                               initialCapacity);
+        this.nodes = new ArrayList<>(initialCapacity);
+    }
+
+    /**
+     * Appends the specified element to the end of this sample.
+     *
+     * @param e element to be appended to this sample
+     * @return {@code true} (as specified by {@link Collection#add})
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean add(String e) {
+        if (e == null)
+            throw new NullPointerException();
+        return nodes.add(new Node<>(e, nodes.size()));
+    }
+
+    /**
+     * Appends all of the specified elements to the end of this sample,
+     * in the order that they are given.
+     *
+     * @param elements the elements to be appended to this sample
+     * @throws NullPointerException if any of the specified elements is null
+     * @since 1.1
+     */
+    @SafeVarargs
+    public final void addAll(String... elements) {
+        for (String e : elements)
+            add(e);
+    }
+
+    /**
+     * Returns the element at the specified position in this sample.
+     *
+     * @param  index index of the element to return
+     * @return the element at the specified position in this sample
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    public String get(int index) {
+        return nodes.get(index).value;
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this
+     * sample, if it is present.
+     *
+     * @param o element to be removed from this sample, if present
+     * @return <tt>true</tt> if this sample contained the specified element
+     * @deprecated As of release 1.1, replaced by {@link #removeFirst(Object)}
+     */
+    @Deprecated
+    public boolean remove(Object o) {
+        return removeFirst(o);
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this
+     * sample, if it is present.  If the sample does not contain the
+     * element, it is unchanged.
+     *
+     * @param o element to be removed from this sample, if present
+     * @return <tt>true</tt> if this sample contained the specified element
+     * @since 1.1
+     */
+    public boolean removeFirst(Object o) {
+        for (Iterator<Node<String>> it = nodes.iterator(); it.hasNext();) {
+            if (it.next().value.equals(o)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of elements in this sample.
+     *
+     * @return the number of elements in this sample
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns a list containing all of the elements in this sample in
+     * proper sequence (from first to last element).
+     *
+     * @return a list containing all of the elements in this sample
+     */
+    public List<String> toList() {
+        List<String> list = new ArrayList<>(nodes.size());
+        for (Node<String> node : nodes)
+            list.add(node.value);
+        return list;
+    }
+
+    /**
+     * Returns an iterator over the elements in this sample in proper
+     * sequence.
+     *
+     * @return an iterator over the elements in this sample in proper
+     *         sequence
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return toList().iterator();
+    }
+
+    /**
+     * Returns the maximum element of the given collection, according to
+     * the <i>natural ordering</i> of its elements.  All elements in the
+     * collection must implement the <tt>Comparable</tt> interface.
+     *
+     * <p>This method iterates over the entire collection, hence it
+     * requires time proportional to the size of the collection.
+     *
+     * @param  <T> the class of the objects in the collection
+     * @param  coll the collection whose maximum element is to be
+     *         determined.
+     * @return the maximum element of the given collection, according
+     *         to the <i>natural ordering</i> of its elements.
+     * @throws ClassCastException if the collection contains elements
+     *         that are not <i>mutually comparable</i>
+     * @throws java.util.NoSuchElementException if the collection is empty
+     * @see Comparable
+     */
+    public static <T extends Comparable<? super T>> T max(Collection<? extends T> coll) {
+        Iterator<? extends T> i = coll.iterator();
+        T candidate = i.next();
+        while (i.hasNext()) {
+            T next = i.next();
+            if (next.compareTo(candidate) > 0)
+                candidate = next;
+        }
+        return candidate;
+    }
+
+    /**
+     * Returns a string representation of this sample.
+     *
+     * @return a string representation of this sample
+     */
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     * A node of a sample.  A node holds an element and the position at
+     * which the element was added.
+     *
+     * @param <E> the type of the element
+     * @since 1.1
+     */
+    public static class Node<E> {
+
+        /**
+         * The element held by this node.
+         */
+        final E value;
+
+        /**
+         * The position at which the element was added.
+         */
+        final int position;
+
+        /**
+         * Creates a node.
+         *
+         * @param value the element
+         * @param position the position at which the element was added
+         */
+        Node(E value, int position) {
+            this.value = value;
+            this.position = position;
+        }
+
+        /**
+         * Returns the position at which the element was added.
+         *
+         * @return the position at which the element was added
+         */
+        public int getPosition() {
+            return position;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+/**
+ * ベンチマークです。
+ * <p>
+ * {@link BenchmarkRunner} は {@link #setUp()} を一度だけ呼び出した後、計測時間の間 {@link #run()}
+ * を繰り返し呼び出します。{@link #run()} の戻り値は最適化で処理が省略されないように消費されます。
+ *
+ * @author Shinji Kashihara
+ */
+abstract class Benchmark {
+
+	/** 名前 */
+	private final String name;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param name
+	 *            名前
+	 */
+	Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * 名前を取得します。
+	 *
+	 * @return 名前
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * 計測前の準備を行います。
+	 *
+	 * @throws Exception
+	 *             準備に失敗した場合
+	 */
+	void setUp() throws Exception {
+	}
+
+	/**
+	 * 計測対象の処理を 1 回実行します。
+	 *
+	 * @return 処理結果
+	 * @throws Exception
+	 *             処理に失敗した場合
+	 */
+	abstract Object run() throws Exception;
+
+	/**
+	 * 1 回の処理で扱うバイト数を取得します。 {@link #setUp()} の後に呼び出されます。
+	 *
+	 * @return バイト数。スループットを表示しない場合は負数。
+	 */
+	long getBytes() {
+		return -1;
+	}
+}
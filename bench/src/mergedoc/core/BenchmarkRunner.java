@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import mergedoc.MergeDocException;
+import mergedoc.xml.Persister;
+
+/**
+ * マージ処理の主要な箇所を計測するベンチマークの起動エントリです。
+ * <p>
+ * ベンチマークごとにウォームアップの後、指定した時間の計測を繰り返し、1 回の処理の平均時間とその標準偏差を表示します。
+ * 処理するバイト数が分かるベンチマークはスループットも表示します。計測対象は名前の正規表現で絞り込めます。
+ *
+ * <pre>
+ * java -cp bench-bin;conf;lib/* mergedoc.core.BenchmarkRunner [-wi 回数] [-i 回数] [-time ミリ秒] [-src ファイル] [-doc ディレクトリ] [正規表現...]
+ * </pre>
+ *
+ * @author Shinji Kashihara
+ */
+public class BenchmarkRunner {
+
+	/** 使用方法 */
+	private static final String USAGE = "使用方法: java mergedoc.core.BenchmarkRunner [オプション] [正規表現...]\n"
+			+ "  -wi 回数           ウォームアップの回数（省略時は 3）\n"
+			+ "  -i 回数            計測の回数（省略時は 5）\n"
+			+ "  -time ミリ秒       1 回のウォームアップと計測の時間（省略時は 1000）\n"
+			+ "  -fixture ディレクトリ フィクスチャディレクトリ（省略時は bench/fixture）\n"
+			+ "  -src ファイル      入力ソースアーカイブファイル（省略時は JDK の src.zip）\n"
+			+ "  -doc ディレクトリ  API ドキュメントディレクトリ。指定した場合は JDK のクラスもマージします。\n"
+			+ "  -docenc 文字セット API ドキュメントエンコーディング（省略時は UTF-8）\n"
+			+ "  -list              ベンチマークの名前を表示して終了";
+
+	/** ウォームアップの回数 */
+	int warmupIterations = 3;
+
+	/** 計測の回数 */
+	int measurementIterations = 5;
+
+	/** 1 回のウォームアップと計測の時間（ミリ秒） */
+	long iterationMillis = 1000;
+
+	/** フィクスチャディレクトリ */
+	File fixtureDirectory = new File("bench/fixture");
+
+	/** 入力ソースアーカイブファイル。無い場合は null。 */
+	File sourceArchive = defaultSourceArchive();
+
+	/** API ドキュメントディレクトリ。指定されない場合は null。 */
+	File docDirectory;
+
+	/** API ドキュメントエンコーディング */
+	String docEncoding = "UTF-8";
+
+	/** 名前で絞り込む正規表現 */
+	private final List<Pattern> filters = new ArrayList<Pattern>();
+
+	/** ベンチマークの名前を表示して終了する場合は true */
+	private boolean listOnly;
+
+	/** 出力先 */
+	private final PrintStream out = System.out;
+
+	/** 処理結果の消費先 */
+	private static volatile int sink;
+
+	/**
+	 * メインです。
+	 *
+	 * @param args
+	 *            起動引数
+	 * @throws Exception
+	 *             ベンチマークの準備や実行に失敗した場合
+	 */
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		try {
+			runner.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		runner.run();
+	}
+
+	/**
+	 * 起動引数を解析します。
+	 *
+	 * @param args
+	 *            起動引数
+	 * @throws IllegalArgumentException
+	 *             起動引数に誤りがある場合
+	 */
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-list")) {
+				listOnly = true;
+				continue;
+			}
+			if (!arg.startsWith("-")) {
+				filters.add(Pattern.compile(arg));
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException(arg + " に値が指定されていません。");
+			}
+			String value = args[++i];
+			if (arg.equals("-wi")) {
+				warmupIterations = Integer.parseInt(value);
+			} else if (arg.equals("-i")) {
+				measurementIterations = Integer.parseInt(value);
+			} else if (arg.equals("-time")) {
+				iterationMillis = Long.parseLong(value);
+			} else if (arg.equals("-fixture")) {
+				fixtureDirectory = new File(value);
+			} else if (arg.equals("-src")) {
+				sourceArchive = new File(value);
+			} else if (arg.equals("-doc")) {
+				docDirectory = new File(value);
+			} else if (arg.equals("-docenc")) {
+				docEncoding = value;
+			} else {
+				throw new IllegalArgumentException("不明なオプションです。 " + arg);
+			}
+		}
+		if (measurementIterations <= 0 || iterationMillis <= 0) {
+			throw new IllegalArgumentException("計測の回数と時間には 1 以上を指定してください。");
+		}
+	}
+
+	/**
+	 * JDK の src.zip を取得します。
+	 *
+	 * @return src.zip。見つからない場合は null。
+	 */
+	private static File defaultSourceArchive() {
+		File home = new File(System.getProperty("java.home"));
+		File[] candidates = { new File(home, "lib/src.zip"), new File(home, "src.zip"),
+				new File(home.getParentFile(), "src.zip") };
+		for (File file : candidates) {
+			if (file.isFile()) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 対象のベンチマークを実行し、結果を表示します。
+	 *
+	 * @throws Exception
+	 *             ベンチマークの準備や実行に失敗した場合
+	 */
+	private void run() throws Exception {
+
+		// API ドキュメントはダウンロードせずにファイルから読み込む
+		try {
+			Persister.getInstance().setString(Persister.API_DONWLOAD, "false");
+		} catch (MergeDocException e) {
+			// 設定ファイルが取得できない場合はダウンロードされない
+		}
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (Benchmark benchmark : new CoreBenchmarks(this).create()) {
+			if (matches(benchmark.getName())) {
+				benchmarks.add(benchmark);
+			}
+		}
+		if (listOnly) {
+			for (Benchmark benchmark : benchmarks) {
+				out.println(benchmark.getName());
+			}
+			return;
+		}
+
+		List<String> results = new ArrayList<String>();
+		for (Benchmark benchmark : benchmarks) {
+			out.println("# " + benchmark.getName());
+			results.add(measure(benchmark));
+		}
+
+		out.println();
+		out.printf("%-40s %4s %14s   %12s %10s%n", "Benchmark", "Cnt", "Score", "Error", "MB/s");
+		for (String result : results) {
+			out.println(result);
+		}
+	}
+
+	/**
+	 * ベンチマークの名前が絞り込み条件に一致するか判定します。
+	 *
+	 * @param name
+	 *            ベンチマークの名前
+	 * @return 絞り込み条件が無いか、いずれかに一致する場合は true
+	 */
+	private boolean matches(String name) {
+		if (filters.isEmpty()) {
+			return true;
+		}
+		for (Pattern filter : filters) {
+			if (filter.matcher(name).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 1 つのベンチマークを計測します。
+	 *
+	 * @param benchmark
+	 *            ベンチマーク
+	 * @return 結果の表示行
+	 * @throws Exception
+	 *             ベンチマークの準備や実行に失敗した場合
+	 */
+	private String measure(Benchmark benchmark) throws Exception {
+
+		benchmark.setUp();
+		for (int i = 0; i < warmupIterations; i++) {
+			double score = iterate(benchmark);
+			out.printf("ウォームアップ %d: %.3f ns/op%n", i + 1, score);
+		}
+
+		double[] scores = new double[measurementIterations];
+		for (int i = 0; i < measurementIterations; i++) {
+			scores[i] = iterate(benchmark);
+			out.printf("計測 %d: %.3f ns/op%n", i + 1, scores[i]);
+		}
+
+		double mean = 0;
+		for (double score : scores) {
+			mean += score;
+		}
+		mean /= scores.length;
+		double variance = 0;
+		for (double score : scores) {
+			variance += (score - mean) * (score - mean);
+		}
+		double error = (scores.length > 1) ? Math.sqrt(variance / (scores.length - 1)) : 0;
+
+		long bytes = benchmark.getBytes();
+		String throughput = (bytes > 0) ? String.format("%10.1f", bytes * 1e9 / mean / (1024 * 1024)) : "";
+		return String.format("%-40s %4d %14.3f ± %12.3f %10s  ns/op", benchmark.getName(), scores.length, mean,
+				error, throughput);
+	}
+
+	/**
+	 * 指定された時間が経過するまで処理を繰り返します。 処理が時間より長い場合も 1 回は実行します。
+	 *
+	 * @param benchmark
+	 *            ベンチマーク
+	 * @return 1 回の処理の平均時間（ナノ秒）
+	 * @throws Exception
+	 *             処理に失敗した場合
+	 */
+	private double iterate(Benchmark benchmark) throws Exception {
+		long limit = iterationMillis * 1000000;
+		long start = System.nanoTime();
+		long elapsed;
+		long count = 0;
+		int hash = 0;
+		do {
+			hash ^= System.identityHashCode(benchmark.run());
+			count++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < limit);
+		sink ^= hash;
+		return (double) elapsed / count;
+	}
+}
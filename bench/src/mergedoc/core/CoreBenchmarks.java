@@ -0,0 +1,533 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * マージ処理の主要な箇所のベンチマークです。
+ * <p>
+ * フィクスチャディレクトリの sample.Sample の Java ソースと API ドキュメントを使用します。API
+ * ドキュメントディレクトリが指定された場合は、入力ソースアーカイブファイルの JDK のクラスのマージも計測します。
+ *
+ * @author Shinji Kashihara
+ */
+class CoreBenchmarks {
+
+	/** フィクスチャのクラス名 */
+	private static final String SAMPLE_CLASS = "sample.Sample";
+
+	/** API ドキュメントディレクトリが指定された場合にマージする JDK のクラス */
+	private static final String[] JDK_CLASSES = { "java.lang.String", "java.lang.Character", "java.util.Collections" };
+
+	/** Signature のベンチマークで使用するシグネチャ文字列 */
+	private static final String[] SIGNATURES = {
+			"public class Sample extends Object implements Iterable<String>",
+			"public static final int DEFAULT_CAPACITY",
+			"public Sample(int initialCapacity)",
+			"public boolean add(String e)",
+			"@SafeVarargs\n    public final void addAll(String... elements)",
+			"public String get(int index)",
+			"@Deprecated\n    public boolean remove(Object o)",
+			"public static <T extends Comparable<? super T>> T max(Collection<? extends T> coll)",
+			"public static <K, V> java.util.Map<K, V> synchronizedMap(java.util.Map<K, V> m)",
+			"public void getChars(int srcBegin, int srcEnd, char dst[], int dstBegin)",
+			"public static class Node<E>",
+			"Node(E value, int position)" };
+
+	/** FastStringUtils のベンチマークで使用する文字列の最小長 */
+	private static final int TEXT_LENGTH = 1 << 20;
+
+	/** 入力ソースアーカイブファイルが無い場合に作成するアーカイブのエントリ数 */
+	private static final int ARCHIVE_ENTRIES = 1000;
+
+	/** 起動オプション */
+	private final BenchmarkRunner options;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param options
+	 *            起動オプション
+	 */
+	CoreBenchmarks(BenchmarkRunner options) {
+		this.options = options;
+	}
+
+	/**
+	 * ベンチマークを作成します。
+	 *
+	 * @return ベンチマークのリスト
+	 */
+	List<Benchmark> create() {
+
+		List<Benchmark> list = new ArrayList<Benchmark>();
+		list.add(new Benchmark("signature.new") {
+			Object run() {
+				Signature sig = null;
+				for (String str : SIGNATURES) {
+					sig = new Signature(SAMPLE_CLASS, str);
+				}
+				return sig;
+			}
+		});
+		list.add(new CommentBenchmark("comment.build", 0, false));
+		list.add(new CommentBenchmark("comment.resize.shrink", -1, false));
+		list.add(new CommentBenchmark("comment.resize.expand", 1, false));
+		list.add(new CommentBenchmark("comment.cached", 0, true));
+		list.add(new Benchmark("javabuffer.scan") {
+
+			private String source;
+
+			void setUp() throws IOException {
+				source = readSample();
+			}
+
+			Object run() {
+				JavaBuffer javaBuf = new JavaBuffer("class", SAMPLE_CLASS, source);
+				Signature sig = null;
+				while (javaBuf.nextComment()) {
+					sig = javaBuf.getSignature();
+				}
+				return sig;
+			}
+
+			long getBytes() {
+				return source.length();
+			}
+		});
+		list.add(new Benchmark("sourceheader.scan") {
+
+			private String source;
+
+			void setUp() throws IOException {
+				source = readSample();
+			}
+
+			Object run() {
+				return SourceHeader.scan(source);
+			}
+		});
+		list.add(new Benchmark("apidocument.load") {
+			Object run() throws IOException {
+				return APIDocument.parse(sampleDocDirectory(), SAMPLE_CLASS, "UTF-8");
+			}
+		});
+		list.add(new MergeBenchmark("merger.merge." + SAMPLE_CLASS, SAMPLE_CLASS, sampleDocDirectory(), "UTF-8"));
+		if (options.docDirectory != null) {
+			for (String className : JDK_CLASSES) {
+				list.add(new MergeBenchmark("merger.merge." + className, className, options.docDirectory,
+						options.docEncoding));
+			}
+		}
+		list.add(new Benchmark("faststring.untabify") {
+
+			private String text;
+
+			void setUp() throws IOException {
+				// JDK のソースはタブをほとんど含まないため、インデントをタブにする
+				text = largeText().replace("    ", "\t");
+			}
+
+			Object run() {
+				return FastStringUtils.untabify(text);
+			}
+
+			long getBytes() {
+				return text.length();
+			}
+		});
+		list.add(new Benchmark("faststring.optimizeLineSeparator") {
+
+			private String text;
+
+			void setUp() throws IOException {
+				text = largeText().replace("\n", "\r\n");
+			}
+
+			Object run() {
+				return FastStringUtils.optimizeLineSeparator(text);
+			}
+
+			long getBytes() {
+				return text.length();
+			}
+		});
+		list.add(new Benchmark("sourcedecoder.decode") {
+
+			private byte[] data;
+
+			private final SourceDecoder decoder = new SourceDecoder("UTF-8");
+
+			void setUp() throws IOException {
+				// 改行とタブの変換を含めて計測するため、CRLF とタブのインデントにする
+				data = largeText().replace("    ", "\t").replace("\n", "\r\n").getBytes("UTF-8");
+			}
+
+			Object run() throws IOException {
+				return decoder.decode(data);
+			}
+
+			long getBytes() {
+				return data.length;
+			}
+		});
+		list.add(new Benchmark("sourceencoder.encode") {
+
+			private String text;
+
+			private long bytes;
+
+			private final SourceEncoder encoder = new SourceEncoder("UTF-8");
+
+			private final SourceEncoder.Sink sink = new SourceEncoder.Sink() {
+				public boolean write(byte[] b, int off, int len) {
+					return true;
+				}
+			};
+
+			void setUp() throws IOException {
+				text = largeText();
+				bytes = text.getBytes("UTF-8").length;
+			}
+
+			Object run() throws IOException {
+				return encoder.encode(text, sink);
+			}
+
+			long getBytes() {
+				return bytes;
+			}
+		});
+		list.add(new Benchmark("sourcepassthrough.verbatim") {
+
+			private byte[] data;
+
+			private final SourcePassthrough passthrough = new SourcePassthrough("UTF-8", "UTF-8");
+
+			void setUp() throws IOException {
+				data = largeText().getBytes("UTF-8");
+			}
+
+			Object run() {
+				return passthrough.isVerbatim(data);
+			}
+
+			long getBytes() {
+				return data.length;
+			}
+		});
+		list.add(new Benchmark("archive.read") {
+
+			private File archive;
+
+			private long bytes;
+
+			private final byte[] buffer = new byte[4096];
+
+			void setUp() throws IOException {
+				archive = sourceArchive();
+				bytes = ArchiveInputStream.readMetadata(archive).getTotalSize();
+			}
+
+			Object run() throws IOException {
+				ArchiveInputStream in = ArchiveInputStream.create(archive);
+				try {
+					long total = 0;
+					while (in.getNextEntry() != null) {
+						for (int size = 0; (size = in.read(buffer)) > 0;) {
+							total += size;
+						}
+					}
+					return Long.valueOf(total);
+				} finally {
+					in.close();
+				}
+			}
+
+			long getBytes() {
+				return bytes;
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Comment.buildComment のベンチマークです。
+	 * <p>
+	 * フィクスチャの API ドキュメントのコメントと Java ソースのコメントの組をすべて作成します。Java
+	 * ソースのコメントの行数を変えることで、コメントの縮小や拡大を計測します。CommentCache
+	 * を使用する場合は、2 回目以降の実行ではキャッシュからの取得を計測します。
+	 */
+	private class CommentBenchmark extends Benchmark {
+
+		/** 行数の調整。負数は 1 行に縮め、正数は行数を 2 倍にします。 */
+		private final int resize;
+
+		/** CommentCache を使用する場合は true */
+		private final boolean cached;
+
+		/** シグネチャ */
+		private final List<Signature> signatures = new ArrayList<Signature>();
+
+		/** API ドキュメントのコメント */
+		private final List<Comment> comments = new ArrayList<Comment>();
+
+		/** Java ソースのコメント */
+		private final List<String> sources = new ArrayList<String>();
+
+		CommentBenchmark(String name, int resize, boolean cached) {
+			super(name);
+			this.resize = resize;
+			this.cached = cached;
+		}
+
+		void setUp() throws IOException {
+			APIDocument apiDoc = APIDocument.parse(sampleDocDirectory(), SAMPLE_CLASS, "UTF-8");
+			JavaBuffer javaBuf = new JavaBuffer("class", SAMPLE_CLASS, readSample());
+			while (javaBuf.nextComment()) {
+				Signature sig = javaBuf.getSignature();
+				Comment comment = apiDoc.getComment(sig);
+				String source = javaBuf.getSourceComment();
+				if (comment != null && !source.contains("{@inheritDoc}")) {
+					signatures.add(sig);
+					comments.add(comment);
+					sources.add(resize(source));
+				}
+			}
+		}
+
+		/**
+		 * Java ソースのコメントの行数を調整します。
+		 *
+		 * @param source
+		 *            Java ソースのコメント
+		 * @return 行数を調整したコメント
+		 */
+		private String resize(String source) {
+			String indent = source.substring(0, source.indexOf("/**"));
+			if (resize < 0) {
+				return indent + "/**\n" + indent + " * Short.\n" + indent + " */\n";
+			}
+			if (resize > 0) {
+				int end = source.lastIndexOf("*/");
+				StringBuilder sb = new StringBuilder(source.substring(0, end));
+				for (int i = FastStringUtils.heightOf(source); i > 0; i--) {
+					sb.append("*\n").append(indent).append(' ');
+				}
+				return sb.append(source.substring(end)).toString();
+			}
+			return source;
+		}
+
+		Object run() {
+			String result = null;
+			for (int i = 0; i < comments.size(); i++) {
+				// buildComment はコメントの状態を変更するため毎回複製する
+				Comment doc = comments.get(i);
+				Comment comment = new Comment(signatures.get(i), doc.getDocumentBody(), doc.getDeprecated(),
+						copy(doc.getSees()), copy(doc.getSinces()), copy(doc.getParams()), copy(doc.getReturns()),
+						copy(doc.getThrowses()));
+				if (cached) {
+					result = CommentCache.build(comment, sources.get(i));
+				} else {
+					comment.setSourceBody(sources.get(i));
+					result = comment.buildComment();
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Merger.merge のベンチマークです。API ドキュメントの読み込みを含みます。
+	 */
+	private class MergeBenchmark extends Benchmark {
+
+		/** クラス名 */
+		private final String className;
+
+		/** API ドキュメントディレクトリ */
+		private final File docDirectory;
+
+		/** API ドキュメントエンコーディング */
+		private final String docEncoding;
+
+		/** Java ソース */
+		private String source;
+
+		MergeBenchmark(String name, String className, File docDirectory, String docEncoding) {
+			super(name);
+			this.className = className;
+			this.docDirectory = docDirectory;
+			this.docEncoding = docEncoding;
+		}
+
+		void setUp() throws IOException {
+			if (className.equals(SAMPLE_CLASS)) {
+				source = readSample();
+			} else {
+				source = readJdkSource(className);
+			}
+			source = FastStringUtils.optimizeLineSeparator(source);
+			source = FastStringUtils.untabify(source);
+		}
+
+		Object run() throws IOException {
+			Merger merger = new Merger(docDirectory);
+			merger.setDocEncoding(docEncoding);
+			return merger.merge(source);
+		}
+
+		long getBytes() {
+			return source.length();
+		}
+	}
+
+	/**
+	 * リストを複製します。
+	 *
+	 * @param list
+	 *            リスト
+	 * @return 複製したリスト。null の場合は null。
+	 */
+	private static List<String> copy(List<String> list) {
+		return (list == null) ? null : new ArrayList<String>(list);
+	}
+
+	/**
+	 * フィクスチャの API ドキュメントディレクトリを取得します。
+	 *
+	 * @return API ドキュメントディレクトリ
+	 */
+	private File sampleDocDirectory() {
+		return new File(options.fixtureDirectory, "api");
+	}
+
+	/**
+	 * フィクスチャの Java ソースを読み込みます。
+	 *
+	 * @return Java ソース
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private String readSample() throws IOException {
+		File file = new File(options.fixtureDirectory, "src/" + SAMPLE_CLASS.replace('.', '/') + ".java");
+		InputStream is = new FileInputStream(file);
+		try {
+			return new String(readAll(is), "UTF-8");
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * 入力ソースアーカイブファイルから JDK のクラスの Java ソースを読み込みます。 モジュールごとのディレクトリを持つ JDK 9
+	 * 以降の src.zip も読み込めます。
+	 *
+	 * @param className
+	 *            クラス名
+	 * @return Java ソース
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private String readJdkSource(String className) throws IOException {
+		if (options.sourceArchive == null) {
+			throw new IOException("入力ソースアーカイブファイルを -src で指定してください。");
+		}
+		String path = className.replace('.', '/') + ".java";
+		ZipFile zip = new ZipFile(options.sourceArchive);
+		try {
+			ZipEntry entry = zip.getEntry(path);
+			if (entry == null) {
+				entry = zip.getEntry("java.base/" + path);
+			}
+			if (entry == null) {
+				throw new IOException(options.sourceArchive + " に " + path + " がありません。");
+			}
+			InputStream is = zip.getInputStream(entry);
+			try {
+				return new String(readAll(is), "UTF-8");
+			} finally {
+				is.close();
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	/**
+	 * FastStringUtils のベンチマークで使用する文字列を作成します。 フィクスチャの Java ソースを繰り返して 1MB 以上にします。
+	 *
+	 * @return 文字列
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private String largeText() throws IOException {
+		String source = readSample();
+		StringBuilder sb = new StringBuilder(TEXT_LENGTH + source.length());
+		while (sb.length() < TEXT_LENGTH) {
+			sb.append(source);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 読み込みを計測する入力ソースアーカイブファイルを取得します。 指定されたファイルも JDK の src.zip も無い場合は、フィクスチャの Java
+	 * ソースを複製したアーカイブを一時ファイルに作成します。
+	 *
+	 * @return 入力ソースアーカイブファイル
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private File sourceArchive() throws IOException {
+		if (options.sourceArchive != null) {
+			return options.sourceArchive;
+		}
+		byte[] data = readSample().getBytes("UTF-8");
+		File file = File.createTempFile("mergedoc-bench", ".zip");
+		file.deleteOnExit();
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			for (int i = 0; i < ARCHIVE_ENTRIES; i++) {
+				zos.putNextEntry(new ZipEntry("sample" + i + "/Sample.java"));
+				zos.write(data);
+				zos.closeEntry();
+			}
+		} finally {
+			zos.close();
+		}
+		return file;
+	}
+
+	/**
+	 * ストリームの終わりまで読み込みます。
+	 *
+	 * @param is
+	 *            入力ストリーム
+	 * @return 読み込んだデータ
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		for (int size = 0; (size = is.read(buf)) > 0;) {
+			baos.write(buf, 0, size);
+		}
+		return baos.toByteArray();
+	}
+}
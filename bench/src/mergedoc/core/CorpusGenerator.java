@@ -0,0 +1,1336 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 性能測定用の合成コーパスを作成する起動エントリです。
+ * <p>
+ * 指定した数のクラスの Java ソースを ZIP ファイルに出力し、それに対応する javadoc 8 形式の日本語 API
+ * ドキュメントを出力します。Java ソースはネストしたクラス、ジェネリクス、注釈、可変長引数と、pre、table、link
+ * タグを含む長い Javadoc コメントを持ちます。同じ引数で実行すると同じ内容が作成されるため、JDK の src.zip や日本語
+ * API ドキュメントが無い環境でも、1 千、1 万、10 万クラスでの MergeManager のスループットを再現性のある入力で計測できます。
+ *
+ * <pre>
+ * java -cp bench-bin;conf;lib/* mergedoc.core.CorpusGenerator [-classes 数] [-out ディレクトリ]
+ * </pre>
+ *
+ * 出力ディレクトリには次のファイルが作成されます。
+ *
+ * <pre>
+ * src.zip                     入力ソースアーカイブファイル
+ * api/allclasses-frame.html   API ドキュメントディレクトリの確認用のクラス一覧
+ * api/package-list            パッケージ一覧
+ * api/corpus/pNNNN/*.html     クラスの API ドキュメント
+ * </pre>
+ *
+ * @author Shinji Kashihara
+ */
+public class CorpusGenerator {
+
+	/** 使用方法 */
+	private static final String USAGE = "使用方法: java mergedoc.core.CorpusGenerator [オプション]\n"
+			+ "  -classes 数        作成するクラスの数（省略時は 1000）\n"
+			+ "  -package 数        1 パッケージあたりのクラスの数（省略時は 100）\n"
+			+ "  -methods 数        1 クラスあたりに追加するメソッドの最大数（省略時は 8）\n"
+			+ "  -seed 値           乱数の種（省略時は 1）\n"
+			+ "  -out ディレクトリ  出力ディレクトリ（省略時は bench/corpus）";
+
+	/** パッケージ名の接頭辞 */
+	private static final String PACKAGE_PREFIX = "corpus.p";
+
+	/** API ドキュメントのパッケージディレクトリから API ドキュメントディレクトリへの相対パス */
+	private static final String ROOT = "../../";
+
+	/** 改行 */
+	private static final String NL = "\n";
+
+	/** Java ソースのコメントを折り返す桁 */
+	private static final int WRAP_COLUMN = 76;
+
+	/** ソースアーカイブのエントリの更新日時（同じ内容の ZIP ファイルを作成するため固定） */
+	private static final long ENTRY_TIME = 946652400000L;
+
+	/** クラス名に使用する名詞（クラス名、英語、日本語） */
+	private static final String[][] NOUNS = { { "Buffer", "buffer", "バッファ" }, { "Cache", "cache", "キャッシュ" },
+			{ "Registry", "registry", "レジストリ" }, { "Ledger", "ledger", "台帳" }, { "Catalog", "catalog", "カタログ" },
+			{ "Journal", "journal", "ジャーナル" }, { "Roster", "roster", "名簿" }, { "Queue", "queue", "キュー" } };
+
+	/**
+	 * 説明の段落（英語、日本語）。{0} は名詞、{r} は API ドキュメントディレクトリへの相対パスに置換されます。
+	 */
+	private static final String[][] PARAGRAPHS = {
+			{ "This class provides a skeletal implementation of the operations that are common to every {0}, "
+					+ "to minimize the effort required to implement it.",
+					"このクラスは、すべての{0}に共通する操作のスケルトン実装を提供し、実装に必要な作業量を最小限に抑えます。" },
+			{ "The iterators returned by this class are <i>fail-fast</i>: if the {0} is structurally modified "
+					+ "at any time after the iterator is created, the iterator will throw a "
+					+ "{@link java.util.ConcurrentModificationException}.",
+					"このクラスによって返されるイテレータは<i>フェイルファスト</i>です。イテレータの作成後に{0}が構造的に変更されると、イテレータは"
+							+ "<a href=\"{r}java/util/ConcurrentModificationException.html\" title=\"java.util内のクラス\">"
+							+ "<code>ConcurrentModificationException</code></a>をスローします。" },
+			{ "<strong>Note that this implementation is not synchronized.</strong> If multiple threads access "
+					+ "a {0} concurrently, and at least one of the threads modifies it structurally, it must be "
+					+ "synchronized externally.",
+					"<strong>この実装はsynchronizedされません。</strong>複数のスレッドが並行して{0}にアクセスし、"
+							+ "それらのスレッドの少なくとも1つが構造的に{0}を変更する場合は、外部で同期をとる必要があります。" },
+			{ "The capacity of a {0} grows automatically as elements are added. The details of the growth "
+					+ "policy are not specified beyond the fact that adding an element has constant amortized "
+					+ "time cost.",
+					"{0}の容量は、要素が追加されると自動的に増加します。要素を追加するとならし定数時間のコストが発生するという事実以外に、"
+							+ "拡張ポリシーの詳細は指定されていません。" },
+			{ "This {0} permits all elements, including {@code null}. The order of the elements is the order "
+					+ "in which they were inserted.",
+					"この{0}では、<code>null</code>を含むすべての要素が許可されます。要素の順序は、要素が挿入された順序です。" },
+			{ "Note that the fail-fast behavior of an iterator cannot be guaranteed as it is, generally "
+					+ "speaking, impossible to make any hard guarantees in the presence of unsynchronized "
+					+ "concurrent modification. Fail-fast iterators throw "
+					+ "{@code ConcurrentModificationException} on a best-effort basis.",
+					"一般的に、非同期の並行変更が存在する場合、確かな保証を行うことは不可能なので、イテレータのフェイルファストの動作を保証することはできません。"
+							+ "フェイルファスト・イテレータは、ベスト・エフォート・ベースで<code>ConcurrentModificationException</code>"
+							+ "をスローします。" },
+			{ "All of the optional operations are implemented. Operations that index into the {0} will traverse "
+					+ "it from the beginning or the end, whichever is closer to the specified index.",
+					"すべてのオプションの操作が実装されています。{0}をインデックスで参照する操作は、"
+							+ "{0}の先頭または末尾のうち、指定されたインデックスに近い方から走査します。" } };
+
+	/** API ドキュメントでリンクする JDK の型（型名、パッケージ名、種類） */
+	private static final String[][] JDK_TYPES = { { "Object", "java.lang", "クラス" },
+			{ "String", "java.lang", "クラス" }, { "Comparable", "java.lang", "インタフェース" },
+			{ "Iterable", "java.lang", "インタフェース" }, { "Deprecated", "java.lang", "注釈" },
+			{ "SafeVarargs", "java.lang", "注釈" }, { "IllegalArgumentException", "java.lang", "クラス" },
+			{ "NullPointerException", "java.lang", "クラス" }, { "IndexOutOfBoundsException", "java.lang", "クラス" },
+			{ "ClassCastException", "java.lang", "クラス" }, { "Collection", "java.util", "インタフェース" },
+			{ "List", "java.util", "インタフェース" }, { "Map", "java.util", "インタフェース" },
+			{ "Iterator", "java.util", "インタフェース" }, { "NoSuchElementException", "java.util", "クラス" } };
+
+	/** 型名をキーとした JDK の型 */
+	private static final Map<String, String[]> JDK_TYPE_MAP = new HashMap<String, String[]>();
+	static {
+		for (String[] type : JDK_TYPES) {
+			JDK_TYPE_MAP.put(type[0], type);
+		}
+	}
+
+	/** 作成するクラスの数 */
+	private int classCount = 1000;
+
+	/** 1 パッケージあたりのクラスの数 */
+	private int packageSize = 100;
+
+	/** 1 クラスあたりに追加するメソッドの最大数 */
+	private int maxExtraMethods = 8;
+
+	/** 乱数の種 */
+	private long seed = 1;
+
+	/** 出力ディレクトリ */
+	private File outDirectory = new File("bench/corpus");
+
+	/**
+	 * メインです。
+	 *
+	 * @param args
+	 *            起動引数
+	 * @throws IOException
+	 *             出力に失敗した場合
+	 */
+	public static void main(String[] args) throws IOException {
+		CorpusGenerator generator = new CorpusGenerator();
+		try {
+			generator.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		generator.generate();
+	}
+
+	/**
+	 * 起動引数を解析します。
+	 *
+	 * @param args
+	 *            起動引数
+	 * @throws IllegalArgumentException
+	 *             起動引数に誤りがある場合
+	 */
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException(arg + " に値が指定されていません。");
+			}
+			String value = args[++i];
+			if (arg.equals("-classes")) {
+				classCount = Integer.parseInt(value);
+			} else if (arg.equals("-package")) {
+				packageSize = Integer.parseInt(value);
+			} else if (arg.equals("-methods")) {
+				maxExtraMethods = Integer.parseInt(value);
+			} else if (arg.equals("-seed")) {
+				seed = Long.parseLong(value);
+			} else if (arg.equals("-out")) {
+				outDirectory = new File(value);
+			} else {
+				throw new IllegalArgumentException("不明なオプションです。 " + arg);
+			}
+		}
+		if (classCount <= 0 || packageSize <= 0 || maxExtraMethods < 0) {
+			throw new IllegalArgumentException("クラスの数には 1 以上、メソッドの数には 0 以上を指定してください。");
+		}
+	}
+
+	/**
+	 * コーパスを作成します。
+	 *
+	 * @throws IOException
+	 *             出力に失敗した場合
+	 */
+	void generate() throws IOException {
+
+		File apiDir = new File(outDirectory, "api");
+		if (!apiDir.isDirectory() && !apiDir.mkdirs()) {
+			throw new IOException("ディレクトリを作成できません。 " + apiDir);
+		}
+		File srcFile = new File(outDirectory, "src.zip");
+
+		long start = System.currentTimeMillis();
+		long sourceBytes = 0;
+		long docBytes = 0;
+		ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(srcFile)));
+		Writer classList = openWriter(new File(apiDir, "allclasses-frame.html"));
+		Writer packageList = openWriter(new File(apiDir, "package-list"));
+		try {
+			writeClassListHeader(classList);
+			File packageDir = null;
+			for (int i = 0; i < classCount; i++) {
+				GeneratedClass cls = new GeneratedClass(i);
+				if (i % packageSize == 0) {
+					packageDir = new File(apiDir, cls.packageName.replace('.', '/'));
+					if (!packageDir.isDirectory() && !packageDir.mkdirs()) {
+						throw new IOException("ディレクトリを作成できません。 " + packageDir);
+					}
+					packageList.write(cls.packageName + NL);
+				}
+
+				byte[] source = cls.source().getBytes(StandardCharsets.UTF_8);
+				ZipEntry entry = new ZipEntry(cls.packageName.replace('.', '/') + "/" + cls.simpleName + ".java");
+				entry.setTime(ENTRY_TIME);
+				zip.putNextEntry(entry);
+				zip.write(source);
+				zip.closeEntry();
+				sourceBytes += source.length;
+
+				for (Page page : cls.pages()) {
+					File file = new File(packageDir, page.title + ".html");
+					Writer writer = openWriter(file);
+					try {
+						page.write(writer);
+					} finally {
+						writer.close();
+					}
+					docBytes += file.length();
+				}
+				classList.write("<li><a href=\"" + cls.packageName.replace('.', '/') + "/" + cls.simpleName
+						+ ".html\" title=\"" + cls.packageName + "内のクラス\" target=\"classFrame\">" + cls.simpleName
+						+ "</a></li>" + NL);
+
+				if ((i + 1) % Math.max(classCount / 10, 1) == 0) {
+					System.out.printf("%d / %d クラス%n", i + 1, classCount);
+				}
+			}
+			classList.write("</ul>" + NL + "</div>" + NL + "</body>" + NL + "</html>" + NL);
+		} finally {
+			zip.close();
+			classList.close();
+			packageList.close();
+		}
+
+		System.out.printf("入力ソースアーカイブファイル: %s (%,d バイト)%n", srcFile, sourceBytes);
+		System.out.printf("API ドキュメントディレクトリ: %s (%,d バイト)%n", apiDir, docBytes);
+		System.out.printf("%,d ミリ秒%n", System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * UTF-8 で書き込むライターを作成します。
+	 *
+	 * @param file
+	 *            ファイル
+	 * @return ライター
+	 * @throws IOException
+	 *             ファイルを作成できない場合
+	 */
+	private static Writer openWriter(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * クラス一覧の先頭部分を書き込みます。
+	 *
+	 * @param writer
+	 *            ライター
+	 * @throws IOException
+	 *             書き込みに失敗した場合
+	 */
+	private static void writeClassListHeader(Writer writer) throws IOException {
+		writer.write("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\" "
+				+ "\"http://www.w3.org/TR/html4/loose.dtd\">" + NL);
+		writer.write("<html lang=\"ja\">" + NL + "<head>" + NL + "<title>すべてのクラス</title>" + NL
+				+ "<link rel=\"stylesheet\" type=\"text/css\" href=\"stylesheet.css\" title=\"Style\">" + NL
+				+ "</head>" + NL + "<body>" + NL + "<h1 class=\"bar\">すべてのクラス</h1>" + NL
+				+ "<div class=\"indexContainer\">" + NL + "<ul>" + NL);
+	}
+
+	/**
+	 * JDK の型へのリンクを作成します。
+	 *
+	 * @param name
+	 *            型名
+	 * @return リンクの HTML
+	 */
+	private static String link(String name) {
+		String[] type = JDK_TYPE_MAP.get(name);
+		return "<a href=\"" + ROOT + type[1].replace('.', '/') + "/" + name + ".html\" title=\"" + type[1] + "内の"
+				+ type[2] + "\">" + name + "</a>";
+	}
+
+	/**
+	 * 例外の dd 要素の先頭部分を作成します。
+	 *
+	 * @param name
+	 *            例外の型名
+	 * @return dd 要素の先頭部分の HTML
+	 */
+	private static String code(String name) {
+		return "<code>" + link(name) + "</code>";
+	}
+
+	/**
+	 * 説明の段落を置換します。
+	 *
+	 * @param text
+	 *            段落
+	 * @param noun
+	 *            名詞
+	 * @return 置換後の段落
+	 */
+	private static String fill(String text, String noun) {
+		return text.replace("{0}", noun).replace("{r}", ROOT);
+	}
+
+	/**
+	 * Javadoc コメントです。英語の Java ソースのコメントと、日本語の API ドキュメントの両方を保持します。
+	 */
+	private static class Doc {
+
+		/** 英語の段落。pre と table は折り返さずに出力します。 */
+		final List<String> english = new ArrayList<String>();
+
+		/** 日本語の段落 */
+		final List<String> japanese = new ArrayList<String>();
+
+		/**
+		 * ブロックタグ（タグ、英語、API ドキュメントのラベル、日本語の dd 要素）。英語が null のタグは API
+		 * ドキュメントだけ、日本語が null のタグは Java ソースだけに出力します。
+		 */
+		final List<String[]> tags = new ArrayList<String[]>();
+
+		/** 非推奨の説明（英語、日本語）。非推奨でない場合は null。 */
+		String[] deprecated;
+
+		/**
+		 * 段落を追加します。
+		 *
+		 * @param en
+		 *            英語の段落
+		 * @param ja
+		 *            日本語の段落
+		 * @return このコメント
+		 */
+		Doc text(String en, String ja) {
+			english.add(en);
+			japanese.add(ja);
+			return this;
+		}
+
+		/**
+		 * ブロックタグを追加します。
+		 *
+		 * @param tag
+		 *            タグ
+		 * @param en
+		 *            英語の説明
+		 * @param label
+		 *            API ドキュメントのラベル。ラベルが直前のタグと同じ場合は dd 要素だけを出力します。
+		 * @param ja
+		 *            日本語の dd 要素の内容
+		 * @return このコメント
+		 */
+		Doc tag(String tag, String en, String label, String ja) {
+			tags.add(new String[] { tag, en, label, ja });
+			return this;
+		}
+
+		/**
+		 * Java ソースのコメントを出力します。
+		 *
+		 * @param sb
+		 *            出力先
+		 * @param indent
+		 *            インデント
+		 */
+		void writeSource(StringBuilder sb, String indent) {
+			sb.append(indent).append("/**").append(NL);
+			for (int i = 0; i < english.size(); i++) {
+				String text = english.get(i);
+				if (i > 0) {
+					sb.append(indent).append(" *").append(NL);
+				}
+				if (text.startsWith("<pre>") || text.startsWith("<table")) {
+					for (String line : text.split(NL)) {
+						sb.append(indent).append(" * ").append(line).append(NL);
+					}
+				} else {
+					wrap(sb, indent, (i > 0) ? "<p>" + text : text);
+				}
+			}
+			if (deprecated != null || hasSourceTags()) {
+				sb.append(indent).append(" *").append(NL);
+			}
+			for (String[] tag : tags) {
+				if (tag[1] != null) {
+					wrap(sb, indent, tag[0] + " " + tag[1]);
+				}
+			}
+			if (deprecated != null) {
+				wrap(sb, indent, "@deprecated " + deprecated[0]);
+			}
+			sb.append(indent).append(" */").append(NL);
+		}
+
+		/**
+		 * Java ソースに出力するブロックタグがあるか判定します。
+		 *
+		 * @return Java ソースに出力するブロックタグがある場合は true
+		 */
+		private boolean hasSourceTags() {
+			for (String[] tag : tags) {
+				if (tag[1] != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * コメントの 1 行を折り返して出力します。
+		 *
+		 * @param sb
+		 *            出力先
+		 * @param indent
+		 *            インデント
+		 * @param text
+		 *            テキスト
+		 */
+		private static void wrap(StringBuilder sb, String indent, String text) {
+			int width = WRAP_COLUMN - indent.length() - 3;
+			if (text.charAt(0) == '@') {
+				width -= 8;
+			}
+			int pos = 0;
+			while (pos < text.length()) {
+				int end = pos + width;
+				if (end >= text.length()) {
+					end = text.length();
+				} else {
+					int space = text.lastIndexOf(' ', end);
+					if (space > pos) {
+						end = space;
+					}
+				}
+				sb.append(indent).append(" * ");
+				if (pos > 0 && text.charAt(0) == '@') {
+					sb.append("        ");
+				}
+				sb.append(text, pos, end).append(NL);
+				pos = end;
+				while (pos < text.length() && text.charAt(pos) == ' ') {
+					pos++;
+				}
+			}
+		}
+
+		/**
+		 * API ドキュメントのコメント部分を出力します。
+		 *
+		 * @param w
+		 *            出力先
+		 * @throws IOException
+		 *             書き込みに失敗した場合
+		 */
+		void writeHtml(Writer w) throws IOException {
+			if (deprecated != null) {
+				w.write("<div class=\"block\"><span class=\"deprecatedLabel\">非推奨。</span>&nbsp;"
+						+ "<span class=\"deprecationComment\">" + deprecated[1] + "</span></div>" + NL);
+			}
+			if (!japanese.isEmpty()) {
+				w.write("<div class=\"block\">");
+				for (int i = 0; i < japanese.size(); i++) {
+					String text = japanese.get(i);
+					if (i > 0) {
+						w.write(text.startsWith("<pre>") || text.startsWith("<table") ? NL : NL + "<p>" + NL);
+					}
+					w.write(text);
+				}
+				w.write("</div>" + NL);
+			}
+			if (hasHtmlTags()) {
+				w.write("<dl>" + NL);
+				String label = null;
+				for (String[] tag : tags) {
+					if (tag[3] == null) {
+						continue;
+					}
+					if (!tag[2].equals(label)) {
+						label = tag[2];
+						String cssClass = label.equals("typeParamLabel") ? "paramLabel" : label;
+						w.write("<dt><span class=\"" + cssClass + "\">" + labelText(label) + "</span></dt>" + NL);
+					}
+					w.write("<dd>" + tag[3] + "</dd>" + NL);
+				}
+				w.write("</dl>" + NL);
+			}
+		}
+
+		/**
+		 * API ドキュメントに出力するブロックタグがあるか判定します。
+		 *
+		 * @return API ドキュメントに出力するブロックタグがある場合は true
+		 */
+		private boolean hasHtmlTags() {
+			for (String[] tag : tags) {
+				if (tag[3] != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * ラベルの表示文字列を取得します。
+		 *
+		 * @param label
+		 *            ラベル
+		 * @return 表示文字列
+		 */
+		private static String labelText(String label) {
+			if (label.equals("typeParamLabel")) {
+				return "型パラメータ:";
+			} else if (label.equals("paramLabel")) {
+				return "パラメータ:";
+			} else if (label.equals("returnLabel")) {
+				return "戻り値:";
+			} else if (label.equals("throwsLabel")) {
+				return "例外:";
+			} else if (label.equals("seeLabel")) {
+				return "関連項目:";
+			}
+			return "導入されたバージョン:";
+		}
+
+		/**
+		 * 最初の文を取得します。
+		 *
+		 * @return 日本語の最初の文
+		 */
+		String firstSentence() {
+			String text = japanese.isEmpty() ? "" : japanese.get(0);
+			int end = text.indexOf('。');
+			return (end == -1) ? text : text.substring(0, end + 1);
+		}
+	}
+
+	/**
+	 * クラスのメンバーです。
+	 */
+	private static class Member {
+
+		/** 詳細の見出し（フィールドの詳細、コンストラクタの詳細、メソッドの詳細） */
+		final String section;
+
+		/** 名前 */
+		final String name;
+
+		/** HTML アンカー名 */
+		final String anchor;
+
+		/** Java ソースの宣言（注釈を含む） */
+		final String declaration;
+
+		/** Java ソースの本体。フィールドとインタフェースのメソッドの場合は ";"。 */
+		final String body;
+
+		/** API ドキュメントのシグネチャ */
+		final String signature;
+
+		/** コメント */
+		final Doc doc;
+
+		/**
+		 * コンストラクタです。
+		 *
+		 * @param section
+		 *            詳細の見出し
+		 * @param name
+		 *            名前
+		 * @param anchor
+		 *            HTML アンカー名
+		 * @param declaration
+		 *            Java ソースの宣言
+		 * @param body
+		 *            Java ソースの本体
+		 * @param signature
+		 *            API ドキュメントのシグネチャ
+		 * @param doc
+		 *            コメント
+		 */
+		Member(String section, String name, String anchor, String declaration, String body, String signature,
+				Doc doc) {
+			this.section = section;
+			this.name = name;
+			this.anchor = anchor;
+			this.declaration = declaration;
+			this.body = body;
+			this.signature = signature;
+			this.doc = doc;
+		}
+	}
+
+	/**
+	 * API ドキュメントの 1 ページです。
+	 */
+	private static class Page {
+
+		/** パッケージ名 */
+		final String packageName;
+
+		/** ページのタイトル（ネストしたクラスの場合は外側のクラス名を含む） */
+		final String title;
+
+		/** 種類（クラス、インタフェース） */
+		final String kind;
+
+		/** 型パラメータを含む見出しの型名 */
+		final String heading;
+
+		/** 継承階層を表示する場合は true */
+		final boolean inheritance;
+
+		/** description の dl 要素（型パラメータ、含まれているクラスなど） */
+		String descriptionList = "";
+
+		/** クラスのシグネチャ */
+		String signature;
+
+		/** クラスのコメント */
+		Doc doc;
+
+		/** メンバー */
+		final List<Member> members = new ArrayList<Member>();
+
+		/**
+		 * コンストラクタです。
+		 *
+		 * @param packageName
+		 *            パッケージ名
+		 * @param title
+		 *            ページのタイトル
+		 * @param kind
+		 *            種類
+		 * @param heading
+		 *            型パラメータを含む見出しの型名
+		 * @param inheritance
+		 *            継承階層を表示する場合は true
+		 */
+		Page(String packageName, String title, String kind, String heading, boolean inheritance) {
+			this.packageName = packageName;
+			this.title = title;
+			this.kind = kind;
+			this.heading = heading;
+			this.inheritance = inheritance;
+		}
+
+		/**
+		 * ページを出力します。
+		 *
+		 * @param w
+		 *            出力先
+		 * @throws IOException
+		 *             書き込みに失敗した場合
+		 */
+		void write(Writer w) throws IOException {
+			w.write("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\" "
+					+ "\"http://www.w3.org/TR/html4/loose.dtd\">" + NL);
+			w.write("<!-- NewPage -->" + NL + "<html lang=\"ja\">" + NL + "<head>" + NL);
+			w.write("<!-- Generated by javadoc (1.8.0) on Sat Jan 01 00:00:00 JST 2000 -->" + NL);
+			w.write("<title>" + title + "</title>" + NL);
+			w.write("<meta name=\"date\" content=\"2000-01-01\">" + NL);
+			w.write("<link rel=\"stylesheet\" type=\"text/css\" href=\"" + ROOT + "stylesheet.css\" title=\"Style\">"
+					+ NL);
+			w.write("<script type=\"text/javascript\" src=\"" + ROOT + "script.js\"></script>" + NL);
+			w.write("</head>" + NL + "<body>" + NL);
+			w.write("<!-- ======== START OF CLASS DATA ======== -->" + NL);
+			w.write("<div class=\"header\">" + NL + "<div class=\"subTitle\">" + packageName + "</div>" + NL);
+			w.write("<h2 title=\"" + kind + " " + title + "\" class=\"title\">" + kind + " " + heading + "</h2>" + NL);
+			w.write("</div>" + NL + "<div class=\"contentContainer\">" + NL);
+			if (inheritance) {
+				w.write("<ul class=\"inheritance\">" + NL + "<li>" + link("Object").replace(">Object<",
+						">java.lang.Object<") + "</li>" + NL + "<li>" + NL + "<ul class=\"inheritance\">" + NL + "<li>"
+						+ packageName + "." + heading + "</li>" + NL + "</ul>" + NL + "</li>" + NL + "</ul>" + NL);
+			}
+
+			w.write("<div class=\"description\">" + NL + "<ul class=\"blockList\">" + NL + "<li class=\"blockList\">"
+					+ NL);
+			w.write(descriptionList);
+			w.write("<hr>" + NL + "<br>" + NL + "<pre>" + signature + "</pre>" + NL);
+			doc.writeHtml(w);
+			w.write("</li>" + NL + "</ul>" + NL + "</div>" + NL);
+
+			writeSummary(w);
+			writeDetails(w);
+
+			w.write("</div>" + NL + "<!-- ========= END OF CLASS DATA ========= -->" + NL);
+			w.write("</body>" + NL + "</html>" + NL);
+		}
+
+		/**
+		 * メソッドのサマリーを出力します。
+		 *
+		 * @param w
+		 *            出力先
+		 * @throws IOException
+		 *             書き込みに失敗した場合
+		 */
+		private void writeSummary(Writer w) throws IOException {
+			w.write("<div class=\"summary\">" + NL + "<ul class=\"blockList\">" + NL + "<li class=\"blockList\">" + NL);
+			w.write("<!-- ========== METHOD SUMMARY =========== -->" + NL);
+			w.write("<ul class=\"blockList\">" + NL + "<li class=\"blockList\"><a name=\"method.summary\">" + NL
+					+ "<!--   -->" + NL + "</a>" + NL + "<h3>メソッドのサマリー</h3>" + NL);
+			w.write("<table class=\"memberSummary\" border=\"0\" cellpadding=\"3\" cellspacing=\"0\" "
+					+ "summary=\"メソッドのサマリー表、メソッドの一覧および説明\">" + NL);
+			w.write("<tr>" + NL + "<th class=\"colFirst\" scope=\"col\">修飾子と型</th>" + NL
+					+ "<th class=\"colLast\" scope=\"col\">メソッドと説明</th>" + NL + "</tr>" + NL);
+			boolean alt = true;
+			for (Member member : members) {
+				if (!member.section.equals("メソッドの詳細")) {
+					continue;
+				}
+				w.write("<tr class=\"" + (alt ? "altColor" : "rowColor") + "\">" + NL);
+				w.write("<td class=\"colLast\"><code><span class=\"memberNameLink\"><a href=\"" + ROOT
+						+ packageName.replace('.', '/') + "/" + title + ".html#" + member.anchor + "\">" + member.name
+						+ "</a></span></code>" + NL);
+				w.write("<div class=\"block\">" + member.doc.firstSentence() + "</div>" + NL + "</td>" + NL + "</tr>"
+						+ NL);
+				alt = !alt;
+			}
+			w.write("</table>" + NL + "</li>" + NL + "</ul>" + NL + "</li>" + NL + "</ul>" + NL + "</div>" + NL);
+		}
+
+		/**
+		 * メンバーの詳細を出力します。
+		 *
+		 * @param w
+		 *            出力先
+		 * @throws IOException
+		 *             書き込みに失敗した場合
+		 */
+		private void writeDetails(Writer w) throws IOException {
+			w.write("<div class=\"details\">" + NL + "<ul class=\"blockList\">" + NL + "<li class=\"blockList\">" + NL);
+			for (int i = 0; i < members.size(); i++) {
+				Member member = members.get(i);
+				boolean first = (i == 0 || !members.get(i - 1).section.equals(member.section));
+				boolean last = (i == members.size() - 1 || !members.get(i + 1).section.equals(member.section));
+				if (first) {
+					w.write("<ul class=\"blockList\">" + NL + "<li class=\"blockList\"><a name=\"" + member.section
+							+ "\">" + NL + "<!--   -->" + NL + "</a>" + NL + "<h3>" + member.section + "</h3>" + NL);
+				}
+				w.write("<a name=\"" + member.anchor + "\">" + NL + "<!--   -->" + NL + "</a>" + NL);
+				w.write("<ul class=\"" + (last ? "blockListLast" : "blockList") + "\">" + NL
+						+ "<li class=\"blockList\">" + NL);
+				w.write("<h4>" + member.name + "</h4>" + NL + "<pre>" + member.signature + "</pre>" + NL);
+				member.doc.writeHtml(w);
+				w.write("</li>" + NL + "</ul>" + NL);
+				if (last) {
+					w.write("</li>" + NL + "</ul>" + NL);
+				}
+			}
+			w.write("</li>" + NL + "</ul>" + NL + "</div>" + NL);
+		}
+	}
+
+	/**
+	 * 作成する 1 つのクラスです。内容はクラスの番号と乱数の種だけで決まります。
+	 */
+	private class GeneratedClass {
+
+		/** パッケージ名 */
+		final String packageName;
+
+		/** クラス名 */
+		final String simpleName;
+
+		/** 名詞（クラス名、英語、日本語） */
+		private final String[] noun;
+
+		/** 型パラメータを持つ場合は true */
+		private final boolean generic;
+
+		/** ネストしたインタフェースを持つ場合は true */
+		private final boolean hasListener;
+
+		/** 要素の型（Java ソース） */
+		private final String element;
+
+		/** 要素の型（API ドキュメント） */
+		private final String elementHtml;
+
+		/** 要素の型（HTML アンカー名） */
+		private final String elementAnchor;
+
+		/** 乱数 */
+		private final Random random;
+
+		/** Java ソース、API ドキュメントのページ */
+		private final List<Page> pages = new ArrayList<Page>();
+
+		/** Java ソース */
+		private final StringBuilder source = new StringBuilder();
+
+		/**
+		 * コンストラクタです。
+		 *
+		 * @param index
+		 *            クラスの番号
+		 */
+		GeneratedClass(int index) {
+			random = new Random(seed * 31 + index);
+			packageName = String.format("%s%04d", PACKAGE_PREFIX, index / packageSize);
+			noun = NOUNS[index % NOUNS.length];
+			simpleName = noun[0] + index;
+			generic = (index % 5 == 0);
+			hasListener = (index % 3 == 0);
+			if (generic) {
+				element = "E";
+				elementHtml = typeParam(simpleName, "E");
+				elementAnchor = "E";
+			} else {
+				element = "String";
+				elementHtml = link("String");
+				elementAnchor = "java.lang.String";
+			}
+			build();
+		}
+
+		/**
+		 * Java ソースを取得します。
+		 *
+		 * @return Java ソース
+		 */
+		String source() {
+			return source.toString();
+		}
+
+		/**
+		 * API ドキュメントのページを取得します。
+		 *
+		 * @return ページのリスト
+		 */
+		List<Page> pages() {
+			return pages;
+		}
+
+		/**
+		 * 型パラメータへのリンクを作成します。
+		 *
+		 * @param owner
+		 *            型パラメータを宣言するクラスのページのタイトル
+		 * @param name
+		 *            型パラメータ名
+		 * @return リンクの HTML
+		 */
+		private String typeParam(String owner, String name) {
+			return "<a href=\"" + ROOT + packageName.replace('.', '/') + "/" + owner + ".html\" title=\"" + owner
+					+ "内の型パラメータ\">" + name + "</a>";
+		}
+
+		/**
+		 * このクラスのページへのリンクを作成します。
+		 *
+		 * @param title
+		 *            ページのタイトル
+		 * @param kind
+		 *            種類
+		 * @return リンクの HTML
+		 */
+		private String self(String title, String kind) {
+			return "<a href=\"" + ROOT + packageName.replace('.', '/') + "/" + title + ".html\" title=\"" + packageName
+					+ "内の" + kind + "\">" + title + "</a>";
+		}
+
+		/**
+		 * 説明の段落をランダムに選択して追加します。
+		 *
+		 * @param doc
+		 *            コメント
+		 * @param min
+		 *            最小の段落数
+		 * @param max
+		 *            最大の段落数
+		 */
+		private void paragraphs(Doc doc, int min, int max) {
+			int count = min + random.nextInt(max - min + 1);
+			int first = random.nextInt(PARAGRAPHS.length);
+			for (int i = 0; i < count; i++) {
+				String[] p = PARAGRAPHS[(first + i) % PARAGRAPHS.length];
+				doc.text(fill(p[0], noun[1]), fill(p[1], noun[2]));
+			}
+		}
+
+		/**
+		 * Java ソースとページを作成します。
+		 */
+		private void build() {
+			String typeName = generic ? simpleName + "<E>" : simpleName;
+			String typeNameHtml = generic ? simpleName + "&lt;E&gt;" : simpleName;
+
+			source.append("/*").append(NL);
+			source.append(" * Generated by mergedoc.core.CorpusGenerator. Do not edit.").append(NL);
+			source.append(" */").append(NL).append(NL);
+			source.append("package ").append(packageName).append(";").append(NL).append(NL);
+			source.append("import java.util.ArrayList;").append(NL);
+			source.append("import java.util.Collection;").append(NL);
+			source.append("import java.util.HashMap;").append(NL);
+			source.append("import java.util.Iterator;").append(NL);
+			source.append("import java.util.List;").append(NL);
+			source.append("import java.util.Map;").append(NL).append(NL);
+
+			// クラス
+			Page page = new Page(packageName, simpleName, "クラス", typeNameHtml, true);
+			Doc doc = new Doc();
+			doc.text("A resizable " + noun[1] + " of elements that keeps the order in which the elements were added. "
+					+ "This class is generated to measure how fast comments are merged; it mimics the layout of "
+					+ "the collection classes in the JDK.",
+					"要素が追加された順序を保持する、サイズ変更可能な要素の" + noun[2]
+							+ "です。このクラスはコメントのマージ速度を測定するために作成されたもので、JDK のコレクション・クラスのレイアウトを模倣しています。");
+			paragraphs(doc, 1, 4);
+			doc.text("The following table shows the operations and their cost:", "次の表は、操作とそのコストを示しています。");
+			doc.text("<table border=1 summary=\"Cost of the operations\">" + NL
+					+ "<tr><th>Operation</th><th>Cost</th></tr>" + NL
+					+ "<tr><td>{@link #add(" + element + ") add}</td><td>amortized constant</td></tr>" + NL
+					+ "<tr><td>{@link #get(int) get}</td><td>constant</td></tr>" + NL
+					+ "<tr><td>{@link #removeFirst(Object) removeFirst}</td><td>linear</td></tr>" + NL + "</table>",
+					"<table border=1 summary=\"操作のコスト\">" + NL + "<tr><th>操作</th><th>コスト</th></tr>" + NL
+							+ "<tr><td><a href=\"" + ROOT + packageName.replace('.', '/') + "/" + simpleName + ".html#add-"
+							+ elementAnchor + "-\"><code>add</code></a></td><td>ならし定数時間</td></tr>" + NL
+							+ "<tr><td><a href=\"" + ROOT + packageName.replace('.', '/') + "/" + simpleName
+							+ ".html#get-int-\"><code>get</code></a></td><td>定数時間</td></tr>" + NL
+							+ "<tr><td><a href=\"" + ROOT + packageName.replace('.', '/') + "/" + simpleName
+							+ ".html#removeFirst-java.lang.Object-\"><code>removeFirst</code></a></td><td>線形時間</td></tr>"
+							+ NL + "</table>");
+			doc.text("A typical use looks like this:", "典型的な使用方法は次のとおりです。");
+			String var = noun[1].substring(0, 1);
+			String pre = "<pre>" + NL + "    " + (generic ? simpleName + "&lt;String&gt;" : simpleName) + " " + var
+					+ " = new " + (generic ? simpleName + "&lt;&gt;" : simpleName) + "();" + NL + "    " + var
+					+ ".addAll(\"a\", \"b\", \"c\");" + NL + "    String max = " + simpleName + ".max(" + var
+					+ ".toList());" + NL + "</pre>";
+			doc.text(pre, pre);
+			if (generic) {
+				doc.tag("@param", "<E> the type of elements held in this " + noun[1], "typeParamLabel",
+						"<code>E</code> - この" + noun[2] + "に保持される要素の型");
+			}
+			doc.tag("@see", simpleName + ".Entry", "seeLabel",
+					"<a href=\"" + ROOT + packageName.replace('.', '/') + "/" + simpleName + ".Entry.html\" title=\""
+							+ packageName + "内のクラス\"><code>" + simpleName + ".Entry</code></a>, " + NL
+							+ "<a href=\"" + ROOT + "java/util/ArrayList.html\" title=\"java.util内のクラス\">"
+							+ "<code>ArrayList</code></a>");
+			doc.tag("@see", "java.util.ArrayList", "seeLabel", null);
+			String since = "1." + random.nextInt(9);
+			doc.tag("@since", since, "simpleTagLabel", since);
+			page.doc = doc;
+			page.descriptionList = "<dl>" + NL + "<dt>すべての実装されたインタフェース:</dt>" + NL + "<dd>" + link("Iterable")
+					+ "&lt;" + elementHtml + "&gt;</dd>" + NL + "</dl>" + NL;
+			page.signature = "public class <span class=\"typeNameLabel\">" + typeNameHtml + "</span>" + NL + "extends "
+					+ link("Object") + NL + "implements " + link("Iterable") + "&lt;" + elementHtml + "&gt;";
+			doc.writeSource(source, "");
+			source.append("public class ").append(typeName).append(" implements Iterable<").append(element)
+					.append("> {").append(NL);
+			addOuterMembers(page);
+			pages.add(page);
+			writeMembers(page, "    ");
+
+			addEntry();
+			if (hasListener) {
+				addListener();
+			}
+			source.append("}").append(NL);
+		}
+
+		/**
+		 * 外側のクラスのメンバーを追加します。
+		 *
+		 * @param page
+		 *            ページ
+		 */
+		private void addOuterMembers(Page page) {
+			String n = noun[1];
+			String j = noun[2];
+
+			Doc doc = new Doc().text("The default initial capacity of a " + n + ".", j + "のデフォルトの初期容量です。");
+			doc.tag("@see", null, "seeLabel", "<a href=\"" + ROOT
+					+ "constant-values.html#" + packageName + "." + simpleName + ".DEFAULT_CAPACITY\">定数フィールド値</a>");
+			page.members.add(new Member("フィールドの詳細", "DEFAULT_CAPACITY", "DEFAULT_CAPACITY",
+					"public static final int DEFAULT_CAPACITY = " + (8 << random.nextInt(4)), ";",
+					"public static final&nbsp;int DEFAULT_CAPACITY", doc));
+			page.members.add(new Member("フィールドの詳細", "elements", "elements",
+					"protected final List<" + element + "> elements", ";",
+					"protected final&nbsp;" + link("List") + "&lt;" + elementHtml + "&gt; elements",
+					new Doc().text("The elements of this " + n + ".", "この" + j + "の要素です。")));
+
+			page.members.add(new Member("コンストラクタの詳細", simpleName, simpleName + "--", "public " + simpleName + "()",
+					"this(DEFAULT_CAPACITY);", "public&nbsp;" + simpleName + "()",
+					new Doc().text("Constructs an empty " + n + " with the default initial capacity.",
+							"デフォルトの初期容量で空の" + j + "を作成します。")));
+			doc = new Doc().text("Constructs an empty " + n + " with the specified initial capacity.",
+					"指定された初期容量で空の" + j + "を作成します。");
+			doc.tag("@param", " initialCapacity  the initial capacity of the " + n, "paramLabel",
+					"<code>initialCapacity</code> - " + j + "の初期容量");
+			doc.tag("@throws", "IllegalArgumentException if the specified initial capacity is negative",
+					"throwsLabel", code("IllegalArgumentException") + " - 指定された初期容量が負の場合");
+			page.members.add(new Member("コンストラクタの詳細", simpleName, simpleName + "-int-",
+					"public " + simpleName + "(int initialCapacity)",
+					"if (initialCapacity < 0)" + NL + "    throw new IllegalArgumentException(\"Illegal Capacity: \" +"
+							+ NL + "                                       initialCapacity);" + NL
+							+ "this.elements = new ArrayList<>(initialCapacity);",
+					"public&nbsp;" + simpleName + "(int&nbsp;initialCapacity)", doc));
+
+			doc = new Doc().text("Appends the specified element to the end of this " + n + ".",
+					"この" + j + "の最後に、指定された要素を追加します。");
+			doc.tag("@param", "e element to be appended to this " + n, "paramLabel",
+					"<code>e</code> - この" + j + "に追加される要素");
+			doc.tag("@return", "{@code true} (as specified by {@link Collection#add})", "returnLabel",
+					"<code>true</code> (<a href=\"" + ROOT
+							+ "java/util/Collection.html#add-E-\"><code>Collection.add(E)</code></a>で指定されているとおり)");
+			doc.tag("@throws", "NullPointerException if the specified element is null", "throwsLabel",
+					code("NullPointerException") + " - 指定された要素がnullである場合");
+			page.members.add(new Member("メソッドの詳細", "add", "add-" + elementAnchor + "-",
+					"public boolean add(" + element + " e)",
+					"if (e == null)" + NL + "    throw new NullPointerException();" + NL + "return elements.add(e);",
+					"public&nbsp;boolean&nbsp;add(" + elementHtml + "&nbsp;e)", doc));
+
+			doc = new Doc().text("Appends all of the specified elements to the end of this " + n
+					+ ", in the order that they are given.", "指定されたすべての要素を、指定された順序でこの" + j + "の最後に追加します。");
+			doc.tag("@param", "elements the elements to be appended to this " + n, "paramLabel",
+					"<code>elements</code> - この" + j + "に追加される要素");
+			doc.tag("@throws", "NullPointerException if any of the specified elements is null", "throwsLabel",
+					code("NullPointerException") + " - 指定された要素のいずれかがnullである場合");
+			doc.tag("@since", "1.1", "simpleTagLabel", "1.1");
+			page.members.add(new Member("メソッドの詳細", "addAll", "addAll-" + elementAnchor + "...-",
+					"@SafeVarargs" + NL + "public final void addAll(" + element + "... elements)",
+					"for (" + element + " e : elements)" + NL + "    add(e);",
+					link("SafeVarargs") + NL + "public final&nbsp;void&nbsp;addAll(" + elementHtml + "...&nbsp;elements)",
+					doc));
+
+			doc = new Doc().text("Returns the element at the specified position in this " + n + ".",
+					"この" + j + "内の指定された位置にある要素を返します。");
+			doc.tag("@param", " index index of the element to return", "paramLabel",
+					"<code>index</code> - 返される要素のインデックス");
+			doc.tag("@return", "the element at the specified position in this " + n, "returnLabel",
+					"この" + j + "内の指定された位置にある要素");
+			doc.tag("@throws", "IndexOutOfBoundsException if the index is out of range "
+					+ "(<tt>index &lt; 0 || index &gt;= size()</tt>)", "throwsLabel",
+					code("IndexOutOfBoundsException")
+							+ " - インデックスが範囲外の場合(<tt>index &lt; 0 || index &gt;= size()</tt>)");
+			page.members.add(new Member("メソッドの詳細", "get", "get-int-", "public " + element + " get(int index)",
+					"return elements.get(index);", "public&nbsp;" + elementHtml + "&nbsp;get(int&nbsp;index)", doc));
+
+			doc = new Doc().text("Removes the first occurrence of the specified element from this " + n
+					+ ", if it is present.", "指定された要素がこの" + j + "にあれば、その最初のものを" + j + "から削除します。");
+			doc.tag("@param", "o element to be removed from this " + n + ", if present", "paramLabel",
+					"<code>o</code> - この" + j + "から削除される要素(その要素が存在する場合)");
+			doc.tag("@return", "<tt>true</tt> if this " + n + " contained the specified element", "returnLabel",
+					"指定された要素がこの" + j + "に含まれていた場合は<tt>true</tt>");
+			doc.deprecated = new String[] { "As of release 1.1, replaced by {@link #removeFirst(Object)}",
+					"リリース1.1以降は、<a href=\"" + ROOT + packageName.replace('.', '/') + "/" + simpleName
+							+ ".html#removeFirst-java.lang.Object-\"><code>removeFirst(Object)</code></a>に置き換えられました" };
+			page.members.add(new Member("メソッドの詳細", "remove", "remove-java.lang.Object-",
+					"@Deprecated" + NL + "public boolean remove(Object o)", "return removeFirst(o);",
+					link("Deprecated") + NL + "public&nbsp;boolean&nbsp;remove(" + link("Object") + "&nbsp;o)", doc));
+
+			doc = new Doc().text("Removes the first occurrence of the specified element from this " + n
+					+ ", if it is present.  If the " + n + " does not contain the element, it is unchanged.",
+					"指定された要素がこの" + j + "にあれば、その最初のものを" + j + "から削除します。その要素が" + j + "にない場合は、変更されません。");
+			doc.tag("@param", "o element to be removed from this " + n + ", if present", "paramLabel",
+					"<code>o</code> - この" + j + "から削除される要素(その要素が存在する場合)");
+			doc.tag("@return", "<tt>true</tt> if this " + n + " contained the specified element", "returnLabel",
+					"指定された要素がこの" + j + "に含まれていた場合は<tt>true</tt>");
+			doc.tag("@since", "1.1", "simpleTagLabel", "1.1");
+			page.members.add(new Member("メソッドの詳細", "removeFirst", "removeFirst-java.lang.Object-",
+					"public boolean removeFirst(Object o)", "return elements.remove(o);",
+					"public&nbsp;boolean&nbsp;removeFirst(" + link("Object") + "&nbsp;o)", doc));
+
+			doc = new Doc().text("Returns the number of elements in this " + n + ".", "この" + j + "内にある要素の数を返します。");
+			doc.tag("@return", "the number of elements in this " + n, "returnLabel", "この" + j + "内の要素数");
+			page.members.add(new Member("メソッドの詳細", "size", "size--", "public int size()", "return elements.size();",
+					"public&nbsp;int&nbsp;size()", doc));
+
+			doc = new Doc().text("Returns a list containing all of the elements in this " + n
+					+ " in proper sequence (from first to last element).",
+					"この" + j + "内のすべての要素を適切な順序で(最初の要素から最後の要素へ)含んでいるリストを返します。");
+			doc.tag("@return", "a list containing all of the elements in this " + n, "returnLabel",
+					"この" + j + "内のすべての要素を含むリスト");
+			page.members.add(new Member("メソッドの詳細", "toList", "toList--", "public List<" + element + "> toList()",
+					"return new ArrayList<>(elements);",
+					"public&nbsp;" + link("List") + "&lt;" + elementHtml + "&gt;&nbsp;toList()", doc));
+
+			doc = new Doc().text("Returns an iterator over the elements in this " + n + " in proper sequence.",
+					"この" + j + "内の要素を適切な順序で繰り返し処理するイテレータを返します。");
+			doc.tag("@return", "an iterator over the elements in this " + n + " in proper sequence", "returnLabel",
+					"この" + j + "内の要素を適切な順序で繰り返し処理するイテレータ");
+			page.members.add(new Member("メソッドの詳細", "iterator", "iterator--",
+					"@Override" + NL + "public Iterator<" + element + "> iterator()", "return toList().iterator();",
+					"public&nbsp;" + link("Iterator") + "&lt;" + elementHtml + "&gt;&nbsp;iterator()", doc));
+
+			doc = new Doc().text("Groups the elements of this " + n + " by the length of their string "
+					+ "representation, divided by the specified width.",
+					"この" + j + "の要素を、文字列表現の長さを指定された幅で割った値でグループ化します。");
+			paragraphs(doc, 0, 2);
+			doc.tag("@param", "width the width of each group, in characters", "paramLabel",
+					"<code>width</code> - 各グループの幅(文字数)");
+			doc.tag("@return", "a map from the group number to the elements in the group", "returnLabel",
+					"グループ番号からグループ内の要素へのマップ");
+			doc.tag("@throws", "IllegalArgumentException if {@code width} is not positive", "throwsLabel",
+					code("IllegalArgumentException") + " - <code>width</code>が正でない場合");
+			page.members.add(new Member("メソッドの詳細", "groupBy", "groupBy-int-",
+					"public Map<Integer, List<" + element + ">> groupBy(int width)",
+					"if (width <= 0)" + NL + "    throw new IllegalArgumentException();" + NL + "Map<Integer, List<"
+							+ element + ">> map = new HashMap<>();" + NL + "for (" + element + " e : elements)" + NL
+							+ "    map.computeIfAbsent(String.valueOf(e).length() / width, k -> new ArrayList<>())"
+							+ ".add(e);" + NL + "return map;",
+					"public&nbsp;" + link("Map") + "&lt;<a href=\"" + ROOT
+							+ "java/lang/Integer.html\" title=\"java.lang内のクラス\">Integer</a>," + link("List")
+							+ "&lt;" + elementHtml + "&gt;&gt;&nbsp;groupBy(int&nbsp;width)",
+					doc));
+
+			int extras = random.nextInt(maxExtraMethods + 1);
+			for (int i = 0; i < extras; i++) {
+				String name = "valueAt" + i;
+				doc = new Doc().text("Returns the hash value of the element at the specified position, adjusted by "
+						+ "the given offset.", "指定された位置にある要素のハッシュ値に、指定されたオフセットを加えた値を返します。");
+				paragraphs(doc, 0, 2);
+				doc.tag("@param", " index  the index of the element", "paramLabel", "<code>index</code> - 要素のインデックス");
+				doc.tag("@param", " offset the offset added to the hash value", "paramLabel",
+						"<code>offset</code> - ハッシュ値に加えるオフセット");
+				doc.tag("@return", "the adjusted hash value", "returnLabel", "オフセットを加えたハッシュ値");
+				doc.tag("@throws", "IndexOutOfBoundsException if the index is out of range", "throwsLabel",
+						code("IndexOutOfBoundsException") + " - インデックスが範囲外の場合");
+				page.members.add(new Member("メソッドの詳細", name, name + "-int-long-",
+						"public long " + name + "(int index, long offset)",
+						"return get(index).hashCode() * " + (i + 31) + "L + offset;",
+						"public&nbsp;long&nbsp;" + name + "(int&nbsp;index," + NL + indent(name.length() + 13)
+								+ "long&nbsp;offset)",
+						doc));
+			}
+
+			doc = new Doc().text("Returns the maximum element of the given collection, according to the "
+					+ "<i>natural ordering</i> of its elements.  All elements in the collection must implement "
+					+ "the <tt>Comparable</tt> interface.",
+					"要素の<i>自然順序付け</i>に従って、指定されたコレクションの最大の要素を返します。コレクションのすべての要素は、"
+							+ "<tt>Comparable</tt>インタフェースを実装している必要があります。");
+			doc.text("This method iterates over the entire collection, hence it requires time proportional to the "
+					+ "size of the collection.", "このメソッドはコレクション全体で反復処理を行うので、コレクションのサイズに比例した時間が必要です。");
+			doc.tag("@param", " <T> the class of the objects in the collection", "typeParamLabel",
+					"<code>T</code> - コレクション内のオブジェクトのクラス");
+			doc.tag("@param", " coll the collection whose maximum element is to be determined.", "paramLabel",
+					"<code>coll</code> - 最大の要素を決定するコレクション。");
+			doc.tag("@return", "the maximum element of the given collection, according to the <i>natural "
+					+ "ordering</i> of its elements.", "returnLabel", "要素の<i>自然順序付け</i>に従った、指定されたコレクションの最大の要素。");
+			doc.tag("@throws", "ClassCastException if the collection contains elements that are not <i>mutually "
+					+ "comparable</i>", "throwsLabel", code("ClassCastException") + " - コレクションに<i>相互に比較可能</i>でない要素がある場合");
+			doc.tag("@throws", "java.util.NoSuchElementException if the collection is empty", "throwsLabel",
+					code("NoSuchElementException") + " - コレクションが空の場合");
+			doc.tag("@see", "Comparable", "seeLabel",
+					"<a href=\"" + ROOT + "java/lang/Comparable.html\" title=\"java.lang内のインタフェース\"><code>Comparable</code></a>");
+			page.members.add(new Member("メソッドの詳細", "max", "max-java.util.Collection-",
+					"public static <T extends Comparable<? super T>> T max(Collection<? extends T> coll)",
+					"Iterator<? extends T> i = coll.iterator();" + NL + "T candidate = i.next();" + NL
+							+ "while (i.hasNext()) {" + NL + "    T next = i.next();" + NL
+							+ "    if (next.compareTo(candidate) > 0)" + NL + "        candidate = next;" + NL + "}"
+							+ NL + "return candidate;",
+					"public static&nbsp;&lt;T extends " + link("Comparable") + "&lt;? super T&gt;&gt;&nbsp;T&nbsp;max("
+							+ link("Collection") + "&lt;? extends T&gt;&nbsp;coll)",
+					doc));
+
+			doc = new Doc().text("Returns a string representation of this " + n + ".", "この" + j + "の文字列表現を返します。");
+			doc.tag("@return", "a string representation of this " + n, "returnLabel", "この" + j + "の文字列表現");
+			page.members.add(new Member("メソッドの詳細", "toString", "toString--",
+					"@Override" + NL + "public String toString()", "return elements.toString();",
+					"public&nbsp;" + link("String") + "&nbsp;toString()", doc));
+		}
+
+		/**
+		 * ネストしたクラス Entry を追加します。
+		 */
+		private void addEntry() {
+			String title = simpleName + ".Entry";
+			String k = typeParam(title, "K");
+			String v = typeParam(title, "V");
+			Page page = new Page(packageName, title, "クラス", title + "&lt;K,V&gt;", true);
+			page.descriptionList = "<dl>" + NL + "<dt><span class=\"paramLabel\">型パラメータ:</span></dt>" + NL
+					+ "<dd><code>K</code> - キーの型</dd>" + NL + "<dd><code>V</code> - 値の型</dd>" + NL + "</dl>" + NL
+					+ "<dl>" + NL + "<dt>含まれているクラス:</dt>" + NL + "<dd>" + self(simpleName, "クラス")
+					+ (generic ? "&lt;" + typeParam(simpleName, "E") + "&gt;" : "") + "</dd>" + NL + "</dl>" + NL;
+			page.signature = "public static class <span class=\"typeNameLabel\">" + title + "&lt;K,V&gt;</span>" + NL
+					+ "extends " + link("Object");
+			Doc doc = new Doc().text("An entry of a " + noun[1] + ".  An entry holds a key and the value "
+					+ "associated with the key.", noun[2] + "のエントリです。エントリはキーと、そのキーに関連付けられた値を保持します。");
+			paragraphs(doc, 0, 2);
+			// 型パラメータは descriptionList に出力
+			doc.tag("@param", "<K> the type of the key", "typeParamLabel", null);
+			doc.tag("@param", "<V> the type of the value", "typeParamLabel", null);
+			doc.tag("@since", "1.1", "simpleTagLabel", "1.1");
+			page.doc = doc;
+
+			page.members.add(new Member("コンストラクタの詳細", "Entry", "Entry-K-V-", "public Entry(K key, V value)",
+					"this.key = key;" + NL + "this.value = value;",
+					"public&nbsp;Entry(" + k + "&nbsp;key," + NL + "             " + v + "&nbsp;value)",
+					new Doc().text("Creates an entry.", "エントリを作成します。")
+							.tag("@param", "key the key", "paramLabel", "<code>key</code> - キー")
+							.tag("@param", "value the value", "paramLabel", "<code>value</code> - 値")));
+			page.members.add(new Member("メソッドの詳細", "getKey", "getKey--", "public K getKey()", "return key;",
+					"public&nbsp;" + k + "&nbsp;getKey()",
+					new Doc().text("Returns the key of this entry.", "このエントリのキーを返します。").tag("@return",
+							"the key of this entry", "returnLabel", "このエントリのキー")));
+			page.members.add(new Member("メソッドの詳細", "getValue", "getValue--", "public V getValue()", "return value;",
+					"public&nbsp;" + v + "&nbsp;getValue()",
+					new Doc().text("Returns the value of this entry.", "このエントリの値を返します。").tag("@return",
+							"the value of this entry", "returnLabel", "このエントリの値")));
+			page.members.add(new Member("メソッドの詳細", "setValue", "setValue-V-", "public V setValue(V value)",
+					"V old = this.value;" + NL + "this.value = value;" + NL + "return old;",
+					"public&nbsp;" + v + "&nbsp;setValue(" + v + "&nbsp;value)",
+					new Doc().text("Replaces the value of this entry with the specified value.",
+							"このエントリの値を指定された値で置き換えます。")
+							.tag("@param", "value new value to be stored in this entry", "paramLabel",
+									"<code>value</code> - このエントリに格納される新しい値")
+							.tag("@return", "the old value", "returnLabel", "古い値")));
+			pages.add(page);
+
+			source.append(NL);
+			doc.writeSource(source, "    ");
+			source.append("    public static class Entry<K, V> {").append(NL).append(NL);
+			source.append("        private final K key;").append(NL).append(NL);
+			source.append("        private V value;").append(NL);
+			writeMembers(page, "        ");
+			source.append("    }").append(NL);
+		}
+
+		/**
+		 * ネストしたインタフェース Listener を追加します。
+		 */
+		private void addListener() {
+			String title = simpleName + ".Listener";
+			Page page = new Page(packageName, title, "インタフェース", title, false);
+			page.descriptionList = "<dl>" + NL + "<dt>含まれているクラス:</dt>" + NL + "<dd>" + self(simpleName, "クラス")
+					+ (generic ? "&lt;" + typeParam(simpleName, "E") + "&gt;" : "") + "</dd>" + NL + "</dl>" + NL;
+			page.signature = "public static interface <span class=\"typeNameLabel\">" + title + "</span>";
+			Doc doc = new Doc().text("A listener that is notified when a " + noun[1] + " is changed.",
+					noun[2] + "が変更されたときに通知を受けるリスナーです。");
+			paragraphs(doc, 0, 1);
+			page.doc = doc;
+
+			String sourceType = generic ? simpleName + "<?>" : simpleName;
+			String sourceHtml = self(simpleName, "クラス") + (generic ? "&lt;?&gt;" : "");
+			page.members.add(new Member("メソッドの詳細", "changed",
+					"changed-" + packageName + "." + simpleName + "-int-",
+					"void changed(" + sourceType + " source, int index)", ";",
+					"void&nbsp;changed(" + sourceHtml + "&nbsp;source," + NL + "             int&nbsp;index)",
+					new Doc().text("Called when an element of the " + noun[1] + " is changed.",
+							noun[2] + "の要素が変更されたときに呼び出されます。")
+							.tag("@param", "source the changed " + noun[1], "paramLabel",
+									"<code>source</code> - 変更された" + noun[2])
+							.tag("@param", "index the index of the changed element", "paramLabel",
+									"<code>index</code> - 変更された要素のインデックス")));
+			pages.add(page);
+
+			source.append(NL);
+			doc.writeSource(source, "    ");
+			source.append("    public interface Listener {").append(NL);
+			writeMembers(page, "        ");
+			source.append("    }").append(NL);
+		}
+
+		/**
+		 * ページのメンバーを Java ソースに出力します。
+		 *
+		 * @param page
+		 *            ページ
+		 * @param indent
+		 *            インデント
+		 */
+		private void writeMembers(Page page, String indent) {
+			for (Member member : page.members) {
+				source.append(NL);
+				member.doc.writeSource(source, indent);
+				for (String line : member.declaration.split(NL)) {
+					source.append(indent).append(line);
+					if (!line.startsWith("@")) {
+						break;
+					}
+					source.append(NL);
+				}
+				if (member.body.equals(";")) {
+					source.append(";").append(NL);
+					continue;
+				}
+				source.append(" {").append(NL);
+				for (String line : member.body.split(NL)) {
+					source.append(indent).append("    ").append(line).append(NL);
+				}
+				source.append(indent).append("}").append(NL);
+			}
+		}
+
+		/**
+		 * 空白を作成します。
+		 *
+		 * @param length
+		 *            長さ
+		 * @return 空白
+		 */
+		private String indent(int length) {
+			StringBuilder sb = new StringBuilder(length);
+			for (int i = 0; i < length; i++) {
+				sb.append(' ');
+			}
+			return sb.toString();
+		}
+	}
+}
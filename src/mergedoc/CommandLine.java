@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import mergedoc.core.MergeManager;
+import mergedoc.core.Preference;
+import mergedoc.core.WorkingListener;
+import mergedoc.core.WorkingState;
+import mergedoc.xml.ConfigManager;
+import mergedoc.xml.Persister;
+import mergedoc.xml.ReplaceEntry;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * コマンドラインからマージを実行する起動エントリです。
+ * <p>
+ * GUI を使用しないため、AWT や Swing のクラスは読み込みません。設定は GUI が保存する mergedoc.properties
+ * と同じ形式の設定ファイルから読み込み、起動引数で個別に上書きできます。
+ *
+ * <pre>
+ * java -cp mergedoc.jar mergedoc.CommandLine [-conf 設定ファイル] [-doc ディレクトリ] [-in ファイル] [-out ファイル] ...
+ * </pre>
+ *
+ * -daemon を指定した場合は、このプロセスではマージせずに {@link MergeDaemon} にマージを依頼し、その進捗を表示します。
+ * 常駐プロセスのトークンはトークンファイルから読み込んで送信します。
+ *
+ * @author Shinji Kashihara
+ */
+public class CommandLine {
+
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(CommandLine.class);
+
+	/** 終了コード：正常終了 */
+	public static final int EXIT_SUCCESS = 0;
+
+	/** 終了コード：設定値の検証またはマージ処理のエラー */
+	public static final int EXIT_FAILURE = 1;
+
+	/** 終了コード：起動引数の誤り */
+	public static final int EXIT_USAGE = 2;
+
+	/** 使用方法 */
+	private static final String USAGE = "使用方法: java -cp mergedoc.jar mergedoc.CommandLine [オプション]\n"
+			+ "  -conf ファイル     設定ファイル（省略時は conf/mergedoc.properties）\n"
+			+ "  -doc ディレクトリ  API ドキュメントディレクトリ\n"
+			+ "  -docenc 文字セット API ドキュメントエンコーディング\n"
+			+ "  -in ファイル       入力ソースアーカイブファイル\n"
+			+ "  -inenc 文字セット  入力ソースエンコーディング\n"
+			+ "  -out ファイル      出力ソースアーカイブファイル\n"
+			+ "  -outenc 文字セット 出力ソースエンコーディング\n"
+			+ "  -download true|false API ドキュメントのダウンロード可否\n"
+			+ "  -url URL           API ドキュメントのダウンロード先 URL\n"
+			+ "  -daemon ポート     常駐プロセスにマージを依頼する\n"
+			+ "  -quiet             進捗を表示しない";
+
+	/** オプション名（先頭の - を除く）と設定キーの対応。常駐プロセスに依頼する JSON のキーにも使用します。 */
+	static final Map<String, Persister.Key> OPTION_KEYS = new LinkedHashMap<String, Persister.Key>();
+	static {
+		OPTION_KEYS.put("doc", Persister.DOC_DIR);
+		OPTION_KEYS.put("docenc", Persister.DOC_ENC);
+		OPTION_KEYS.put("in", Persister.IN_FILE);
+		OPTION_KEYS.put("inenc", Persister.IN_ENC);
+		OPTION_KEYS.put("out", Persister.OUT_FILE);
+		OPTION_KEYS.put("outenc", Persister.OUT_ENC);
+		OPTION_KEYS.put("download", Persister.API_DONWLOAD);
+		OPTION_KEYS.put("url", Persister.API_URL);
+	}
+
+	/** 設定値 */
+	private final Properties prop = new Properties();
+
+	/** 進捗を表示しない場合は true */
+	private boolean quiet;
+
+	/** マージを依頼する常駐プロセスのポート番号。このプロセスでマージする場合は 0。 */
+	private int daemonPort;
+
+	/** 出力先 */
+	private final PrintStream out = System.out;
+
+	/**
+	 * メインです。
+	 *
+	 * @param args
+	 *            起動引数
+	 */
+	public static void main(String[] args) {
+		System.exit(new CommandLine().run(args));
+	}
+
+	/**
+	 * コマンドラインからマージを実行します。
+	 *
+	 * @param args
+	 *            起動引数
+	 * @return 終了コード
+	 */
+	int run(String[] args) {
+
+		// 設定の読み込み
+		try {
+			parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			return EXIT_USAGE;
+		} catch (MergeDocException e) {
+			System.err.println(e.getMessage());
+			return EXIT_FAILURE;
+		}
+		if (daemonPort > 0) {
+			String token;
+			try {
+				token = MergeDaemon.readToken(daemonPort);
+			} catch (IOException e) {
+				System.err.println("常駐プロセス（ポート " + daemonPort + "）のトークンファイルが読み込めません。 "
+						+ MergeDaemon.getTokenFile(daemonPort) + "\n" + e);
+				return EXIT_FAILURE;
+			}
+			return MergeDaemon.submit(daemonPort, createRequest(token), quiet ? null : out, System.err);
+		}
+
+		final MergeManager mergeManager;
+		final long totalSize;
+		final int entrySize;
+		long start = System.currentTimeMillis();
+
+		// 設定値の検証
+		try {
+			mergeManager = new MergeManager();
+			mergeManager.setPreference(createPreference(prop));
+			mergeManager.validate();
+			totalSize = mergeManager.totalSize();
+			entrySize = mergeManager.entrySize();
+		} catch (MergeDocException e) {
+			System.err.println(e.getMessage());
+			return EXIT_FAILURE;
+		} catch (Exception e) {
+			String msg = "設定値の検証でエラーが発生しました。";
+			logger.error(msg, e);
+			System.err.println(msg + "\n" + e);
+			return EXIT_FAILURE;
+		}
+
+		// 進捗表示のリスナー。展開後のサイズが分かる場合はバイト数で進捗を表示
+		if (!quiet) {
+			mergeManager.setWorkingListener(new WorkingListener() {
+
+				private int lastPercent = -1;
+
+				public void stateChanged(WorkingState state) {
+					long progress = (totalSize > 0) ? state.getWorkedSize() : state.getChangedCount();
+					long maximum = (totalSize > 0) ? totalSize : entrySize;
+					int percent = (maximum > 0) ? (int) Math.min(100, progress * 100 / maximum) : 0;
+					if (percent != lastPercent) {
+						lastPercent = percent;
+						out.printf("%3d%% %s%n", percent, state.getWorkingText());
+					}
+				}
+			});
+		}
+
+		// マージ
+		try {
+			mergeManager.execute();
+		} catch (Exception e) {
+			String msg = "マージ処理でエラーが発生しました。";
+			logger.error(msg, e);
+			System.err.println(msg + "\n" + e);
+			return EXIT_FAILURE;
+		}
+
+		// 処理結果の表示
+		if (mergeManager.getWorkingState().isCanceled()) {
+			System.err.println("キャンセルしました。");
+			return EXIT_FAILURE;
+		}
+		for (String entry : mergeManager.getUnmatchedEntries()) {
+			out.println("一度も一致しなかった置換エントリ: " + entry);
+		}
+		long time = System.currentTimeMillis() - start;
+		out.printf("完了しました。 エントリ数: %d, 処理時間: %d.%03d秒%n", entrySize, time / 1000, time % 1000);
+		return EXIT_SUCCESS;
+	}
+
+	/**
+	 * 起動引数を解析し、設定値を取得します。 -conf が指定された場合はそのファイル、指定されない場合は GUI
+	 * の設定ファイルを読み込み、その他の引数で上書きします。
+	 *
+	 * @param args
+	 *            起動引数
+	 * @throws IllegalArgumentException
+	 *             起動引数に誤りがある場合
+	 * @throws MergeDocException
+	 *             設定ファイルが読み込めない場合
+	 */
+	private void parseArguments(String[] args) throws MergeDocException {
+
+		Properties argProp = new Properties();
+		File confFile = null;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-quiet")) {
+				quiet = true;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException(arg + " に値が指定されていません。");
+			}
+			String value = args[++i];
+			Persister.Key key = OPTION_KEYS.get(arg.substring(1));
+			if (arg.equals("-conf")) {
+				confFile = new File(value);
+			} else if (arg.equals("-daemon")) {
+				try {
+					daemonPort = Integer.parseInt(value);
+				} catch (NumberFormatException e) {
+					daemonPort = -1;
+				}
+				if (daemonPort <= 0 || daemonPort > 65535) {
+					throw new IllegalArgumentException("-daemon にはポート番号を指定してください。");
+				}
+			} else if (key != null && arg.startsWith("-")) {
+				if (key == Persister.API_DONWLOAD && !value.equals("true") && !value.equals("false")) {
+					throw new IllegalArgumentException("-download には true または false を指定してください。");
+				}
+				argProp.setProperty(key.toString(), value);
+			} else {
+				throw new IllegalArgumentException("不明なオプションです。 " + arg);
+			}
+		}
+
+		if (confFile == null) {
+			File file = ConfigManager.getInstance().getFile("mergedoc.properties");
+			if (file.exists()) {
+				load(file);
+			}
+		} else if (confFile.isFile()) {
+			load(confFile);
+		} else {
+			throw new MergeDocException("設定ファイルが見つかりません。 " + confFile);
+		}
+		prop.putAll(argProp);
+		if (daemonPort == 0) {
+			applyDownloadSetting(prop);
+		}
+	}
+
+	/**
+	 * API ドキュメントのダウンロード設定を反映します。 API ドキュメントはダウンロード設定を Persister
+	 * から取得するため、保存せずに反映しておきます。
+	 *
+	 * @param prop
+	 *            設定値
+	 * @throws MergeDocException
+	 *             設定ファイルが取得できない場合
+	 */
+	static void applyDownloadSetting(Properties prop) throws MergeDocException {
+		Persister psst = Persister.getInstance();
+		psst.setString(Persister.API_DONWLOAD, getString(prop, Persister.API_DONWLOAD, "false"));
+		psst.setString(Persister.API_URL, getString(prop, Persister.API_URL, ""));
+	}
+
+	/**
+	 * 常駐プロセスに依頼するマージ要求の JSON を作成します。 常駐プロセスとは作業ディレクトリやデフォルトのエンコーディングが異なる場合があるため、
+	 * ファイルは絶対パス、エンコーディングは省略時の値に解決して送信します。 API
+	 * ドキュメントをダウンロードしない場合、常駐プロセスはダウンロードを許可していない場合があるため、ダウンロード設定は送信しません。
+	 *
+	 * @param token
+	 *            常駐プロセスのトークン
+	 * @return マージ要求の JSON
+	 */
+	private String createRequest(String token) {
+		String defaultEncoding = System.getProperty("file.encoding");
+		boolean download = getString(prop, Persister.API_DONWLOAD, "false").equals("true");
+		StringBuilder sb = new StringBuilder("{\"token\":").append(Json.quote(token)).append(',');
+		for (Map.Entry<String, Persister.Key> option : OPTION_KEYS.entrySet()) {
+			Persister.Key key = option.getValue();
+			if (!download && (key == Persister.API_DONWLOAD || key == Persister.API_URL)) {
+				continue;
+			}
+			String value;
+			if (key == Persister.DOC_DIR || key == Persister.IN_FILE || key == Persister.OUT_FILE) {
+				value = getString(prop, key, "");
+				value = (value.length() == 0) ? value : new File(value).getAbsolutePath();
+			} else if (key == Persister.DOC_ENC || key == Persister.IN_ENC || key == Persister.OUT_ENC) {
+				value = getString(prop, key, defaultEncoding);
+			} else {
+				value = getString(prop, key, key == Persister.API_DONWLOAD ? "false" : "");
+			}
+			sb.append(Json.quote(option.getKey())).append(':').append(Json.quote(value)).append(',');
+		}
+		sb.append("\"entries\":[");
+		for (int i = 0;; i++) {
+			String desc = prop.getProperty(Persister.REPLACE_DESCRIPTION_ARRAY.toString() + i);
+			if (desc == null)
+				break;
+			sb.append((i == 0) ? "" : ",").append(Json.quote(desc));
+		}
+		return sb.append("]}").toString();
+	}
+
+	/**
+	 * 設定ファイルを読み込みます。
+	 *
+	 * @param file
+	 *            設定ファイル
+	 * @throws MergeDocException
+	 *             読み込めない場合
+	 */
+	private void load(File file) throws MergeDocException {
+		try {
+			InputStream is = new BufferedInputStream(new FileInputStream(file));
+			try {
+				prop.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			throw new MergeDocException(file + " の読み込みでエラーが発生しました。", e);
+		}
+	}
+
+	/**
+	 * 設定値を取得します。
+	 *
+	 * @param prop
+	 *            設定値
+	 * @param key
+	 *            キー
+	 * @param def
+	 *            値が無い場合のデフォルト値
+	 * @return 値
+	 */
+	static String getString(Properties prop, Persister.Key key, String def) {
+		String value = prop.getProperty(key.toString());
+		return (value == null || value.length() == 0) ? def : value;
+	}
+
+	/**
+	 * 設定値からマージ設定を作成します。置換エントリは設定ファイルでチェック済みとなっているものを使用します。
+	 *
+	 * @param prop
+	 *            設定値
+	 * @return マージ設定
+	 * @throws MergeDocException
+	 *             グローバル定義 XML が取得できない場合
+	 */
+	static Preference createPreference(Properties prop) throws MergeDocException {
+
+		String defaultEncoding = System.getProperty("file.encoding");
+		final File docDir = new File(getString(prop, Persister.DOC_DIR, ""));
+		final File srcFile = new File(getString(prop, Persister.IN_FILE, ""));
+		final File outFile = new File(getString(prop, Persister.OUT_FILE, ""));
+		final String docEnc = getString(prop, Persister.DOC_ENC, defaultEncoding);
+		final String srcEnc = getString(prop, Persister.IN_ENC, defaultEncoding);
+		final String outEnc = getString(prop, Persister.OUT_ENC, defaultEncoding);
+		final String apiDown = getString(prop, Persister.API_DONWLOAD, "false");
+
+		List<ReplaceEntry> enables = new LinkedList<ReplaceEntry>();
+		List<String> descs = new LinkedList<String>();
+		for (int i = 0;; i++) {
+			String desc = prop.getProperty(Persister.REPLACE_DESCRIPTION_ARRAY.toString() + i);
+			if (desc == null)
+				break;
+			descs.add(desc);
+		}
+		for (ReplaceEntry entry : ConfigManager.getInstance().getGlobalEntries()) {
+			if (descs.contains(entry.getDescription())) {
+				enables.add(entry);
+			}
+		}
+		final ReplaceEntry[] entries = enables.toArray(new ReplaceEntry[enables.size()]);
+
+		return new Preference() {
+
+			public File getDocDirectory() {
+				return docDir;
+			}
+
+			public File getInputArchive() {
+				return srcFile;
+			}
+
+			public File getOutputArchive() {
+				return outFile;
+			}
+
+			public String getDocEncoding() {
+				return docEnc;
+			}
+
+			public String getInputEncoding() {
+				return srcEnc;
+			}
+
+			public String getOutputEncoding() {
+				return outEnc;
+			}
+
+			public String getApiDownload() {
+				return apiDown;
+			}
+
+			public ReplaceEntry[] getGlobalEntries() {
+				return entries;
+			}
+		};
+	}
+}
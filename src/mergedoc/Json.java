@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 常駐マージプロセスの要求と応答、マージの統計レポートに使用する最小限の JSON の読み書きです。
+ * <p>
+ * オブジェクトは Map、配列は List、文字列は String、数値は Long または Double、真偽値は Boolean、null は null
+ * として読み込みます。
+ *
+ * @author Shinji Kashihara
+ */
+public class Json {
+
+	/** オブジェクトと配列の入れ子の最大の深さ */
+	private static final int MAX_DEPTH = 32;
+
+	/** 解析する文字列 */
+	private final String text;
+
+	/** 現在のオブジェクトと配列の入れ子の深さ */
+	private int depth;
+
+	/** 現在位置 */
+	private int pos;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param text
+	 *            解析する文字列
+	 */
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * JSON のオブジェクトを解析します。
+	 *
+	 * @param text
+	 *            JSON 文字列
+	 * @return キーの順序を保持した Map
+	 * @throws IllegalArgumentException
+	 *             JSON のオブジェクトでない場合や、入れ子が {@value #MAX_DEPTH} 段を超える場合
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, Object> parseObject(String text) {
+		Json json = new Json(text);
+		json.skipSpace();
+		if (json.peek() != '{') {
+			throw json.error("JSON のオブジェクトではありません。");
+		}
+		Object value = json.readValue();
+		json.skipSpace();
+		if (json.pos < text.length()) {
+			throw json.error("JSON の後に不要な文字があります。");
+		}
+		return (Map<String, Object>) value;
+	}
+
+	/**
+	 * 文字列を JSON の文字列リテラルにします。
+	 *
+	 * @param value
+	 *            文字列。null の場合は null リテラル。
+	 * @return JSON の文字列リテラル
+	 */
+	public static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * 値を読み込みます。
+	 *
+	 * @return 値
+	 */
+	private Object readValue() {
+		skipSpace();
+		char c = peek();
+		if (c == '{' || c == '[') {
+			if (depth == MAX_DEPTH) {
+				throw error("入れ子が深すぎます。");
+			}
+			depth++;
+			Object value = (c == '{') ? readObject() : readArray();
+			depth--;
+			return value;
+		}
+		if (c == '"') {
+			return readString();
+		}
+		if (text.startsWith("true", pos)) {
+			pos += 4;
+			return Boolean.TRUE;
+		}
+		if (text.startsWith("false", pos)) {
+			pos += 5;
+			return Boolean.FALSE;
+		}
+		if (text.startsWith("null", pos)) {
+			pos += 4;
+			return null;
+		}
+		return readNumber();
+	}
+
+	/**
+	 * オブジェクトを読み込みます。
+	 *
+	 * @return キーの順序を保持した Map
+	 */
+	private Map<String, Object> readObject() {
+		pos++;
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		skipSpace();
+		if (peek() == '}') {
+			pos++;
+			return map;
+		}
+		do {
+			skipSpace();
+			if (peek() != '"') {
+				throw error("オブジェクトのキーが文字列ではありません。");
+			}
+			String key = readString();
+			skipSpace();
+			expect(':');
+			map.put(key, readValue());
+			skipSpace();
+		} while (accept(','));
+		expect('}');
+		return map;
+	}
+
+	/**
+	 * 配列を読み込みます。
+	 *
+	 * @return List
+	 */
+	private List<Object> readArray() {
+		pos++;
+		List<Object> list = new ArrayList<Object>();
+		skipSpace();
+		if (peek() == ']') {
+			pos++;
+			return list;
+		}
+		do {
+			list.add(readValue());
+			skipSpace();
+		} while (accept(','));
+		expect(']');
+		return list;
+	}
+
+	/**
+	 * 文字列リテラルを読み込みます。
+	 *
+	 * @return 文字列
+	 */
+	private String readString() {
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			char c = next();
+			if (c == '"') {
+				return sb.toString();
+			}
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			c = next();
+			switch (c) {
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > text.length()) {
+					throw error("\\u の後に 4 桁の 16 進数がありません。");
+				}
+				try {
+					sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("\\u の後に 4 桁の 16 進数がありません。");
+				}
+				pos += 4;
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * 数値を読み込みます。
+	 *
+	 * @return 整数の場合は Long、それ以外は Double
+	 */
+	private Number readNumber() {
+		int start = pos;
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) != -1) {
+			pos++;
+		}
+		String number = text.substring(start, pos);
+		try {
+			if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1) {
+				return Long.valueOf(number);
+			}
+			return Double.valueOf(number);
+		} catch (NumberFormatException e) {
+			pos = start;
+			throw error("値が正しくありません。");
+		}
+	}
+
+	/**
+	 * 空白を読み飛ばします。
+	 */
+	private void skipSpace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	/**
+	 * 現在位置の文字を取得します。
+	 *
+	 * @return 現在位置の文字
+	 */
+	private char peek() {
+		if (pos >= text.length()) {
+			throw error("JSON が途中で終わっています。");
+		}
+		return text.charAt(pos);
+	}
+
+	/**
+	 * 現在位置の文字を取得し、次に進みます。
+	 *
+	 * @return 現在位置の文字
+	 */
+	private char next() {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	/**
+	 * 現在位置が指定した文字の場合は次に進みます。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 指定した文字の場合は true
+	 */
+	private boolean accept(char c) {
+		if (pos < text.length() && text.charAt(pos) == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 現在位置が指定した文字であることを確認し、次に進みます。
+	 *
+	 * @param c
+	 *            文字
+	 */
+	private void expect(char c) {
+		if (!accept(c)) {
+			throw error("'" + c + "' がありません。");
+		}
+	}
+
+	/**
+	 * 解析エラーの例外を作成します。
+	 *
+	 * @param message
+	 *            メッセージ
+	 * @return 例外
+	 */
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " (位置 " + pos + ")");
+	}
+}
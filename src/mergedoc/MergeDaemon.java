@@ -0,0 +1,608 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mergedoc.core.MergeCache;
+import mergedoc.core.MergeManager;
+import mergedoc.core.UserFiles;
+import mergedoc.core.WorkingListener;
+import mergedoc.core.WorkingState;
+import mergedoc.xml.ConfigManager;
+import mergedoc.xml.Persister;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * マージ要求を受け付けて実行する常駐プロセスの起動エントリです。
+ * <p>
+ * ローカルホストのポートで待ち受け、1 行の JSON で送られたマージ要求を順に実行し、進捗を 1 行ずつの JSON で返します。
+ * 起動時にランダムなトークンを生成して起動ユーザーだけが読めるトークンファイル（{@link #getTokenFile(int)}）に書き込み、
+ * トークンが一致しない要求は拒否します。同じホストの他のユーザーからは依頼できません。
+ * トークンを確認する前の要求も、読み込みの待ち時間、要求の長さ、同時に処理する接続数を制限して受け付けます。
+ * 開いた API ドキュメント索引、クラス別置換定義、コンパイル済みの正規表現、JIT コンパイルの結果はマージ間で保持されるため、
+ * 同じ API ドキュメントで複数のソースアーカイブをマージする場合に、起動のたびに読み込み直す必要がありません。
+ * API ドキュメントのダウンロード設定などプロセス全体の設定を使用するため、マージは 1 つずつ実行します。
+ *
+ * <pre>
+ * java -cp mergedoc.jar mergedoc.MergeDaemon [-port ポート] [-download]
+ * java -cp mergedoc.jar mergedoc.CommandLine -daemon ポート [-conf 設定ファイル] [-doc ディレクトリ] ...
+ * </pre>
+ *
+ * マージ要求のキーは {@link CommandLine} のオプション名（先頭の - を除く）で、entries には有効にするグローバル置換エントリの説明を指定します。
+ * token にはトークンファイルの内容を指定します。API ドキュメントのダウンロード（download、url）は -download を指定して起動した場合だけ受け付けます。
+ *
+ * <pre>
+ * {"token":"...", "doc":"/jdk/docs/ja/api", "docenc":"UTF-8", "in":"/jdk/src.zip", "inenc":"UTF-8",
+ *  "out":"/out/src.zip", "outenc":"UTF-8", "entries":["説明", ...]}
+ * {"token":"...", "command":"status"}     保持しているキャッシュとマージ回数を返す
+ * {"token":"...", "command":"clear"}      保持しているキャッシュを破棄する
+ * {"token":"...", "command":"shutdown"}   常駐プロセスを終了する
+ * </pre>
+ *
+ * 応答の event は start、progress、unmatched、done、error のいずれかで、done または error で終了します。
+ *
+ * @author Shinji Kashihara
+ */
+public class MergeDaemon {
+
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(MergeDaemon.class);
+
+	/** デフォルトのポート番号 */
+	public static final int DEFAULT_PORT = 7361;
+
+	/** 使用方法 */
+	private static final String USAGE = "使用方法: java -cp mergedoc.jar mergedoc.MergeDaemon [オプション]\n"
+			+ "  -port ポート       待ち受けるポート番号（省略時は " + DEFAULT_PORT + "）\n"
+			+ "  -download          API ドキュメントのダウンロードを依頼できるようにする";
+
+	/** トークンのバイト数 */
+	private static final int TOKEN_SIZE = 32;
+
+	/** 要求の読み込みを待つ時間（ミリ秒） */
+	private static final int READ_TIMEOUT = 10000;
+
+	/** 要求 1 行の最大文字数 */
+	private static final int MAX_REQUEST_LENGTH = 64 * 1024;
+
+	/** 同時に処理する接続数 */
+	private static final int MAX_CONNECTIONS = 4;
+
+	/** 処理を待つことができる接続数 */
+	private static final int MAX_PENDING_CONNECTIONS = 16;
+
+	/** マージ間で共有するキャッシュ */
+	private final MergeCache cache = new MergeCache();
+
+	/** マージを 1 つずつ実行するためのロック */
+	private final Object jobLock = new Object();
+
+	/** 受け付けたマージ要求の数 */
+	private final AtomicInteger jobCount = new AtomicInteger();
+
+	/** 接続の連番 */
+	private final AtomicInteger connectionCount = new AtomicInteger();
+
+	/** 起動日時 */
+	private final long startTime = System.currentTimeMillis();
+
+	/** API ドキュメントのダウンロードを依頼できる場合は true */
+	private final boolean downloadEnabled;
+
+	/** 要求に含める必要があるトークン（UTF-8） */
+	private byte[] token;
+
+	/** サーバソケット */
+	private ServerSocket server;
+
+	/**
+	 * 常駐プロセスを作成します。
+	 *
+	 * @param downloadEnabled
+	 *            API ドキュメントのダウンロードを依頼できる場合は true
+	 */
+	MergeDaemon(boolean downloadEnabled) {
+		this.downloadEnabled = downloadEnabled;
+	}
+
+	/**
+	 * メインです。
+	 *
+	 * @param args
+	 *            起動引数
+	 * @throws IOException
+	 *             ポートで待ち受けできない場合
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		boolean downloadEnabled = false;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-download")) {
+					downloadEnabled = true;
+				} else if (args[i].equals("-port") && i + 1 < args.length) {
+					port = Integer.parseInt(args[++i]);
+				} else {
+					throw new IllegalArgumentException("不明なオプションです。 " + args[i]);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(CommandLine.EXIT_USAGE);
+		}
+		new MergeDaemon(downloadEnabled).serve(port);
+	}
+
+	/**
+	 * ローカルホストのポートで待ち受け、終了要求を受け付けるまでマージ要求を処理します。
+	 * 待ち受けを開始した後にトークンファイルを作成し、終了時に削除します。
+	 *
+	 * @param port
+	 *            ポート番号
+	 * @throws IOException
+	 *             ポートで待ち受けできない場合
+	 */
+	void serve(int port) throws IOException {
+
+		// シングルトンは生成時に同期化されないため、接続を受け付ける前に生成しておく
+		try {
+			ConfigManager.getInstance();
+			Persister.getInstance();
+		} catch (MergeDocException e) {
+			// 取得できない場合はマージ要求ごとにエラーを返す
+			logger.warn("コンフィグ情報の取得に失敗しました。", e);
+		}
+
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		File tokenFile = getTokenFile(server.getLocalPort());
+		try {
+			token = writeToken(tokenFile);
+		} catch (IOException e) {
+			server.close();
+			throw e;
+		}
+		logger.info("常駐プロセスを開始しました。 ポート: " + server.getLocalPort() + ", トークンファイル: " + tokenFile);
+		System.out.println("常駐プロセスを開始しました。 ポート: " + server.getLocalPort());
+
+		// 接続ごとにスレッドを作らず、同時に処理する接続数と待たせる接続数を制限する
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONNECTIONS, MAX_CONNECTIONS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING_CONNECTIONS), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "MergeDoc-daemon-" + connectionCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		try {
+			while (true) {
+				final Socket socket;
+				try {
+					socket = server.accept();
+				} catch (SocketException e) {
+					if (server.isClosed()) {
+						break;
+					}
+					throw e;
+				}
+				try {
+					executor.execute(new Runnable() {
+						public void run() {
+							handle(socket);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					logger.warn("処理待ちの接続が多いため、接続を拒否しました。");
+					sendError(new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+							true), "処理待ちの接続が多いため、要求を受け付けられません。");
+					socket.close();
+				}
+			}
+		} finally {
+			executor.shutdown();
+			server.close();
+			if (!tokenFile.delete()) {
+				logger.warn("トークンファイルを削除できませんでした。 " + tokenFile);
+			}
+		}
+		logger.info("常駐プロセスを終了しました。");
+		System.out.println("常駐プロセスを終了しました。");
+	}
+
+	/**
+	 * 1 つの接続の要求を処理します。
+	 *
+	 * @param socket
+	 *            ソケット
+	 */
+	private void handle(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.UTF_8));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+					StandardCharsets.UTF_8), true);
+			socket.setSoTimeout(READ_TIMEOUT);
+			String line = readRequest(in);
+			if (line == null) {
+				sendError(out, "要求が長すぎます。");
+				return;
+			}
+			Map<String, Object> request;
+			try {
+				request = Json.parseObject(line);
+			} catch (IllegalArgumentException e) {
+				sendError(out, "要求が正しい JSON ではありません。 " + e.getMessage());
+				return;
+			}
+			Object requestToken = request.remove("token");
+			if (!(requestToken instanceof String)
+					|| !MessageDigest.isEqual(token, ((String) requestToken).getBytes(StandardCharsets.UTF_8))) {
+				logger.warn("トークンが一致しない要求を拒否しました。");
+				sendError(out, "トークンが一致しません。");
+				return;
+			}
+
+			Object command = request.get("command");
+			if (command == null) {
+				runJob(request, out);
+			} else if (command.equals("status")) {
+				out.println("{\"event\":\"done\",\"jobs\":" + jobCount.get() + ",\"uptimeMillis\":"
+						+ (System.currentTimeMillis() - startTime) + ",\"documentIndexes\":"
+						+ cache.getDocumentIndexCount() + ",\"documentIndexHits\":" + cache.getDocumentIndexHits()
+						+ ",\"documentIndexMisses\":" + cache.getDocumentIndexMisses() + "}");
+			} else if (command.equals("clear")) {
+				synchronized (jobLock) {
+					cache.clear();
+				}
+				out.println("{\"event\":\"done\"}");
+			} else if (command.equals("shutdown")) {
+				out.println("{\"event\":\"done\"}");
+				synchronized (jobLock) {
+					server.close();
+				}
+			} else {
+				sendError(out, "不明なコマンドです。 " + command);
+			}
+		} catch (SocketTimeoutException e) {
+			logger.warn("要求が時間内に送信されなかったため、接続を切断しました。");
+		} catch (IOException e) {
+			logger.warn("要求の処理中に通信エラーが発生しました。", e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// 既に切断されている
+			}
+		}
+	}
+
+	/**
+	 * 要求を 1 行読み込みます。 行の区切りは LF または CRLF です。
+	 *
+	 * @param in
+	 *            入力
+	 * @return 要求。行の区切りの前に切断された場合はそこまでの文字列。最大文字数を超える場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static String readRequest(BufferedReader in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int c; (c = in.read()) != -1 && c != '\n';) {
+			if (sb.length() >= MAX_REQUEST_LENGTH) {
+				return null;
+			}
+			sb.append((char) c);
+		}
+		int length = sb.length();
+		if (length > 0 && sb.charAt(length - 1) == '\r') {
+			sb.setLength(length - 1);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * マージ要求を実行し、進捗と結果を送信します。 他のマージを実行中の場合は終了するまで待機します。
+	 *
+	 * @param request
+	 *            マージ要求
+	 * @param out
+	 *            応答の出力先
+	 */
+	private void runJob(Map<String, Object> request, final PrintWriter out) {
+
+		Properties prop;
+		try {
+			prop = toProperties(request);
+			if (!downloadEnabled && (!CommandLine.getString(prop, Persister.API_DONWLOAD, "false").equals("false")
+					|| CommandLine.getString(prop, Persister.API_URL, "").length() > 0)) {
+				throw new IllegalArgumentException("API ドキュメントのダウンロードは依頼できません。"
+						+ " 常駐プロセスを -download を指定して起動してください。");
+			}
+		} catch (IllegalArgumentException e) {
+			sendError(out, e.getMessage());
+			return;
+		}
+
+		synchronized (jobLock) {
+			int job = jobCount.incrementAndGet();
+			out.println("{\"event\":\"start\",\"job\":" + job + "}");
+			long start = System.currentTimeMillis();
+
+			final MergeManager mergeManager;
+			final long totalSize;
+			final int entrySize;
+			try {
+				CommandLine.applyDownloadSetting(prop);
+				mergeManager = new MergeManager();
+				mergeManager.setCache(cache);
+				mergeManager.setPreference(CommandLine.createPreference(prop));
+				mergeManager.validate();
+				totalSize = mergeManager.totalSize();
+				entrySize = mergeManager.entrySize();
+			} catch (MergeDocException e) {
+				sendError(out, e.getMessage());
+				return;
+			} catch (Exception e) {
+				String msg = "設定値の検証でエラーが発生しました。";
+				logger.error(msg, e);
+				sendError(out, msg + "\n" + e);
+				return;
+			}
+
+			// 進捗の送信。依頼元が切断した場合はキャンセル
+			mergeManager.setWorkingListener(new WorkingListener() {
+
+				private int lastPercent = -1;
+
+				public void stateChanged(WorkingState state) {
+					long progress = (totalSize > 0) ? state.getWorkedSize() : state.getChangedCount();
+					long maximum = (totalSize > 0) ? totalSize : entrySize;
+					int percent = (maximum > 0) ? (int) Math.min(100, progress * 100 / maximum) : 0;
+					if (percent != lastPercent) {
+						lastPercent = percent;
+						out.println("{\"event\":\"progress\",\"percent\":" + percent + ",\"text\":"
+								+ Json.quote(state.getWorkingText()) + "}");
+						if (out.checkError()) {
+							logger.info("依頼元が切断したため、マージをキャンセルします。");
+							state.cancel();
+						}
+					}
+				}
+			});
+
+			try {
+				mergeManager.execute();
+			} catch (Exception e) {
+				String msg = "マージ処理でエラーが発生しました。";
+				logger.error(msg, e);
+				sendError(out, msg + "\n" + e);
+				return;
+			}
+
+			if (mergeManager.getWorkingState().isCanceled()) {
+				sendError(out, "キャンセルしました。");
+				return;
+			}
+			for (String entry : mergeManager.getUnmatchedEntries()) {
+				out.println("{\"event\":\"unmatched\",\"entry\":" + Json.quote(entry) + "}");
+			}
+			long time = System.currentTimeMillis() - start;
+			logger.info("マージ " + job + " が完了しました。 エントリ数: " + entrySize + ", 処理時間: " + time + " ms");
+			out.println("{\"event\":\"done\",\"entries\":" + entrySize + ",\"millis\":" + time + "}");
+		}
+	}
+
+	/**
+	 * マージ要求を設定値に変換します。
+	 *
+	 * @param request
+	 *            マージ要求
+	 * @return 設定値
+	 * @throws IllegalArgumentException
+	 *             値の型が正しくない場合
+	 */
+	private static Properties toProperties(Map<String, Object> request) {
+		Properties prop = new Properties();
+		for (Map.Entry<String, Object> entry : request.entrySet()) {
+			String name = entry.getKey();
+			Object value = entry.getValue();
+			if (name.equals("entries")) {
+				if (!(value instanceof List)) {
+					throw new IllegalArgumentException("entries には置換エントリの説明の配列を指定してください。");
+				}
+				List<?> descs = (List<?>) value;
+				for (int i = 0; i < descs.size(); i++) {
+					prop.setProperty(Persister.REPLACE_DESCRIPTION_ARRAY.toString() + i, String.valueOf(descs.get(i)));
+				}
+				continue;
+			}
+			Persister.Key key = CommandLine.OPTION_KEYS.get(name);
+			if (key == null) {
+				throw new IllegalArgumentException("不明なキーです。 " + name);
+			}
+			if (value != null) {
+				prop.setProperty(key.toString(), String.valueOf(value));
+			}
+		}
+		return prop;
+	}
+
+	/**
+	 * ポートで待ち受ける常駐プロセスのトークンファイルを取得します。 ユーザーのホームディレクトリの .mergedoc ディレクトリに作成します。
+	 *
+	 * @param port
+	 *            ポート番号
+	 * @return トークンファイル
+	 */
+	static File getTokenFile(int port) {
+		return UserFiles.getFile("daemon-" + port + ".token");
+	}
+
+	/**
+	 * ランダムなトークンを生成し、起動ユーザーだけが読み書きできるトークンファイルに書き込みます。
+	 * 既にファイルがある場合は、他のユーザーが作成したものを使用しないように削除して作成し直します。
+	 *
+	 * @param file
+	 *            トークンファイル
+	 * @return トークン（UTF-8）
+	 * @throws IOException
+	 *             トークンファイルを作成できない場合
+	 */
+	private static byte[] writeToken(File file) throws IOException {
+		byte[] random = new byte[TOKEN_SIZE];
+		new SecureRandom().nextBytes(random);
+		StringBuilder sb = new StringBuilder(TOKEN_SIZE * 2);
+		for (byte b : random) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		Path path = file.toPath();
+		boolean posix = path.getFileSystem().supportedFileAttributeViews().contains("posix");
+		UserFiles.createDirectory(file);
+		Files.deleteIfExists(path);
+		try {
+			if (posix) {
+				FileAttribute<?> attr = PosixFilePermissions.asFileAttribute(PosixFilePermissions
+						.fromString("rw-------"));
+				Files.createFile(path, attr);
+			} else {
+				// POSIX 属性が使用できない場合は、所有者以外の読み書きを外す
+				Files.createFile(path);
+				if (!file.setReadable(false, false) || !file.setReadable(true, true)
+						|| !file.setWritable(false, false) || !file.setWritable(true, true)) {
+					logger.warn("トークンファイルのアクセス権を変更できませんでした。 " + file);
+				}
+			}
+		} catch (FileAlreadyExistsException e) {
+			throw new IOException("トークンファイルを作成できません。 " + file, e);
+		}
+		Files.write(path, bytes);
+		return bytes;
+	}
+
+	/**
+	 * ポートで待ち受ける常駐プロセスのトークンをトークンファイルから読み込みます。
+	 *
+	 * @param port
+	 *            ポート番号
+	 * @return トークン
+	 * @throws IOException
+	 *             トークンファイルが読み込めない場合
+	 */
+	static String readToken(int port) throws IOException {
+		return new String(Files.readAllBytes(getTokenFile(port).toPath()), StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * エラーを送信します。
+	 *
+	 * @param out
+	 *            応答の出力先
+	 * @param message
+	 *            メッセージ
+	 */
+	private static void sendError(PrintWriter out, String message) {
+		out.println("{\"event\":\"error\",\"message\":" + Json.quote(message) + "}");
+	}
+
+	/**
+	 * 常駐プロセスにマージを依頼し、終了するまで進捗を表示します。
+	 *
+	 * @param port
+	 *            常駐プロセスのポート番号
+	 * @param request
+	 *            マージ要求の JSON
+	 * @param out
+	 *            進捗と結果の出力先。進捗を表示しない場合は null。
+	 * @param err
+	 *            エラーの出力先
+	 * @return 終了コード
+	 */
+	static int submit(int port, String request, PrintStream out, PrintStream err) {
+		Socket socket = null;
+		try {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+					StandardCharsets.UTF_8), true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.UTF_8));
+			writer.println(request);
+
+			for (String line; (line = reader.readLine()) != null;) {
+				Map<String, Object> response = Json.parseObject(line);
+				Object event = response.get("event");
+				if ("progress".equals(event)) {
+					if (out != null) {
+						out.printf("%3d%% %s%n", ((Number) response.get("percent")).intValue(), response.get("text"));
+					}
+				} else if ("unmatched".equals(event)) {
+					if (out != null) {
+						out.println("一度も一致しなかった置換エントリ: " + response.get("entry"));
+					}
+				} else if ("done".equals(event)) {
+					long time = ((Number) response.get("millis")).longValue();
+					if (out != null) {
+						out.printf("完了しました。 エントリ数: %d, 処理時間: %d.%03d秒%n", response.get("entries"),
+								time / 1000, time % 1000);
+					}
+					return CommandLine.EXIT_SUCCESS;
+				} else if ("error".equals(event)) {
+					err.println(response.get("message"));
+					return CommandLine.EXIT_FAILURE;
+				}
+			}
+			err.println("常駐プロセスとの接続が切断されました。");
+			return CommandLine.EXIT_FAILURE;
+
+		} catch (IOException e) {
+			err.println("常駐プロセス（ポート " + port + "）に接続できません。\n" + e);
+			return CommandLine.EXIT_FAILURE;
+		} catch (IllegalArgumentException e) {
+			err.println("常駐プロセスの応答が正しくありません。 " + e.getMessage());
+			return CommandLine.EXIT_FAILURE;
+		} finally {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// 既に切断されている
+				}
+			}
+		}
+	}
+}
@@ -15,7 +15,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -28,6 +30,8 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import mergedoc.MergeDocException;
+import mergedoc.core.HtmlNode.Query;
+import mergedoc.core.JavadocHtmlParser.UnsupportedHtmlException;
 import mergedoc.xml.Persister;
 
 /**
@@ -40,6 +44,29 @@ public class APIDocument {
 	/** ロガー */
 	private static final Logger logger = LogManager.getLogger(APIDocument.class);
 
+	/** API ドキュメントの解析に常に Jsoup を使用するか指定するシステムプロパティのキー（デフォルト false） */
+	public static final String JSOUP_KEY = "mergedoc.jsoup";
+
+	/** クラスコメントの要素 */
+	private static final Query CLASS_ITEMS = new Query("body div.contentContainer div.description ul li");
+
+	/** メソッドやフィールドのコメントの要素 */
+	private static final Query MEMBER_ITEMS = new Query(
+			"body div.contentContainer div.details ul li ul li ul li.blockList");
+
+	// 各要素内の検索条件
+	private static final Query PRE = new Query("pre");
+	private static final Query DIV = new Query("div");
+	private static final Query DIV_DEPRECATED_LABEL = new Query("div span.deprecatedLabel");
+	private static final Query DEPRECATED_LABEL = new Query("span.deprecatedLabel");
+	private static final Query DEPRECATION_COMMENT = new Query("span.deprecationComment");
+	private static final Query DL_TERMS = new Query("dl dt, dl dd");
+	private static final Query TERMS = new Query("dt, dd");
+	private static final Query CODE = new Query("code");
+	private static final Query CODE_LINK = new Query("code a[href]");
+	private static final Query LINK = new Query("a[href]");
+	private static final Query LINK_CODE = new Query("a[href] code");
+
 	/** シグネチャをキーとしたコメントのテーブル */
 	private final Map<Signature, Comment> contextTable = new HashMap<Signature, Comment>();
 
@@ -56,6 +83,28 @@ public class APIDocument {
 	 *             入出力例外が発生した場合
 	 */
 	public APIDocument(File docDir, String className, String charsetName) throws IOException {
+		this(docDir, className, charsetName, null);
+	}
+
+	/**
+	 * API ドキュメント索引を使用するコンストラクタです。
+	 * <p>
+	 * 索引が指定された場合は HTML ファイルを解析せずに索引からコメントを読み込みます。ただし、API
+	 * ドキュメントをダウンロードする場合は索引を使用しません。
+	 * 
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param className
+	 *            クラス名
+	 * @param charsetName
+	 *            文字セット名
+	 * @param index
+	 *            API ドキュメント索引。使用しない場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	public APIDocument(File docDir, String className, String charsetName, APIDocumentIndex index)
+			throws IOException {
 
 		boolean apiD = false;
 		try {
@@ -115,12 +164,109 @@ public class APIDocument {
 			apiD = false;
 		} catch (Exception e) {
 			// ダウンロードエラーが発生した場合
-			apiD = false;
+			return;
 		}
 
-		if (!apiD) {
+		// ダウンロードしない場合は索引があれば索引から読み込む
+		if (!apiD && index != null) {
+			index.load(className, contextTable);
 			return;
 		}
+		loadFiles(docDir, className, charsetName);
+	}
+
+	/**
+	 * 設定ファイルで API ドキュメントのダウンロードが有効か判定します。
+	 * 
+	 * @return 有効な場合は true。設定ファイルが取得できない場合は false。
+	 */
+	static boolean isDownloadEnabled() {
+		try {
+			return Persister.getInstance().getString(Persister.API_DONWLOAD, "").equals("true");
+		} catch (MergeDocException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 索引作成用のコンストラクタです。
+	 */
+	private APIDocument() {
+	}
+
+	/**
+	 * ダウンロードせずに API ドキュメントを読み込みます。 索引が指定された場合は索引から、指定されなかった場合は HTML ファイルから読み込みます。
+	 * 
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param className
+	 *            クラス名
+	 * @param charsetName
+	 *            文字セット名
+	 * @param index
+	 *            API ドキュメント索引。使用しない場合は null。
+	 * @return API ドキュメント
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	static APIDocument load(File docDir, String className, String charsetName, APIDocumentIndex index)
+			throws IOException {
+		if (index == null) {
+			return parse(docDir, className, charsetName);
+		}
+		APIDocument apiDoc = new APIDocument();
+		index.load(className, apiDoc.contextTable);
+		return apiDoc;
+	}
+
+	/**
+	 * ダウンロードや索引を使用せずに、API ドキュメントディレクトリの HTML ファイルを解析します。
+	 * 
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param className
+	 *            クラス名
+	 * @param charsetName
+	 *            文字セット名
+	 * @return API ドキュメント
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	static APIDocument parse(File docDir, String className, String charsetName) throws IOException {
+		APIDocument apiDoc = new APIDocument();
+		apiDoc.loadFiles(docDir, className, charsetName);
+		return apiDoc;
+	}
+
+	/**
+	 * クラスとインナークラスの API ドキュメントファイルを読み込みます。
+	 * 
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param className
+	 *            クラス名
+	 * @param charsetName
+	 *            文字セット名
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private void loadFiles(File docDir, String className, String charsetName) throws IOException {
+		for (File docFile : listDocumentFiles(docDir, className)) {
+			load(docDir, docFile, charsetName);
+		}
+	}
+
+	/**
+	 * クラスの API ドキュメントファイルと、同じディレクトリにあるインナークラスの API
+	 * ドキュメントファイルのリストを取得します。 クラスの API ドキュメントファイルは存在しない場合でも先頭に含まれます。
+	 * 
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param className
+	 *            クラス名
+	 * @return API ドキュメントファイルのリスト
+	 */
+	static List<File> listDocumentFiles(File docDir, String className) {
 
 		// API ドキュメント絶対パスを生成
 		StringBuilder path = new StringBuilder();
@@ -129,25 +275,26 @@ public class APIDocument {
 		path.append(className.replace('.', File.separatorChar));
 		path.append(".html");
 
-		// API ドキュメントファイルのロード
+		List<File> docFiles = new ArrayList<File>();
 		File docFile = new CachedFile(path.toString());
-		load(docDir, docFile, charsetName);
+		docFiles.add(docFile);
 
-		// インナークラス API ドキュメントファイルのロード
+		// インナークラス API ドキュメントファイル
 		// prefix は毎回異なるため PatternCache は使用しない
 		String prefix = FastStringUtils.replaceFirst(docFile.getName(), "\\.html$", "");
 		Pattern innerClass = Pattern.compile(prefix + "\\..+\\.html$");
 
 		for (File f : docFile.listFiles()) {
 			if (innerClass.matcher(f.getName()).matches()) {
-				load(docDir, f, charsetName);
+				docFiles.add(f);
 			}
 		}
+		return docFiles;
 	}
 
 	/**
 	 * ファイルクラスのプロキシです。<br>
-	 * リストキャッシュ機能を持ちます。
+	 * リストキャッシュ機能を持ちます。キャッシュは並列マージのため同期化されます。
 	 */
 	private static class CachedFile extends File {
 
@@ -160,7 +307,12 @@ public class APIDocument {
 		}
 
 		public File[] listFiles() {
-			File dir = getParentFile();
+			synchronized (CachedFile.class) {
+				return listCachedFiles(getParentFile());
+			}
+		}
+
+		private static File[] listCachedFiles(File dir) {
 			if (!dir.equals(cachedDir)) {
 				cachedDir = dir;
 				cachedFiles = dir.listFiles();
@@ -213,6 +365,18 @@ public class APIDocument {
 		}
 
 		// API ドキュメントのコメント解析
+		if (!Boolean.getBoolean(JSOUP_KEY)) {
+			try {
+				Map<Signature, Comment> table = new HashMap<Signature, Comment>();
+				HtmlNode body = JavadocHtmlParser.parseDocument(docHtml);
+				parseClassComment(className, body, table);
+				parseMethodComment(className, body, table);
+				contextTable.putAll(table);
+				return;
+			} catch (UnsupportedHtmlException e) {
+				logger.debug(docFile + " は Jsoup で解析します。" + e.getMessage());
+			}
+		}
 		Document document = Jsoup.parse(docHtml);
 		parseClassComment(className, document);
 		parseMethodComment(className, document);
@@ -227,6 +391,15 @@ public class APIDocument {
 		return contextTable.isEmpty();
 	}
 
+	/**
+	 * シグネチャをキーとしたコメントのテーブルを取得します。
+	 * 
+	 * @return シグネチャをキーとしたコメントのテーブル
+	 */
+	Map<Signature, Comment> getContextTable() {
+		return contextTable;
+	}
+
 	/**
 	 * 指定したシグネチャを持つ Javadoc コメントを取得します。
 	 * 
@@ -398,6 +571,183 @@ public class APIDocument {
 		}
 	}
 
+	/**
+	 * {@link JavadocHtmlParser} で解析したクラスの Javadoc コメント情報を作成します。 Jsoup
+	 * で解析した場合と同じ結果になります。Jsoup の場合に例外が発生する構造では UnsupportedHtmlException
+	 * をスローします。
+	 * 
+	 * @param className
+	 *            クラス名
+	 * @param body
+	 *            body 要素
+	 * @param table
+	 *            コメントの追加先
+	 */
+	private void parseClassComment(String className, HtmlNode body, Map<Signature, Comment> table) {
+		List<HtmlNode> elements = body.select(CLASS_ITEMS);
+
+		if (elements.isEmpty() == false) {
+			// シグネチャの作成
+			String sigStr = first(HtmlNode.select(elements, PRE)).html(1);
+			Signature sig = createSignature(className, sigStr);
+			Comment comment = new Comment(sig);
+
+			List<HtmlNode> divs = HtmlNode.select(elements, DIV);
+			if (!HtmlNode.select(elements, DIV_DEPRECATED_LABEL).isEmpty()) {
+				// deprecated タグ
+				parseDeprecatedTag(className, divs.get(0), comment);
+			} else if (!divs.isEmpty()) {
+				// 本文
+				String docBody = divs.get(divs.size() - 1).html(1);
+				docBody = formatLinkTag(className, docBody);
+				comment.setDocumentBody(docBody);
+			}
+
+			List<HtmlNode> dts = HtmlNode.select(elements, DL_TERMS);
+			HtmlNode el = dts.isEmpty() ? null : dts.get(0);
+			while (el != null) {
+				String html = el.html(1);
+				if (html.contains("simpleTagLabel")) {
+					// since タグ
+					el = first(el.nextElementSibling());
+					comment.addSince(el.text());
+					el = el.nextElementSibling();
+				} else if (html.contains("seeLabel")) {
+					// see タグ
+					parseSeetag(className, el, comment);
+					el = el.nextElementSibling();
+				} else {
+					el = el.nextElementSibling();
+				}
+			}
+			table.put(sig, comment);
+		}
+	}
+
+	/**
+	 * {@link JavadocHtmlParser} で解析したメソッドやフィールドの Javadoc コメント情報を作成します。 Jsoup
+	 * で解析した場合と同じ結果になります。Jsoup の場合に例外が発生する構造では UnsupportedHtmlException
+	 * をスローします。
+	 * 
+	 * @param className
+	 *            クラス名
+	 * @param body
+	 *            body 要素
+	 * @param table
+	 *            コメントの追加先
+	 */
+	private void parseMethodComment(String className, HtmlNode body, Map<Signature, Comment> table) {
+		for (HtmlNode element : body.select(MEMBER_ITEMS)) {
+			// シグネチャの作成
+			String sigStr = first(element.selectFirst(PRE)).html(1);
+			Signature sig = createSignature(className, sigStr);
+			Comment comment = new Comment(sig);
+			table.put(sig, comment);
+
+			List<HtmlNode> divs = element.select(DIV);
+			if (element.selectFirst(DIV_DEPRECATED_LABEL) != null) {
+				// deprecated タグ
+				parseDeprecatedTag(className, divs.get(0), comment);
+			} else if (!divs.isEmpty()) {
+				// 本文
+				String docBody = divs.get(divs.size() - 1).html(1);
+				docBody = formatLinkTag(className, docBody);
+				comment.setDocumentBody(docBody);
+			}
+
+			HtmlNode el = element.selectFirst(TERMS);
+			while (el != null) {
+				String html = el.html(1);
+				if (html.contains("paramLabel")) {
+					// param タグ
+					el = el.nextElementSibling();
+					while (el != null && el.is("dd")) {
+						String name = first(el.selectFirst(CODE)).text();
+						String desc = afterHyphen(el.html(1));
+						desc = desc.replace("\n", "");
+						desc = formatLinkTag(className, desc);
+						comment.addParam(name + " " + desc);
+						el = el.nextElementSibling();
+					}
+					if (el == null) {
+						break;
+					}
+				} else if (html.contains("returnLabel")) {
+					// return タグ
+					el = el.nextElementSibling();
+					if (el == null) {
+						break;
+					}
+					comment.addReturn(formatLinkTag(className, el.html(1)));
+					el = el.nextElementSibling();
+				} else if (html.contains("throwsLabel")) {
+					// throws (exception) タグ
+					el = el.nextElementSibling();
+					while (el != null && el.is("dd")) {
+						HtmlNode a = el.selectFirst(CODE_LINK);
+						if (a != null) {
+							String name = formatClassName(className, a.attr("href"));
+							String desc = afterHyphen(el.html(1));
+							desc = formatLinkTag(className, desc);
+							comment.addThrows(name + " " + desc);
+						}
+						el = el.nextElementSibling();
+					}
+					if (el == null) {
+						break;
+					}
+				} else if (html.contains("simpleTagLabel")) {
+					// since タグ
+					el = el.nextElementSibling();
+					if (el == null) {
+						break;
+					}
+					comment.addSince(el.text());
+					el = el.nextElementSibling();
+				} else if (html.contains("seeLabel")) {
+					// see タグ
+					parseSeetag(className, el, comment);
+					el = el.nextElementSibling();
+				} else {
+					el = el.nextElementSibling();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 要素が存在することを確認します。Jsoup で解析した場合に NullPointerException になる箇所で使用します。
+	 * 
+	 * @param element
+	 *            要素
+	 * @return 要素
+	 */
+	private static HtmlNode first(HtmlNode element) {
+		if (element == null) {
+			throw new UnsupportedHtmlException("missing element");
+		}
+		return element;
+	}
+
+	private static HtmlNode first(List<HtmlNode> elements) {
+		return first(elements.isEmpty() ? null : elements.get(0));
+	}
+
+	/**
+	 * param、throws タグの説明から " - " より前を除去します。
+	 * 
+	 * @param desc
+	 *            dd 要素の HTML
+	 * @return 説明
+	 */
+	private static String afterHyphen(String desc) {
+		int pos = desc.indexOf(" - ") + 3;
+		if (pos > desc.length()) {
+			throw new UnsupportedHtmlException("missing hyphen");
+		}
+		return desc.substring(pos);
+	}
+
 	/**
 	 * シグネチャを作成します。
 	 * 
@@ -471,6 +821,56 @@ public class APIDocument {
 		}
 	}
 
+	/**
+	 * {@link JavadocHtmlParser} で解析した Javadoc の deprecated タグを解析しコメントに追加します。
+	 * 
+	 * @param className
+	 *            クラス名
+	 * @param element
+	 *            div 要素
+	 * @param comment
+	 *            コメント
+	 */
+	private void parseDeprecatedTag(String className, HtmlNode element, Comment comment) {
+		if (element.selectFirst(DEPRECATED_LABEL) == null) {
+			return;
+		}
+		HtmlNode div = element.selectFirst(DEPRECATION_COMMENT);
+		String deprecated = "";
+		if (div != null) {
+			deprecated = div.html(1);
+			deprecated = formatLinkTag(className, deprecated);
+		}
+		comment.addDeprecated(deprecated);
+	}
+
+	/**
+	 * {@link JavadocHtmlParser} で解析した Javadoc の see タグを解析しコメントに追加します。
+	 * 
+	 * @param className
+	 *            クラス名
+	 * @param element
+	 *            seeLabel を含む dt 要素
+	 * @param comment
+	 *            コメント
+	 */
+	private void parseSeetag(String className, HtmlNode element, Comment comment) {
+		HtmlNode el = element.nextElementSibling();
+		if (el == null) {
+			return;
+		}
+		for (HtmlNode a : el.select(LINK_CODE)) {
+			String url = a.parent().attr("href");
+			String ref;
+			if (a.children().size() != 1) {
+				ref = a.outerHtml(1);
+			} else {
+				ref = formatClassName(className, url);
+			}
+			comment.addSee(ref);
+		}
+	}
+
 	/**
 	 * HTML の A タグを Javadoc の link タグにフォーマットします。
 	 * <p>
@@ -484,6 +884,14 @@ public class APIDocument {
 	 * @return Javadoc link タグ文字列
 	 */
 	private String formatLinkTag(String className, String html) {
+		if (!Boolean.getBoolean(JSOUP_KEY)) {
+			try {
+				return formatLinkTag(className, JavadocHtmlParser.parseBodyFragment(html));
+			} catch (UnsupportedHtmlException e) {
+				// Jsoup で解析する
+			}
+		}
+
 		// HTML構文を解析
 		Document document = Jsoup.parse(html);
 		document.outputSettings().indentAmount(0);
@@ -496,20 +904,7 @@ public class APIDocument {
 			Elements codes = element.select("code");
 			String label = codes.size() > 0 ? codes.first().text() : element.text();
 			if (element.text().equals(label)) {
-
-				link.append("{@link ");
-				link.append(ref);
-				if (label.length() > 0) {
-					ref = ref.replace('#', '.');
-					label = label.replace(" ", "");
-					label = label.replace("java.lang.", "");
-					if (!ref.endsWith(label)) {
-						link.append(" ");
-						link.append(label);
-					}
-				}
-				link.append("}");
-
+				appendLink(link, ref, label);
 			} else {
 				link.append("{@linkplain ");
 				link.append(ref);
@@ -533,6 +928,76 @@ public class APIDocument {
 		return ret;
 	}
 
+	/**
+	 * {@link JavadocHtmlParser} で解析した HTML の A タグを Javadoc の link タグにフォーマットします。
+	 * 
+	 * @param className
+	 *            クラス名
+	 * @param body
+	 *            body 要素
+	 * @return Javadoc link タグ文字列
+	 */
+	private String formatLinkTag(String className, HtmlNode body) {
+		for (HtmlNode element : body.select(LINK)) {
+			String url = element.attr("href");
+			StringBuilder link = new StringBuilder();
+			String ref = formatClassName(className, url);
+
+			HtmlNode code = element.selectFirst(CODE);
+			String text = element.text();
+			String label = (code != null) ? code.text() : text;
+			if (text.equals(label)) {
+				appendLink(link, ref, label);
+			} else {
+				link.append("{@linkplain ");
+				link.append(ref);
+				link.append(" ");
+				link.append(element.html(0));
+				link.append("}");
+			}
+
+			// <_delete_> タグを目印にしてリンクタグを置換する。
+			HtmlNode cld = new HtmlNode("_delete_", null);
+			for (HtmlNode node : JavadocHtmlParser.parseFragment(link.toString(), cld.name)) {
+				cld.appendChild(node);
+			}
+			element.replaceWith(cld);
+		}
+
+		// 不必要なタグを削除する。
+		String ret = body.html(0);
+		ret = ret.replace("<_delete_>", "").replace("</_delete_>", "");
+		ret = ret.replace("\n", "");
+		ret = ret.replace("、", ",");
+
+		return ret;
+	}
+
+	/**
+	 * Javadoc の link タグを追加します。ラベルが参照先の末尾と同じ場合はラベルを省略します。
+	 * 
+	 * @param link
+	 *            追加先
+	 * @param ref
+	 *            package.class#member 形式の参照先
+	 * @param label
+	 *            ラベル
+	 */
+	private static void appendLink(StringBuilder link, String ref, String label) {
+		link.append("{@link ");
+		link.append(ref);
+		if (label.length() > 0) {
+			ref = ref.replace('#', '.');
+			label = label.replace(" ", "");
+			label = label.replace("java.lang.", "");
+			if (!ref.endsWith(label)) {
+				link.append(" ");
+				link.append(label);
+			}
+		}
+		link.append("}");
+	}
+
 	/**
 	 * HTML の CODE タグを Javadoc の code タグにフォーマットします。
 	 * 
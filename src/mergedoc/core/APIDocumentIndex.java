@@ -0,0 +1,859 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * API ドキュメント索引です。
+ * <p>
+ * API ドキュメントディレクトリのクラス HTML ファイルを一度だけ解析し、シグネチャとコメントをバイナリ形式の索引ファイルに保存します。
+ * 索引ファイルには作成時の HTML ファイルのサイズ、更新日時、CRC-32 と、HTML の解析方法（システムプロパティ
+ * {@value APIDocument#JSOUP_KEY}）が記録されており、API
+ * ドキュメントと解析方法が変更されていない間はメモリマップした索引ファイルからコメントを読み込みます。
+ * <p>
+ * 索引を作り直す場合は世代番号を付けた別名のファイル（mergedoc.1.idx など）に作成し、最も新しい世代を使用します。
+ * メモリマップしたファイルは Windows では削除できないため、開いている古い索引ファイルは作り直しの際に削除を試み、削除できない場合は次回の作り直しで削除します。
+ * <p>
+ * 索引は読み込み専用のため、複数スレッドから使用できます。
+ *
+ * @author Shinji Kashihara
+ */
+public class APIDocumentIndex {
+
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(APIDocumentIndex.class);
+
+	/** 最初の世代の索引ファイル名 */
+	public static final String INDEX_FILE_NAME = "mergedoc.idx";
+
+	/** 世代番号を付けた索引ファイル名の接頭辞 */
+	private static final String INDEX_FILE_PREFIX = "mergedoc.";
+
+	/** 世代番号を付けた索引ファイル名の拡張子 */
+	private static final String INDEX_FILE_SUFFIX = ".idx";
+
+	/** 索引ファイルの識別子（"MDIX"） */
+	private static final int MAGIC = 0x4d444958;
+
+	/** 索引ファイルの形式バージョン */
+	private static final int VERSION = 2;
+
+	/** 索引作成時にスレッドあたりに先行して解析するクラス数 */
+	private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+	/** クラス HTML ファイルを含まないディレクトリ名 */
+	private static final Set<String> SKIP_DIRS = new HashSet<String>(
+			Arrays.asList("class-use", "doc-files", "index-files", "resources", "src-html"));
+
+	/** メモリマップした索引ファイル */
+	private final ByteBuffer buffer;
+
+	/** クラス名をキーとしたクラスデータの位置 */
+	private final Map<String, Integer> offsets;
+
+	/** API ドキュメントディレクトリ */
+	private final File docDir;
+
+	/** 索引作成時のクラス HTML ファイルのスタンプ */
+	private final List<PageStamp> stamps;
+
+	/** クラスデータの読み込みに失敗した場合は true */
+	private volatile boolean broken;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param buffer
+	 *            メモリマップした索引ファイル（終端はフッタの位置）
+	 * @param offsets
+	 *            クラス名をキーとしたクラスデータの位置
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param stamps
+	 *            索引作成時のスタンプ
+	 */
+	private APIDocumentIndex(ByteBuffer buffer, Map<String, Integer> offsets, File docDir, List<PageStamp> stamps) {
+		this.buffer = buffer;
+		this.offsets = offsets;
+		this.docDir = docDir;
+		this.stamps = stamps;
+	}
+
+	/**
+	 * API ドキュメントディレクトリの最も新しい世代の索引ファイルを取得します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @return 索引ファイル。索引ファイルが無い場合は最初の世代のファイル。
+	 */
+	public static File getIndexFile(File docDir) {
+		return new File(docDir, indexFileName(latestGeneration(docDir)));
+	}
+
+	/**
+	 * API ドキュメントディレクトリにある索引ファイルの最も新しい世代番号を取得します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @return 世代番号。索引ファイルが無い場合は 0。
+	 */
+	private static int latestGeneration(File docDir) {
+		int latest = 0;
+		String[] names = docDir.list();
+		if (names != null) {
+			for (String name : names) {
+				latest = Math.max(latest, generationOf(name));
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * API ドキュメントディレクトリに索引ファイルがあるか判定します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @return いずれかの世代の索引ファイルがある場合は true
+	 */
+	private static boolean indexFileExists(File docDir) {
+		String[] names = docDir.list();
+		if (names != null) {
+			for (String name : names) {
+				if (generationOf(name) >= 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 世代番号に対応する索引ファイル名を取得します。
+	 *
+	 * @param generation
+	 *            世代番号
+	 * @return 索引ファイル名
+	 */
+	private static String indexFileName(int generation) {
+		return (generation == 0) ? INDEX_FILE_NAME : INDEX_FILE_PREFIX + generation + INDEX_FILE_SUFFIX;
+	}
+
+	/**
+	 * 索引ファイル名から世代番号を取得します。
+	 *
+	 * @param name
+	 *            ファイル名
+	 * @return 世代番号。索引ファイル名でない場合は -1。
+	 */
+	private static int generationOf(String name) {
+		if (name.equals(INDEX_FILE_NAME)) {
+			return 0;
+		}
+		if (!name.startsWith(INDEX_FILE_PREFIX) || !name.endsWith(INDEX_FILE_SUFFIX)) {
+			return -1;
+		}
+		String number = name.substring(INDEX_FILE_PREFIX.length(), name.length() - INDEX_FILE_SUFFIX.length());
+		if (number.length() == 0 || number.length() > 9) {
+			return -1;
+		}
+		for (int i = 0; i < number.length(); i++) {
+			if (number.charAt(i) < '0' || number.charAt(i) > '9') {
+				return -1;
+			}
+		}
+		return Integer.parseInt(number);
+	}
+
+	/**
+	 * 指定した世代より古い索引ファイルを削除します。 メモリマップされていて削除できないファイルは次回の作り直しで削除します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param generation
+	 *            残す世代番号
+	 */
+	private static void deleteOlderGenerations(File docDir, int generation) {
+		String[] names = docDir.list();
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			int g = generationOf(name);
+			if (g >= 0 && g < generation) {
+				File file = new File(docDir, name);
+				if (!file.delete() && logger.isDebugEnabled()) {
+					logger.debug(file + " は使用中のため削除できませんでした。");
+				}
+			}
+		}
+	}
+
+	/**
+	 * 索引ファイルを開きます。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param charsetName
+	 *            API ドキュメントの文字セット名
+	 * @return API ドキュメント索引。索引ファイルが無い場合や、作成後に API ドキュメントが変更されている場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	public static APIDocumentIndex open(File docDir, String charsetName) throws IOException {
+		return open(getIndexFile(docDir), docDir, charsetName);
+	}
+
+	/**
+	 * 指定した索引ファイルを開きます。
+	 *
+	 * @param indexFile
+	 *            索引ファイル
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param charsetName
+	 *            API ドキュメントの文字セット名
+	 * @return API ドキュメント索引。索引ファイルが無い場合や、作成後に API ドキュメントが変更されている場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static APIDocumentIndex open(File indexFile, File docDir, String charsetName) throws IOException {
+
+		if (!indexFile.isFile()) {
+			return null;
+		}
+
+		MappedByteBuffer mapped;
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+
+		// 壊れた索引ファイルは作成後に API ドキュメントが変更された場合と同じく作り直す
+		try {
+			return read(indexFile, mapped, docDir, charsetName);
+		} catch (RuntimeException e) {
+			logger.info(indexFile + " は壊れているため使用しません。", e);
+			return null;
+		}
+	}
+
+	/**
+	 * メモリマップした索引ファイルのヘッダとフッタを読み込みます。 ファイルに記録された位置と長さはすべて範囲を検証してから使用します。
+	 *
+	 * @param indexFile
+	 *            索引ファイル
+	 * @param mapped
+	 *            メモリマップした索引ファイル
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param charsetName
+	 *            API ドキュメントの文字セット名
+	 * @return API ドキュメント索引。形式、文字セット、HTML の解析方法が異なる場合や、作成後に API ドキュメントが変更されている場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 * @throws RuntimeException
+	 *             索引ファイルが壊れている場合
+	 */
+	private static APIDocumentIndex read(File indexFile, ByteBuffer mapped, File docDir, String charsetName)
+			throws IOException {
+
+		// ヘッダの検証
+		ByteBuffer buf = mapped.duplicate();
+		if (buf.remaining() < 16 || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+			logger.info(indexFile + " は索引ファイルの形式が異なるため使用しません。");
+			return null;
+		}
+		if (!charsetName.equals(readString(buf))) {
+			logger.info(indexFile + " は文字セットが異なるため使用しません。");
+			return null;
+		}
+		if (!parserName().equals(readString(buf))) {
+			logger.info(indexFile + " は API ドキュメントの解析方法が異なるため使用しません。");
+			return null;
+		}
+		int dataStart = buf.position();
+
+		// フッタの読み込み
+		int footerEnd = buf.limit() - 8;
+		long footer = buf.getLong(footerEnd);
+		if (footer < dataStart || footer > footerEnd) {
+			throw new IllegalStateException("フッタの位置が不正です: " + footer);
+		}
+		buf.position((int) footer);
+		buf.limit(footerEnd);
+
+		// スタンプは 1 件あたり 24 バイト以上
+		int stampCount = readLength(buf, 24);
+		List<PageStamp> stamps = new ArrayList<PageStamp>(stampCount);
+		for (int i = 0; i < stampCount; i++) {
+			stamps.add(new PageStamp(readString(buf), buf.getLong(), buf.getLong(), buf.getInt()));
+		}
+		if (!isValid(docDir, stamps)) {
+			logger.info(indexFile + " の作成後に API ドキュメントが変更されたため使用しません。");
+			return null;
+		}
+
+		// クラスは 1 件あたり 8 バイト以上
+		int classCount = readLength(buf, 8);
+		Map<String, Integer> offsets = new HashMap<String, Integer>(classCount * 4 / 3 + 1);
+		for (int i = 0; i < classCount; i++) {
+			String className = readString(buf);
+			int offset = buf.getInt();
+			if (className == null || offset < dataStart || offset > footer - 4) {
+				throw new IllegalStateException("クラスデータの位置が不正です: " + className + " " + offset);
+			}
+			offsets.put(className, offset);
+		}
+
+		// クラスデータはフッタより前に収まること、記録された件数と長さで最後まで読めることを検証する
+		ByteBuffer data = mapped.duplicate();
+		data.limit((int) footer);
+		for (int offset : offsets.values()) {
+			skipClassData(data, offset);
+		}
+		return new APIDocumentIndex(data, offsets, docDir, stamps);
+	}
+
+	/**
+	 * API ドキュメントディレクトリのすべてのクラス HTML ファイルを解析し、索引ファイルを作成します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param charsetName
+	 *            API ドキュメントの文字セット名
+	 * @param threads
+	 *            解析スレッド数
+	 * @return 作成した API ドキュメント索引
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	public static APIDocumentIndex build(final File docDir, final String charsetName, int threads)
+			throws IOException {
+
+		long start = System.currentTimeMillis();
+		List<String> pages = new ArrayList<String>();
+		scanPages(docDir, "", pages);
+
+		// 解析前に HTML ファイルのスタンプを記録し、解析中の変更は次回の検証で検出する
+		List<PageStamp> stamps = new ArrayList<PageStamp>(pages.size());
+		Set<String> classNames = new TreeSet<String>();
+		for (String page : pages) {
+			File file = new File(docDir, page);
+			stamps.add(new PageStamp(page, file.length(), file.lastModified(), checksum(file)));
+			classNames.add(toTopLevelClassName(page));
+		}
+
+		// 開いている古い索引ファイルを削除しないように、次の世代のファイルに作成する
+		int generation = indexFileExists(docDir) ? latestGeneration(docDir) + 1 : 0;
+		File indexFile = new File(docDir, indexFileName(generation));
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, charsetName);
+			writeString(out, parserName());
+
+			// クラスごとに並列に解析し、クラス名順に書き込む
+			Map<String, Integer> offsets = new HashMap<String, Integer>();
+			LinkedList<Future<byte[]>> futures = new LinkedList<Future<byte[]>>();
+			LinkedList<String> pending = new LinkedList<String>();
+			int window = Math.max(threads, 1) * QUEUE_SIZE_PER_THREAD;
+			for (final String className : classNames) {
+				futures.add(executor.submit(new Callable<byte[]>() {
+					public byte[] call() throws IOException {
+						APIDocument apiDoc = APIDocument.parse(docDir, className, charsetName);
+						return serialize(apiDoc.getContextTable());
+					}
+				}));
+				pending.add(className);
+				if (futures.size() >= window) {
+					offsets.put(pending.removeFirst(), out.size());
+					out.write(getResult(futures.removeFirst()));
+				}
+			}
+			while (!futures.isEmpty()) {
+				offsets.put(pending.removeFirst(), out.size());
+				out.write(getResult(futures.removeFirst()));
+			}
+
+			// フッタの書き込み
+			long footer = out.size();
+			out.writeInt(stamps.size());
+			for (PageStamp stamp : stamps) {
+				writeString(out, stamp.path);
+				out.writeLong(stamp.length);
+				out.writeLong(stamp.lastModified);
+				out.writeInt(stamp.crc);
+			}
+			out.writeInt(offsets.size());
+			for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+				writeString(out, entry.getKey());
+				out.writeInt(entry.getValue());
+			}
+			out.writeLong(footer);
+			out.close();
+			out = null;
+
+			if (indexFile.exists() && !indexFile.delete() || !tempFile.renameTo(indexFile)) {
+				throw new IOException(indexFile + " を作成できませんでした。");
+			}
+			deleteOlderGenerations(docDir, generation);
+
+		} finally {
+			executor.shutdownNow();
+			if (out != null) {
+				out.close();
+				tempFile.delete();
+			}
+		}
+
+		logger.info(indexFile + " を作成しました。クラス数 " + classNames.size() + ", "
+				+ (System.currentTimeMillis() - start) + " ms");
+		APIDocumentIndex index = open(indexFile, docDir, charsetName);
+		if (index == null) {
+			throw new IOException(indexFile + " の作成中に API ドキュメントが変更されました。");
+		}
+		return index;
+	}
+
+	/**
+	 * 指定したクラスのシグネチャとコメントをテーブルに読み込みます。 索引にクラスが無い場合は何もしません。
+	 * <p>
+	 * クラスデータを読み込めない場合は何も読み込まず、{@link #isValid()} が false を返すようにして索引を作り直させます。
+	 *
+	 * @param className
+	 *            クラス名（パッケージを含む）
+	 * @param table
+	 *            シグネチャをキーとしたコメントのテーブル
+	 */
+	void load(String className, Map<Signature, Comment> table) {
+
+		Integer offset = offsets.get(className);
+		if (offset == null) {
+			return;
+		}
+		Map<Signature, Comment> loaded = new HashMap<Signature, Comment>();
+		try {
+			ByteBuffer buf = buffer.duplicate();
+			buf.position(offset);
+			for (int i = buf.getInt(); i > 0; i--) {
+				Signature sig = new Signature(readString(buf), readString(buf), readString(buf), buf.get() != 0);
+				Comment comment = new Comment(sig, readString(buf), readString(buf), readList(buf), readList(buf),
+						readList(buf), readList(buf), readList(buf));
+				loaded.put(sig, comment);
+			}
+		} catch (RuntimeException e) {
+			broken = true;
+			logger.warn("API ドキュメント索引から " + className + " を読み込めないため、このクラスはマージしません。", e);
+			return;
+		}
+		table.putAll(loaded);
+	}
+
+	/**
+	 * 指定したクラスのコメントが索引に含まれるか判定します。 含まれない場合は {@link #load(String, Map)} で何も読み込まれません。
+	 *
+	 * @param className
+	 *            クラス名（パッケージを含む）
+	 * @return コメントが 1 つ以上含まれる場合は true
+	 */
+	boolean contains(String className) {
+		Integer offset = offsets.get(className);
+		return offset != null && buffer.getInt(offset) > 0;
+	}
+
+	/**
+	 * 開いた後に API ドキュメントが変更されていないか検証します。 開いた索引を複数回のマージで使用する場合に、マージのたびに呼び出します。
+	 *
+	 * @return 変更されておらず、クラスデータの読み込みにも失敗していない場合は true
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	boolean isValid() throws IOException {
+		return !broken && isValid(docDir, stamps);
+	}
+
+	/**
+	 * 索引に含まれるクラス数を取得します。
+	 *
+	 * @return クラス数
+	 */
+	public int size() {
+		return offsets.size();
+	}
+
+	/**
+	 * クラス HTML ファイルのスタンプです。
+	 */
+	private static class PageStamp {
+		final String path;
+		final long length;
+		final long lastModified;
+		final int crc;
+
+		PageStamp(String path, long length, long lastModified, int crc) {
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.crc = crc;
+		}
+	}
+
+	/**
+	 * 索引作成時から API ドキュメントが変更されていないか検証します。 更新日時のみ異なる場合は内容の CRC-32 で比較します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param stamps
+	 *            索引作成時のスタンプ
+	 * @return 変更されていない場合は true
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static boolean isValid(File docDir, List<PageStamp> stamps) throws IOException {
+
+		List<String> pages = new ArrayList<String>(stamps.size());
+		scanPages(docDir, "", pages);
+		if (pages.size() != stamps.size()) {
+			return false;
+		}
+		for (int i = 0; i < pages.size(); i++) {
+			PageStamp stamp = stamps.get(i);
+			if (!pages.get(i).equals(stamp.path)) {
+				return false;
+			}
+			File file = new File(docDir, stamp.path);
+			if (file.length() != stamp.length) {
+				return false;
+			}
+			if (file.lastModified() != stamp.lastModified && checksum(file) != stamp.crc) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * API ドキュメントディレクトリからクラス HTML ファイルを探し、相対パスをリストに追加します。 パスの区切り文字は / です。
+	 *
+	 * @param dir
+	 *            ディレクトリ
+	 * @param relPath
+	 *            API ドキュメントディレクトリからの相対パス
+	 * @param pages
+	 *            クラス HTML ファイルの相対パスのリスト
+	 */
+	private static void scanPages(File dir, String relPath, List<String> pages) {
+
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				if (!SKIP_DIRS.contains(name)) {
+					scanPages(file, relPath + name + "/", pages);
+				}
+			} else if (relPath.length() > 0 && name.endsWith(".html") && name.indexOf('-') == -1) {
+				// package-summary.html などはクラス名として使用できない - を含む
+				pages.add(relPath + name);
+			}
+		}
+	}
+
+	/**
+	 * クラス HTML ファイルの相対パスからトップレベルクラス名を取得します。
+	 *
+	 * <pre>
+	 * java/util/Map.Entry.html -&gt; java.util.Map
+	 * </pre>
+	 *
+	 * @param page
+	 *            クラス HTML ファイルの相対パス
+	 * @return トップレベルクラス名（パッケージを含む）
+	 */
+	private static String toTopLevelClassName(String page) {
+		int dirEnd = page.lastIndexOf('/') + 1;
+		int nameEnd = page.indexOf('.', dirEnd);
+		return page.substring(0, nameEnd).replace('/', '.');
+	}
+
+	/**
+	 * 索引ファイルに記録する API ドキュメントの HTML の解析方法を取得します。
+	 *
+	 * @return 常に Jsoup で解析する場合は "jsoup"、軽量パーサで解析する場合は "javadoc"
+	 */
+	private static String parserName() {
+		return Boolean.getBoolean(APIDocument.JSOUP_KEY) ? "jsoup" : "javadoc";
+	}
+
+	/**
+	 * ファイル内容の CRC-32 を取得します。
+	 *
+	 * @param file
+	 *            ファイル
+	 * @return CRC-32
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static int checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[8192];
+		InputStream is = new FileInputStream(file);
+		try {
+			for (int size = 0; (size = is.read(buf)) > 0;) {
+				crc.update(buf, 0, size);
+			}
+		} finally {
+			is.close();
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * 解析結果を取得します。
+	 *
+	 * @param future
+	 *            解析結果の Future
+	 * @return シリアライズしたクラスデータ
+	 * @throws IOException
+	 *             解析に失敗した場合
+	 */
+	private static byte[] getResult(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException("索引の作成が中断されました。", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * クラスのシグネチャとコメントをシリアライズします。
+	 *
+	 * @param table
+	 *            シグネチャをキーとしたコメントのテーブル
+	 * @return シリアライズしたクラスデータ
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static byte[] serialize(Map<Signature, Comment> table) throws IOException {
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeInt(table.size());
+		for (Map.Entry<Signature, Comment> entry : table.entrySet()) {
+			Signature sig = entry.getKey();
+			writeString(out, sig.getClassName());
+			writeString(out, sig.getMethodName());
+			writeString(out, sig.getArguments());
+			out.writeBoolean(sig.isDeclareInnerClass());
+
+			Comment comment = entry.getValue();
+			writeString(out, comment.getDocumentBody());
+			writeString(out, comment.getDeprecated());
+			writeList(out, comment.getSees());
+			writeList(out, comment.getSinces());
+			writeList(out, comment.getParams());
+			writeList(out, comment.getReturns());
+			writeList(out, comment.getThrowses());
+		}
+		out.close();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * 文字列を書き込みます。 writeUTF と異なり 64K バイトを超える文字列と null を扱えます。
+	 *
+	 * @param out
+	 *            出力ストリーム
+	 * @param str
+	 *            文字列
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * 文字列リストを書き込みます。
+	 *
+	 * @param out
+	 *            出力ストリーム
+	 * @param list
+	 *            文字列リスト
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static void writeList(DataOutputStream out, Collection<String> list) throws IOException {
+		if (list == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(list.size());
+		for (String str : list) {
+			writeString(out, str);
+		}
+	}
+
+	/**
+	 * 文字列を読み込みます。
+	 *
+	 * @param buf
+	 *            バッファ
+	 * @return 文字列
+	 */
+	private static String readString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > buf.remaining()) {
+			throw new IllegalStateException("文字列の長さが不正です: " + length);
+		}
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 1 クラス分のクラスデータを読み飛ばします。 文字列は作成せず、件数と長さが範囲に収まるかだけを検証します。
+	 *
+	 * @param buf
+	 *            終端をフッタの位置にしたバッファ
+	 * @param offset
+	 *            クラスデータの位置
+	 * @throws RuntimeException
+	 *             クラスデータが壊れている場合
+	 */
+	private static void skipClassData(ByteBuffer buf, int offset) {
+		buf.position(offset);
+		// シグネチャとコメントは 1 件あたり 41 バイト以上
+		for (int i = readLength(buf, 41); i > 0; i--) {
+			skipString(buf);
+			skipString(buf);
+			skipString(buf);
+			buf.get();
+			skipString(buf);
+			skipString(buf);
+			for (int j = 0; j < 5; j++) {
+				int size = buf.getInt();
+				for (int k = 0; k < size; k++) {
+					skipString(buf);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 文字列を読み飛ばします。
+	 *
+	 * @param buf
+	 *            バッファ
+	 * @throws IllegalStateException
+	 *             文字列の長さが不正な場合
+	 */
+	private static void skipString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length > buf.remaining()) {
+			throw new IllegalStateException("文字列の長さが不正です: " + length);
+		}
+		if (length > 0) {
+			buf.position(buf.position() + length);
+		}
+	}
+
+	/**
+	 * 件数を読み込みます。 件数と 1 件あたりの最小バイト数から、残りのバイト数に収まるか検証します。
+	 *
+	 * @param buf
+	 *            バッファ
+	 * @param minSize
+	 *            1 件あたりの最小バイト数
+	 * @return 件数
+	 */
+	private static int readLength(ByteBuffer buf, int minSize) {
+		int length = buf.getInt();
+		if (length < 0 || length > buf.remaining() / minSize) {
+			throw new IllegalStateException("件数が不正です: " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * 文字列リストを読み込みます。 Comment で要素を変更するため LinkedList で返します。
+	 *
+	 * @param buf
+	 *            バッファ
+	 * @return 文字列リスト
+	 */
+	private static List<String> readList(ByteBuffer buf) {
+		int size = buf.getInt();
+		if (size < 0) {
+			return null;
+		}
+		// 要素は 1 件あたり 4 バイト以上
+		if (size > buf.remaining() / 4) {
+			throw new IllegalStateException("リストの長さが不正です: " + size);
+		}
+		List<String> list = new LinkedList<String>();
+		for (int i = 0; i < size; i++) {
+			list.add(readString(buf));
+		}
+		return list;
+	}
+}
@@ -8,13 +8,22 @@ package mergedoc.core;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Properties;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarInputStream;
 
@@ -30,11 +39,70 @@ import org.apache.tools.tar.TarInputStream;
  */
 abstract public class ArchiveInputStream {
 
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(ArchiveInputStream.class);
+
+	/** tar.gz 形式のメタデータのキャッシュファイル名 */
+	private static final String METADATA_CACHE_FILE_NAME = "archive-metadata.properties";
+
+	/** メタデータのキャッシュに保持するアーカイブファイル数の上限 */
+	private static final int METADATA_CACHE_LIMIT = 16;
+
 	/**
 	 * アーカイブエントリインターフェースです。
 	 */
 	public static interface Entry {
 		public String getName();
+
+		/**
+		 * 展開後のサイズを取得します。
+		 * 
+		 * @return 展開後のサイズ。不明な場合は -1。
+		 */
+		public long getSize();
+	}
+
+	/**
+	 * アーカイブファイルのメタデータです。
+	 */
+	public static class Metadata {
+
+		/** エントリ数 */
+		private final int entryCount;
+
+		/** 展開後のサイズの合計 */
+		private final long totalSize;
+
+		/**
+		 * コンストラクタです。
+		 * 
+		 * @param entryCount
+		 *            エントリ数
+		 * @param totalSize
+		 *            展開後のサイズの合計。不明な場合は -1。
+		 */
+		Metadata(int entryCount, long totalSize) {
+			this.entryCount = entryCount;
+			this.totalSize = totalSize;
+		}
+
+		/**
+		 * エントリ数を取得します。
+		 * 
+		 * @return エントリ数
+		 */
+		public int getEntryCount() {
+			return entryCount;
+		}
+
+		/**
+		 * 展開後のサイズの合計を取得します。
+		 * 
+		 * @return 展開後のサイズの合計。不明な場合は -1。
+		 */
+		public long getTotalSize() {
+			return totalSize;
+		}
 	}
 
 	/**
@@ -56,8 +124,17 @@ abstract public class ArchiveInputStream {
 	 */
 	public static ArchiveInputStream create(File file) throws IOException {
 		String fileName = file.getName();
-		BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file));
 
+		if (fileName.endsWith(".zip") || fileName.endsWith(".jar")) {
+			// 圧縮データを直接扱えるようにセントラルディレクトリから読み込む
+			try {
+				return new ZipReaderProxy(new ZipArchiveReader(file));
+			} catch (ZipException e) {
+				logger.debug(fileName + " をストリームとして読み込みます。", e);
+			}
+		}
+
+		BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file));
 		if (fileName.endsWith(".zip") || fileName.endsWith(".jar")) {
 			return new ZipStreamProxy(new ZipInputStream(bis));
 		} else if (fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz")) {
@@ -68,6 +145,146 @@ abstract public class ArchiveInputStream {
 		}
 	}
 
+	/**
+	 * アーカイブファイルのエントリ数と展開後のサイズの合計を取得します。
+	 * <p>
+	 * ZIP 形式の場合はセントラルディレクトリから読み込むため、エントリデータは展開しません。tar.gz
+	 * 形式の場合は全体を展開する必要があるため、ファイルのパス、サイズ、更新日時とともに結果をユーザーのホームディレクトリの
+	 * .mergedoc/archive-metadata.properties にキャッシュし、ファイルが変更されていなければキャッシュを使用します。
+	 * 設定ファイルとは別に書き込むため、GUI を終了するまで保存されない設定ファイルと異なり、コマンドラインからの実行でも次回から使用されます。
+	 * 
+	 * @param file
+	 *            アーカイブファイル
+	 * @return メタデータ
+	 * @throws IOException
+	 *             ファイル形式が不正な場合
+	 */
+	public static Metadata readMetadata(File file) throws IOException {
+		String fileName = file.getName();
+
+		if (fileName.endsWith(".zip") || fileName.endsWith(".jar")) {
+			try {
+				ZipArchiveReader reader = new ZipArchiveReader(file);
+				try {
+					long totalSize = 0;
+					for (ZipArchiveReader.Entry entry : reader.getEntries()) {
+						totalSize += entry.getSize();
+					}
+					return new Metadata(reader.getEntries().size(), totalSize);
+				} finally {
+					reader.close();
+				}
+			} catch (ZipException e) {
+				logger.debug(fileName + " のセントラルディレクトリを読み込めないため、全体を読み込みます。", e);
+				return scanMetadata(file);
+			}
+		}
+
+		File cacheFile = UserFiles.getFile(METADATA_CACHE_FILE_NAME);
+		String path = file.getAbsolutePath();
+		String stamp = file.length() + "\t" + file.lastModified() + "\t";
+		Properties cache = loadMetadataCache(cacheFile);
+		String value = cache.getProperty(path, "");
+		if (value.startsWith(stamp)) {
+			try {
+				String[] values = value.substring(stamp.length()).split("\t");
+				return new Metadata(Integer.parseInt(values[0]), Long.parseLong(values[1]));
+			} catch (RuntimeException e) {
+				logger.debug("メタデータのキャッシュが不正です。", e);
+			}
+		}
+
+		Metadata metadata = scanMetadata(file);
+		if (metadata.getEntryCount() > 0) {
+			if (cache.size() >= METADATA_CACHE_LIMIT && !cache.containsKey(path)) {
+				cache.clear();
+			}
+			cache.setProperty(path, stamp + metadata.getEntryCount() + "\t" + metadata.getTotalSize());
+			storeMetadataCache(cacheFile, cache);
+		}
+		return metadata;
+	}
+
+	/**
+	 * メタデータのキャッシュファイルを読み込みます。
+	 *
+	 * @param cacheFile
+	 *            キャッシュファイル
+	 * @return アーカイブファイルの絶対パスをキーとしたキャッシュ。読み込めない場合は空。
+	 */
+	private static Properties loadMetadataCache(File cacheFile) {
+		Properties cache = new Properties();
+		try {
+			InputStream is = new FileInputStream(cacheFile);
+			try {
+				cache.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (FileNotFoundException e) {
+			// 初回はキャッシュファイルが無い
+		} catch (IOException e) {
+			logger.debug("メタデータのキャッシュを読み込めません。 " + cacheFile, e);
+		} catch (RuntimeException e) {
+			logger.debug("メタデータのキャッシュが不正です。 " + cacheFile, e);
+			cache.clear();
+		}
+		return cache;
+	}
+
+	/**
+	 * メタデータのキャッシュファイルを書き込みます。 同時に書き込まれても壊れないように一時ファイルに書き込んで置き換えます。
+	 * 書き込めない場合はキャッシュしません。
+	 *
+	 * @param cacheFile
+	 *            キャッシュファイル
+	 * @param cache
+	 *            アーカイブファイルの絶対パスをキーとしたキャッシュ
+	 */
+	private static void storeMetadataCache(File cacheFile, Properties cache) {
+		File tempFile = null;
+		try {
+			UserFiles.createDirectory(cacheFile);
+			tempFile = File.createTempFile(METADATA_CACHE_FILE_NAME, ".tmp", cacheFile.getParentFile());
+			OutputStream os = new FileOutputStream(tempFile);
+			try {
+				cache.store(os, null);
+			} finally {
+				os.close();
+			}
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.debug("メタデータのキャッシュを書き込めません。 " + cacheFile, e);
+			if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+				tempFile.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * アーカイブファイルを順に読み込み、メタデータを取得します。
+	 * 
+	 * @param file
+	 *            アーカイブファイル
+	 * @return メタデータ
+	 * @throws IOException
+	 *             ファイル形式が不正な場合
+	 */
+	private static Metadata scanMetadata(File file) throws IOException {
+		ArchiveInputStream is = create(file);
+		try {
+			int count = 0;
+			long totalSize = 0;
+			for (Entry entry = null; (entry = is.getNextEntry()) != null; count++) {
+				long size = entry.getSize();
+				totalSize = (size < 0 || totalSize < 0) ? -1 : totalSize + size;
+			}
+			return new Metadata(count, totalSize);
+		} finally {
+			is.close();
+		}
+	}
+
 	/**
 	 * アーカイブ入力ストリームを閉じます。
 	 * 
@@ -103,6 +320,50 @@ abstract public class ArchiveInputStream {
 	 */
 	abstract public int read(byte b[]) throws IOException;
 
+	/**
+	 * ZIP アーカイブリーダーのアーカイブ入力ストリーム実装クラスです。 エントリは {@link ZipArchiveReader.Entry}
+	 * で、圧縮データを展開せずに ZipArchiveWriter に書き込めます。エントリデータは最初に読み込まれた時点で展開されます。
+	 */
+	private static class ZipReaderProxy extends ArchiveInputStream {
+		ZipArchiveReader reader;
+		Iterator<ZipArchiveReader.Entry> entries;
+		ZipArchiveReader.Entry entry;
+		InputStream is;
+
+		ZipReaderProxy(ZipArchiveReader reader) {
+			this.reader = reader;
+			this.entries = reader.getEntries().iterator();
+		}
+
+		public void close() throws IOException {
+			closeEntry();
+			reader.close();
+		}
+
+		public Entry getNextEntry() throws IOException {
+			closeEntry();
+			entry = entries.hasNext() ? entries.next() : null;
+			return entry;
+		}
+
+		public int read(byte[] b) throws IOException {
+			if (entry == null) {
+				return -1;
+			}
+			if (is == null) {
+				is = entry.getInputStream();
+			}
+			return is.read(b);
+		}
+
+		private void closeEntry() throws IOException {
+			if (is != null) {
+				is.close();
+				is = null;
+			}
+		}
+	}
+
 	/**
 	 * Zip 入力ストリームのアーカイブ入力ストリーム実装クラスです。
 	 */
@@ -140,6 +401,10 @@ abstract public class ArchiveInputStream {
 		public String getName() {
 			return entry.getName();
 		}
+
+		public long getSize() {
+			return entry.getSize();
+		}
 	}
 
 	/**
@@ -179,5 +444,9 @@ abstract public class ArchiveInputStream {
 		public String getName() {
 			return entry.getName();
 		}
+
+		public long getSize() {
+			return entry.getSize();
+		}
 	}
 }
@@ -6,9 +6,11 @@
 package mergedoc.core;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -30,6 +32,9 @@ public class Comment {
 	/** 出力するコメントのデフォルトの横幅 */
 	private static final int DEFAULT_WIDTH = 80;
 
+	/** コメントを小さくする場合に横幅を増やす上限 */
+	private static final int MAX_WIDTH = 160;
+
 	// -----------------------------------------
 	// 日本語 API ドキュメントから取得する情報
 	// -----------------------------------------
@@ -65,6 +70,9 @@ public class Comment {
 	/** 元の Java ソースコメント（飾り付け部分含む） */
 	private String srcBody;
 
+	/** 元の Java ソースコメントから行頭の飾り付けを除いたもの。タグの値リストを作成する際に作成します。 */
+	private String srcUndecoBody;
+
 	/** author タグコメントのリスト */
 	private List<String> srcAuthors;
 
@@ -83,6 +91,16 @@ public class Comment {
 	/** spec タグコメントのリスト（JSR No.記述．非標準タグ） */
 	private List<String> srcSpecs;
 
+	// -----------------------------------------
+	// コメントの組み立て
+	// -----------------------------------------
+
+	/**
+	 * 横幅を調整した説明とタグの値（キー：調整前の文字列、値：折り返し幅ごとの調整結果）。
+	 * 行数の調整ではタグの組み合わせや横幅を変えて何度もコメントを組み立て直すため、同じ値を同じ幅で 2 度折り返さないようにします。
+	 */
+	private Map<String, String[]> layouts;
+
 	/**
 	 * コンストラクタです。
 	 * <p>
@@ -94,6 +112,103 @@ public class Comment {
 		this.sig = sig;
 	}
 
+	/**
+	 * API ドキュメント索引から復元するためのコンストラクタです。
+	 * <p>
+	 * 各値には setDocumentBody や addParam などで整形済みのものを指定します。
+	 * 
+	 * @param sig
+	 *            シグネチャ
+	 * @param docBody
+	 *            コメント本文
+	 * @param deprecate
+	 *            deprecated タグコメント
+	 * @param sees
+	 *            see タグコメントのリスト
+	 * @param sinces
+	 *            since タグコメントのリスト
+	 * @param params
+	 *            param タグコメントのリスト
+	 * @param returns
+	 *            return タグコメントのリスト
+	 * @param throwses
+	 *            throws タグコメントのリスト
+	 */
+	Comment(Signature sig, String docBody, String deprecate, List<String> sees, List<String> sinces,
+			List<String> params, List<String> returns, List<String> throwses) {
+		this.sig = sig;
+		this.docBody = docBody;
+		this.deprecate = deprecate;
+		this.sees = sees;
+		this.sinces = sinces;
+		this.params = params;
+		this.returns = returns;
+		this.throwses = throwses;
+	}
+
+	/**
+	 * 整形済みのコメント本文を取得します。
+	 * 
+	 * @return コメント本文
+	 */
+	String getDocumentBody() {
+		return docBody;
+	}
+
+	/**
+	 * 整形済みの deprecated タグコメントを取得します。
+	 * 
+	 * @return deprecated タグコメント
+	 */
+	String getDeprecated() {
+		return deprecate;
+	}
+
+	/**
+	 * see タグコメントのリストを取得します。
+	 * 
+	 * @return see タグコメントのリスト
+	 */
+	List<String> getSees() {
+		return sees;
+	}
+
+	/**
+	 * since タグコメントのリストを取得します。
+	 * 
+	 * @return since タグコメントのリスト
+	 */
+	List<String> getSinces() {
+		return sinces;
+	}
+
+	/**
+	 * 整形済みの param タグコメントのリストを取得します。
+	 * 
+	 * @return param タグコメントのリスト
+	 */
+	List<String> getParams() {
+		return params;
+	}
+
+	/**
+	 * 整形済みの return タグコメントのリストを取得します。
+	 * 
+	 * @return return タグコメントのリスト
+	 */
+	List<String> getReturns() {
+		return returns;
+	}
+
+	/**
+	 * 整形済みの throws タグコメントのリストを取得します。
+	 * 
+	 * @return throws タグコメントのリスト
+	 */
+	List<String> getThrowses() {
+		return throwses;
+	}
+
 	/**
 	 * コメント本文をセットします。
 	 * <p>
@@ -273,7 +388,11 @@ public class Comment {
 	public void setSourceBody(String srcBody) {
 
 		// @exception を @throws に置換
-		this.srcBody = FastStringUtils.replaceAll(srcBody, "\\s@exception\\s", " @throws ");
+		if (srcBody.contains("@exception")) {
+			srcBody = FastStringUtils.replaceAll(srcBody, "\\s@exception\\s", " @throws ");
+		}
+		this.srcBody = srcBody;
+		this.srcUndecoBody = null;
 
 		// author タグの内容リスト作成（タグの値に改行あり）
 		srcAuthors = createWrapTagList("@author");
@@ -324,7 +443,10 @@ public class Comment {
 		List<String> tagValues = null;
 		if (srcBody.contains(tagName)) {
 
-			String undeco = FastStringUtils.replaceAll(srcBody, "(?m)^ *\\* *", "");
+			if (srcUndecoBody == null) {
+				srcUndecoBody = FastStringUtils.replaceAll(srcBody, "(?m)^ *\\* *", "");
+			}
+			String undeco = srcUndecoBody;
 			Pattern pat = PatternCache.getPattern("(?s)" + tagName + " *(.*?)([^\\{]@\\w+|/\\s*$)");
 			Matcher mat = pat.matcher(undeco);
 			for (int start = 0; mat.find(start); start = mat.end(1)) {
@@ -381,7 +503,7 @@ public class Comment {
 
 		// 元 Java ソースのコメントにボディ部が無い（省略によるコメント継承）場合、
 		// タグの数が API ドキュメントのより Java ソースのが少ないものを調整
-		if (FastStringUtils.matches(srcBody, "(?s)\\s*/\\*\\*[\\s\\*]*@.*")) {
+		if (startsWithTag(srcBody)) {
 			docBody = null;
 			params = omitTags(params, "@param");
 			returns = omitTag(returns, "@return");
@@ -399,7 +521,7 @@ public class Comment {
 		if (originDecoHeight > decoSize) {
 			originHeight = originDecoHeight - decoSize;
 		}
-		String indent = FastStringUtils.replaceFirst(srcBody, "(?s)^( *?)/\\*\\*.*", "$1");
+		String indent = indentOf(srcBody);
 
 		// API ドキュメントのコメント内の pre タグ内容を Java ソースのものに置換
 		if (docBody != null) {
@@ -436,8 +558,7 @@ public class Comment {
 			if (o.resultHeight() != o.originHeight) {
 				decoComment = resizeComment(o, decoComment);
 			}
-			decoComment = FastStringUtils.replaceAll(decoComment, "(?m)^", indent);
-			decoComment = FastStringUtils.replaceAll(decoComment, "(?m)^ +$", "");
+			decoComment = FastStringUtils.indentLines(decoComment, indent);
 		}
 
 		return decoComment;
@@ -597,7 +718,7 @@ public class Comment {
 			String str = comment;
 			if (str.length() > 0) {
 				StringBuilder sb = new StringBuilder();
-				str = FastStringUtils.replaceAll(str, "(?m)^", LINE_PREFIX);
+				str = FastStringUtils.prefixLines(str, LINE_PREFIX);
 				if (enabledFirstLine) {
 					sb.append("/**");
 					str = FastStringUtils.replaceFirst(str, "^ \\*", "");
@@ -866,8 +987,7 @@ public class Comment {
 		}
 
 		// 横幅を増やして再ビルド
-		final int maxWidth = 160;
-		while (o.resultHeight() > o.originHeight && o.width < maxWidth) {
+		while (o.resultHeight() > o.originHeight && o.width < MAX_WIDTH) {
 
 			o.build();
 			if (o.resultHeight() <= o.originHeight)
@@ -939,30 +1059,52 @@ public class Comment {
 		int height = o.resultHeight();
 
 		// <pre>、<blockquote>、<ol>、<ul> の上に空行追加
-		StringBuffer sb = new StringBuffer();
-		Pattern pat = PatternCache.getPattern("([^\n])(\n(<blockquote>)?<pre>|\n<(blockquote|ol|ul)>)");
-		Matcher mat = pat.matcher(o.comment);
-		while (height < o.originHeight && mat.find()) {
-			mat.appendReplacement(sb, "$1\n$2");
-			height++;
+		if (containsAny(o.comment, "\n<pre>", "\n<blockquote>", "\n<ol>", "\n<ul>")) {
+			StringBuffer sb = new StringBuffer();
+			Pattern pat = PatternCache.getPattern("([^\n])(\n(<blockquote>)?<pre>|\n<(blockquote|ol|ul)>)");
+			Matcher mat = pat.matcher(o.comment);
+			while (height < o.originHeight && mat.find()) {
+				mat.appendReplacement(sb, "$1\n$2");
+				height++;
+			}
+			mat.appendTail(sb);
+			o.comment = sb.toString();
+			if (height == o.originHeight)
+				return;
 		}
-		mat.appendTail(sb);
-		o.comment = sb.toString();
-		if (height == o.originHeight)
-			return;
 
 		// </pre>、</blockquote>、</ol>、</ul> の下に空行追加
-		sb = new StringBuffer();
-		pat = PatternCache.getPattern("(</pre>(</blockquote>)?\n|</(blockquote|ol|ul)>\n)([^\n])");
-		mat = pat.matcher(o.comment);
-		while (height < o.originHeight && mat.find()) {
-			mat.appendReplacement(sb, "$1\n$4");
-			height++;
+		if (containsAny(o.comment, "</pre>", "</blockquote>\n", "</ol>\n", "</ul>\n")) {
+			StringBuffer sb = new StringBuffer();
+			Pattern pat = PatternCache.getPattern("(</pre>(</blockquote>)?\n|</(blockquote|ol|ul)>\n)([^\n])");
+			Matcher mat = pat.matcher(o.comment);
+			while (height < o.originHeight && mat.find()) {
+				mat.appendReplacement(sb, "$1\n$4");
+				height++;
+			}
+			mat.appendTail(sb);
+			o.comment = sb.toString();
+			if (height == o.originHeight)
+				return;
 		}
-		mat.appendTail(sb);
-		o.comment = sb.toString();
-		if (height == o.originHeight)
-			return;
+	}
+
+	/**
+	 * 文字列がいずれかの文字列を含むか判定します。
+	 * 
+	 * @param str
+	 *            文字列
+	 * @param targets
+	 *            検索する文字列
+	 * @return いずれかを含む場合は true
+	 */
+	private static boolean containsAny(String str, String... targets) {
+		for (String target : targets) {
+			if (str.contains(target)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -986,14 +1128,14 @@ public class Comment {
 				sb.append("\n");
 				return sb.toString();
 			}
-			sb.append(adjustWidth(docBody, width));
+			sb.append(layout(docBody, width));
 			sb.append("\n");
 		}
 
 		// deprecated タグの組み立て
 		if (deprecate != null && deprecate.length() > 0) {
 			String depre = "@deprecated " + deprecate;
-			sb.append(adjustWidth(depre, width));
+			sb.append(layout(depre, width));
 			sb.append("\n");
 		}
 
@@ -1035,7 +1177,7 @@ public class Comment {
 
 				String comment = params.get(i);
 				comment = FastStringUtils.replaceFirst(comment, "(?s)(\\w+)\\s+(.*)", "$1" + space + " $2");
-				comment = adjustWidth(comment, width - tag.length());
+				comment = layout(comment, width - tag.length());
 				StringTokenizer st = new StringTokenizer(comment, "\n");
 
 				// 1 行目
@@ -1063,10 +1205,84 @@ public class Comment {
 		appendTo("@serial  ", srcSerials, sb, width);
 		appendTo("@spec    ", srcSpecs, sb, width);
 
-		String str = sb.toString();
-		str = FastStringUtils.replaceFirst(str, "\n\n$", "\n");
+		// 末尾の空行を除去（正規表現 "\n\n$" を "\n" に置換した結果と同等）
+		int length = sb.length();
+		if (length >= 2 && sb.charAt(length - 1) == '\n' && sb.charAt(length - 2) == '\n') {
+			sb.setLength(length - 1);
+		} else if (endsWithOtherLineTerminator(sb)) {
+			return FastStringUtils.replaceFirst(sb.toString(), "\n\n$", "\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 元の Java ソースコメントの説明が無く、タグから始まっているか判定します。 正規表現
+	 * "(?s)\\s*&#47;\\*\\*[\\s\\*]*@.*" と同等です。
+	 * 
+	 * @param srcBody
+	 *            元の Java ソースコメント
+	 * @return タグから始まっている場合は true
+	 */
+	private static boolean startsWithTag(String srcBody) {
+		int pos = 0;
+		int length = srcBody.length();
+		while (pos < length && isRegexSpace(srcBody.charAt(pos))) {
+			pos++;
+		}
+		if (!srcBody.startsWith("/**", pos)) {
+			return false;
+		}
+		pos += 3;
+		while (pos < length && (isRegexSpace(srcBody.charAt(pos)) || srcBody.charAt(pos) == '*')) {
+			pos++;
+		}
+		return pos < length && srcBody.charAt(pos) == '@';
+	}
+
+	/**
+	 * 元の Java ソースコメントのインデントを取得します。 "&#47;**" の前のスペースがインデントで、正規表現
+	 * "(?s)^( *?)&#47;\\*\\*.*" を "$1" に置換した結果と同等です。
+	 * 
+	 * @param srcBody
+	 *            元の Java ソースコメント
+	 * @return インデント。"&#47;**" がスペースに続かない場合は元の Java ソースコメント。
+	 */
+	private static String indentOf(String srcBody) {
+		int pos = 0;
+		while (pos < srcBody.length() && srcBody.charAt(pos) == ' ') {
+			pos++;
+		}
+		return srcBody.startsWith("/**", pos) ? srcBody.substring(0, pos) : srcBody;
+	}
+
+	/**
+	 * 正規表現の \\s に一致する文字か判定します。
+	 * 
+	 * @param c
+	 *            文字
+	 * @return 空白文字の場合は true
+	 */
+	private static boolean isRegexSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
 
-		return str;
+	/**
+	 * LF 以外の行区切り（CRLF、CR、NEL、LS、PS）で終わっているか判定します。
+	 * 
+	 * @param sb
+	 *            文字列バッファ
+	 * @return LF 以外の行区切りで終わっている場合は true
+	 */
+	private static boolean endsWithOtherLineTerminator(StringBuilder sb) {
+		int length = sb.length();
+		if (length == 0) {
+			return false;
+		}
+		char c = sb.charAt(length - 1);
+		if (c == '\n') {
+			return length >= 2 && sb.charAt(length - 2) == '\r';
+		}
+		return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
 	}
 
 	/**
@@ -1087,9 +1303,10 @@ public class Comment {
 		if (tagList == null)
 			return;
 
+		String indent = null;
 		for (String comment : tagList) {
 
-			comment = adjustWidth(comment, width - tag.length());
+			comment = layout(comment, width - tag.length());
 			StringTokenizer st = new StringTokenizer(comment, "\n");
 
 			sb.append(tag);
@@ -1099,13 +1316,46 @@ public class Comment {
 			sb.append("\n");
 
 			while (st.hasMoreTokens()) {
-				sb.append(FastStringUtils.replaceAll(tag, ".", " "));
+				if (indent == null) {
+					indent = FastStringUtils.replaceAll(tag, ".", " ");
+				}
+				sb.append(indent);
 				sb.append(st.nextToken());
 				sb.append("\n");
 			}
 		}
 	}
 
+	/**
+	 * 改行を含む文字列の横幅を調整します。 同じ文字列を同じ折り返し幅で調整済みの場合は、その結果を返します。
+	 *
+	 * @param value
+	 *            調整する文字列
+	 * @param width
+	 *            折り返し幅（バイト）
+	 * @return 横幅を調整した文字列
+	 */
+	private String layout(String value, int width) {
+
+		if (width < 0 || width > MAX_WIDTH) {
+			return adjustWidth(value, width);
+		}
+		if (layouts == null) {
+			layouts = new HashMap<String, String[]>();
+		}
+		String[] byWidth = layouts.get(value);
+		if (byWidth == null) {
+			byWidth = new String[MAX_WIDTH + 1];
+			layouts.put(value, byWidth);
+		}
+		String result = byWidth[width];
+		if (result == null) {
+			result = adjustWidth(value, width);
+			byWidth[width] = result;
+		}
+		return result;
+	}
+
 	/**
 	 * 改行を含む文字列の横幅を調整します。
 	 * <p>
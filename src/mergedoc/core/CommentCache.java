@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Comment#buildComment()} で作成したコメントのキャッシュです。 複数スレッドから使用できます。
+ * <p>
+ * オーバーライドしたメソッドや、プリミティブ型ごとに同じ形をしたクラスなどでは、元の Java ソースコメントと API
+ * ドキュメントのコメントが同じ組み合わせが何度も現れます。作成するコメントはこの 2 つだけで決まるため（インデントは元の Java
+ * ソースコメントに含まれます）、内容をキーにして作成済みのコメントを再利用し、行数の調整を繰り返さないようにします。
+ * <p>
+ * キャッシュする数はシステムプロパティ {@value #SIZE_KEY} で制限でき、上限を超えた場合は長く使用されていないものから破棄します（{@link LruCache}）。
+ * 取得回数、作成回数、作成時間、破棄した回数は {@link #getStatistics()} で取得できます。
+ *
+ * @author Shinji Kashihara
+ */
+class CommentCache {
+
+	/** キャッシュの上限数を指定するシステムプロパティのキー（0 以下はキャッシュしない、デフォルト 4096） */
+	static final String SIZE_KEY = "mergedoc.comments";
+
+	/** キャッシュ（キー：元の Java ソースコメントと API ドキュメントのコメント） */
+	private static final LruCache<Key, String> cache = new LruCache<Key, String>("Comment",
+			Integer.getInteger(SIZE_KEY, 4096));
+
+	/**
+	 * コンストラクタです。生成不可。
+	 */
+	private CommentCache() {
+	}
+
+	/**
+	 * 元の Java ソースコメントをセットしてコメントをビルドします。 同じ組み合わせのコメントを作成済みの場合は、その結果を返します。
+	 * <p>
+	 * キャッシュから取得した場合、comment には元の Java ソースコメントがセットされません。
+	 *
+	 * @param comment
+	 *            API ドキュメントのコメント
+	 * @param srcBody
+	 *            元の Java ソースコメント（飾り付け部分含む）
+	 * @return ビルドしたコメント
+	 */
+	static String build(Comment comment, String srcBody) {
+
+		Key key = null;
+		if (cache.isEnabled()) {
+			key = new Key(srcBody, comment);
+			String cached = cache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+			// setSourceBody はタグのリストを書き換えるため、ビルド前の内容を複写してキーにする
+			key = key.copy();
+		}
+		long start = System.nanoTime();
+		comment.setSourceBody(srcBody);
+		String result = comment.buildComment();
+		return cache.put(key, result, System.nanoTime() - start);
+	}
+
+	/**
+	 * 現在までの統計情報を取得します。
+	 *
+	 * @return 統計情報
+	 */
+	static LruCache.Statistics getStatistics() {
+		return cache.getStatistics();
+	}
+
+	/**
+	 * キャッシュのキーです。 元の Java ソースコメントと、API ドキュメントから取得した整形済みのコメント本文とタグの組み合わせです。
+	 */
+	private static class Key {
+
+		/** 元の Java ソースコメント（飾り付け部分とインデント含む） */
+		private final String srcBody;
+
+		/** コメント本文 */
+		private final String docBody;
+
+		/** deprecated タグコメント */
+		private final String deprecate;
+
+		/** see タグコメントのリスト */
+		private final List<String> sees;
+
+		/** since タグコメントのリスト */
+		private final List<String> sinces;
+
+		/** param タグコメントのリスト */
+		private final List<String> params;
+
+		/** return タグコメントのリスト */
+		private final List<String> returns;
+
+		/** throws タグコメントのリスト */
+		private final List<String> throwses;
+
+		/** ハッシュコード */
+		private final int hash;
+
+		Key(String srcBody, Comment comment) {
+			this(srcBody, comment.getDocumentBody(), comment.getDeprecated(), comment.getSees(), comment
+					.getSinces(), comment.getParams(), comment.getReturns(), comment.getThrowses());
+		}
+
+		private Key(String srcBody, String docBody, String deprecate, List<String> sees, List<String> sinces,
+				List<String> params, List<String> returns, List<String> throwses) {
+			this.srcBody = srcBody;
+			this.docBody = docBody;
+			this.deprecate = deprecate;
+			this.sees = sees;
+			this.sinces = sinces;
+			this.params = params;
+			this.returns = returns;
+			this.throwses = throwses;
+			int h = srcBody.hashCode();
+			h = 31 * h + hashCode(docBody);
+			h = 31 * h + hashCode(deprecate);
+			h = 31 * h + hashCode(sees);
+			h = 31 * h + hashCode(sinces);
+			h = 31 * h + hashCode(params);
+			h = 31 * h + hashCode(returns);
+			h = 31 * h + hashCode(throwses);
+			this.hash = h;
+		}
+
+		/**
+		 * タグのリストを複写したキーを作成します。
+		 *
+		 * @return 複写したキー
+		 */
+		Key copy() {
+			return new Key(srcBody, docBody, deprecate, copy(sees), copy(sinces), copy(params), copy(returns),
+					copy(throwses));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && srcBody.equals(other.srcBody) && equals(docBody, other.docBody)
+					&& equals(deprecate, other.deprecate) && equals(sees, other.sees)
+					&& equals(sinces, other.sinces) && equals(params, other.params)
+					&& equals(returns, other.returns) && equals(throwses, other.throwses);
+		}
+
+		private static List<String> copy(List<String> list) {
+			return (list == null) ? null : new ArrayList<String>(list);
+		}
+
+		private static int hashCode(Object obj) {
+			return (obj == null) ? 0 : obj.hashCode();
+		}
+
+		private static boolean equals(Object o1, Object o2) {
+			return (o1 == null) ? o2 == null : o1.equals(o2);
+		}
+	}
+}
@@ -212,14 +212,13 @@ public class FastStringUtils {
 		// return str.replaceAll("(\r\n|\r)", "\n");
 		// パフォーマンスを優先し、正規表現は使用しない
 
-		str += " ";
 		int size = str.length();
 		StringBuilder sb = new StringBuilder(size);
 
-		for (int i = 0; i < size - 1; i++) {
+		for (int i = 0; i < size; i++) {
 			char c = str.charAt(i);
 			if (c == '\r') {
-				if (str.charAt(i + 1) != '\n') {
+				if (i + 1 == size || str.charAt(i + 1) != '\n') {
 					sb.append('\n');
 				}
 			} else {
@@ -260,6 +259,131 @@ public class FastStringUtils {
 		return sb.toString();
 	}
 
+	/**
+	 * 文字列の各行の先頭に指定した文字列を付加します。 末尾の改行の後ろには付加しません。
+	 * <p>
+	 * これは以下の置換と処理内容は同等です。
+	 * 
+	 * <pre>
+	 * input.replaceAll(&quot;(?m)&circ;&quot;, Matcher.quoteReplacement(prefix));
+	 * </pre>
+	 * 
+	 * @param input
+	 *            対象文字列
+	 * @param prefix
+	 *            行頭に付加する文字列
+	 * @return 結果の文字列
+	 */
+	public static String prefixLines(String input, String prefix) {
+
+		// パフォーマンスを優先し、LF 以外の行区切り文字を含まない場合は正規表現は使用しない
+		if (containsLineTerminatorOtherThanLF(input)) {
+			return replaceAll(input, "(?m)^", quoteReplacement(prefix));
+		}
+
+		int size = input.length();
+		if (size == 0) {
+			return input;
+		}
+		StringBuilder sb = new StringBuilder(size + (heightOf(input) + 1) * prefix.length());
+		int start = 0;
+		do {
+			int end = input.indexOf('\n', start);
+			sb.append(prefix);
+			if (end == -1) {
+				sb.append(input, start, size);
+				break;
+			}
+			sb.append(input, start, end + 1);
+			start = end + 1;
+		} while (start < size);
+		return sb.toString();
+	}
+
+	/**
+	 * 文字列の各行の先頭に指定したインデントを付加し、スペースのみになった行を空行にします。 末尾の改行の後ろには付加しません。
+	 * <p>
+	 * これは以下の置換と処理内容は同等です。
+	 * 
+	 * <pre>
+	 * input = input.replaceAll(&quot;(?m)&circ;&quot;, Matcher.quoteReplacement(indent));
+	 * input = input.replaceAll(&quot;(?m)&circ; +$&quot;, &quot;&quot;);
+	 * </pre>
+	 * 
+	 * @param input
+	 *            対象文字列
+	 * @param indent
+	 *            行頭に付加するインデント
+	 * @return 結果の文字列
+	 */
+	public static String indentLines(String input, String indent) {
+
+		// パフォーマンスを優先し、LF 以外の行区切り文字を含まない場合は正規表現は使用しない
+		if (containsLineTerminatorOtherThanLF(input)) {
+			return replaceAll(prefixLines(input, indent), "(?m)^ +$", "");
+		}
+
+		boolean blankIndent = isSpaces(indent, 0, indent.length());
+		int size = input.length();
+		if (size == 0) {
+			return input;
+		}
+		StringBuilder sb = new StringBuilder(size + (heightOf(input) + 1) * indent.length());
+		int start = 0;
+		do {
+			int end = input.indexOf('\n', start);
+			int lineEnd = (end == -1) ? size : end;
+			// インデントを付加してスペースのみになる行は空行にする
+			if (!blankIndent || !isSpaces(input, start, lineEnd)) {
+				sb.append(indent);
+				sb.append(input, start, lineEnd);
+			}
+			if (end == -1) {
+				break;
+			}
+			sb.append('\n');
+			start = end + 1;
+		} while (start < size);
+		return sb.toString();
+	}
+
+	/**
+	 * 文字列の指定した範囲がスペースのみか判定します。
+	 * 
+	 * @param str
+	 *            文字列
+	 * @param start
+	 *            開始位置
+	 * @param end
+	 *            終了位置
+	 * @return スペースのみ（空の場合を含む）の場合は true
+	 */
+	private static boolean isSpaces(String str, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (str.charAt(i) != ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 正規表現の MULTILINE モードで行区切りとして扱われる LF 以外の文字を含むか判定します。
+	 * 
+	 * @param str
+	 *            文字列
+	 * @return CR、NEL、LS、PS のいずれかを含む場合は true
+	 */
+	private static boolean containsLineTerminatorOtherThanLF(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * 文字列の高さ（行数）を求めます。 この値は文字列中に含まれる改行（LF）の数と等価です。
 	 * 
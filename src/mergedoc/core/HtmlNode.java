@@ -0,0 +1,712 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.jsoup.parser.Tag;
+
+/**
+ * {@link JavadocHtmlParser} が生成する HTML ノードです。
+ * <p>
+ * Jsoup の Node と比べて機能を API ドキュメントの解析に必要なものに絞っています。html()、outerHtml()、text()
+ * の結果と、select() に相当する {@link Query} の検索結果は Jsoup 1.10.1 と同じになるようにしています。
+ *
+ * @author Shinji Kashihara
+ */
+final class HtmlNode {
+
+	/** 要素ノード */
+	static final int ELEMENT = 1;
+
+	/** テキストノード */
+	static final int TEXT = 2;
+
+	/** コメントノード */
+	static final int COMMENT = 3;
+
+	/** script 要素内のデータノード */
+	static final int DATA = 4;
+
+	/** 値の無い属性を省略形で出力する属性名（Jsoup と同じ） */
+	private static final String[] BOOLEAN_ATTRIBUTES = { "allowfullscreen", "async", "autofocus", "checked",
+			"compact", "declare", "default", "defer", "disabled", "formnovalidate", "hidden", "inert", "ismap",
+			"itemscope", "multiple", "muted", "nohref", "noresize", "noshade", "novalidate", "nowrap", "open",
+			"readonly", "required", "reversed", "seamless", "selected", "sortable", "truespeed", "typemustmatch" };
+
+	/** 子ノードが無い場合のリスト */
+	private static final List<HtmlNode> NO_CHILDREN = new ArrayList<HtmlNode>(0);
+
+	/** ノード種別 */
+	final int type;
+
+	/** タグ。要素ノード以外は null。 */
+	final Tag tag;
+
+	/** タグ名。要素ノード以外は null。 */
+	final String name;
+
+	/** 属性名と属性値の配列。属性名は HTML に記述されたまま。値の無い属性の値は null。要素ノード以外は null。 */
+	final String[] attributes;
+
+	/** 属性名を小文字にして出力する場合は true */
+	private final boolean lowerCaseKeys;
+
+	/** テキスト、コメント、データの内容。要素ノードは null。 */
+	final String data;
+
+	/** 親ノード */
+	private HtmlNode parent;
+
+	/** 子ノードのリスト */
+	private List<HtmlNode> children = NO_CHILDREN;
+
+	/** 親ノード内での位置 */
+	private int siblingIndex;
+
+	/**
+	 * 要素ノードを作成します。
+	 *
+	 * @param name
+	 *            タグ名（小文字）
+	 * @param attributes
+	 *            属性名と属性値の配列
+	 */
+	HtmlNode(String name, String[] attributes) {
+		this(name, attributes, false);
+	}
+
+	/**
+	 * 要素ノードを作成します。
+	 *
+	 * @param name
+	 *            タグ名（小文字）
+	 * @param attributes
+	 *            属性名と属性値の配列
+	 * @param lowerCaseKeys
+	 *            属性名を小文字にして出力する場合は true
+	 */
+	HtmlNode(String name, String[] attributes, boolean lowerCaseKeys) {
+		this.type = ELEMENT;
+		this.tag = Tag.valueOf(name);
+		this.name = name;
+		this.attributes = attributes;
+		this.lowerCaseKeys = lowerCaseKeys;
+		this.data = null;
+	}
+
+	/**
+	 * 要素以外のノードを作成します。
+	 *
+	 * @param type
+	 *            ノード種別
+	 * @param data
+	 *            内容
+	 */
+	HtmlNode(int type, String data) {
+		this.type = type;
+		this.tag = null;
+		this.name = null;
+		this.attributes = null;
+		this.lowerCaseKeys = false;
+		this.data = data;
+	}
+
+	/**
+	 * 要素ノードか判定します。
+	 *
+	 * @param tagName
+	 *            タグ名
+	 * @return 指定したタグ名の要素ノードの場合は true
+	 */
+	boolean is(String tagName) {
+		return type == ELEMENT && name.equals(tagName);
+	}
+
+	/**
+	 * 親ノードを取得します。
+	 *
+	 * @return 親ノード。無い場合は null。
+	 */
+	HtmlNode parent() {
+		return parent;
+	}
+
+	/**
+	 * 子ノードのリストを取得します。
+	 *
+	 * @return 子ノードのリスト
+	 */
+	List<HtmlNode> children() {
+		return children;
+	}
+
+	/**
+	 * 子ノードを末尾に追加します。
+	 *
+	 * @param child
+	 *            子ノード
+	 */
+	void appendChild(HtmlNode child) {
+		if (child.parent != null) {
+			child.parent.removeChild(child);
+		}
+		if (children == NO_CHILDREN) {
+			children = new ArrayList<HtmlNode>(4);
+		}
+		child.parent = this;
+		child.siblingIndex = children.size();
+		children.add(child);
+	}
+
+	/**
+	 * 子ノードを削除します。
+	 *
+	 * @param child
+	 *            子ノード
+	 */
+	private void removeChild(HtmlNode child) {
+		children.remove(child.siblingIndex);
+		for (int i = child.siblingIndex; i < children.size(); i++) {
+			children.get(i).siblingIndex = i;
+		}
+		child.parent = null;
+	}
+
+	/**
+	 * このノードを別のノードに置き換えます。
+	 *
+	 * @param in
+	 *            置き換え後のノード
+	 */
+	void replaceWith(HtmlNode in) {
+		if (in.parent != null) {
+			in.parent.removeChild(in);
+		}
+		parent.children.set(siblingIndex, in);
+		in.parent = parent;
+		in.siblingIndex = siblingIndex;
+		parent = null;
+	}
+
+	/**
+	 * 次の兄弟要素を取得します。
+	 *
+	 * @return 次の兄弟要素。無い場合は null。
+	 */
+	HtmlNode nextElementSibling() {
+		if (parent == null) {
+			return null;
+		}
+		List<HtmlNode> siblings = parent.children;
+		for (int i = siblingIndex + 1; i < siblings.size(); i++) {
+			HtmlNode node = siblings.get(i);
+			if (node.type == ELEMENT) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 属性を持つか判定します。大文字小文字は区別しません。
+	 *
+	 * @param key
+	 *            属性名
+	 * @return 属性を持つ場合は true
+	 */
+	boolean hasAttr(String key) {
+		return indexOfAttr(key, true) != -1;
+	}
+
+	/**
+	 * 属性値を取得します。大文字小文字は区別しません。
+	 *
+	 * @param key
+	 *            属性名
+	 * @return 属性値。属性が無い場合は空文字。
+	 */
+	String attr(String key) {
+		return valueAt(indexOfAttr(key, true));
+	}
+
+	private int indexOfAttr(String key, boolean ignoreCase) {
+		if (attributes != null) {
+			for (int i = 0; i < attributes.length; i += 2) {
+				if (ignoreCase ? attributes[i].equalsIgnoreCase(key) : attributes[i].equals(key)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private String valueAt(int i) {
+		return (i == -1 || attributes[i + 1] == null) ? "" : attributes[i + 1];
+	}
+
+	/**
+	 * class 属性に指定したクラス名が含まれるか判定します。クラス名の大文字小文字は区別しません。 Jsoup と同じく、属性名が
+	 * class と小文字で記述されている場合のみ判定します。
+	 *
+	 * @param className
+	 *            クラス名
+	 * @return 含まれる場合は true
+	 */
+	boolean hasClass(String className) {
+		String classAttr = valueAt(indexOfAttr("class", false));
+		int len = classAttr.length();
+		int wantLen = className.length();
+		if (len == 0 || len < wantLen) {
+			return false;
+		}
+		if (len == wantLen) {
+			return className.equalsIgnoreCase(classAttr);
+		}
+		boolean inClass = false;
+		int start = 0;
+		for (int i = 0; i < len; i++) {
+			if (Character.isWhitespace(classAttr.charAt(i))) {
+				if (inClass) {
+					if (i - start == wantLen && classAttr.regionMatches(true, start, className, 0, wantLen)) {
+						return true;
+					}
+					inClass = false;
+				}
+			} else if (!inClass) {
+				inClass = true;
+				start = i;
+			}
+		}
+		return inClass && len - start == wantLen && classAttr.regionMatches(true, start, className, 0, wantLen);
+	}
+
+	/**
+	 * 属性が同じか判定します。属性の順序は区別せず、属性名の大文字小文字は区別します。
+	 *
+	 * @param other
+	 *            比較する要素ノード
+	 * @return 属性が同じ場合は true
+	 */
+	boolean hasSameAttributes(HtmlNode other) {
+		int size = (attributes == null) ? 0 : attributes.length;
+		int otherSize = (other.attributes == null) ? 0 : other.attributes.length;
+		if (size != otherSize) {
+			return false;
+		}
+		for (int i = 0; i < size; i += 2) {
+			int j = other.indexOfAttr(attributes[i], false);
+			if (j == -1 || !valueAt(i).equals(other.valueAt(j))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 子ノードの HTML を取得します。Jsoup の Element#html() と同じく整形し、前後の空白を除去します。
+	 *
+	 * @param indentAmount
+	 *            インデント幅
+	 * @return HTML
+	 */
+	String html(int indentAmount) {
+		StringBuilder accum = new StringBuilder();
+		for (HtmlNode child : children) {
+			child.outerHtml(accum, 0, indentAmount);
+		}
+		return accum.toString().trim();
+	}
+
+	/**
+	 * このノードの HTML を取得します。Jsoup の Node#outerHtml() と同じく整形します。
+	 *
+	 * @param indentAmount
+	 *            インデント幅
+	 * @return HTML
+	 */
+	String outerHtml(int indentAmount) {
+		StringBuilder accum = new StringBuilder();
+		outerHtml(accum, 0, indentAmount);
+		return accum.toString();
+	}
+
+	private void outerHtml(StringBuilder accum, int depth, int indentAmount) {
+		switch (type) {
+		case TEXT:
+			if (siblingIndex == 0 && parent != null && parent.tag.formatAsBlock() && !isBlank(data)) {
+				indent(accum, depth, indentAmount);
+			}
+			escape(accum, data, false, parent != null && !parent.preserveWhitespace());
+			return;
+		case COMMENT:
+			indent(accum, depth, indentAmount);
+			accum.append("<!--").append(data).append("-->");
+			return;
+		case DATA:
+			accum.append(data);
+			return;
+		default:
+			break;
+		}
+
+		// 開始タグ
+		if ((tag.formatAsBlock() || (parent != null && parent.tag.formatAsBlock())) && accum.length() > 0) {
+			indent(accum, depth, indentAmount);
+		}
+		accum.append('<').append(name);
+		if (attributes != null) {
+			for (int i = 0; i < attributes.length; i += 2) {
+				String key = lowerCaseKeys ? attributes[i].toLowerCase() : attributes[i];
+				String value = attributes[i + 1];
+				accum.append(' ').append(key);
+				if (value != null && !((value.isEmpty() || value.equalsIgnoreCase(key))
+						&& Arrays.binarySearch(BOOLEAN_ATTRIBUTES, key) >= 0)) {
+					accum.append("=\"");
+					escape(accum, value, true, false);
+					accum.append('"');
+				}
+			}
+		}
+		if (children.isEmpty() && tag.isSelfClosing()) {
+			accum.append('>');
+			return;
+		}
+		accum.append('>');
+
+		// 子ノード
+		for (HtmlNode child : children) {
+			child.outerHtml(accum, depth + 1, indentAmount);
+		}
+
+		// 終了タグ
+		if (!children.isEmpty() && tag.formatAsBlock()) {
+			indent(accum, depth, indentAmount);
+		}
+		accum.append("</").append(name).append('>');
+	}
+
+	/**
+	 * 空白を保持する要素か判定します。Jsoup と同じく親要素までを判定します。
+	 *
+	 * @return 空白を保持する場合は true
+	 */
+	private boolean preserveWhitespace() {
+		return type == ELEMENT
+				&& (tag.preserveWhitespace() || (parent != null && parent.tag.preserveWhitespace()));
+	}
+
+	/**
+	 * 改行とインデントを追加します。
+	 */
+	private static void indent(StringBuilder accum, int depth, int indentAmount) {
+		accum.append('\n');
+		for (int i = depth * indentAmount; i > 0; i--) {
+			accum.append(' ');
+		}
+	}
+
+	/**
+	 * 文字列を HTML エスケープして追加します。出力文字セットは UTF-8 とします。
+	 *
+	 * @param accum
+	 *            追加先
+	 * @param string
+	 *            文字列
+	 * @param inAttribute
+	 *            属性値の場合は true
+	 * @param normaliseWhite
+	 *            連続する空白を 1 個のスペースにする場合は true
+	 */
+	private static void escape(StringBuilder accum, String string, boolean inAttribute, boolean normaliseWhite) {
+		boolean lastWasWhite = false;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (normaliseWhite) {
+				if (isWhitespace(c)) {
+					if (!lastWasWhite) {
+						accum.append(' ');
+						lastWasWhite = true;
+					}
+					continue;
+				}
+				lastWasWhite = false;
+			}
+			switch (c) {
+			case '&':
+				accum.append("&amp;");
+				break;
+			case '\u00A0':
+				accum.append("&nbsp;");
+				break;
+			case '<':
+				accum.append(inAttribute ? "<" : "&lt;");
+				break;
+			case '>':
+				accum.append(inAttribute ? ">" : "&gt;");
+				break;
+			case '"':
+				accum.append(inAttribute ? "&quot;" : "\"");
+				break;
+			default:
+				accum.append(c);
+			}
+		}
+	}
+
+	/**
+	 * テキストを取得します。Jsoup の Element#text() と同じく空白を正規化し、ブロック要素と br の前にスペースを入れます。
+	 *
+	 * @return テキスト
+	 */
+	String text() {
+		StringBuilder accum = new StringBuilder();
+		appendText(accum);
+		return accum.toString().trim();
+	}
+
+	private void appendText(StringBuilder accum) {
+		if (type == TEXT) {
+			if (parent != null && parent.preserveWhitespace()) {
+				accum.append(data);
+			} else {
+				appendNormalisedText(accum, data);
+			}
+		} else if (type == ELEMENT) {
+			if (accum.length() > 0 && (tag.isBlock() || name.equals("br")) && !lastCharIsSpace(accum)) {
+				accum.append(' ');
+			}
+			for (HtmlNode child : children) {
+				child.appendText(accum);
+			}
+		}
+	}
+
+	private static void appendNormalisedText(StringBuilder accum, String string) {
+		boolean stripLeading = lastCharIsSpace(accum);
+		boolean lastWasWhite = false;
+		boolean reachedNonWhite = false;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (isWhitespace(c)) {
+				if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+					continue;
+				}
+				accum.append(' ');
+				lastWasWhite = true;
+			} else {
+				accum.append(c);
+				lastWasWhite = false;
+				reachedNonWhite = true;
+			}
+		}
+	}
+
+	private static boolean lastCharIsSpace(StringBuilder sb) {
+		return sb.length() != 0 && sb.charAt(sb.length() - 1) == ' ';
+	}
+
+	/**
+	 * HTML の空白文字か判定します。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 空白文字の場合は true
+	 */
+	static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * 空白文字のみの文字列か判定します。
+	 *
+	 * @param s
+	 *            文字列
+	 * @return 空白文字のみの場合は true
+	 */
+	static boolean isBlank(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (!isWhitespace(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 要素を検索します。Jsoup の Elements#select(String) と同じく、各ルート要素自身とその子孫を文書順に検索し、
+	 * 重複を除いた結果を返します。
+	 *
+	 * @param roots
+	 *            ルート要素のリスト
+	 * @param query
+	 *            検索条件
+	 * @return 検索結果
+	 */
+	static List<HtmlNode> select(List<HtmlNode> roots, Query query) {
+		if (roots.size() == 1) {
+			return roots.get(0).select(query);
+		}
+		List<HtmlNode> result = new ArrayList<HtmlNode>();
+		IdentityHashMap<HtmlNode, Boolean> seen = new IdentityHashMap<HtmlNode, Boolean>();
+		for (HtmlNode root : roots) {
+			for (HtmlNode el : root.select(query)) {
+				if (seen.put(el, Boolean.TRUE) == null) {
+					result.add(el);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * このノードをルートとして要素を検索します。
+	 *
+	 * @param query
+	 *            検索条件
+	 * @return 検索結果
+	 */
+	List<HtmlNode> select(Query query) {
+		List<HtmlNode> result = new ArrayList<HtmlNode>();
+		collect(this, query, result);
+		return result;
+	}
+
+	/**
+	 * このノードをルートとして最初に見つかった要素を取得します。
+	 *
+	 * @param query
+	 *            検索条件
+	 * @return 最初の要素。無い場合は null。
+	 */
+	HtmlNode selectFirst(Query query) {
+		return findFirst(this, query);
+	}
+
+	private void collect(HtmlNode root, Query query, List<HtmlNode> result) {
+		if (type != ELEMENT) {
+			return;
+		}
+		if (query.matches(root, this)) {
+			result.add(this);
+		}
+		for (HtmlNode child : children) {
+			child.collect(root, query, result);
+		}
+	}
+
+	private HtmlNode findFirst(HtmlNode root, Query query) {
+		if (type != ELEMENT) {
+			return null;
+		}
+		if (query.matches(root, this)) {
+			return this;
+		}
+		for (HtmlNode child : children) {
+			HtmlNode found = child.findFirst(root, query);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 要素の検索条件です。
+	 * <p>
+	 * "tag.class[attr]" 形式の単純セレクタを空白（子孫結合子）でつないだものを "," で区切って指定します。
+	 * Jsoup と同じく、最も左の単純セレクタはルート要素自身にも一致し、それ以外はルート要素の子孫にのみ一致します。
+	 */
+	static final class Query {
+
+		/** 選択肢ごとの単純セレクタの配列 */
+		private final Simple[][] groups;
+
+		/**
+		 * コンストラクタです。
+		 *
+		 * @param query
+		 *            検索条件文字列
+		 */
+		Query(String query) {
+			String[] groupStrs = query.split("\\s*,\\s*");
+			groups = new Simple[groupStrs.length][];
+			for (int i = 0; i < groupStrs.length; i++) {
+				String[] simpleStrs = groupStrs[i].trim().split("\\s+");
+				groups[i] = new Simple[simpleStrs.length];
+				for (int j = 0; j < simpleStrs.length; j++) {
+					groups[i][j] = new Simple(simpleStrs[j]);
+				}
+			}
+		}
+
+		boolean matches(HtmlNode root, HtmlNode el) {
+			for (Simple[] group : groups) {
+				if (matches(root, el, group, group.length - 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean matches(HtmlNode root, HtmlNode el, Simple[] group, int index) {
+			if (!group[index].matches(el)) {
+				return false;
+			}
+			if (index == 0) {
+				return true;
+			}
+			if (el == root) {
+				return false;
+			}
+			for (HtmlNode p = el.parent; p != null; p = p.parent) {
+				if (matches(root, p, group, index - 1)) {
+					return true;
+				}
+				if (p == root) {
+					break;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * "tag.class[attr]" 形式の単純セレクタです。各部分は省略できます。
+	 */
+	private static final class Simple {
+
+		private final String tagName;
+		private final String className;
+		private final String attrName;
+
+		Simple(String s) {
+			int attrPos = s.indexOf('[');
+			if (attrPos != -1) {
+				attrName = s.substring(attrPos + 1, s.indexOf(']', attrPos));
+				s = s.substring(0, attrPos);
+			} else {
+				attrName = null;
+			}
+			int classPos = s.indexOf('.');
+			if (classPos != -1) {
+				className = s.substring(classPos + 1);
+				s = s.substring(0, classPos);
+			} else {
+				className = null;
+			}
+			tagName = s.isEmpty() ? null : s;
+		}
+
+		boolean matches(HtmlNode el) {
+			return (tagName == null || el.name.equals(tagName)) && (className == null || el.hasClass(className))
+					&& (attrName == null || el.hasAttr(attrName));
+		}
+	}
+}
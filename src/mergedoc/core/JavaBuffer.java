@@ -8,8 +8,6 @@ package mergedoc.core;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -33,14 +31,20 @@ public class JavaBuffer {
 	/** Java ソース文字列 */
 	private final String source;
 
-	/** ブロックコメントのパターン */
-	private static final Pattern commentPattern = PatternCache.getPattern("(?sm)^ *?/\\*\\*.*?\\*/ *?\n");
+	/** ブロックコメントのトークンリスト */
+	private final List<JavaSourceLexer.CommentToken> comments;
 
-	/** ブロックコメントのマッチャー */
-	private final Matcher commentMatcher;
+	/** 字句解析器 */
+	private final JavaSourceLexer lexer;
+
+	/** 現在位置のブロックコメントのインデックス */
+	private int commentIndex = -1;
+
+	/** 出力バッファにソースを追加済みの位置 */
+	private int appendPosition;
 
 	/** 出力バッファ */
-	private final StringBuffer outputBuffer = new StringBuffer();
+	private final StringBuilder outputBuffer;
 
 	/** クラス名と終了位置を保持するクラス */
 	private static class ClassBlock {
@@ -74,7 +78,9 @@ public class JavaBuffer {
 		this.classKind = classKind;
 		this.className = className;
 		this.source = setupDummyComment(javaSource);
-		commentMatcher = commentPattern.matcher(source);
+		this.lexer = new JavaSourceLexer(source, DUMMY_COMMENT);
+		this.comments = lexer.getComments();
+		this.outputBuffer = new StringBuilder(source.length() + source.length() / 4);
 
 		// トップクラスをクラススタックにプッシュ
 		ClassBlock cb = new ClassBlock(className, source.length());
@@ -222,11 +228,16 @@ public class JavaBuffer {
 		}
 
 		// ダミー挿入位置リストを元に、ダミー Javadoc コメントをソースに挿入
-		StringBuilder sb = new StringBuilder(src);
-		for (int i = dummyInsertPositions.size() - 1; i >= 0; i--) {
-			int pos = dummyInsertPositions.get(i);
-			sb.insert(pos, DUMMY_COMMENT);
+		if (dummyInsertPositions.isEmpty()) {
+			return src;
 		}
+		StringBuilder sb = new StringBuilder(src.length() + dummyInsertPositions.size() * DUMMY_COMMENT.length());
+		int prev = 0;
+		for (int pos : dummyInsertPositions) {
+			sb.append(src, prev, pos).append(DUMMY_COMMENT);
+			prev = pos;
+		}
+		sb.append(src, prev, src.length());
 		return sb.toString();
 	}
 
@@ -238,31 +249,26 @@ public class JavaBuffer {
 	 */
 	public boolean nextComment() {
 
-		while (commentMatcher.find()) {
+		while (++commentIndex < comments.size()) {
+			JavaSourceLexer.CommentToken token = comments.get(commentIndex);
 
 			// 下記のようなコメントは無視して次へ
 			// /*******************/
 			// JDK1.4 java.io.ObjectStreamConstants とか
-			String sourceComment = getSourceComment();
-			if (FastStringUtils.matches(sourceComment, "\\s*/\\*+/\\s*\n")) {
+			if (token.separator) {
 				continue;
 			}
 
 			// ダミーコメントの場合は削除して次へ
-			if (sourceComment.contains(DUMMY_COMMENT)) {
+			if (token.dummy) {
 				getSignature(); // クラススタック操作のため呼び出す
-				commentMatcher.appendReplacement(outputBuffer, "");
+				replaceComment("");
 				continue;
 			}
 
 			// 次のコメントとの間が空白の場合は次へコメントへ
-			Matcher nextMat = commentPattern.matcher(source);
-			int currentEnd = commentMatcher.end();
-			if (nextMat.find(currentEnd)) {
-				String c2c = source.substring(currentEnd, nextMat.start());
-				if (FastStringUtils.matches(c2c, "\\s*")) {
-					continue;
-				}
+			if (token.followedByComment) {
+				continue;
 			}
 
 			return true;
@@ -275,8 +281,21 @@ public class JavaBuffer {
 	 * 
 	 * @return 現在位置のブロックコメント
 	 */
-	private String getSourceComment() {
-		return commentMatcher.group();
+	String getSourceComment() {
+		JavaSourceLexer.CommentToken token = comments.get(commentIndex);
+		return source.substring(token.start, token.end);
+	}
+
+	/**
+	 * 現在位置のブロックコメントを置換して出力バッファに追加します。
+	 * 
+	 * @param replacement
+	 *            置換後の文字列
+	 */
+	private void replaceComment(String replacement) {
+		JavaSourceLexer.CommentToken token = comments.get(commentIndex);
+		outputBuffer.append(source, appendPosition, token.start).append(replacement);
+		appendPosition = token.end;
 	}
 
 	/**
@@ -286,16 +305,10 @@ public class JavaBuffer {
 	 */
 	public Signature getSignature() {
 
-		int commentEndPos = commentMatcher.end();
-		String commentEndToEOF = source.substring(commentEndPos, source.length());
-
-		// シグネチャを取得しやすくするためにアノテーション宣言を除去
-		commentEndToEOF = FastStringUtils.replaceFirst(commentEndToEOF, "(?s)^(\\s*@[\\w]+\\s*\\(.*?\\))*\\s*", "");
-
-		Pattern sigPattern = PatternCache.getPattern("(?s)(.+?)(throws|\\{|\\=|;|,\\s*/\\*|\\})");
-		Matcher sigMatcher = sigPattern.matcher(commentEndToEOF);
+		JavaSourceLexer.CommentToken token = comments.get(commentIndex);
+		int commentEndPos = token.end;
 
-		if (sigMatcher.find()) {
+		if (token.declEnd != -1) {
 
 			// インナークラスの終端より後の場合はクラススタックを減らす
 			ClassBlock classBlock = classStack.peek();
@@ -306,7 +319,7 @@ public class JavaBuffer {
 
 			// シグネチャ作成。Javadoc コメントとシグネチャの間に
 			// ブロックコメントがある場合はそれを取り除く
-			String sigStr = sigMatcher.group(1);
+			String sigStr = source.substring(token.declStart, token.declEnd);
 			sigStr = FastStringUtils.replaceFirst(sigStr, "(?s)/\\*[^\\*].*?\\*/\\s*", "");
 			if (classKind.equals("@interface")) {
 				sigStr = sigStr.replace("()", "");
@@ -316,7 +329,7 @@ public class JavaBuffer {
 			// インナークラス宣言の場合はクラススタックに追加
 			if (sig.isDeclareInnerClass()) {
 				String name = sig.getClassName();
-				int end = searchEndOfInner(commentEndToEOF, name);
+				int end = searchEndOfInner(token, name);
 				classBlock = new ClassBlock(name, end);
 				classStack.push(classBlock);
 			}
@@ -324,34 +337,31 @@ public class JavaBuffer {
 			return sig;
 		}
 
-		logger.warn("Javadoc コメントの後のシグネチャを取得できませんでした。\n" + commentEndToEOF);
+		logger.warn("Javadoc コメントの後のシグネチャを取得できませんでした。\n" + source.substring(token.declStart));
 		return null;
 	}
 
 	/**
 	 * インナークラスの終了位置を取得します。
+	 * <p>
+	 * 終了位置はアノテーション宣言を除去する前のコメント終了位置を基準にするため、
+	 * 除去したアノテーションの長さだけ実際の閉じ中括弧より前になります。
 	 * 
-	 * @param currentToEnd
-	 *            ソースの現在位置から最後までの文字列
+	 * @param token
+	 *            インナークラス宣言の Javadoc コメント
 	 * @param iClassName
 	 *            インナークラス名
 	 * @return インナークラスの終了位置
 	 */
-	private int searchEndOfInner(String currentToEnd, String iClassName) {
-
-		int nestLevel = 1;
-		for (int i = currentToEnd.indexOf('{') + 1; i < currentToEnd.length(); i++) {
-			char c = currentToEnd.charAt(i);
-			if (c == '{')
-				nestLevel++;
-			if (c == '}')
-				nestLevel--;
-			if (nestLevel == 0) {
-				return commentMatcher.end() + i;
-			}
+	private int searchEndOfInner(JavaSourceLexer.CommentToken token, String iClassName) {
+
+		int close = lexer.searchCloseBrace(token.declStart);
+		if (close != -1) {
+			return close - (token.declStart - token.end);
 		}
 
-		logger.warn("インナークラス " + className + "#" + iClassName + " の終了位置が検出できませんでした。\n" + currentToEnd);
+		logger.warn("インナークラス " + className + "#" + iClassName + " の終了位置が検出できませんでした。\n"
+				+ source.substring(token.declStart));
 		return -1;
 	}
 
@@ -362,18 +372,18 @@ public class JavaBuffer {
 	 *            シグネチャ
 	 * @param comment
 	 *            ローカライズされたブロックコメント
+	 * @return ブロックコメントを置き換えた場合は true
 	 */
-	public void setLocalizedComment(Signature sig, Comment comment) {
+	public boolean setLocalizedComment(Signature sig, Comment comment) {
 
 		if (comment == null)
-			return;
+			return false;
 		String srcComment = getSourceComment();
 		// inheritDocタグがあった場合は無視します。
 		if (srcComment.contains("{@inheritDoc}")){
-			return;
+			return false;
 		}
-		comment.setSourceBody(srcComment);
-		String docComment = comment.buildComment();
+		String docComment = CommentCache.build(comment, srcComment);
 
 		// debug setLocalizedComment シグネチャ、コメントの確認
 		// log.debug("シグネチャ: " + sig);
@@ -381,9 +391,9 @@ public class JavaBuffer {
 		// log.debug("日本語 API ドキュメントコメント:\n" + docComment + "\n--------------");
 
 		if (docComment == null || docComment.length() == 0)
-			return;
-		docComment = FastStringUtils.quoteReplacement(docComment);
-		commentMatcher.appendReplacement(outputBuffer, docComment);
+			return false;
+		replaceComment(docComment);
+		return true;
 	}
 
 	/**
@@ -392,7 +402,8 @@ public class JavaBuffer {
 	 * @return ブロックコメント置換後の Java ソース文字列
 	 */
 	public String finishToString() {
-		commentMatcher.appendTail(outputBuffer);
+		outputBuffer.append(source, appendPosition, source.length());
+		appendPosition = source.length();
 		String str = outputBuffer.toString();
 		return str;
 	}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Java ソースの字句解析器です。
+ * <p>
+ * ソースを先頭から 1 回だけ走査し、Javadoc コメントの位置、各コメントに続く宣言の位置、 対応する中括弧の位置を表にします。JavaBuffer
+ * はこの表を順にたどるため、コメントごとに ソースの残り全体を切り出して正規表現を適用する必要がなく、大きなソースでも処理時間は
+ * ソースの長さに比例します。
+ * <p>
+ * 各位置の判定は従来の正規表現と同じ結果になるようにしています。
+ *
+ * <pre>
+ * コメント      (?sm)^ *?/\*\*.*?\*&#47; *?\n
+ * 宣言前の除去  (?s)^(\s*@[\w]+\s*\(.*?\))*\s*
+ * 宣言          (?s)(.+?)(throws|\{|\=|;|,\s*&#47;\*|\})
+ * </pre>
+ *
+ * @author Shinji Kashihara
+ */
+class JavaSourceLexer {
+
+	/** Javadoc コメントのトークンです。 */
+	static class CommentToken {
+
+		/** コメント開始位置（行頭） */
+		final int start;
+
+		/** コメント終了位置（改行の次） */
+		final int end;
+
+		/** 宣言開始位置（アノテーション除去後） */
+		int declStart;
+
+		/** 宣言終了位置。宣言が無い場合は -1。 */
+		int declEnd = -1;
+
+		/** /*****&#47; のような区切りコメントの場合は true */
+		boolean separator;
+
+		/** ダミーコメントを含む場合は true */
+		boolean dummy;
+
+		/** 次のコメントとの間が空白のみの場合は true */
+		boolean followedByComment;
+
+		CommentToken(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/** Java ソース文字列 */
+	private final String source;
+
+	/** ソース文字列の長さ */
+	private final int length;
+
+	/** Javadoc コメントのトークンリスト */
+	private final List<CommentToken> comments = new ArrayList<CommentToken>();
+
+	/** 開き中括弧の位置（昇順） */
+	private int[] openBraces;
+
+	/** 開き中括弧に対応する閉じ中括弧の位置。対応が無い場合は -1。 */
+	private int[] closeBraces;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param source
+	 *            Java ソース文字列
+	 * @param dummyComment
+	 *            ダミーコメント文字列
+	 */
+	JavaSourceLexer(String source, String dummyComment) {
+		this.source = source;
+		this.length = source.length();
+		scanComments();
+		scanBraces();
+		markComments(dummyComment);
+	}
+
+	/**
+	 * Javadoc コメントのトークンリストを取得します。
+	 *
+	 * @return Javadoc コメントのトークンリスト
+	 */
+	List<CommentToken> getComments() {
+		return comments;
+	}
+
+	/**
+	 * 行頭から始まる Javadoc コメントを走査します。
+	 * <p>
+	 * コメントの終端は、開始以降で最初に現れる「*&#47; の後に空白と改行が続く位置」です。
+	 * 終端の探索位置は単調に増加するため、走査全体でソースを 1 回読むだけで済みます。
+	 */
+	private void scanComments() {
+
+		int pos = 0;
+		while (pos < length) {
+
+			// 行頭の空白の後に /** がある行を探す
+			int bodyStart = -1;
+			int lineStart = pos;
+			while (lineStart < length) {
+				int i = lineStart;
+				while (i < length && source.charAt(i) == ' ') {
+					i++;
+				}
+				if (source.startsWith("/**", i)) {
+					bodyStart = i + 3;
+					break;
+				}
+				lineStart = nextLineStart(i);
+			}
+			if (bodyStart == -1) {
+				break;
+			}
+
+			// 終端が無い場合は以降のコメントにも終端は無い
+			int end = searchCommentEnd(bodyStart);
+			if (end == -1) {
+				break;
+			}
+			CommentToken token = new CommentToken(lineStart, end);
+			scanDeclaration(token);
+			comments.add(token);
+			pos = end;
+		}
+	}
+
+	/**
+	 * 指定位置以降で最初の行頭位置を取得します。行区切りの判定は正規表現の MULTILINE モードに合わせています。
+	 *
+	 * @param from
+	 *            開始位置
+	 * @return 行頭位置。無い場合はソースの長さ。
+	 */
+	private int nextLineStart(int from) {
+		for (int i = from; i < length; i++) {
+			char c = source.charAt(i);
+			if (c == '\n' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return i + 1;
+			}
+			if (c == '\r') {
+				return (i + 1 < length && source.charAt(i + 1) == '\n') ? i + 2 : i + 1;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * コメントの終端を探します。
+	 *
+	 * @param from
+	 *            探索開始位置
+	 * @return 終端の改行の次の位置。無い場合は -1。
+	 */
+	private int searchCommentEnd(int from) {
+		for (int i = source.indexOf("*/", from); i != -1; i = source.indexOf("*/", i + 1)) {
+			int j = i + 2;
+			while (j < length && source.charAt(j) == ' ') {
+				j++;
+			}
+			if (j < length && source.charAt(j) == '\n') {
+				return j + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * コメントに続く宣言の範囲を設定します。
+	 * <p>
+	 * 宣言の前にある括弧付きのアノテーションと空白を読み飛ばし、throws、{、=、;、}、 または後にブロックコメントが続く ,
+	 * の手前までを宣言とします。
+	 *
+	 * @param token
+	 *            コメントトークン
+	 */
+	private void scanDeclaration(CommentToken token) {
+
+		// アノテーション宣言を読み飛ばし
+		int pos = token.end;
+		for (;;) {
+			int i = skipWhitespace(pos);
+			if (i >= length || source.charAt(i) != '@') {
+				break;
+			}
+			int j = i + 1;
+			while (j < length && isWordChar(source.charAt(j))) {
+				j++;
+			}
+			if (j == i + 1) {
+				break;
+			}
+			j = skipWhitespace(j);
+			if (j >= length || source.charAt(j) != '(') {
+				break;
+			}
+			int close = source.indexOf(')', j + 1);
+			if (close == -1) {
+				break;
+			}
+			pos = close + 1;
+		}
+		token.declStart = skipWhitespace(pos);
+
+		// 宣言の終端を探す
+		for (int i = token.declStart + 1; i < length; i++) {
+			char c = source.charAt(i);
+			if (c == '{' || c == '=' || c == ';' || c == '}' || (c == 't' && source.startsWith("throws", i))) {
+				token.declEnd = i;
+				return;
+			}
+			if (c == ',') {
+				int j = skipWhitespace(i + 1);
+				if (source.startsWith("/*", j)) {
+					token.declEnd = i;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * ソース全体の中括弧の対応を走査します。文字列やコメント内の中括弧も区別せずに数えます。
+	 */
+	private void scanBraces() {
+
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if (source.charAt(i) == '{') {
+				count++;
+			}
+		}
+		openBraces = new int[count];
+		closeBraces = new int[count];
+		Arrays.fill(closeBraces, -1);
+
+		int[] stack = new int[count];
+		int depth = 0;
+		for (int i = 0, n = 0; i < length; i++) {
+			char c = source.charAt(i);
+			if (c == '{') {
+				openBraces[n] = i;
+				stack[depth++] = n++;
+			} else if (c == '}' && depth > 0) {
+				closeBraces[stack[--depth]] = i;
+			}
+		}
+	}
+
+	/**
+	 * 区切りコメント、ダミーコメント、直後にコメントが続くコメントに印を付けます。
+	 *
+	 * @param dummyComment
+	 *            ダミーコメント文字列
+	 */
+	private void markComments(String dummyComment) {
+
+		int dummyPos = source.indexOf(dummyComment);
+		for (int n = 0; n < comments.size(); n++) {
+			CommentToken token = comments.get(n);
+			token.separator = isSeparator(token);
+
+			while (dummyPos != -1 && dummyPos < token.start) {
+				dummyPos = source.indexOf(dummyComment, dummyPos + 1);
+			}
+			token.dummy = dummyPos != -1 && dummyPos + dummyComment.length() <= token.end;
+
+			if (n + 1 < comments.size()) {
+				int nextStart = comments.get(n + 1).start;
+				token.followedByComment = skipWhitespace(token.end) >= nextStart;
+			}
+		}
+	}
+
+	/**
+	 * /*****&#47; のような区切りコメントか判定します。
+	 *
+	 * @param token
+	 *            コメントトークン
+	 * @return 区切りコメントの場合は true
+	 */
+	private boolean isSeparator(CommentToken token) {
+
+		int i = skipWhitespace(token.start);
+		if (i >= token.end || source.charAt(i++) != '/') {
+			return false;
+		}
+		int stars = i;
+		while (i < token.end && source.charAt(i) == '*') {
+			i++;
+		}
+		if (i == stars || i >= token.end || source.charAt(i++) != '/') {
+			return false;
+		}
+		for (; i < token.end; i++) {
+			if (!isWhitespace(source.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 指定位置以降で最初に現れる開き中括弧に対応する閉じ中括弧の位置を取得します。
+	 *
+	 * @param from
+	 *            探索開始位置
+	 * @return 閉じ中括弧の位置。無い場合は -1。
+	 */
+	int searchCloseBrace(int from) {
+
+		int n = Arrays.binarySearch(openBraces, from);
+		if (n < 0) {
+			n = -n - 1;
+		}
+		if (n < openBraces.length) {
+			return closeBraces[n];
+		}
+
+		// 開き中括弧が無い場合は最初に対応の無い閉じ中括弧
+		int nestLevel = 1;
+		for (int i = from; i < length; i++) {
+			char c = source.charAt(i);
+			if (c == '{')
+				nestLevel++;
+			if (c == '}')
+				nestLevel--;
+			if (nestLevel == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 指定位置以降で空白以外の文字が現れる位置を取得します。
+	 *
+	 * @param from
+	 *            開始位置
+	 * @return 空白以外の文字の位置。無い場合はソースの長さ。
+	 */
+	private int skipWhitespace(int from) {
+		int i = from;
+		while (i < length && isWhitespace(source.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * 正規表現の \s に該当する文字か判定します。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 空白文字の場合は true
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * 正規表現の \w に該当する文字か判定します。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 単語構成文字の場合は true
+	 */
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+}
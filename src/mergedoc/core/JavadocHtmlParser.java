@@ -0,0 +1,1837 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Entities;
+
+/**
+ * API ドキュメント HTML の軽量パーサです。
+ * <p>
+ * 入力を先頭から 1 回だけ走査して {@link HtmlNode} のツリーを構築します。Jsoup 1.10.1
+ * の字句解析と木構築の規則のうち、Javadoc が出力する HTML に現れる部分だけを実装し、結果のツリーが Jsoup
+ * と同じになるようにしています。フォーム、フレーム、テーブル外への要素の移動、誤った入れ子による要素の付け替えなど、
+ * 実装していない規則が必要になった場合は {@link UnsupportedHtmlException} をスローします。
+ * 呼び出し側はこの例外を受けた場合に Jsoup で解析し直してください。
+ *
+ * @author Shinji Kashihara
+ */
+final class JavadocHtmlParser {
+
+	/** このパーサで解析できない HTML の場合にスローされる例外です。 */
+	static final class UnsupportedHtmlException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedHtmlException(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	/** 解析モード: HTML 文書 */
+	private static final int DOCUMENT = 0;
+
+	/** 解析モード: Jsoup.parse(String) と同じく断片を文書の body として解析 */
+	private static final int BODY_FRAGMENT = 1;
+
+	/** 解析モード: Element#append(String) と同じく断片を要素の子として解析 */
+	private static final int CONTEXT_FRAGMENT = 2;
+
+	// 木構築の状態
+	private static final int INITIAL = 0;
+	private static final int BEFORE_HTML = 1;
+	private static final int BEFORE_HEAD = 2;
+	private static final int IN_HEAD = 3;
+	private static final int HEAD_TEXT = 4;
+	private static final int AFTER_HEAD = 5;
+	private static final int BEFORE_BODY = 6;
+	private static final int IN_BODY = 7;
+	private static final int TEXT = 8;
+	private static final int IN_TABLE = 9;
+	private static final int IN_TABLE_BODY = 10;
+	private static final int IN_ROW = 11;
+	private static final int IN_CELL = 12;
+	private static final int IN_CAPTION = 13;
+	private static final int AFTER_BODY = 14;
+	private static final int AFTER_AFTER_BODY = 15;
+
+	// スコープの種類
+	private static final int DEFAULT_SCOPE = 0;
+	private static final int LIST_ITEM_SCOPE = 1;
+	private static final int BUTTON_SCOPE = 2;
+	private static final int TABLE_SCOPE = 3;
+
+	/** スタックの深さの上限 */
+	private static final int MAX_DEPTH = 256;
+
+	/** 受け付ける DOCTYPE 宣言（Jsoup が quirks モードにしない形式のみ） */
+	private static final Pattern DOCTYPE = Pattern.compile("(?i)\\s+[a-z]+(\\s+public\\s+(\"[^\"]*\"|'[^']*')"
+			+ "(\\s+(\"[^\"]*\"|'[^']*'))?|\\s+system\\s+(\"[^\"]*\"|'[^']*'))?\\s*");
+
+	/** Jsoup の特殊要素 */
+	private static final Set<String> SPECIAL = set("address", "applet", "area", "article", "aside", "base",
+			"basefont", "bgsound", "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup",
+			"command", "dd", "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure",
+			"footer", "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup",
+			"hr", "html", "iframe", "img", "input", "isindex", "li", "link", "listing", "marquee", "menu", "meta",
+			"nav", "noembed", "noframes", "noscript", "object", "ol", "p", "param", "plaintext", "pre", "script",
+			"section", "select", "style", "summary", "table", "tbody", "td", "textarea", "tfoot", "th", "thead",
+			"title", "tr", "ul", "wbr", "xmp");
+
+	/** スコープの境界になる要素 */
+	private static final Set<String> SCOPE_BOUNDARIES = set("applet", "caption", "html", "table", "td", "th",
+			"marquee", "object");
+
+	/** 見出し要素 */
+	private static final Set<String> HEADINGS = set("h1", "h2", "h3", "h4", "h5", "h6");
+
+	/** 開始時に p 要素を閉じる要素 */
+	private static final Set<String> P_CLOSERS = set("address", "article", "aside", "blockquote", "center",
+			"details", "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu",
+			"nav", "ol", "p", "section", "summary", "ul");
+
+	/** 書式要素 */
+	private static final Set<String> FORMATTERS = set("b", "big", "code", "em", "font", "i", "s", "small",
+			"strike", "strong", "tt", "u");
+
+	/** 終了タグで書式要素の付け替えを行う要素 */
+	private static final Set<String> ADOPTION_FORMATTERS = set("a", "b", "big", "code", "em", "font", "i", "nobr",
+			"s", "small", "strike", "strong", "tt", "u");
+
+	/** 空要素として挿入する書式要素 */
+	private static final Set<String> EMPTY_FORMATTERS = set("area", "br", "embed", "img", "keygen", "wbr");
+
+	/** 空要素として挿入する要素 */
+	private static final Set<String> EMPTY_ELEMENTS = set("base", "basefont", "bgsound", "command", "link", "meta",
+			"param", "source", "track");
+
+	/** head 内の空要素 */
+	private static final Set<String> HEAD_EMPTY_ELEMENTS = set("base", "basefont", "bgsound", "command", "link",
+			"meta");
+
+	/** 断片の先頭に現れた場合に head 要素を作成する開始タグ */
+	private static final Set<String> HEAD_ELEMENTS = set("base", "basefont", "bgsound", "command", "link", "meta",
+			"noframes", "noscript", "script", "style", "title", "html", "head", "body", "frameset");
+
+	/** スコープ内にある場合に終了タグで閉じる要素 */
+	private static final Set<String> END_CLOSERS = set("address", "article", "aside", "blockquote", "button",
+			"center", "details", "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header",
+			"hgroup", "listing", "menu", "nav", "ol", "pre", "section", "summary", "ul");
+
+	/** body 内で無視する開始タグ */
+	private static final Set<String> BODY_IGNORED = set("caption", "col", "colgroup", "frame", "head", "tbody",
+			"td", "tfoot", "th", "thead", "tr");
+
+	/** body 内で現れた場合に解析をあきらめる開始タグ */
+	private static final Set<String> BODY_UNSUPPORTED = set("html", "body", "frameset", "form", "plaintext",
+			"button", "nobr", "applet", "marquee", "object", "input", "image", "isindex", "textarea", "xmp",
+			"iframe", "noembed", "select", "optgroup", "option", "rp", "rt", "math", "svg", "device", "menuitem",
+			"noframes", "style", "title");
+
+	/** 終了タグの前に暗黙に閉じる要素 */
+	private static final Set<String> IMPLIED_END = set("dd", "dt", "li", "option", "optgroup", "p", "rp", "rt");
+
+	/** 文字を挿入するとテーブル外へ移動される要素 */
+	private static final Set<String> TABLE_FOSTER = set("table", "tbody", "tfoot", "thead", "tr");
+
+	/** テーブル構造の開始タグ */
+	private static final Set<String> TABLE_SECTIONS = set("caption", "col", "colgroup", "tbody", "td", "tfoot",
+			"th", "thead", "tr");
+
+	/** 入力 HTML */
+	private final String input;
+
+	/** 入力の長さ */
+	private final int length;
+
+	/** 解析モード */
+	private final int mode;
+
+	/** 断片のコンテキスト要素名。CONTEXT_FRAGMENT 以外は null。 */
+	private final String contextName;
+
+	/** 走査位置 */
+	private int pos;
+
+	/** 未処理の文字 */
+	private final StringBuilder text = new StringBuilder();
+
+	/** 開始タグの後に生テキストとして読む要素名 */
+	private String rawTextEnd;
+
+	/** 自己終了タグの後に処理する終了タグ名 */
+	private String selfClosingEnd;
+
+	/** 木構築の状態 */
+	private int state;
+
+	/** TEXT 状態の後に戻る状態 */
+	private int originalState;
+
+	/** 要素のスタック */
+	private final List<HtmlNode> stack = new ArrayList<HtmlNode>();
+
+	/** アクティブな書式要素のリスト。null はマーカー。 */
+	private final List<HtmlNode> formattingElements = new ArrayList<HtmlNode>();
+
+	/** テーブル外へ移動して挿入する場合は true */
+	private boolean fosterInserts;
+
+	/** 断片のルート要素または body 要素 */
+	private HtmlNode root;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param input
+	 *            入力 HTML
+	 * @param mode
+	 *            解析モード
+	 * @param contextName
+	 *            断片のコンテキスト要素名
+	 */
+	private JavadocHtmlParser(String input, int mode, String contextName) {
+		this.input = input;
+		this.length = input.length();
+		this.mode = mode;
+		this.contextName = contextName;
+		if (mode == CONTEXT_FRAGMENT) {
+			root = new HtmlNode("html", null);
+			stack.add(root);
+			state = IN_BODY;
+		} else {
+			state = (mode == DOCUMENT) ? INITIAL : BEFORE_BODY;
+		}
+	}
+
+	/**
+	 * HTML 文書を解析します。
+	 *
+	 * @param html
+	 *            HTML 文書
+	 * @return body 要素
+	 * @throws UnsupportedHtmlException
+	 *             このパーサで解析できない場合
+	 */
+	static HtmlNode parseDocument(String html) {
+		JavadocHtmlParser parser = new JavadocHtmlParser(html, DOCUMENT, null);
+		parser.run();
+		return parser.root;
+	}
+
+	/**
+	 * HTML 断片を Jsoup.parse(String) と同じく文書として解析します。
+	 *
+	 * @param html
+	 *            HTML 断片
+	 * @return body 要素
+	 * @throws UnsupportedHtmlException
+	 *             このパーサで解析できない場合
+	 */
+	static HtmlNode parseBodyFragment(String html) {
+		JavadocHtmlParser parser = new JavadocHtmlParser(html, BODY_FRAGMENT, null);
+		parser.run();
+		return parser.root;
+	}
+
+	/**
+	 * HTML 断片を Element#append(String) と同じく指定した要素の子として解析します。
+	 *
+	 * @param html
+	 *            HTML 断片
+	 * @param contextName
+	 *            追加先の要素名
+	 * @return ノードのリスト
+	 * @throws UnsupportedHtmlException
+	 *             このパーサで解析できない場合
+	 */
+	static List<HtmlNode> parseFragment(String html, String contextName) {
+		JavadocHtmlParser parser = new JavadocHtmlParser(html, CONTEXT_FRAGMENT, contextName);
+		parser.run();
+		return new ArrayList<HtmlNode>(parser.root.children());
+	}
+
+	private static Set<String> set(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+	private static UnsupportedHtmlException unsupported(String message) {
+		return new UnsupportedHtmlException(message);
+	}
+
+	// -------------------------------------------------------------------------
+	// 字句解析
+
+	/**
+	 * 入力を走査し、トークンごとに木構築を行います。
+	 */
+	private void run() {
+		if (input.indexOf('\0') != -1) {
+			throw unsupported("null character");
+		}
+		while (pos < length) {
+			char c = input.charAt(pos);
+			if (c == '<') {
+				readTagOpen();
+			} else if (c == '&') {
+				pos++;
+				String ref = consumeCharacterReference(-1, false);
+				text.append(ref == null ? "&" : ref);
+			} else {
+				int start = pos;
+				while (pos < length && (c = input.charAt(pos)) != '<' && c != '&') {
+					pos++;
+				}
+				text.append(input, start, pos);
+			}
+			if (rawTextEnd != null) {
+				readRawText();
+			}
+		}
+		flushText();
+		processEof();
+	}
+
+	/**
+	 * 未処理の文字を文字トークンとして処理します。
+	 */
+	private void flushText() {
+		if (text.length() > 0) {
+			String data = text.toString();
+			text.setLength(0);
+			processCharacters(data);
+		}
+	}
+
+	/**
+	 * &lt; から始まる構文を読み込みます。
+	 */
+	private void readTagOpen() {
+		int next = pos + 1;
+		if (next >= length) {
+			text.append('<');
+			pos = next;
+			return;
+		}
+		char c = input.charAt(next);
+		if (c == '!') {
+			pos = next + 1;
+			if (input.startsWith("--", pos)) {
+				readComment();
+			} else if (input.regionMatches(true, pos, "DOCTYPE", 0, 7)) {
+				readDoctype();
+			} else if (pos >= length || input.startsWith("[CDATA[", pos)) {
+				throw unsupported("markup declaration");
+			} else {
+				readBogusComment();
+			}
+		} else if (c == '/') {
+			pos = next + 1;
+			if (pos >= length) {
+				text.append("</");
+				return;
+			}
+			char d = input.charAt(pos);
+			if (isLetter(d)) {
+				readTag(true);
+			} else if (d == '>') {
+				pos++;
+			} else {
+				readBogusComment();
+			}
+		} else if (c == '?') {
+			pos = next;
+			readBogusComment();
+		} else if (isLetter(c)) {
+			pos = next;
+			readTag(false);
+		} else {
+			text.append('<');
+			pos = next;
+		}
+	}
+
+	/**
+	 * コメントを読み込みます。
+	 */
+	private void readComment() {
+		pos += 2;
+		int end = input.indexOf("-->", pos);
+		if (end == -1) {
+			throw unsupported("unterminated comment");
+		}
+		String data = input.substring(pos, end);
+		if ((data.length() > 0 && (data.charAt(0) == '-' || data.charAt(0) == '>')) || data.contains("--!")) {
+			throw unsupported("malformed comment");
+		}
+		pos = end + 3;
+		flushText();
+		processComment(data);
+	}
+
+	/**
+	 * &lt;? などで始まる不正なコメントを &gt; まで読み込みます。
+	 */
+	private void readBogusComment() {
+		int end = input.indexOf('>', pos);
+		if (end == -1) {
+			end = length;
+		}
+		String data = input.substring(pos, end);
+		pos = Math.min(end + 1, length);
+		flushText();
+		processComment(data);
+	}
+
+	/**
+	 * DOCTYPE 宣言を読み込みます。文書の先頭にある標準的な形式のみ受け付けます。
+	 */
+	private void readDoctype() {
+		int end = input.indexOf('>', pos);
+		if (mode != DOCUMENT || state != INITIAL || end == -1
+				|| !DOCTYPE.matcher(input.substring(pos + 7, end)).matches()) {
+			throw unsupported("doctype");
+		}
+		pos = end + 1;
+		flushText();
+		state = BEFORE_HTML;
+	}
+
+	/**
+	 * 開始タグまたは終了タグを読み込みます。
+	 *
+	 * @param end
+	 *            終了タグの場合は true
+	 */
+	private void readTag(boolean end) {
+
+		// タグ名
+		int start = pos;
+		char c;
+		while (pos < length && !isTagNameEnd(c = input.charAt(pos))) {
+			if (c <= ' ') {
+				throw unsupported("control character in tag name");
+			}
+			pos++;
+		}
+		if (pos >= length) {
+			throw unsupported("EOF in tag");
+		}
+		String name = input.substring(start, pos).toLowerCase();
+
+		// 属性
+		List<String> attributes = null;
+		String attrName = null;
+		StringBuilder attrValue = null;
+		boolean emptyValue = false;
+		boolean selfClosing = false;
+
+		final int beforeName = 0, inName = 1, afterName = 2, beforeValue = 3, afterValue = 4, selfClosingTag = 5;
+		c = input.charAt(pos++);
+		int s = (c == '>') ? -1 : (c == '/') ? selfClosingTag : beforeName;
+
+		while (s != -1) {
+			if (pos >= length) {
+				throw unsupported("EOF in tag");
+			}
+			c = input.charAt(pos++);
+			switch (s) {
+			case beforeName:
+			case afterName:
+				if (HtmlNode.isWhitespace(c)) {
+					break;
+				} else if (c == '/') {
+					s = selfClosingTag;
+				} else if (c == '>') {
+					s = -1;
+				} else if (s == afterName && c == '=') {
+					s = beforeValue;
+				} else if (c == '"' || c == '\'' || c == '<' || c == '=') {
+					throw unsupported("invalid attribute name");
+				} else {
+					attributes = addAttribute(attributes, attrName, attrValue, emptyValue, end);
+					attrValue = null;
+					emptyValue = false;
+					pos--;
+					start = pos;
+					while (pos < length && !isAttributeNameEnd(input.charAt(pos))) {
+						pos++;
+					}
+					attrName = input.substring(start, pos);
+					s = inName;
+				}
+				break;
+			case inName:
+				if (HtmlNode.isWhitespace(c)) {
+					s = afterName;
+				} else if (c == '/') {
+					s = selfClosingTag;
+				} else if (c == '=') {
+					s = beforeValue;
+				} else if (c == '>') {
+					s = -1;
+				} else {
+					throw unsupported("invalid attribute name");
+				}
+				break;
+			case beforeValue:
+				if (HtmlNode.isWhitespace(c)) {
+					break;
+				} else if (c == '>') {
+					s = -1;
+				} else if (c == '<' || c == '=' || c == '`') {
+					throw unsupported("invalid attribute value");
+				} else {
+					if (attrValue == null) {
+						attrValue = new StringBuilder();
+					}
+					if (c == '"' || c == '\'') {
+						emptyValue |= readQuotedValue(attrValue, c);
+						s = afterValue;
+					} else {
+						pos--;
+						c = readUnquotedValue(attrValue);
+						s = (c == '>') ? -1 : beforeName;
+					}
+				}
+				break;
+			case afterValue:
+				if (HtmlNode.isWhitespace(c)) {
+					s = beforeName;
+				} else if (c == '/') {
+					s = selfClosingTag;
+				} else if (c == '>') {
+					s = -1;
+				} else {
+					pos--;
+					s = beforeName;
+				}
+				break;
+			default:
+				if (c == '>') {
+					selfClosing = true;
+					s = -1;
+				} else {
+					pos--;
+					s = beforeName;
+				}
+				break;
+			}
+		}
+		attributes = addAttribute(attributes, attrName, attrValue, emptyValue, end);
+
+		flushText();
+		if (end) {
+			processEndTag(endTag(name));
+		} else {
+			String[] attrs = (attributes == null) ? null : attributes.toArray(new String[attributes.size()]);
+			processStartTag(new TagToken(name, attrs, selfClosing, false));
+			if (selfClosingEnd != null) {
+				String endName = selfClosingEnd;
+				selfClosingEnd = null;
+				processEndTag(endTag(endName));
+			}
+		}
+	}
+
+	/**
+	 * 読み込んだ属性を属性リストに追加します。
+	 *
+	 * @return 属性リスト
+	 */
+	private List<String> addAttribute(List<String> attributes, String name, StringBuilder value,
+			boolean emptyValue, boolean endTag) {
+		if (name == null || endTag) {
+			return attributes;
+		}
+		if (!name.equals(name.trim())) {
+			throw unsupported("attribute name " + name);
+		}
+		if (attributes == null) {
+			attributes = new ArrayList<String>(4);
+		} else {
+			for (int i = 0; i < attributes.size(); i += 2) {
+				if (attributes.get(i).equals(name)) {
+					throw unsupported("duplicate attribute");
+				}
+			}
+		}
+		attributes.add(name);
+		attributes.add((value != null && value.length() > 0) ? value.toString() : (emptyValue ? "" : null));
+		return attributes;
+	}
+
+	/**
+	 * 引用符で囲まれた属性値を読み込みます。
+	 *
+	 * @return 空文字の区間が現れた場合は true
+	 */
+	private boolean readQuotedValue(StringBuilder value, char quote) {
+		boolean emptyValue = false;
+		while (true) {
+			int start = pos;
+			char c = 0;
+			while (pos < length && (c = input.charAt(pos)) != quote && c != '&') {
+				pos++;
+			}
+			if (pos > start) {
+				value.append(input, start, pos);
+			} else {
+				emptyValue = true;
+			}
+			if (pos >= length) {
+				throw unsupported("EOF in attribute value");
+			}
+			pos++;
+			if (c == quote) {
+				return emptyValue;
+			}
+			String ref = consumeCharacterReference(quote, true);
+			value.append(ref == null ? "&" : ref);
+		}
+	}
+
+	/**
+	 * 引用符で囲まれていない属性値を読み込みます。
+	 *
+	 * @return 値の後の文字（空白または &gt;）
+	 */
+	private char readUnquotedValue(StringBuilder value) {
+		while (true) {
+			int start = pos;
+			char c = 0;
+			while (pos < length && !isUnquotedValueEnd(c = input.charAt(pos))) {
+				pos++;
+			}
+			value.append(input, start, pos);
+			if (pos >= length) {
+				throw unsupported("EOF in attribute value");
+			}
+			pos++;
+			if (HtmlNode.isWhitespace(c) || c == '>') {
+				return c;
+			}
+			if (c != '&') {
+				throw unsupported("invalid attribute value");
+			}
+			String ref = consumeCharacterReference('>', true);
+			value.append(ref == null ? "&" : ref);
+		}
+	}
+
+	/**
+	 * 文字参照を読み込みます。&amp; の次の位置から読み込みます。
+	 *
+	 * @param additional
+	 *            文字参照として扱わない文字。無い場合は -1。
+	 * @param inAttribute
+	 *            属性値の場合は true
+	 * @return 参照している文字列。文字参照ではない場合は null。
+	 */
+	private String consumeCharacterReference(int additional, boolean inAttribute) {
+		if (pos >= length) {
+			return null;
+		}
+		char c = input.charAt(pos);
+		if (c == additional || HtmlNode.isWhitespace(c) || c == '<' || c == '&') {
+			return null;
+		}
+		int mark = pos;
+		if (c == '#') {
+			pos++;
+			boolean hex = pos < length && (input.charAt(pos) == 'x' || input.charAt(pos) == 'X');
+			if (hex) {
+				pos++;
+			}
+			int start = pos;
+			while (pos < length && (hex ? isHexDigit(input.charAt(pos)) : isDigit(input.charAt(pos)))) {
+				pos++;
+			}
+			if (pos == start) {
+				pos = mark;
+				return null;
+			}
+			String numRef = input.substring(start, pos);
+			if (pos < length && input.charAt(pos) == ';') {
+				pos++;
+			}
+			int charval = -1;
+			try {
+				charval = Integer.valueOf(numRef, hex ? 16 : 10);
+			} catch (NumberFormatException e) {
+				// 範囲外は置換文字にする
+			}
+			if (charval == -1 || (charval >= 0xD800 && charval <= 0xDFFF) || charval > 0x10FFFF) {
+				return "\uFFFD";
+			}
+			if (charval == 0) {
+				throw unsupported("null character reference");
+			}
+			return new String(Character.toChars(charval));
+		}
+
+		int start = pos;
+		while (pos < length && isLetter(input.charAt(pos))) {
+			pos++;
+		}
+		while (pos < length && isDigit(input.charAt(pos))) {
+			pos++;
+		}
+		String nameRef = input.substring(start, pos);
+		boolean looksLegit = pos < length && input.charAt(pos) == ';';
+		boolean found = Entities.isBaseNamedEntity(nameRef) || (Entities.isNamedEntity(nameRef) && looksLegit);
+		if (!found) {
+			pos = mark;
+			return null;
+		}
+		if (inAttribute && pos < length) {
+			char next = input.charAt(pos);
+			if (isLetter(next) || isDigit(next) || next == '=' || next == '-' || next == '_') {
+				pos = mark;
+				return null;
+			}
+		}
+		if (looksLegit) {
+			pos++;
+		}
+		int[] codepoints = new int[2];
+		int count = Entities.codepointsForName(nameRef, codepoints);
+		return new String(codepoints, 0, count);
+	}
+
+	/**
+	 * script 要素または title 要素の内容を終了タグまで読み込みます。
+	 */
+	private void readRawText() {
+		String endName = rawTextEnd;
+		rawTextEnd = null;
+		String endTag = "</" + endName;
+		int end = -1;
+		int after = -1;
+		for (int from = pos;;) {
+			int i = indexOfIgnoreCase(endTag, from);
+			if (i == -1) {
+				throw unsupported("EOF in " + endName);
+			}
+			after = i + endTag.length();
+			if (after >= length) {
+				throw unsupported("EOF in " + endName);
+			}
+			char c = input.charAt(after);
+			if (c == '>') {
+				end = i;
+				break;
+			}
+			if (HtmlNode.isWhitespace(c) || c == '/') {
+				throw unsupported("end tag with attributes in " + endName);
+			}
+			from = i + 1;
+		}
+		String data = input.substring(pos, end);
+		if (endName.equals("script")) {
+			if (indexOfIgnoreCase(data, "<!--", 0) != -1 && indexOfIgnoreCase(data, "<script", 0) != -1) {
+				throw unsupported("escaped script");
+			}
+		} else if (data.indexOf('<') != -1 || data.indexOf('&') != -1) {
+			throw unsupported("markup in " + endName);
+		}
+		pos = after + 1;
+		if (data.length() > 0) {
+			processCharacters(data);
+		}
+		processEndTag(endTag(endName));
+	}
+
+	private int indexOfIgnoreCase(String str, int from) {
+		return indexOfIgnoreCase(input, str, from);
+	}
+
+	private static int indexOfIgnoreCase(String s, String str, int from) {
+		int last = s.length() - str.length();
+		for (int i = from; i <= last; i++) {
+			if (s.charAt(i) == '<' && s.regionMatches(true, i, str, 0, str.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || Character.isLetter(c);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isHexDigit(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
+	}
+
+	private static boolean isTagNameEnd(char c) {
+		return HtmlNode.isWhitespace(c) || c == '/' || c == '>';
+	}
+
+	private static boolean isAttributeNameEnd(char c) {
+		return HtmlNode.isWhitespace(c) || c == '/' || c == '=' || c == '>' || c == '"' || c == '\'' || c == '<';
+	}
+
+	private static boolean isUnquotedValueEnd(char c) {
+		return HtmlNode.isWhitespace(c) || c == '&' || c == '>' || c == '"' || c == '\'' || c == '<' || c == '='
+				|| c == '`';
+	}
+
+	// -------------------------------------------------------------------------
+	// 木構築
+
+	/** タグのトークンです。 */
+	private static final class TagToken {
+
+		final String name;
+		final String[] attributes;
+		final boolean selfClosing;
+		final boolean end;
+
+		TagToken(String name, String[] attributes, boolean selfClosing, boolean end) {
+			this.name = name;
+			this.attributes = attributes;
+			this.selfClosing = selfClosing;
+			this.end = end;
+		}
+	}
+
+	private static TagToken startTag(String name) {
+		return new TagToken(name, null, false, false);
+	}
+
+	private static TagToken endTag(String name) {
+		return new TagToken(name, null, false, true);
+	}
+
+	private void process(TagToken t) {
+		if (t.end) {
+			processEndTag(t);
+		} else {
+			processStartTag(t);
+		}
+	}
+
+	private void processCharacters(String data) {
+		switch (state) {
+		case INITIAL:
+		case BEFORE_HTML:
+		case BEFORE_HEAD:
+		case IN_HEAD:
+		case AFTER_HEAD:
+			if (!HtmlNode.isBlank(data)) {
+				throw unsupported("text outside body");
+			}
+			break;
+		case HEAD_TEXT:
+			break;
+		case BEFORE_BODY:
+			if (!HtmlNode.isBlank(data)) {
+				startBody();
+				inBodyCharacters(data);
+			}
+			break;
+		case TEXT:
+			insertText(data);
+			break;
+		case IN_TABLE:
+		case IN_TABLE_BODY:
+		case IN_ROW:
+			inTableCharacters(data);
+			break;
+		case AFTER_BODY:
+		case AFTER_AFTER_BODY:
+			if (!HtmlNode.isBlank(data)) {
+				state = IN_BODY;
+			}
+			inBodyCharacters(data);
+			break;
+		default:
+			inBodyCharacters(data);
+			break;
+		}
+	}
+
+	private void processComment(String data) {
+		switch (state) {
+		case INITIAL:
+		case BEFORE_HTML:
+		case BEFORE_HEAD:
+		case IN_HEAD:
+		case AFTER_HEAD:
+			break;
+		case BEFORE_BODY:
+			throw unsupported("comment outside body");
+		default:
+			insertNode(new HtmlNode(HtmlNode.COMMENT, data));
+			break;
+		}
+	}
+
+	private void processEof() {
+		if (state == BEFORE_BODY) {
+			startBody();
+		} else if (state < BEFORE_BODY) {
+			throw unsupported("EOF before body");
+		}
+	}
+
+	private void processStartTag(TagToken t) {
+		switch (state) {
+		case INITIAL:
+		case BEFORE_HTML:
+		case BEFORE_HEAD:
+		case IN_HEAD:
+		case AFTER_HEAD:
+			prologStartTag(t);
+			break;
+		case BEFORE_BODY:
+			if (HEAD_ELEMENTS.contains(t.name)) {
+				throw unsupported("<" + t.name + "> before body");
+			}
+			startBody();
+			inBodyStartTag(t);
+			break;
+		case IN_BODY:
+			inBodyStartTag(t);
+			break;
+		case IN_TABLE:
+			inTableStartTag(t);
+			break;
+		case IN_TABLE_BODY:
+			inTableBodyStartTag(t);
+			break;
+		case IN_ROW:
+			inRowStartTag(t);
+			break;
+		case IN_CELL:
+			inCellStartTag(t);
+			break;
+		case IN_CAPTION:
+			inCaptionStartTag(t);
+			break;
+		case AFTER_BODY:
+		case AFTER_AFTER_BODY:
+			if (t.name.equals("html")) {
+				throw unsupported("html after body");
+			}
+			state = IN_BODY;
+			inBodyStartTag(t);
+			break;
+		default:
+			throw unsupported("start tag in text");
+		}
+	}
+
+	private void processEndTag(TagToken t) {
+		switch (state) {
+		case INITIAL:
+		case BEFORE_HTML:
+		case BEFORE_HEAD:
+		case IN_HEAD:
+		case AFTER_HEAD:
+		case HEAD_TEXT:
+			prologEndTag(t);
+			break;
+		case BEFORE_BODY:
+			switch (t.name) {
+			case "head":
+			case "body":
+			case "html":
+			case "br":
+				throw unsupported("end tag outside body");
+			default:
+				break;
+			}
+			break;
+		case IN_BODY:
+			inBodyEndTag(t);
+			break;
+		case TEXT:
+			pop();
+			state = originalState;
+			break;
+		case IN_TABLE:
+			inTableEndTag(t);
+			break;
+		case IN_TABLE_BODY:
+			inTableBodyEndTag(t);
+			break;
+		case IN_ROW:
+			inRowEndTag(t);
+			break;
+		case IN_CELL:
+			inCellEndTag(t);
+			break;
+		case IN_CAPTION:
+			inCaptionEndTag(t);
+			break;
+		case AFTER_BODY:
+			if (t.name.equals("html")) {
+				state = AFTER_AFTER_BODY;
+			} else {
+				state = IN_BODY;
+				inBodyEndTag(t);
+			}
+			break;
+		default:
+			state = IN_BODY;
+			inBodyEndTag(t);
+			break;
+		}
+	}
+
+	/**
+	 * body 要素より前の開始タグを処理します。Javadoc が出力する標準的な構造のみ受け付けます。
+	 */
+	private void prologStartTag(TagToken t) {
+		String name = t.name;
+		if (state == INITIAL) {
+			state = BEFORE_HTML;
+		}
+		if (state == BEFORE_HTML && name.equals("html")) {
+			state = BEFORE_HEAD;
+		} else if (state == BEFORE_HEAD && name.equals("head")) {
+			state = IN_HEAD;
+		} else if (state == IN_HEAD && !t.selfClosing && (name.equals("title") || name.equals("script"))) {
+			rawTextEnd = name;
+			state = HEAD_TEXT;
+		} else if (state == IN_HEAD && HEAD_EMPTY_ELEMENTS.contains(name)) {
+			return;
+		} else if (state == AFTER_HEAD && name.equals("body")) {
+			HtmlNode html = new HtmlNode("html", null);
+			root = new HtmlNode("body", t.attributes, true);
+			html.appendChild(root);
+			stack.add(html);
+			stack.add(root);
+			state = IN_BODY;
+			if (t.selfClosing) {
+				selfClosingEnd = name;
+			}
+		} else {
+			throw unsupported("unexpected <" + name + "> outside body");
+		}
+	}
+
+	private void prologEndTag(TagToken t) {
+		if (state == HEAD_TEXT) {
+			state = IN_HEAD;
+		} else if (state == IN_HEAD && t.name.equals("head")) {
+			state = AFTER_HEAD;
+		} else {
+			throw unsupported("unexpected </" + t.name + "> outside body");
+		}
+	}
+
+	/**
+	 * 断片の解析で、最初のトークンの前に html 要素と body 要素を作成します。
+	 */
+	private void startBody() {
+		HtmlNode html = new HtmlNode("html", null);
+		root = new HtmlNode("body", null);
+		html.appendChild(root);
+		stack.add(html);
+		stack.add(root);
+		state = IN_BODY;
+	}
+
+	private void inBodyCharacters(String data) {
+		reconstructFormattingElements();
+		insertText(data);
+	}
+
+	private void inBodyStartTag(TagToken t) {
+		String name = t.name;
+		switch (name) {
+		case "a":
+			if (activeFormattingElement("a") != null) {
+				processEndTag(endTag("a"));
+				for (int i = stack.size() - 1; i > 0; i--) {
+					HtmlNode remainingA = stack.get(i);
+					if (remainingA.name.equals("a")) {
+						formattingElements.remove(remainingA);
+						stack.remove(i);
+						break;
+					}
+				}
+			}
+			reconstructFormattingElements();
+			pushActiveFormattingElement(insert(t));
+			return;
+		case "span":
+			reconstructFormattingElements();
+			insert(t);
+			return;
+		case "li":
+		case "dd":
+		case "dt":
+			for (int i = stack.size() - 1; i > 0; i--) {
+				String elName = stack.get(i).name;
+				if (name.equals("li") ? elName.equals("li") : (elName.equals("dd") || elName.equals("dt"))) {
+					processEndTag(endTag(elName));
+					break;
+				}
+				if (SPECIAL.contains(elName) && !elName.equals("address") && !elName.equals("div")
+						&& !elName.equals("p")) {
+					break;
+				}
+			}
+			closeParagraph();
+			insert(t);
+			return;
+		case "pre":
+		case "listing":
+			closeParagraph();
+			insert(t);
+			return;
+		case "table":
+			closeParagraph();
+			insert(t);
+			state = IN_TABLE;
+			return;
+		case "hr":
+			closeParagraph();
+			insertEmpty(t);
+			return;
+		case "script":
+			insertScript(t);
+			return;
+		default:
+			break;
+		}
+
+		if (EMPTY_FORMATTERS.contains(name)) {
+			reconstructFormattingElements();
+			insertEmpty(t);
+		} else if (P_CLOSERS.contains(name)) {
+			closeParagraph();
+			insert(t);
+		} else if (HEADINGS.contains(name)) {
+			closeParagraph();
+			if (HEADINGS.contains(currentElement().name)) {
+				pop();
+			}
+			insert(t);
+		} else if (FORMATTERS.contains(name)) {
+			reconstructFormattingElements();
+			pushActiveFormattingElement(insert(t));
+		} else if (EMPTY_ELEMENTS.contains(name)) {
+			insertEmpty(t);
+		} else if (BODY_IGNORED.contains(name)) {
+			return;
+		} else if (BODY_UNSUPPORTED.contains(name)) {
+			throw unsupported("<" + name + "> in body");
+		} else {
+			reconstructFormattingElements();
+			insert(t);
+		}
+	}
+
+	private void inBodyEndTag(TagToken t) {
+		String name = t.name;
+		if (ADOPTION_FORMATTERS.contains(name)) {
+			adoptionAgency(name);
+		} else if (END_CLOSERS.contains(name)) {
+			if (inScope(name, DEFAULT_SCOPE)) {
+				popStackToClose(name);
+			}
+		} else if (HEADINGS.contains(name)) {
+			if (inHeadingScope()) {
+				generateImpliedEndTags(name);
+				for (;;) {
+					if (HEADINGS.contains(pop().name)) {
+						break;
+					}
+				}
+			}
+		} else {
+			switch (name) {
+			case "li":
+				if (inScope(name, LIST_ITEM_SCOPE)) {
+					generateImpliedEndTags(name);
+					popStackToClose(name);
+				}
+				break;
+			case "dd":
+			case "dt":
+				if (inScope(name, DEFAULT_SCOPE)) {
+					generateImpliedEndTags(name);
+					popStackToClose(name);
+				}
+				break;
+			case "p":
+				if (!inScope(name, BUTTON_SCOPE)) {
+					processStartTag(startTag(name));
+					processEndTag(t);
+				} else {
+					generateImpliedEndTags(name);
+					popStackToClose(name);
+				}
+				break;
+			case "body":
+				if (inScope(name, DEFAULT_SCOPE)) {
+					state = AFTER_BODY;
+				}
+				break;
+			case "html":
+				if (inScope("body", DEFAULT_SCOPE)) {
+					state = AFTER_BODY;
+					processEndTag(t);
+				}
+				break;
+			case "br":
+				processStartTag(startTag(name));
+				break;
+			case "form":
+			case "applet":
+			case "marquee":
+			case "object":
+				throw unsupported("</" + name + "> in body");
+			default:
+				anyOtherEndTag(name);
+				break;
+			}
+		}
+	}
+
+	private void anyOtherEndTag(String name) {
+		for (int i = stack.size() - 1; i >= 0; i--) {
+			String elName = stack.get(i).name;
+			if (elName.equals(name)) {
+				generateImpliedEndTags(name);
+				popStackToClose(name);
+				return;
+			}
+			if (SPECIAL.contains(elName)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 書式要素の終了タグを処理します。付け替えが必要な誤った入れ子の場合は解析をあきらめます。
+	 */
+	private void adoptionAgency(String name) {
+		HtmlNode formatEl = activeFormattingElement(name);
+		if (formatEl == null) {
+			anyOtherEndTag(name);
+			return;
+		}
+		if (!stack.contains(formatEl)) {
+			formattingElements.remove(formatEl);
+			return;
+		}
+		if (!inScope(name, DEFAULT_SCOPE)) {
+			return;
+		}
+		boolean seen = false;
+		for (HtmlNode el : stack) {
+			if (el == formatEl) {
+				seen = true;
+			} else if (seen && SPECIAL.contains(el.name)) {
+				throw unsupported("misnested </" + name + ">");
+			}
+		}
+		popStackToClose(name);
+		formattingElements.remove(formatEl);
+	}
+
+	private void inTableCharacters(String data) {
+		if (HtmlNode.isBlank(data)) {
+			insertText(data);
+		} else if (TABLE_FOSTER.contains(currentElement().name)) {
+			fosterInserts = true;
+			inBodyCharacters(data);
+			fosterInserts = false;
+		} else {
+			inBodyCharacters(data);
+		}
+	}
+
+	private void inTableStartTag(TagToken t) {
+		switch (t.name) {
+		case "caption":
+			clearStackToContext("table");
+			formattingElements.add(null);
+			insert(t);
+			state = IN_CAPTION;
+			break;
+		case "tbody":
+		case "tfoot":
+		case "thead":
+			clearStackToContext("table");
+			insert(t);
+			state = IN_TABLE_BODY;
+			break;
+		case "td":
+		case "th":
+		case "tr":
+			processStartTag(startTag("tbody"));
+			process(t);
+			break;
+		case "script":
+			insertScript(t);
+			break;
+		case "col":
+		case "colgroup":
+		case "table":
+		case "style":
+		case "input":
+		case "form":
+			throw unsupported("<" + t.name + "> in table");
+		default:
+			inTableAnythingElse(t);
+			break;
+		}
+	}
+
+	private void inTableEndTag(TagToken t) {
+		switch (t.name) {
+		case "table":
+			if (inScope("table", TABLE_SCOPE)) {
+				popStackToClose("table");
+				resetInsertionMode();
+			}
+			break;
+		case "body":
+		case "caption":
+		case "col":
+		case "colgroup":
+		case "html":
+		case "tbody":
+		case "td":
+		case "tfoot":
+		case "th":
+		case "thead":
+		case "tr":
+			break;
+		default:
+			inTableAnythingElse(t);
+			break;
+		}
+	}
+
+	private void inTableAnythingElse(TagToken t) {
+		if (TABLE_FOSTER.contains(currentElement().name)) {
+			fosterInserts = true;
+			inBody(t);
+			fosterInserts = false;
+		} else {
+			inBody(t);
+		}
+	}
+
+	private void inBody(TagToken t) {
+		if (t.end) {
+			inBodyEndTag(t);
+		} else {
+			inBodyStartTag(t);
+		}
+	}
+
+	private void inTableBodyStartTag(TagToken t) {
+		switch (t.name) {
+		case "tr":
+			clearStackToContext("tbody", "tfoot", "thead");
+			insert(t);
+			state = IN_ROW;
+			break;
+		case "th":
+		case "td":
+			processStartTag(startTag("tr"));
+			process(t);
+			break;
+		case "caption":
+		case "col":
+		case "colgroup":
+		case "tbody":
+		case "tfoot":
+		case "thead":
+			exitTableBody(t);
+			break;
+		default:
+			inTableStartTag(t);
+			break;
+		}
+	}
+
+	private void inTableBodyEndTag(TagToken t) {
+		switch (t.name) {
+		case "tbody":
+		case "tfoot":
+		case "thead":
+			if (inScope(t.name, TABLE_SCOPE)) {
+				clearStackToContext("tbody", "tfoot", "thead");
+				pop();
+				state = IN_TABLE;
+			}
+			break;
+		case "table":
+			exitTableBody(t);
+			break;
+		case "body":
+		case "caption":
+		case "col":
+		case "colgroup":
+		case "html":
+		case "td":
+		case "th":
+		case "tr":
+			break;
+		default:
+			inTableEndTag(t);
+			break;
+		}
+	}
+
+	private void exitTableBody(TagToken t) {
+		if (!(inScope("tbody", TABLE_SCOPE) || inScope("thead", TABLE_SCOPE) || inScope("tfoot", DEFAULT_SCOPE))) {
+			return;
+		}
+		clearStackToContext("tbody", "tfoot", "thead");
+		processEndTag(endTag(currentElement().name));
+		process(t);
+	}
+
+	private void inRowStartTag(TagToken t) {
+		switch (t.name) {
+		case "th":
+		case "td":
+			clearStackToContext("tr");
+			insert(t);
+			state = IN_CELL;
+			formattingElements.add(null);
+			break;
+		case "caption":
+		case "col":
+		case "colgroup":
+		case "tbody":
+		case "tfoot":
+		case "thead":
+		case "tr":
+			handleMissingTr(t);
+			break;
+		default:
+			inTableStartTag(t);
+			break;
+		}
+	}
+
+	private void inRowEndTag(TagToken t) {
+		switch (t.name) {
+		case "tr":
+			if (inScope("tr", TABLE_SCOPE)) {
+				clearStackToContext("tr");
+				pop();
+				state = IN_TABLE_BODY;
+			}
+			break;
+		case "table":
+			handleMissingTr(t);
+			break;
+		case "tbody":
+		case "tfoot":
+		case "thead":
+			if (inScope(t.name, TABLE_SCOPE)) {
+				processEndTag(endTag("tr"));
+				process(t);
+			}
+			break;
+		case "body":
+		case "caption":
+		case "col":
+		case "colgroup":
+		case "html":
+		case "td":
+		case "th":
+			break;
+		default:
+			inTableEndTag(t);
+			break;
+		}
+	}
+
+	private void handleMissingTr(TagToken t) {
+		if (inScope("tr", TABLE_SCOPE)) {
+			processEndTag(endTag("tr"));
+			process(t);
+		}
+	}
+
+	private void inCellStartTag(TagToken t) {
+		if (TABLE_SECTIONS.contains(t.name)) {
+			if (inScope("td", TABLE_SCOPE) || inScope("th", TABLE_SCOPE)) {
+				closeCell();
+				process(t);
+			}
+		} else {
+			inBodyStartTag(t);
+		}
+	}
+
+	private void inCellEndTag(TagToken t) {
+		switch (t.name) {
+		case "td":
+		case "th":
+			if (inScope(t.name, TABLE_SCOPE)) {
+				popStackToClose(t.name);
+				clearFormattingElementsToLastMarker();
+			}
+			state = IN_ROW;
+			break;
+		case "body":
+		case "caption":
+		case "col":
+		case "colgroup":
+		case "html":
+			break;
+		case "table":
+		case "tbody":
+		case "tfoot":
+		case "thead":
+		case "tr":
+			if (inScope(t.name, TABLE_SCOPE)) {
+				closeCell();
+				process(t);
+			}
+			break;
+		default:
+			inBodyEndTag(t);
+			break;
+		}
+	}
+
+	private void closeCell() {
+		processEndTag(endTag(inScope("td", TABLE_SCOPE) ? "td" : "th"));
+	}
+
+	private void inCaptionStartTag(TagToken t) {
+		if (TABLE_SECTIONS.contains(t.name)) {
+			closeCaption(t);
+		} else {
+			inBodyStartTag(t);
+		}
+	}
+
+	private void inCaptionEndTag(TagToken t) {
+		switch (t.name) {
+		case "caption":
+			if (inScope("caption", TABLE_SCOPE)) {
+				popStackToClose("caption");
+				clearFormattingElementsToLastMarker();
+				state = IN_TABLE;
+			}
+			break;
+		case "table":
+			closeCaption(t);
+			break;
+		case "body":
+		case "col":
+		case "colgroup":
+		case "html":
+		case "tbody":
+		case "td":
+		case "tfoot":
+		case "th":
+		case "thead":
+		case "tr":
+			break;
+		default:
+			inBodyEndTag(t);
+			break;
+		}
+	}
+
+	private void closeCaption(TagToken t) {
+		if (inScope("caption", TABLE_SCOPE)) {
+			processEndTag(endTag("caption"));
+			process(t);
+		}
+	}
+
+	/**
+	 * テーブルを閉じた後の状態をスタックから決定します。
+	 */
+	private void resetInsertionMode() {
+		for (int i = stack.size() - 1; i >= 0; i--) {
+			boolean last = i == 0;
+			String name;
+			if (last) {
+				if (contextName == null) {
+					throw unsupported("no context element");
+				}
+				name = contextName;
+			} else {
+				name = stack.get(i).name;
+			}
+			switch (name) {
+			case "td":
+				state = IN_CELL;
+				return;
+			case "th":
+				if (!last) {
+					state = IN_CELL;
+					return;
+				}
+				break;
+			case "tr":
+				state = IN_ROW;
+				return;
+			case "tbody":
+			case "thead":
+			case "tfoot":
+				state = IN_TABLE_BODY;
+				return;
+			case "caption":
+				state = IN_CAPTION;
+				return;
+			case "table":
+				state = IN_TABLE;
+				return;
+			case "head":
+			case "body":
+				state = IN_BODY;
+				return;
+			case "select":
+			case "colgroup":
+			case "frameset":
+			case "html":
+				throw unsupported("reset insertion mode to " + name);
+			default:
+				break;
+			}
+			if (last) {
+				state = IN_BODY;
+				return;
+			}
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// スタックと書式要素の操作
+
+	private HtmlNode currentElement() {
+		return stack.get(stack.size() - 1);
+	}
+
+	private HtmlNode pop() {
+		if (stack.size() <= 1) {
+			throw unsupported("pop root element");
+		}
+		return stack.remove(stack.size() - 1);
+	}
+
+	private void push(HtmlNode el) {
+		if (stack.size() >= MAX_DEPTH) {
+			throw unsupported("too deep");
+		}
+		stack.add(el);
+	}
+
+	private void popStackToClose(String name) {
+		for (;;) {
+			if (pop().name.equals(name)) {
+				return;
+			}
+		}
+	}
+
+	private void clearStackToContext(String... names) {
+		for (;;) {
+			String name = currentElement().name;
+			if (name.equals("html")) {
+				return;
+			}
+			for (String n : names) {
+				if (name.equals(n)) {
+					return;
+				}
+			}
+			pop();
+		}
+	}
+
+	private void generateImpliedEndTags(String excludeTag) {
+		for (;;) {
+			String name = currentElement().name;
+			if (name.equals(excludeTag) || !IMPLIED_END.contains(name)) {
+				return;
+			}
+			pop();
+		}
+	}
+
+	private void closeParagraph() {
+		if (inScope("p", BUTTON_SCOPE)) {
+			processEndTag(endTag("p"));
+		}
+	}
+
+	private boolean inScope(String targetName, int scope) {
+		for (int i = stack.size() - 1; i >= 0; i--) {
+			String name = stack.get(i).name;
+			if (name.equals(targetName)) {
+				return true;
+			}
+			if (scope == TABLE_SCOPE) {
+				if (name.equals("html") || name.equals("table")) {
+					return false;
+				}
+			} else if (SCOPE_BOUNDARIES.contains(name)
+					|| (scope == LIST_ITEM_SCOPE && (name.equals("ol") || name.equals("ul")))
+					|| (scope == BUTTON_SCOPE && name.equals("button"))) {
+				return false;
+			}
+		}
+		throw unsupported("scope");
+	}
+
+	private boolean inHeadingScope() {
+		for (int i = stack.size() - 1; i >= 0; i--) {
+			String name = stack.get(i).name;
+			if (HEADINGS.contains(name)) {
+				return true;
+			}
+			if (SCOPE_BOUNDARIES.contains(name)) {
+				return false;
+			}
+		}
+		throw unsupported("scope");
+	}
+
+	/**
+	 * 開始タグの要素を挿入してスタックに積みます。自己終了タグの場合は直後に終了タグを処理します。
+	 */
+	private HtmlNode insert(TagToken t) {
+		if (t.selfClosing) {
+			HtmlNode el = insertEmpty(t);
+			push(el);
+			selfClosingEnd = el.name;
+			return el;
+		}
+		HtmlNode el = new HtmlNode(t.name, t.attributes, true);
+		insertNode(el);
+		push(el);
+		return el;
+	}
+
+	private HtmlNode insertEmpty(TagToken t) {
+		HtmlNode el = new HtmlNode(t.name, t.attributes);
+		if (t.selfClosing && !el.tag.isKnownTag()) {
+			throw unsupported("self closing unknown tag");
+		}
+		insertNode(el);
+		return el;
+	}
+
+	private void insertScript(TagToken t) {
+		originalState = state;
+		state = TEXT;
+		insert(t);
+		if (!t.selfClosing) {
+			rawTextEnd = "script";
+		}
+	}
+
+	private void insertNode(HtmlNode node) {
+		if (fosterInserts) {
+			throw unsupported("foster parenting");
+		}
+		currentElement().appendChild(node);
+	}
+
+	private void insertText(String data) {
+		HtmlNode current = currentElement();
+		boolean isData = current.name.equals("script") || current.name.equals("style");
+		current.appendChild(new HtmlNode(isData ? HtmlNode.DATA : HtmlNode.TEXT, data));
+	}
+
+	private HtmlNode activeFormattingElement(String name) {
+		for (int i = formattingElements.size() - 1; i >= 0; i--) {
+			HtmlNode el = formattingElements.get(i);
+			if (el == null) {
+				break;
+			}
+			if (el.name.equals(name)) {
+				return el;
+			}
+		}
+		return null;
+	}
+
+	private void pushActiveFormattingElement(HtmlNode in) {
+		int numSeen = 0;
+		for (int i = formattingElements.size() - 1; i >= 0; i--) {
+			HtmlNode el = formattingElements.get(i);
+			if (el == null) {
+				break;
+			}
+			if (in.name.equals(el.name) && in.hasSameAttributes(el)) {
+				numSeen++;
+			}
+			if (numSeen == 3) {
+				formattingElements.remove(i);
+				break;
+			}
+		}
+		formattingElements.add(in);
+	}
+
+	private void reconstructFormattingElements() {
+		int size = formattingElements.size();
+		if (size == 0) {
+			return;
+		}
+		HtmlNode last = formattingElements.get(size - 1);
+		if (last == null || stack.contains(last)) {
+			return;
+		}
+		int i = size - 1;
+		boolean skip = false;
+		for (;;) {
+			if (i == 0) {
+				skip = true;
+				break;
+			}
+			HtmlNode entry = formattingElements.get(--i);
+			if (entry == null || stack.contains(entry)) {
+				break;
+			}
+		}
+		for (;;) {
+			if (!skip) {
+				i++;
+			}
+			skip = false;
+			HtmlNode entry = formattingElements.get(i);
+			HtmlNode newEl = new HtmlNode(entry.name, entry.attributes, true);
+			insertNode(newEl);
+			push(newEl);
+			formattingElements.set(i, newEl);
+			if (i == size - 1) {
+				break;
+			}
+		}
+	}
+
+	private void clearFormattingElementsToLastMarker() {
+		while (!formattingElements.isEmpty()) {
+			if (formattingElements.remove(formattingElements.size() - 1) == null) {
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * 上限数を超えた場合に長く使用されていないものから破棄するキャッシュです。 複数スレッドから使用できます。
+ * <p>
+ * キャッシュ済みの値の取得はロックせずに行います。使用順は値を作成した回数を単位として近似的に管理するため、同じ単位の間に使用された値の順序は区別しません。
+ * 上限数を超えた場合は、破棄のたびに全体を走査しないように、長く使用されていないものから上限数の 4 分の 1 をまとめて破棄します。
+ * <p>
+ * 取得回数、作成回数、作成時間、破棄した回数は {@link #getStatistics()} で取得できます。破棄したキーは debug レベルでログに出力します。
+ *
+ * @param <K>
+ *            キーの型
+ * @param <V>
+ *            値の型
+ * @author Shinji Kashihara
+ */
+class LruCache<K, V> {
+
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(LruCache.class);
+
+	/** ログに出力するキャッシュの名前 */
+	private final String name;
+
+	/** キャッシュの上限数。0 以下はキャッシュしない。 */
+	private final int maxSize;
+
+	/** キャッシュ */
+	private final ConcurrentMap<K, Cached<V>> map = new ConcurrentHashMap<K, Cached<V>>();
+
+	/** キャッシュから取得した回数。取得のたびに加算するため、競合しにくい LongAdder を使用 */
+	private final LongAdder hits = new LongAdder();
+
+	/** 値を作成した回数。使用順の単位も兼ねる */
+	private final AtomicLong misses = new AtomicLong();
+
+	/** 値の作成時間の合計（ナノ秒） */
+	private final AtomicLong loadNanos = new AtomicLong();
+
+	/** 破棄した回数 */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param name
+	 *            ログに出力するキャッシュの名前
+	 * @param maxSize
+	 *            キャッシュの上限数。0 以下はキャッシュしない。
+	 */
+	LruCache(String name, int maxSize) {
+		this.name = name;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * キャッシュするか判定します。
+	 *
+	 * @return 上限数が 1 以上の場合は true
+	 */
+	boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * キャッシュした値を取得し、使用したことを記録します。
+	 *
+	 * @param key
+	 *            キー
+	 * @return キャッシュした値。無い場合は null。
+	 */
+	V get(K key) {
+		if (maxSize <= 0) {
+			return null;
+		}
+		Cached<V> cached = map.get(key);
+		if (cached == null) {
+			return null;
+		}
+		hits.increment();
+		cached.touch(misses.get());
+		return cached.value;
+	}
+
+	/**
+	 * 作成した値をキャッシュします。 上限数を超えた場合は長く使用されていないものを破棄します。
+	 * <p>
+	 * 同時に複数スレッドで同じキーの値を作成した場合は、先にキャッシュされた値を返します。
+	 *
+	 * @param key
+	 *            キー。キャッシュ後に変更されないものを指定してください。キャッシュしない場合は null でも構いません。
+	 * @param value
+	 *            作成した値
+	 * @param nanos
+	 *            値の作成時間（ナノ秒）
+	 * @return キャッシュした値
+	 */
+	V put(K key, V value, long nanos) {
+		loadNanos.addAndGet(nanos);
+		long now = misses.incrementAndGet();
+		if (maxSize <= 0) {
+			return value;
+		}
+		Cached<V> current = map.putIfAbsent(key, new Cached<V>(value, now));
+		if (current != null) {
+			return current.value;
+		}
+		if (map.size() > maxSize) {
+			evict();
+		}
+		return value;
+	}
+
+	/**
+	 * 現在までの統計情報を取得します。
+	 *
+	 * @return 統計情報
+	 */
+	Statistics getStatistics() {
+		return new Statistics(hits.sum(), misses.get(), loadNanos.get(), evictions.get(), map.size());
+	}
+
+	/**
+	 * 上限数を超えている場合に、最も長く使用されていないものから上限数の 4 分の 1 をまとめて破棄します。
+	 */
+	private synchronized void evict() {
+		if (map.size() <= maxSize) {
+			return;
+		}
+		// 使用時期は他のスレッドが更新するため、取得した時点の値で破棄する境界を決める
+		List<Map.Entry<K, Cached<V>>> entries = new ArrayList<Map.Entry<K, Cached<V>>>(map.entrySet());
+		long[] lastUsed = new long[entries.size()];
+		for (int i = 0; i < lastUsed.length; i++) {
+			lastUsed[i] = entries.get(i).getValue().lastUsed;
+		}
+		long[] sorted = lastUsed.clone();
+		Arrays.sort(sorted);
+		int count = sorted.length - (maxSize - maxSize / 4);
+		if (count <= 0) {
+			return;
+		}
+		long threshold = sorted[count - 1];
+		for (int i = 0; i < lastUsed.length && count > 0; i++) {
+			K key = entries.get(i).getKey();
+			if (lastUsed[i] <= threshold && map.remove(key) != null) {
+				evictions.incrementAndGet();
+				count--;
+				if (logger.isDebugEnabled()) {
+					logger.debug(name + " キャッシュから破棄しました: " + key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * キャッシュの統計情報です。
+	 */
+	static class Statistics {
+
+		/** キャッシュから取得した回数 */
+		private final long hits;
+
+		/** キャッシュに無く値を作成した回数 */
+		private final long misses;
+
+		/** 値の作成時間の合計（ナノ秒） */
+		private final long loadNanos;
+
+		/** 上限を超えたため破棄した回数 */
+		private final long evictions;
+
+		/** キャッシュしている値の数 */
+		private final int size;
+
+		Statistics(long hits, long misses, long loadNanos, long evictions, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.loadNanos = loadNanos;
+			this.evictions = evictions;
+			this.size = size;
+		}
+
+		/**
+		 * キャッシュから取得した回数を取得します。
+		 *
+		 * @return キャッシュから取得した回数
+		 */
+		long getHits() {
+			return hits;
+		}
+
+		/**
+		 * キャッシュに無く値を作成した回数を取得します。
+		 *
+		 * @return 値を作成した回数
+		 */
+		long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * 値の作成時間の合計を取得します。
+		 *
+		 * @return 作成時間の合計（ナノ秒）
+		 */
+		long getLoadNanos() {
+			return loadNanos;
+		}
+
+		/**
+		 * 上限を超えたため破棄した回数を取得します。
+		 *
+		 * @return 破棄した回数
+		 */
+		long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * キャッシュしている値の数を取得します。
+		 *
+		 * @return キャッシュしている値の数
+		 */
+		int getSize() {
+			return size;
+		}
+
+		/**
+		 * 取得回数に対するキャッシュから取得した回数の割合を取得します。
+		 *
+		 * @return ヒット率（0 から 1）。取得していない場合は 0。
+		 */
+		double getHitRate() {
+			long total = hits + misses;
+			return (total == 0) ? 0 : (double) hits / total;
+		}
+
+		/**
+		 * 指定した統計情報を合計します。
+		 *
+		 * @param other
+		 *            合計する統計情報
+		 * @return 合計の統計情報
+		 */
+		Statistics plus(Statistics other) {
+			return new Statistics(hits + other.hits, misses + other.misses, loadNanos + other.loadNanos,
+					evictions + other.evictions, size + other.size);
+		}
+
+		/**
+		 * 指定した統計情報からの増分を取得します。 キャッシュしている数は増分ではなくこの統計情報の値になります。
+		 *
+		 * @param base
+		 *            基準とする以前の統計情報
+		 * @return 増分の統計情報
+		 */
+		Statistics since(Statistics base) {
+			return new Statistics(hits - base.hits, misses - base.misses, loadNanos - base.loadNanos,
+					evictions - base.evictions, size);
+		}
+	}
+
+	/**
+	 * キャッシュした値です。
+	 *
+	 * @param <V>
+	 *            値の型
+	 */
+	private static class Cached<V> {
+
+		/** 値 */
+		final V value;
+
+		/** 最後に使用したときの作成回数 */
+		volatile long lastUsed;
+
+		Cached(V value, long lastUsed) {
+			this.value = value;
+			this.lastUsed = lastUsed;
+		}
+
+		/**
+		 * 使用したことを記録します。 同じ値の場合は書き込まないため、作成が無い間の取得では共有メモリへの書き込みが発生しません。
+		 *
+		 * @param now
+		 *            現在の作成回数
+		 */
+		void touch(long now) {
+			if (lastUsed != now) {
+				lastUsed = now;
+			}
+		}
+	}
+}
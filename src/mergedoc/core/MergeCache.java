@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import mergedoc.MergeDocException;
+import mergedoc.xml.ClassFilterIndex;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * 複数回のマージで共有するキャッシュです。
+ * <p>
+ * 開いた API ドキュメント索引と、クラス別置換定義ファイルの索引を保持します。同じプロセスで繰り返しマージする場合に
+ * {@link MergeManager#setCache(MergeCache)} でセットすると、マージのたびに索引を読み込み直す必要がありません。
+ * API ドキュメント索引は取得のたびに API ドキュメントが変更されていないか検証し、クラス別置換定義は更新されたファイルを再読み込みします。
+ * <p>
+ * 複数スレッドから使用できます。
+ *
+ * @author Shinji Kashihara
+ */
+public class MergeCache {
+
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(MergeCache.class);
+
+	/** API ドキュメントディレクトリと文字セット名をキーとした API ドキュメント索引 */
+	private final Map<String, APIDocumentIndex> indexes = new HashMap<String, APIDocumentIndex>();
+
+	/** クラス別置換定義ファイルの索引。未作成の場合は null。 */
+	private ClassFilterIndex classFilters;
+
+	/** API ドキュメント索引を再利用した回数 */
+	private int indexHits;
+
+	/** API ドキュメント索引を開き直した回数 */
+	private int indexMisses;
+
+	/**
+	 * 保持している API ドキュメント索引を取得します。 開いた後に API ドキュメントが変更されている場合は破棄します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param charsetName
+	 *            API ドキュメントの文字セット名
+	 * @return API ドキュメント索引。保持していない場合や破棄した場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	synchronized APIDocumentIndex getDocumentIndex(File docDir, String charsetName) throws IOException {
+		String key = key(docDir, charsetName);
+		APIDocumentIndex index = indexes.get(key);
+		if (index != null && !index.isValid()) {
+			logger.info(docDir + " の API ドキュメントが変更されたため、索引を開き直します。");
+			// 作り直す索引は別名のファイルに作成されるため、使用中のセッションが残っていても索引ファイルは削除されない
+			indexes.remove(key);
+			index = null;
+		}
+		if (index == null) {
+			indexMisses++;
+		} else {
+			indexHits++;
+		}
+		return index;
+	}
+
+	/**
+	 * API ドキュメント索引を保持します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param charsetName
+	 *            API ドキュメントの文字セット名
+	 * @param index
+	 *            API ドキュメント索引
+	 */
+	synchronized void putDocumentIndex(File docDir, String charsetName, APIDocumentIndex index) {
+		indexes.put(key(docDir, charsetName), index);
+	}
+
+	/**
+	 * クラス別置換定義ファイルの索引を取得します。 初回は索引を作成します。更新されたファイルは取得時に再読み込みされます。
+	 *
+	 * @return クラス別置換定義ファイルの索引
+	 * @throws MergeDocException
+	 *             コンフィグ情報の取得に失敗した場合
+	 */
+	synchronized ClassFilterIndex getClassFilters() throws MergeDocException {
+		if (classFilters == null) {
+			classFilters = new ClassFilterIndex(true);
+		}
+		return classFilters;
+	}
+
+	/**
+	 * 保持しているキャッシュを破棄します。
+	 */
+	public synchronized void clear() {
+		indexes.clear();
+		classFilters = null;
+	}
+
+	/**
+	 * 保持している API ドキュメント索引の数を取得します。
+	 *
+	 * @return API ドキュメント索引の数
+	 */
+	public synchronized int getDocumentIndexCount() {
+		return indexes.size();
+	}
+
+	/**
+	 * API ドキュメント索引を再利用した回数を取得します。
+	 *
+	 * @return 再利用した回数
+	 */
+	public synchronized int getDocumentIndexHits() {
+		return indexHits;
+	}
+
+	/**
+	 * API ドキュメント索引を保持していなかったか、変更により破棄した回数を取得します。
+	 *
+	 * @return 再利用できなかった回数
+	 */
+	public synchronized int getDocumentIndexMisses() {
+		return indexMisses;
+	}
+
+	/**
+	 * API ドキュメント索引のキーを作成します。
+	 *
+	 * @param docDir
+	 *            API ドキュメントディレクトリ
+	 * @param charsetName
+	 *            API ドキュメントの文字セット名
+	 * @return キー
+	 */
+	private static String key(File docDir, String charsetName) {
+		return docDir.getAbsolutePath() + "\n" + charsetName;
+	}
+}
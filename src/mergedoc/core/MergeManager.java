@@ -5,33 +5,30 @@
  */
 package mergedoc.core;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
-
-import javax.swing.event.ChangeListener;
-import javax.xml.parsers.SAXParser;
+import java.util.concurrent.FutureTask;
 
 import mergedoc.MergeDocException;
+import mergedoc.xml.ClassFilterIndex;
 import mergedoc.xml.ConfigManager;
+import mergedoc.xml.FilterProgram;
 import mergedoc.xml.Persister;
-import mergedoc.xml.ReplaceEntry;
-import mergedoc.xml.ReplaceHandler;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -47,20 +44,50 @@ public class MergeManager {
 	/** ロガー */
 	private static final Logger logger = LogManager.getLogger(MergeManager.class);
 
+	/** マージスレッド数を指定するシステムプロパティのキー（0 以下は CPU 数） */
+	public static final String THREADS_KEY = "mergedoc.threads";
+
+	/** API ドキュメント索引を使用するか指定するシステムプロパティのキー（デフォルト true） */
+	public static final String INDEX_KEY = "mergedoc.index";
+
+	/** 差分マージを行うか指定するシステムプロパティのキー（デフォルト false） */
+	public static final String INCREMENTAL_KEY = "mergedoc.incremental";
+
+	/** 更新されたクラス別置換定義ファイルを再読み込みするか指定するシステムプロパティのキー（デフォルト false） */
+	public static final String RELOAD_KEY = "mergedoc.reload";
+
+	/** 処理レポートを出力するか指定するシステムプロパティのキー（デフォルト true） */
+	public static final String REPORT_KEY = "mergedoc.report";
+
+	/** 並列マージでスレッドあたりに先読みするエントリ数 */
+	private static final int QUEUE_SIZE_PER_THREAD = 4;
+
 	/** マージ設定 */
 	private Preference pref;
 
+	/** 差分マージのマニフェスト */
+	private MergeManifest manifest;
+
+	/** グローバル置換定義をコンパイルした置換処理 */
+	private FilterProgram globalFilter;
+
+	/** 実行中のマージセッション */
+	private MergeSession session;
+
+	/** 処理段階ごとの統計情報 */
+	private MergeStatistics statistics;
+
+	/** 複数回のマージで共有するキャッシュ。共有しない場合は null。 */
+	private MergeCache cache;
+
 	/** 処理状態 */
 	private WorkingState workingState = new WorkingState();
 
 	/** コピー用のバイトバッファ */
 	private byte[] byteBuffer = new byte[4096];
 
-	/** エントリー数取得 Executor */
-	private ExecutorService entrySizeGetExecutor = Executors.newSingleThreadExecutor();
-
-	/** エントリー数 Future */
-	private Future<Integer> entrySizeFuture;
+	/** メタデータ Future */
+	private Future<ArchiveInputStream.Metadata> metadataFuture;
 
 	/**
 	 * コンストラクタです。
@@ -79,25 +106,32 @@ public class MergeManager {
 		this.pref = pref;
 		workingState.initialize();
 
-		// エントリー数取得は数秒かかるので事前に別スレッドでを開始しておく
-		entrySizeFuture = entrySizeGetExecutor.submit(new Callable<Integer>() {
+		// tar.gz のエントリー数取得は数秒かかるので事前に別スレッドでを開始しておく
+		// 常駐プロセスで繰り返し呼び出されてもスレッドが残らないように、取得ごとに終了するスレッドを使用
+		FutureTask<ArchiveInputStream.Metadata> task = new FutureTask<ArchiveInputStream.Metadata>(
+				new Callable<ArchiveInputStream.Metadata>() {
+
+					public ArchiveInputStream.Metadata call() throws Exception {
+						try {
+							return ArchiveInputStream.readMetadata(pref.getInputArchive());
+						} catch (Exception e) {
+							return new ArchiveInputStream.Metadata(0, -1);
+						}
+					}
+				});
+		new MergeThreadFactory("metadata").newThread(task).start();
+		metadataFuture = task;
+	}
 
-			public Integer call() throws Exception {
-				ArchiveInputStream is = null;
-				try {
-					is = ArchiveInputStream.create(pref.getInputArchive());
-					int size = 0;
-					for (; is.getNextEntry() != null; size++)
-						;
-					return size;
-				} catch (Exception e) {
-					return 0;
-				} finally {
-					if (is != null)
-						is.close();
-				}
-			}
-		});
+	/**
+	 * 複数回のマージで共有するキャッシュをセットします。 セットした場合、API
+	 * ドキュメント索引とクラス別置換定義ファイルの索引はキャッシュから取得し、クラス別置換定義は更新されたファイルを再読み込みします。
+	 * 
+	 * @param cache
+	 *            キャッシュ。共有しない場合は null。
+	 */
+	public void setCache(MergeCache cache) {
+		this.cache = cache;
 	}
 
 	/**
@@ -170,36 +204,67 @@ public class MergeManager {
 		if (workingState.isCanceled())
 			return;
 		ArchiveInputStream in = null;
-		ZipOutputStream out = null;
+		ZipArchiveWriter out = null;
 
 		try {
+			long start = System.currentTimeMillis();
+			statistics = new MergeStatistics();
+			APIDocumentIndex docIndex = MergeSession.prepareDocumentIndex(pref, pref.getApiDownload().equals("true"),
+					cache, workingState);
+			manifest = openManifest();
+			globalFilter = FilterProgram.compile(pref.getGlobalEntries());
+			ClassFilterIndex classFilters = (cache != null) ? cache.getClassFilters()
+					: new ClassFilterIndex(Boolean.getBoolean(RELOAD_KEY));
+			session = new MergeSession(pref, true, docIndex, globalFilter, classFilters);
+
 			in = ArchiveInputStream.create(pref.getInputArchive());
 
-			out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(pref.getOutputArchive())));
-			out.setLevel(Deflater.BEST_SPEED);
+			out = new ZipArchiveWriter(pref.getOutputArchive(), threadCount());
 
-			long start = System.currentTimeMillis();
 			merge(in, out);
+			long closeStart = System.nanoTime();
+			out.close();
+			out = null;
+			statistics.record(MergeStatistics.Stage.WRITE, null, closeStart, -1);
+			if (manifest != null && !workingState.isCanceled()) {
+				manifest.commit();
+			}
+			if (!workingState.isCanceled()) {
+				for (String entry : globalFilter.getUnmatchedEntries()) {
+					logger.info("一度も一致しなかった置換エントリ: " + entry);
+				}
+				writeReport();
+			}
 			long end = System.currentTimeMillis();
 			workingState.setWorkTime((end - start) / 1000);
 
 		} finally {
 
-			if (in != null)
-				in.close();
+			// 出力は入力エントリの圧縮データを参照している場合があるため先に閉じる
 			if (out != null)
 				out.close();
+			if (in != null)
+				in.close();
+			if (manifest != null) {
+				manifest.close();
+				manifest = null;
+			}
 		}
 	}
 
 	/**
 	 * アーカイブ入力ストリームから順次エントリを読み込み、Java ソースの場合は API ドキュメントとマージし、それ以外のファイルはそのまま ZIP
-	 * 出力ストリームに書き込みます。
+	 * アーカイブに書き込みます。
+	 * <p>
+	 * 入力が ZIP アーカイブの場合、Java ソース以外のファイルとマージで内容が変わらなかった Java
+	 * ソースは、圧縮データを展開せずにそのまま書き込みます。
+	 * <p>
+	 * システムプロパティ {@value #THREADS_KEY} に 2 以上（0 以下の場合は CPU 数）が指定された場合は並列にマージします。
 	 * 
 	 * @param in
 	 *            アーカイブ入力ストリーム
 	 * @param out
-	 *            ZIP 出力ストリーム
+	 *            ZIP アーカイブライター
 	 * @throws MergeDocException
 	 *             コンフィグ情報の取得に失敗した場合
 	 * @throws SAXException
@@ -207,9 +272,13 @@ public class MergeManager {
 	 * @throws IOException
 	 *             入出力例外が発生した場合
 	 */
-	private void merge(ArchiveInputStream in, ZipOutputStream out) throws MergeDocException, SAXException, IOException {
-		Merger merger = new Merger(pref.getDocDirectory());
-		merger.setDocEncoding(pref.getDocEncoding());
+	private void merge(ArchiveInputStream in, ZipArchiveWriter out) throws MergeDocException, SAXException, IOException {
+
+		int threads = threadCount();
+		if (threads > 1) {
+			mergeParallel(in, out, threads);
+			return;
+		}
 
 		ArchiveInputStream.Entry inEntry = null;
 		while ((inEntry = in.getNextEntry()) != null) {
@@ -217,67 +286,251 @@ public class MergeManager {
 			if (workingState.isCanceled())
 				return;
 			String entryName = inEntry.getName();
-			out.putNextEntry(new ZipEntry(entryName));
-			workingState.changeWorkingText(entryName);
+			ZipArchiveReader.Entry rawEntry = toRawEntry(inEntry);
+			workingState.changeWorkingText(entryName, inEntry.getSize());
+			statistics.countEntry(isMergeTarget(entryName));
 
 			// debug 処理対象クラス指定
 			// if (!entryName.equals("java/lang/String.java")) continue;
 			// if (!entryName.endsWith("/SuppressWarnings.java")) continue;
 			// if (!entryName.endsWith("/System.java")) continue;
 
-			if (entryName.endsWith(".java") && !entryName.endsWith("/package-info.java")) {
+			if (isMergeTarget(entryName)) {
 
 				// Java ソースの場合
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				copyStream(in, baos);
-				String source = baos.toString(pref.getInputEncoding());
-				source = FastStringUtils.optimizeLineSeparator(source);
-				source = FastStringUtils.untabify(source);
-
-				// Check the Java source and replace it before merging, if any.
-				source = chkFilter(entryName, source);
-
-				// Java ソースを API ドキュメントとマージ
-				String result = merger.merge(source);
-				String className = merger.getMergedClassName();
-				if (className != null) {
-					result = doFilter(className, result);
-				}
-				byte[] resultBuf = result.getBytes(pref.getOutputEncoding());
-				out.write(resultBuf);
+				byte[] data = readEntry(in, entryName);
+				writeEntry(out, entryName, rawEntry, data, processSource(entryName, data, rawEntry != null));
+
+			} else if (rawEntry != null) {
+
+				// Java ソース以外で圧縮データを直接扱える場合
+				writeEntry(out, entryName, rawEntry, null, null);
 
 			} else {
 
 				// Java ソース以外の場合
-				copyStream(in, out);
+				byte[] data = readEntry(in, entryName);
+				writeEntry(out, entryName, null, data, null);
 			}
 		}
 	}
 
 	/**
-	 * 入力ストリームを出力ストリームにコピーします。
+	 * 複数スレッドでマージします。
+	 * <p>
+	 * 読み込みスレッドがエントリを読み込み、マージ処理をワーカースレッドに依頼します。ワーカースレッドはマージセッションからスレッドごとの
+	 * Merger を使用します。書き込みはこのメソッドを呼び出したスレッドで、入力アーカイブと同じ順番で行われます。先読みするエントリ数には上限があるため、
+	 * 書き込みが遅れた場合は読み込みが待機します。
 	 * 
 	 * @param in
-	 *            入力ストリーム
+	 *            アーカイブ入力ストリーム
 	 * @param out
-	 *            出力ストリーム
+	 *            ZIP アーカイブライター
+	 * @param threads
+	 *            ワーカースレッド数
+	 * @throws MergeDocException
+	 *             コンフィグ情報の取得に失敗した場合
+	 * @throws SAXException
+	 *             SAX パース例外が発生した場合
 	 * @throws IOException
 	 *             入出力例外が発生した場合
 	 */
-	private void copyStream(ArchiveInputStream in, OutputStream out) throws IOException {
-		for (int size = 0; (size = in.read(byteBuffer)) > 0;) {
-			out.write(byteBuffer, 0, size);
+	private void mergeParallel(final ArchiveInputStream in, ZipArchiveWriter out, int threads)
+			throws MergeDocException, SAXException, IOException {
+
+		// シングルトンは生成時に同期化されないため、ワーカー起動前に生成しておく
+		ConfigManager.getInstance();
+		try {
+			Persister.getInstance();
+		} catch (MergeDocException e) {
+			// APIDocument と同様に設定ファイルが取得できない場合は無視
+		}
+
+		final ExecutorService workers = Executors.newFixedThreadPool(threads, new MergeThreadFactory("worker"));
+		final BlockingQueue<PendingEntry> queue = new ArrayBlockingQueue<PendingEntry>(threads * QUEUE_SIZE_PER_THREAD);
+
+		// 読み込みスレッド
+		Thread reader = new MergeThreadFactory("reader").newThread(new Runnable() {
+			public void run() {
+				try {
+					ArchiveInputStream.Entry inEntry = null;
+					while ((inEntry = in.getNextEntry()) != null && !workingState.isCanceled()) {
+
+						final String entryName = inEntry.getName();
+						ZipArchiveReader.Entry rawEntry = toRawEntry(inEntry);
+						statistics.countEntry(isMergeTarget(entryName));
+
+						if (isMergeTarget(entryName)) {
+							final byte[] data = readEntry(in, entryName);
+							final boolean compare = (rawEntry != null);
+							queue.put(new PendingEntry(entryName, rawEntry, data, workers.submit(new Callable<SourceOutput>() {
+								public SourceOutput call() throws Exception {
+									return processSource(entryName, data, compare);
+								}
+							})));
+						} else if (rawEntry != null) {
+							queue.put(new PendingEntry(entryName, rawEntry, null, null));
+						} else {
+							queue.put(new PendingEntry(entryName, null, readEntry(in, entryName), null));
+						}
+					}
+					queue.put(PendingEntry.END);
+
+				} catch (InterruptedException e) {
+					// 書き込み側の終了による割り込み
+				} catch (final Exception e) {
+					// 読み込みエラーは書き込み側に伝える
+					FutureTask<SourceOutput> failure = new FutureTask<SourceOutput>(new Callable<SourceOutput>() {
+						public SourceOutput call() throws Exception {
+							throw e;
+						}
+					});
+					failure.run();
+					try {
+						queue.put(new PendingEntry(null, null, null, failure));
+					} catch (InterruptedException ie) {
+					}
+				}
+			}
+		});
+
+		try {
+			reader.start();
+			for (PendingEntry pending = queue.take(); pending != PendingEntry.END; pending = queue.take()) {
+
+				if (workingState.isCanceled())
+					return;
+				SourceOutput output = pending.get();
+				workingState.changeWorkingText(pending.name,
+						(pending.data != null) ? pending.data.length : pending.rawEntry.getSize());
+				writeEntry(out, pending.name, pending.rawEntry, pending.data, output);
+			}
+
+		} catch (InterruptedException e) {
+			throw new IOException("マージが中断されました。", e);
+
+		} finally {
+
+			// 入力ストリームは呼び出し元で閉じるため、読み込みスレッドの終了を待つ
+			reader.interrupt();
+			workers.shutdownNow();
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 並列マージで書き込み待ちとなっているエントリです。
+	 */
+	private static class PendingEntry {
+
+		/** 読み込みの終了を示すエントリ */
+		static final PendingEntry END = new PendingEntry(null, null, null, null);
+
+		/** エントリ名 */
+		final String name;
+
+		/** 圧縮データを直接扱えるエントリ。扱えない場合は null。 */
+		final ZipArchiveReader.Entry rawEntry;
+
+		/** 入力データ。圧縮データをそのまま書き込む場合は null。 */
+		final byte[] data;
+
+		/** マージ中のデータ。マージしない場合は null。 */
+		final Future<SourceOutput> future;
+
+		PendingEntry(String name, ZipArchiveReader.Entry rawEntry, byte[] data, Future<SourceOutput> future) {
+			this.name = name;
+			this.rawEntry = rawEntry;
+			this.data = data;
+			this.future = future;
 		}
+
+		/**
+		 * Java ソースの処理結果を取得します。マージ中の場合は完了するまで待機します。
+		 * 
+		 * @return Java ソースの処理結果。マージしない場合は null。
+		 */
+		SourceOutput get() throws MergeDocException, SAXException, IOException, InterruptedException {
+			if (future == null) {
+				return null;
+			}
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof MergeDocException)
+					throw (MergeDocException) cause;
+				if (cause instanceof SAXException)
+					throw (SAXException) cause;
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new MergeDocException(cause);
+			}
+		}
+	}
+
+	/**
+	 * システムプロパティ {@value #THREADS_KEY} からマージスレッド数を取得します。
+	 * 
+	 * @return マージスレッド数
+	 */
+	static int threadCount() {
+		int threads = Integer.getInteger(THREADS_KEY, 1);
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		return threads;
 	}
 
 	/**
-	 * XML に定義された置換エントリを元にソース置換処理を行います。
+	 * システムプロパティ {@value #INCREMENTAL_KEY} に true が指定された場合は差分マージを開始します。
+	 * API ドキュメントをダウンロードする場合は差分マージを行いません。
+	 * 
+	 * @return 差分マージのマニフェスト。差分マージを行わない場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private MergeManifest openManifest() throws IOException {
+
+		if (!Boolean.getBoolean(INCREMENTAL_KEY)) {
+			return null;
+		}
+		if (pref.getApiDownload().equals("true")) {
+			logger.info("API ドキュメントをダウンロードする場合は差分マージを行いません。");
+			return null;
+		}
+		return MergeManifest.open(pref);
+	}
+
+	/**
+	 * マージ対象のエントリか判定します。
+	 * 
+	 * @param entryName
+	 *            エントリ名
+	 * @return Java ソース（package-info.java を除く）の場合は true
+	 */
+	static boolean isMergeTarget(String entryName) {
+		return entryName.endsWith(".java") && !entryName.endsWith("/package-info.java");
+	}
+
+	/**
+	 * Java ソースを処理します。 差分マージで前回のマージ結果を再利用できる場合は再利用し、それ以外の場合はマージして結果をマニフェストに記録します。
 	 * 
 	 * @param entryName
 	 *            Java ソースファイル名
-	 * @param source
-	 *            Java ソース文字列
-	 * @return 処理後のソース文字列
+	 * @param data
+	 *            入力エンコーディングの Java ソース
+	 * @param compare
+	 *            マージ結果を入力データと比較する場合は true
+	 * @return Java ソースの処理結果
 	 * @throws MergeDocException
 	 *             コンフィグ情報の取得に失敗した場合
 	 * @throws SAXException
@@ -285,59 +538,167 @@ public class MergeManager {
 	 * @throws IOException
 	 *             入出力例外が発生した場合
 	 */
-	private String chkFilter(String entryName, String source) throws MergeDocException, SAXException, IOException {
-		// クラス別置換定義の処理
-		String path = entryName.substring(0, entryName.length() - 4) + "xml";
-		ConfigManager config = ConfigManager.getInstance();
-		File entryXML = config.getFile(path);
-		if (entryXML.exists()) {
-			SAXParser saxParser = config.getSAXPerser();
-			ReplaceHandler handler = new ReplaceHandler(source);
-			saxParser.parse(entryXML, handler);
-			source = handler.getResult();
-		}
+	private SourceOutput processSource(String entryName, byte[] data, boolean compare)
+			throws MergeDocException, SAXException, IOException {
 
-		// グローバル置換定義の処理
-		for (ReplaceEntry entry : pref.getGlobalEntries()) {
-			source = entry.replace(source);
+		if (manifest == null) {
+			return mergeSource(entryName, data, compare, new MergeSession.EntryInfo());
 		}
-
-		return source;
+		long start = System.nanoTime();
+		byte[] result = manifest.reuse(entryName, data);
+		statistics.record(MergeStatistics.Stage.REUSE, entryName, start, (result != null) ? result.length : -1);
+		if (result != null) {
+			statistics.countReused();
+			return new SourceOutput(null, result);
+		}
+		MergeSession.EntryInfo info = new MergeSession.EntryInfo();
+		SourceOutput output = mergeSource(entryName, data, compare, info);
+		manifest.record(entryName, data, info.className);
+		return output;
 	}
 
 	/**
-	 * XML に定義された置換エントリを元にソース置換処理を行います。
+	 * Java ソースを API ドキュメントとマージします。 マージ結果はエンコードせずに返し、書き込み時に圧縮しながらエンコードします。
+	 * マージしても入力データと変わらないことがデコード前に分かる場合は、{@link SourceOutput#UNCHANGED} を返します。
 	 * 
-	 * @param className
-	 *            クラス名
-	 * @param source
-	 *            Java ソース文字列
-	 * @return 処理後のソース文字列
-	 * @throws MergeDocException
-	 *             コンフィグ情報の取得に失敗した場合
+	 * @param entryName
+	 *            Java ソースファイル名
+	 * @param data
+	 *            入力エンコーディングの Java ソース
+	 * @param compare
+	 *            マージ結果を入力データと比較する場合は true
+	 * @param info
+	 *            判定の結果とクラス名を受け取るエントリ情報
+	 * @return Java ソースの処理結果。入力データと同じ場合は {@link SourceOutput#UNCHANGED}。
 	 * @throws SAXException
 	 *             SAX パース例外が発生した場合
 	 * @throws IOException
 	 *             入出力例外が発生した場合
 	 */
-	private String doFilter(String className, String source) throws MergeDocException, SAXException, IOException {
-		// クラス別置換定義の処理
-		String path = FastStringUtils.replaceAll(className, "\\.", "/") + ".xml";
-		ConfigManager config = ConfigManager.getInstance();
-		File entryXML = config.getFile(path);
-		if (entryXML.exists()) {
-			SAXParser saxParser = config.getSAXPerser();
-			ReplaceHandler handler = new ReplaceHandler(source);
-			saxParser.parse(entryXML, handler);
-			source = handler.getResult();
+	private SourceOutput mergeSource(String entryName, byte[] data, boolean compare, MergeSession.EntryInfo info)
+			throws SAXException, IOException {
+
+		if (session.isPassthrough(entryName, data, statistics, info)) {
+			statistics.countPassthrough();
+			return SourceOutput.UNCHANGED;
+		}
+		String text = session.mergeText(entryName, data, statistics, info);
+		if (compare) {
+			long start = System.nanoTime();
+			boolean unchanged = session.encodesTo(text, data);
+			statistics.record(MergeStatistics.Stage.ENCODE, entryName, start, -1);
+			if (unchanged) {
+				return SourceOutput.UNCHANGED;
+			}
+		}
+		return new SourceOutput(text, null);
+	}
+
+	/**
+	 * Java ソースの処理結果です。 マージした場合はエンコード前の文字列、差分マージで前回のマージ結果を再利用した場合はエンコード済みのバイト配列を持ちます。
+	 */
+	private static class SourceOutput {
+
+		/** マージ結果が入力データと同じことを示す処理結果 */
+		static final SourceOutput UNCHANGED = new SourceOutput(null, null);
+
+		/** マージ後の Java ソース文字列。エンコード済みの場合は null。 */
+		final String text;
+
+		/** 出力エンコーディングのマージ後 Java ソース。エンコード前の場合は null。 */
+		final byte[] bytes;
+
+		SourceOutput(String text, byte[] bytes) {
+			this.text = text;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * 圧縮データを直接扱えるエントリに変換します。
+	 * 
+	 * @param entry
+	 *            アーカイブエントリ
+	 * @return 圧縮データを直接扱えるエントリ。扱えない場合は null。
+	 */
+	private static ZipArchiveReader.Entry toRawEntry(ArchiveInputStream.Entry entry) {
+		return (entry instanceof ZipArchiveReader.Entry) ? (ZipArchiveReader.Entry) entry : null;
+	}
+
+	/**
+	 * 現在のエントリのデータを読み込みます。
+	 * 
+	 * @param in
+	 *            アーカイブ入力ストリーム
+	 * @param entryName
+	 *            エントリ名
+	 * @return エントリのデータ
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private byte[] readEntry(ArchiveInputStream in, String entryName) throws IOException {
+		long start = System.nanoTime();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		for (int size = 0; (size = in.read(byteBuffer)) > 0;) {
+			baos.write(byteBuffer, 0, size);
 		}
+		statistics.record(MergeStatistics.Stage.READ, entryName, start, baos.size());
+		return baos.toByteArray();
+	}
 
-		// グローバル置換定義の処理
-		for (ReplaceEntry entry : pref.getGlobalEntries()) {
-			source = entry.replace(source);
+	/**
+	 * エントリを ZIP アーカイブに書き込みます。 内容が入力データと同じで圧縮データを直接扱える場合は、再圧縮せずにそのまま書き込みます。
+	 * マージ後の Java ソース文字列は、圧縮しながら出力エンコーディングでエンコードします。
+	 * 
+	 * @param out
+	 *            ZIP アーカイブライター
+	 * @param entryName
+	 *            エントリ名
+	 * @param rawEntry
+	 *            圧縮データを直接扱えるエントリ。扱えない場合は null。
+	 * @param data
+	 *            入力データ。圧縮データをそのまま書き込む場合は null。
+	 * @param output
+	 *            Java ソースの処理結果。入力データをそのまま書き込む場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private void writeEntry(ZipArchiveWriter out, String entryName, ZipArchiveReader.Entry rawEntry, byte[] data,
+			SourceOutput output) throws IOException {
+		long start = System.nanoTime();
+		if (output != null && output.text != null) {
+			out.putEntry(entryName, output.text, pref.getOutputEncoding());
+			statistics.record(MergeStatistics.Stage.WRITE, entryName, start, -1);
+			return;
 		}
+		byte[] result = (output != null && output.bytes != null) ? output.bytes : data;
+		if (rawEntry != null && (result == data || Arrays.equals(data, result))) {
+			out.putRawEntry(rawEntry);
+			statistics.record(MergeStatistics.Stage.WRITE, entryName, start, rawEntry.getSize());
+			statistics.countRaw();
+		} else {
+			out.putEntry(entryName, result);
+			statistics.record(MergeStatistics.Stage.WRITE, entryName, start, result.length);
+		}
+	}
 
-		return source;
+	/**
+	 * 処理段階ごとの統計情報を出力アーカイブファイルと同じディレクトリにレポートファイルとして書き込みます。
+	 * システムプロパティ {@value #REPORT_KEY} に false が指定された場合は書き込みません。
+	 * 書き込めない場合はマージ結果に影響しないため警告のみとします。
+	 */
+	private void writeReport() {
+
+		if (!Boolean.parseBoolean(System.getProperty(REPORT_KEY, "true"))) {
+			return;
+		}
+		File reportFile = MergeStatistics.reportFile(pref.getOutputArchive());
+		try {
+			statistics.write(reportFile, pref, threadCount());
+			logger.info("処理レポート: " + reportFile);
+		} catch (IOException e) {
+			logger.warn(reportFile + " に処理レポートを書き込めませんでした。", e);
+		}
 	}
 
 	/**
@@ -350,17 +711,42 @@ public class MergeManager {
 	 *             現在のスレッドで割り込みが発生した場合
 	 */
 	public int entrySize() throws InterruptedException, ExecutionException {
-		return entrySizeFuture.get();
+		return metadataFuture.get().getEntryCount();
+	}
+
+	/**
+	 * 処理対象となるエントリの展開後のサイズの合計を取得します。
+	 * 
+	 * @return 展開後のサイズの合計。不明な場合は -1。
+	 * @throws ExecutionException
+	 *             サイズ取得に失敗した場合
+	 * @throws InterruptedException
+	 *             現在のスレッドで割り込みが発生した場合
+	 */
+	public long totalSize() throws InterruptedException, ExecutionException {
+		return metadataFuture.get().getTotalSize();
 	}
 
 	/**
 	 * 進捗監視用のリスナをセットします。
 	 * 
-	 * @param changeListener
+	 * @param workingListener
 	 *            進捗監視用のリスナ
 	 */
-	public void setChangeListener(ChangeListener changeListener) {
-		workingState.setChangeListener(changeListener);
+	public void setWorkingListener(WorkingListener workingListener) {
+		workingState.setWorkingListener(workingListener);
+	}
+
+	/**
+	 * 前回の実行で一度も一致しなかったグローバル置換エントリを取得します。
+	 * 
+	 * @return 一度も一致しなかった置換エントリの「説明 [置換前文字列]」のリスト。実行前の場合は空のリスト。
+	 */
+	public List<String> getUnmatchedEntries() {
+		if (globalFilter == null) {
+			return Collections.emptyList();
+		}
+		return globalFilter.getUnmatchedEntries();
 	}
 
 	/**
@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import mergedoc.MergeDocException;
+import mergedoc.xml.ConfigManager;
+import mergedoc.xml.ReplaceEntry;
+
+/**
+ * 差分マージのマニフェストです。
+ * <p>
+ * 出力アーカイブファイルと同じディレクトリにマニフェストファイルを作成し、Java ソースのエントリごとに入力データの CRC-32
+ * とサイズ、マージで参照した API ドキュメントファイルとクラス別置換定義 XML のスタンプを記録します。次回の実行時に入力データと参照ファイルが変更されていない
+ * エントリは、前回の出力アーカイブファイルからマージ結果を取り出して再利用します。
+ * <p>
+ * エンコーディング、API ドキュメントディレクトリ、グローバル置換定義、マージ結果の版 {@link Merger#OUTPUT_VERSION}
+ * のいずれかが変更された場合は前回のマニフェストを使用しません。
+ * このクラスは並列マージのワーカースレッドから同時に使用できます。
+ *
+ * @author Shinji Kashihara
+ */
+class MergeManifest {
+
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(MergeManifest.class);
+
+	/** マニフェストファイルの拡張子 */
+	private static final String MANIFEST_SUFFIX = ".manifest";
+
+	/** 前回の出力アーカイブファイルの拡張子 */
+	private static final String PREVIOUS_SUFFIX = ".prev";
+
+	/** マニフェストファイルの識別子（"MDMF"） */
+	private static final int MAGIC = 0x4d444d46;
+
+	/** マニフェストファイルの形式バージョン */
+	private static final int VERSION = 1;
+
+	/** 存在しないファイルのサイズ */
+	private static final long MISSING = -1;
+
+	/** マージ設定 */
+	private final Preference pref;
+
+	/** マージ設定から算出した実行キー */
+	private final String runKey;
+
+	/** マニフェストファイル */
+	private final File manifestFile;
+
+	/** 前回のエントリ記録。前回のマニフェストを使用しない場合は空。 */
+	private final Map<String, EntryRecord> previousEntries;
+
+	/** 前回の出力アーカイブファイル */
+	private final File previousFile;
+
+	/** 前回の出力アーカイブ */
+	private final ZipFile previousZip;
+
+	/** 今回のエントリ記録 */
+	private final Map<String, EntryRecord> currentEntries = new ConcurrentHashMap<String, EntryRecord>();
+
+	/** パスをキーとした今回のファイルスタンプ */
+	private final ConcurrentHashMap<String, FileStamp> currentStamps = new ConcurrentHashMap<String, FileStamp>();
+
+	/** 再利用したエントリ数 */
+	private final AtomicInteger reusedCount = new AtomicInteger();
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param pref
+	 *            マージ設定
+	 * @param runKey
+	 *            実行キー
+	 * @param manifestFile
+	 *            マニフェストファイル
+	 * @param previousEntries
+	 *            前回のエントリ記録
+	 * @param previousFile
+	 *            前回の出力アーカイブファイル
+	 * @param previousZip
+	 *            前回の出力アーカイブ
+	 */
+	private MergeManifest(Preference pref, String runKey, File manifestFile, Map<String, EntryRecord> previousEntries,
+			File previousFile, ZipFile previousZip) {
+		this.pref = pref;
+		this.runKey = runKey;
+		this.manifestFile = manifestFile;
+		this.previousEntries = previousEntries;
+		this.previousFile = previousFile;
+		this.previousZip = previousZip;
+	}
+
+	/**
+	 * 差分マージを開始します。
+	 * <p>
+	 * 前回のマニフェストが使用できる場合は、出力アーカイブファイルを前回の出力アーカイブファイルとして退避します。
+	 * マージが中断された場合に不完全な出力を再利用しないように、マニフェストファイルは削除され、{@link #commit()}
+	 * で書き直されます。
+	 *
+	 * @param pref
+	 *            マージ設定
+	 * @return マニフェスト
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	static MergeManifest open(Preference pref) throws IOException {
+
+		File outFile = pref.getOutputArchive();
+		File manifestFile = new File(outFile.getPath() + MANIFEST_SUFFIX);
+		File previousFile = new File(outFile.getPath() + PREVIOUS_SUFFIX);
+		String runKey = createRunKey(pref);
+
+		Map<String, EntryRecord> previousEntries = new HashMap<String, EntryRecord>();
+		if (manifestFile.isFile() && outFile.isFile()) {
+			previousEntries = read(manifestFile, runKey);
+		}
+		if (manifestFile.exists() && !manifestFile.delete()) {
+			throw new IOException(manifestFile + " を削除できませんでした。");
+		}
+		if (previousEntries.isEmpty()) {
+			return new MergeManifest(pref, runKey, manifestFile, previousEntries, null, null);
+		}
+
+		// 出力アーカイブファイルを退避
+		if (previousFile.exists() && !previousFile.delete() || !outFile.renameTo(previousFile)) {
+			throw new IOException(outFile + " を " + previousFile + " に退避できませんでした。");
+		}
+		ZipFile previousZip = new ZipFile(previousFile);
+		return new MergeManifest(pref, runKey, manifestFile, previousEntries, previousFile, previousZip);
+	}
+
+	/**
+	 * 前回のマージ結果を再利用できる場合は取得し、今回のマニフェストに記録します。
+	 *
+	 * @param entryName
+	 *            エントリ名
+	 * @param data
+	 *            入力データ
+	 * @return 前回のマージ結果。再利用できない場合は null。
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	byte[] reuse(String entryName, byte[] data) throws IOException {
+
+		EntryRecord previous = previousEntries.get(entryName);
+		if (previous == null || previous.length != data.length || previous.crc != checksum(data)) {
+			return null;
+		}
+		for (FileStamp stamp : previous.dependencies) {
+			if (!stamp.equals(stamp(new File(stamp.path)))) {
+				return null;
+			}
+		}
+		ZipEntry zipEntry = previousZip.getEntry(entryName);
+		if (zipEntry == null) {
+			return null;
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream((int) Math.max(zipEntry.getSize(), 0));
+		InputStream is = previousZip.getInputStream(zipEntry);
+		try {
+			byte[] buf = new byte[4096];
+			for (int size = 0; (size = is.read(buf)) > 0;) {
+				baos.write(buf, 0, size);
+			}
+		} finally {
+			is.close();
+		}
+
+		currentEntries.put(entryName, previous);
+		reusedCount.incrementAndGet();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * マージしたエントリを今回のマニフェストに記録します。
+	 *
+	 * @param entryName
+	 *            エントリ名
+	 * @param data
+	 *            入力データ
+	 * @param className
+	 *            マージしたクラス名。package 宣言が無い場合は null。
+	 * @throws MergeDocException
+	 *             コンフィグ情報の取得に失敗した場合
+	 */
+	void record(String entryName, byte[] data, String className) throws MergeDocException {
+
+		List<FileStamp> dependencies = new ArrayList<FileStamp>();
+		ConfigManager config = ConfigManager.getInstance();
+
+		// エントリ名によるクラス別置換定義
+		String path = entryName.substring(0, entryName.length() - 4) + "xml";
+		dependencies.add(stamp(config.getFile(path)));
+
+		if (className != null) {
+			// クラス名によるクラス別置換定義
+			dependencies.add(stamp(config.getFile(className.replace('.', '/') + ".xml")));
+
+			// API ドキュメントファイルとインナークラス追加を検出するためのディレクトリ
+			File docDir = pref.getDocDirectory();
+			if (docDir != null && docDir.getPath().length() > 0) {
+				List<File> docFiles = APIDocument.listDocumentFiles(docDir, className);
+				dependencies.add(stamp(docFiles.get(0).getParentFile()));
+				for (File docFile : docFiles) {
+					dependencies.add(stamp(docFile));
+				}
+			}
+		}
+
+		FileStamp[] deps = dependencies.toArray(new FileStamp[dependencies.size()]);
+		currentEntries.put(entryName, new EntryRecord(checksum(data), data.length, deps));
+	}
+
+	/**
+	 * 再利用したエントリ数を取得します。
+	 *
+	 * @return 再利用したエントリ数
+	 */
+	int getReusedCount() {
+		return reusedCount.get();
+	}
+
+	/**
+	 * 今回のマニフェストをマニフェストファイルに書き込みます。 マージが正常に終了した場合のみ呼び出してください。
+	 *
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	void commit() throws IOException {
+
+		// 参照ファイルのスタンプは共有されるため、一度だけ書き込む
+		Map<FileStamp, Integer> stampIndexes = new HashMap<FileStamp, Integer>();
+		List<FileStamp> stamps = new ArrayList<FileStamp>();
+		for (EntryRecord record : currentEntries.values()) {
+			for (FileStamp stamp : record.dependencies) {
+				if (!stampIndexes.containsKey(stamp)) {
+					stampIndexes.put(stamp, stamps.size());
+					stamps.add(stamp);
+				}
+			}
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(manifestFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(runKey);
+
+			out.writeInt(stamps.size());
+			for (FileStamp stamp : stamps) {
+				out.writeUTF(stamp.path);
+				out.writeLong(stamp.length);
+				out.writeLong(stamp.lastModified);
+			}
+
+			out.writeInt(currentEntries.size());
+			for (Map.Entry<String, EntryRecord> entry : currentEntries.entrySet()) {
+				EntryRecord record = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeInt(record.crc);
+				out.writeInt(record.length);
+				out.writeInt(record.dependencies.length);
+				for (FileStamp stamp : record.dependencies) {
+					out.writeInt(stampIndexes.get(stamp));
+				}
+			}
+		} finally {
+			out.close();
+		}
+		logger.info("差分マージ: 対象 " + currentEntries.size() + " ファイル, 再利用 " + reusedCount.get() + " ファイル");
+	}
+
+	/**
+	 * 前回の出力アーカイブを閉じ、退避したファイルを削除します。
+	 */
+	void close() {
+		if (previousZip == null) {
+			return;
+		}
+		try {
+			previousZip.close();
+		} catch (IOException e) {
+			logger.warn(previousFile + " を閉じることができませんでした。", e);
+		}
+		if (!previousFile.delete()) {
+			logger.warn(previousFile + " を削除できませんでした。");
+		}
+	}
+
+	/**
+	 * ファイルの今回のスタンプを取得します。 同じパスのスタンプは一度だけ取得されます。
+	 *
+	 * @param file
+	 *            ファイル
+	 * @return スタンプ
+	 */
+	private FileStamp stamp(File file) {
+		String path = file.getAbsolutePath();
+		FileStamp stamp = currentStamps.get(path);
+		if (stamp == null) {
+			if (file.exists()) {
+				stamp = new FileStamp(path, file.isDirectory() ? 0 : file.length(), file.lastModified());
+			} else {
+				stamp = new FileStamp(path, MISSING, MISSING);
+			}
+			FileStamp other = currentStamps.putIfAbsent(path, stamp);
+			if (other != null) {
+				stamp = other;
+			}
+		}
+		return stamp;
+	}
+
+	/**
+	 * マニフェストファイルを読み込みます。
+	 *
+	 * @param manifestFile
+	 *            マニフェストファイル
+	 * @param runKey
+	 *            今回の実行キー
+	 * @return エントリ名をキーとしたエントリ記録。形式や実行キーが異なる場合は空。
+	 */
+	private static Map<String, EntryRecord> read(File manifestFile, String runKey) {
+
+		Map<String, EntryRecord> entries = new HashMap<String, EntryRecord>();
+		long fileLength = manifestFile.length();
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					logger.info(manifestFile + " は形式が異なるため、すべてのエントリをマージします。");
+					return entries;
+				}
+				if (!in.readUTF().equals(runKey)) {
+					logger.info("マージ設定またはマージ結果の版が変更されたため、すべてのエントリをマージします。");
+					return entries;
+				}
+
+				// スタンプは 1 件あたり 18 バイト以上
+				FileStamp[] stamps = new FileStamp[readCount(in, fileLength, 18)];
+				for (int i = 0; i < stamps.length; i++) {
+					stamps[i] = new FileStamp(in.readUTF(), in.readLong(), in.readLong());
+				}
+				// エントリは 1 件あたり 14 バイト以上
+				for (int i = readCount(in, fileLength, 14); i > 0; i--) {
+					String entryName = in.readUTF();
+					int crc = in.readInt();
+					int length = in.readInt();
+					FileStamp[] deps = new FileStamp[readCount(in, fileLength, 4)];
+					for (int j = 0; j < deps.length; j++) {
+						deps[j] = stamps[in.readInt()];
+					}
+					entries.put(entryName, new EntryRecord(crc, length, deps));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			logger.warn(manifestFile + " を読み込めないため、すべてのエントリをマージします。", e);
+			entries.clear();
+		} catch (RuntimeException e) {
+			// 途中で切れたり壊れたりしたマニフェストは件数や参照番号が不正な場合がある
+			logger.warn(manifestFile + " は壊れているため、すべてのエントリをマージします。", e);
+			entries.clear();
+		}
+		return entries;
+	}
+
+	/**
+	 * 件数を読み込みます。 件数と 1 件あたりの最小バイト数から、ファイルの長さに収まるか検証します。
+	 *
+	 * @param in
+	 *            入力ストリーム
+	 * @param fileLength
+	 *            マニフェストファイルの長さ
+	 * @param minSize
+	 *            1 件あたりの最小バイト数
+	 * @return 件数
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private static int readCount(DataInputStream in, long fileLength, int minSize) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > fileLength / minSize) {
+			throw new IllegalStateException("件数が不正です: " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * マージ結果に影響するマージ設定とマージ結果の版から実行キーを作成します。
+	 *
+	 * @param pref
+	 *            マージ設定
+	 * @return 実行キー
+	 */
+	private static String createRunKey(Preference pref) {
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(Merger.OUTPUT_VERSION).append('\n');
+		sb.append(pref.getInputEncoding()).append('\n');
+		sb.append(pref.getOutputEncoding()).append('\n');
+		sb.append(pref.getDocEncoding()).append('\n');
+		File docDir = pref.getDocDirectory();
+		sb.append(docDir == null ? "" : docDir.getAbsolutePath()).append('\n');
+		for (ReplaceEntry entry : pref.getGlobalEntries()) {
+			appendEntry(sb, entry);
+		}
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 置換エントリの内容を子を含めて追加します。
+	 *
+	 * @param sb
+	 *            追加先
+	 * @param entry
+	 *            置換エントリ
+	 */
+	private static void appendEntry(StringBuilder sb, ReplaceEntry entry) {
+		sb.append('[').append(entry.getTarget()).append('\0');
+		sb.append(entry.getBefore()).append('\0');
+		sb.append(entry.getAfter()).append('\0');
+		for (ReplaceEntry child : entry.getChildren()) {
+			appendEntry(sb, child);
+		}
+		sb.append(']');
+	}
+
+	/**
+	 * データの CRC-32 を取得します。
+	 *
+	 * @param data
+	 *            データ
+	 * @return CRC-32
+	 */
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * ファイルのスタンプです。
+	 */
+	private static class FileStamp {
+		final String path;
+		final long length;
+		final long lastModified;
+
+		FileStamp(String path, long length, long lastModified) {
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileStamp)) {
+				return false;
+			}
+			FileStamp other = (FileStamp) obj;
+			return path.equals(other.path) && length == other.length && lastModified == other.lastModified;
+		}
+
+		public int hashCode() {
+			return path.hashCode();
+		}
+	}
+
+	/**
+	 * エントリの記録です。
+	 */
+	private static class EntryRecord {
+		final int crc;
+		final int length;
+		final FileStamp[] dependencies;
+
+		EntryRecord(int crc, int length, FileStamp[] dependencies) {
+			this.crc = crc;
+			this.length = length;
+			this.dependencies = dependencies;
+		}
+	}
+}
@@ -0,0 +1,647 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import mergedoc.MergeDocException;
+import mergedoc.xml.ClassFilterIndex;
+import mergedoc.xml.FilterProgram;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+import org.xml.sax.SAXException;
+
+/**
+ * 他のアプリケーションに組み込んで使用するマージセッションです。
+ * <p>
+ * 生成時にマージ設定の値を複写し、API ドキュメント索引、グローバル置換定義、クラス別置換定義ファイルの索引を準備します。
+ * 生成後にマージ設定や設定ファイルが変更されても影響を受けません。API ドキュメントはダウンロードせず、API
+ * ドキュメントディレクトリから読み込みます。
+ * <p>
+ * 複数スレッドから同時に使用できます。マージの作業状態を持つ {@link Merger} はセッションのプールから使用中でないものを取り出して再利用します。
+ * スレッドには結び付けないため、セッションを使用しなくなれば、呼び出したスレッドが残っていても Merger などは解放されます。
+ * 同じ JVM で異なる設定の複数のセッションを同時に使用することもできます。
+ *
+ * <pre>
+ * MergeSession session = MergeSession.open(pref);
+ * String merged = session.mergeSource(source);
+ * session.mergeArchive(in, out);
+ * </pre>
+ *
+ * @author Shinji Kashihara
+ */
+public class MergeSession {
+
+	/** ロガー */
+	private static final Logger logger = LogManager.getLogger(MergeSession.class);
+
+	/** API ドキュメントディレクトリ */
+	private final File docDirectory;
+
+	/** API ドキュメントエンコーディング */
+	private final String docEncoding;
+
+	/** 入力ソースエンコーディング */
+	private final String inputEncoding;
+
+	/** 出力ソースエンコーディング */
+	private final String outputEncoding;
+
+	/** API ドキュメントのダウンロード設定を参照する場合は true */
+	private final boolean download;
+
+	/** API ドキュメント索引。使用しない場合は null。 */
+	private final APIDocumentIndex docIndex;
+
+	/** グローバル置換定義をコンパイルした置換処理 */
+	private final FilterProgram globalFilter;
+
+	/** マージ前に適用する、改行を変換する置換規則を除いたグローバル置換定義 */
+	private final FilterProgram beforeMergeFilter;
+
+	/** グローバル置換定義のうち改行を変換する置換規則 */
+	private final FilterProgram lineBreakFilter;
+
+	/** クラス別置換定義ファイルの索引 */
+	private final ClassFilterIndex classFilters;
+
+	/** API ドキュメントを索引だけから読み込む場合は true */
+	private final boolean indexOnly;
+
+	/** デコードせずにバイト列のまま行う判定 */
+	private final SourcePassthrough passthrough;
+
+	/** Merger のプール */
+	private final Pool<Merger> mergers = new Pool<Merger>() {
+		Merger create() {
+			Merger merger = new Merger(docDirectory);
+			merger.setDocEncoding(docEncoding);
+			merger.setDocumentIndex(docIndex);
+			merger.setDownload(download);
+			return merger;
+		}
+	};
+
+	/** 入力エンコーディングのデコーダのプール */
+	private final Pool<SourceDecoder> decoders = new Pool<SourceDecoder>() {
+		SourceDecoder create() {
+			return new SourceDecoder(inputEncoding);
+		}
+	};
+
+	/** 出力エンコーディングのエンコーダのプール */
+	private final Pool<SourceEncoder> encoders = new Pool<SourceEncoder>() {
+		SourceEncoder create() {
+			return new SourceEncoder(outputEncoding);
+		}
+	};
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param pref
+	 *            マージ設定
+	 * @param download
+	 *            API ドキュメントのダウンロード設定を参照する場合は true
+	 * @param docIndex
+	 *            API ドキュメント索引。使用しない場合は null。
+	 * @param globalFilter
+	 *            グローバル置換定義をコンパイルした置換処理
+	 * @param classFilters
+	 *            クラス別置換定義ファイルの索引
+	 */
+	MergeSession(Preference pref, boolean download, APIDocumentIndex docIndex, FilterProgram globalFilter,
+			ClassFilterIndex classFilters) {
+		this.docDirectory = pref.getDocDirectory();
+		this.docEncoding = pref.getDocEncoding();
+		this.inputEncoding = pref.getInputEncoding();
+		this.outputEncoding = pref.getOutputEncoding();
+		this.download = download;
+		this.docIndex = docIndex;
+		this.globalFilter = globalFilter;
+		this.beforeMergeFilter = globalFilter.withoutLineBreakRules();
+		this.lineBreakFilter = globalFilter.lineBreakRules();
+		this.classFilters = classFilters;
+		this.indexOnly = docIndex != null && !(download && APIDocument.isDownloadEnabled());
+		this.passthrough = new SourcePassthrough(inputEncoding, outputEncoding);
+	}
+
+	/**
+	 * マージ設定からセッションを生成します。
+	 *
+	 * @param pref
+	 *            マージ設定。ダウンロード設定は使用しません。
+	 * @return マージセッション
+	 * @throws MergeDocException
+	 *             コンフィグ情報の取得に失敗した場合
+	 */
+	public static MergeSession open(Preference pref) throws MergeDocException {
+		return open(pref, null);
+	}
+
+	/**
+	 * マージ設定からセッションを生成します。 キャッシュを指定した場合は、API ドキュメント索引とクラス別置換定義ファイルの索引をキャッシュと共有します。
+	 *
+	 * @param pref
+	 *            マージ設定。ダウンロード設定は使用しません。
+	 * @param cache
+	 *            複数回のマージで共有するキャッシュ。共有しない場合は null。
+	 * @return マージセッション
+	 * @throws MergeDocException
+	 *             コンフィグ情報の取得に失敗した場合
+	 */
+	public static MergeSession open(Preference pref, MergeCache cache) throws MergeDocException {
+		APIDocumentIndex docIndex = prepareDocumentIndex(pref, false, cache, null);
+		FilterProgram globalFilter = FilterProgram.compile(pref.getGlobalEntries());
+		ClassFilterIndex classFilters = (cache != null) ? cache.getClassFilters()
+				: new ClassFilterIndex(Boolean.getBoolean(MergeManager.RELOAD_KEY));
+		return new MergeSession(pref, false, docIndex, globalFilter, classFilters);
+	}
+
+	/**
+	 * API ドキュメント索引を開きます。 索引が無い場合や API ドキュメントが変更されている場合は索引を作成します。
+	 * <p>
+	 * API ドキュメントをダウンロードする場合と、システムプロパティ {@value MergeManager#INDEX_KEY} に false
+	 * が指定された場合は索引を使用しません。キャッシュが指定された場合は、キャッシュの索引を使用します。
+	 *
+	 * @param pref
+	 *            マージ設定
+	 * @param download
+	 *            API ドキュメントをダウンロードする場合は true
+	 * @param cache
+	 *            複数回のマージで共有するキャッシュ。共有しない場合は null。
+	 * @param workingState
+	 *            索引の作成を通知する処理状態。通知しない場合は null。
+	 * @return API ドキュメント索引。使用しない場合や作成できない場合は null。
+	 */
+	static APIDocumentIndex prepareDocumentIndex(Preference pref, boolean download, MergeCache cache,
+			WorkingState workingState) {
+
+		File docDir = pref.getDocDirectory();
+		if (docDir == null || docDir.getPath().length() == 0 || download
+				|| !Boolean.parseBoolean(System.getProperty(MergeManager.INDEX_KEY, "true"))) {
+			return null;
+		}
+		try {
+			APIDocumentIndex index = (cache != null) ? cache.getDocumentIndex(docDir, pref.getDocEncoding()) : null;
+			if (index != null) {
+				return index;
+			}
+			index = APIDocumentIndex.open(docDir, pref.getDocEncoding());
+			if (index == null) {
+				if (workingState != null) {
+					workingState.changeStatusText("API ドキュメントの索引を作成しています...");
+				}
+				index = APIDocumentIndex.build(docDir, pref.getDocEncoding(), MergeManager.threadCount());
+			}
+			if (cache != null) {
+				cache.putDocumentIndex(docDir, pref.getDocEncoding(), index);
+			}
+			return index;
+		} catch (IOException e) {
+			logger.warn("API ドキュメントの索引を使用できないため、HTML ファイルを直接解析します。", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Java ソースを API ドキュメントとマージします。 改行とタブはマージ前に変換され、置換定義も適用されます。
+	 * <p>
+	 * エントリ名が無いため、マージ前のクラス別置換定義は適用しません。マージ後のクラス別置換定義は package 宣言と型宣言から求めたクラス名で適用します。
+	 *
+	 * @param source
+	 *            Java ソース文字列
+	 * @return マージ後の Java ソース文字列。package 宣言が無い場合や API ドキュメントが無い場合は置換のみ行った Java ソース文字列。
+	 * @throws SAXException
+	 *             クラス別置換定義ファイルのパースに失敗した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	public String mergeSource(String source) throws SAXException, IOException {
+		SourceDecoder decoder = decoders.acquire();
+		String normalized = decoder.normalize(source);
+		decoders.release(decoder);
+		return mergeSource(null, normalized, null, null);
+	}
+
+	/**
+	 * Java ソースを読み込んで API ドキュメントとマージします。 リーダーは閉じません。
+	 *
+	 * @param reader
+	 *            Java ソースのリーダー
+	 * @return マージ後の Java ソース文字列
+	 * @throws SAXException
+	 *             クラス別置換定義ファイルのパースに失敗した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 * @see #mergeSource(String)
+	 */
+	public String mergeSource(Reader reader) throws SAXException, IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[8192];
+		for (int size; (size = reader.read(buf)) != -1;) {
+			sb.append(buf, 0, size);
+		}
+		return mergeSource(sb.toString());
+	}
+
+	/**
+	 * ZIP アーカイブの Java ソースを API ドキュメントとマージし、ZIP アーカイブとして出力します。 Java
+	 * ソース以外のエントリはそのまま出力します。入出力ストリームは閉じません。
+	 * <p>
+	 * 呼び出したスレッドで順にマージします。複数のアーカイブを並列にマージする場合は、それぞれ別のスレッドから呼び出してください。
+	 *
+	 * @param in
+	 *            入力ソースアーカイブ（ZIP 形式）
+	 * @param out
+	 *            出力ソースアーカイブ（ZIP 形式）の出力先
+	 * @throws SAXException
+	 *             クラス別置換定義ファイルのパースに失敗した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	public void mergeArchive(InputStream in, final OutputStream out) throws SAXException, IOException {
+
+		ZipInputStream zin = new ZipInputStream(in);
+		ZipArchiveWriter writer = new ZipArchiveWriter(new FilterOutputStream(out) {
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			public void close() throws IOException {
+				flush();
+			}
+		}, 1);
+		byte[] buf = new byte[8192];
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		// 途中でエラーが発生した場合もライターの Deflater を解放する（不完全なセントラルディレクトリは書き込まない）
+		boolean completed = false;
+		try {
+			for (ZipEntry entry; (entry = zin.getNextEntry()) != null;) {
+				baos.reset();
+				for (int size; (size = zin.read(buf)) != -1;) {
+					baos.write(buf, 0, size);
+				}
+				byte[] data = baos.toByteArray();
+				String name = entry.getName();
+				EntryInfo info = new EntryInfo();
+				if (MergeManager.isMergeTarget(name) && !isPassthrough(name, data, null, info)) {
+					writer.putEntry(name, mergeText(name, data, null, info), outputEncoding);
+				} else {
+					writer.putEntry(name, data);
+				}
+			}
+			completed = true;
+		} finally {
+			if (!completed) {
+				writer.abort();
+			}
+		}
+		writer.close();
+	}
+
+	/**
+	 * 入力エンコーディングの Java ソースを、デコードせずにそのまま出力できるか判定します。
+	 * <p>
+	 * 入力と出力のエンコーディングが同じで、改行とタブの変換が不要で、API ドキュメント索引にコメントが無く、クラス別置換定義が無く、
+	 * グローバル置換定義のどの置換規則も一致しないことをバイト列のまま確認できた場合は、マージしても入力データと同じ結果になります。
+	 * そのまま出力できる場合は、判定したクラス名をエントリ情報に設定します。
+	 * <p>
+	 * エントリ情報を指定した場合は、判定の結果と取得した package 宣言と型宣言をエントリ情報に設定し、{@link #mergeText} で再び判定や走査を
+	 * しないようにします。バイト列のままでは判定できなかった場合は、所要時間をエントリ情報に保持し、デコード後の判定と合わせて 1
+	 * エントリ 1 回として記録します。
+	 *
+	 * @param entryName
+	 *            Java ソースファイル名
+	 * @param data
+	 *            入力エンコーディングの Java ソース
+	 * @param stats
+	 *            統計情報。記録しない場合は null。
+	 * @param info
+	 *            判定の結果を受け取るエントリ情報。受け取らない場合は null。
+	 * @return そのまま出力できる場合は true
+	 * @throws SAXException
+	 *             SAX パース例外が発生した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	boolean isPassthrough(String entryName, byte[] data, MergeStatistics stats, EntryInfo info)
+			throws SAXException, IOException {
+
+		if (!indexOnly || !passthrough.isEnabled()) {
+			return false;
+		}
+		long start = System.nanoTime();
+		if (!passthrough.isVerbatim(data)) {
+			// デコード後に改めて判定するため、ここでは記録しない
+			if (info != null) {
+				info.passthroughNanos = System.nanoTime() - start;
+			} else {
+				record(stats, MergeStatistics.Stage.PASSTHROUGH, entryName, start, data.length);
+			}
+			return false;
+		}
+		SourceHeader header = passthrough.scanHeader(data);
+		boolean result = isUnaffected(entryName, header, passthrough.probe(data));
+		if (info != null) {
+			info.checked = true;
+			info.header = header;
+			if (result) {
+				setClassName(info, header);
+			}
+		}
+		record(stats, MergeStatistics.Stage.PASSTHROUGH, entryName, start, data.length);
+		return result;
+	}
+
+	/**
+	 * 入力エンコーディングの Java ソースを API ドキュメントとマージします。 出力エンコーディングへのエンコードは ZIP
+	 * アーカイブへの書き込み時に圧縮しながら行うため、ここではエンコードしません。
+	 *
+	 * @param entryName
+	 *            Java ソースファイル名
+	 * @param data
+	 *            入力エンコーディングの Java ソース
+	 * @param stats
+	 *            統計情報。記録しない場合は null。
+	 * @param info
+	 *            {@link #isPassthrough} の判定の結果を持ち、クラス名を受け取るエントリ情報。受け取らない場合は null。
+	 * @return マージ後の Java ソース文字列
+	 * @throws SAXException
+	 *             SAX パース例外が発生した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 * @see ZipArchiveWriter#putEntry(String, CharSequence, String)
+	 */
+	String mergeText(String entryName, byte[] data, MergeStatistics stats, EntryInfo info)
+			throws SAXException, IOException {
+
+		long start = System.nanoTime();
+		SourceDecoder decoder = decoders.acquire();
+		String source = decoder.decode(data);
+		decoders.release(decoder);
+		record(stats, MergeStatistics.Stage.DECODE, entryName, start, data.length);
+
+		return mergeSource(entryName, source, stats, info);
+	}
+
+	/**
+	 * 文字列を出力エンコーディングでエンコードした結果が、指定したバイト配列と同じか判定します。 バイト配列は作成しません。
+	 *
+	 * @param text
+	 *            文字列
+	 * @param data
+	 *            比較するバイト配列
+	 * @return 同じ場合は true
+	 * @throws IOException
+	 *             出力エンコーディングがサポートされていない場合
+	 */
+	boolean encodesTo(String text, byte[] data) throws IOException {
+		SourceEncoder encoder = encoders.acquire();
+		boolean result = encoder.matches(text, data);
+		encoders.release(encoder);
+		return result;
+	}
+
+	/**
+	 * 改行とタブを変換済みの Java ソースに置換定義を適用し、API ドキュメントとマージします。
+	 * <p>
+	 * package 宣言と型宣言はエントリごとに 1 回だけ走査し、置換定義で Java ソースが変わらなければマージでもその結果を使用します。
+	 *
+	 * @param entryName
+	 *            Java ソースファイル名。不明な場合は null。
+	 * @param source
+	 *            Java ソース文字列
+	 * @param stats
+	 *            統計情報。記録しない場合は null。
+	 * @param info
+	 *            {@link #isPassthrough} の判定の結果を持ち、クラス名を受け取るエントリ情報。受け取らない場合は null。
+	 * @return マージ後の Java ソース文字列
+	 * @throws SAXException
+	 *             SAX パース例外が発生した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private String mergeSource(String entryName, String source, MergeStatistics stats, EntryInfo info)
+			throws SAXException, IOException {
+
+		SourceHeader header;
+		if (info != null && info.checked) {
+			// バイト列のまま判定済み
+			header = info.header;
+		} else {
+			long start = System.nanoTime();
+			header = SourceHeader.scan(source);
+
+			// マージも置換もされない場合は走査しない
+			if (indexOnly) {
+				final String src = source;
+				boolean unaffected = isUnaffected(entryName, header, new FilterProgram.Probe() {
+					public boolean contains(String literal) {
+						return src.contains(literal);
+					}
+				});
+				long nanos = System.nanoTime() - start + ((info != null) ? info.passthroughNanos : 0);
+				if (stats != null) {
+					stats.addTime(MergeStatistics.Stage.PASSTHROUGH, entryName, nanos, -1);
+				}
+				if (unaffected) {
+					setClassName(info, header);
+					return source;
+				}
+			}
+		}
+
+		// マージ前に置換。改行を CRLF にする置換規則などはマージ後にだけ適用する
+		// （CR を含むソースはマージでコメントの範囲を誤りコードが失われるため）
+		long start = System.nanoTime();
+		String filtered = source;
+		if (entryName != null) {
+			filtered = applyClassFilter(entryName.substring(0, entryName.length() - 4) + "xml", filtered);
+		}
+		filtered = beforeMergeFilter.apply(filtered);
+		record(stats, MergeStatistics.Stage.CHK_FILTER, entryName, start, -1);
+		if (filtered != source) {
+			header = SourceHeader.scan(filtered);
+		}
+
+		// Java ソースを API ドキュメントとマージ
+		Merger merger = mergers.acquire();
+		String result = merger.merge(filtered, header, entryName, stats);
+		String className = merger.getMergedClassName();
+		mergers.release(merger);
+		if (info != null) {
+			info.className = className;
+		}
+		if (className != null) {
+			start = System.nanoTime();
+			result = applyClassFilter(className.replace('.', '/') + ".xml", result);
+			result = globalFilter.apply(result);
+			record(stats, MergeStatistics.Stage.DO_FILTER, entryName, start, -1);
+		} else {
+			result = lineBreakFilter.apply(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Java ソースがマージでも置換でも変更されないか判定します。 API ドキュメント索引だけから API ドキュメントを読み込む場合のみ判定できます。
+	 *
+	 * @param entryName
+	 *            Java ソースファイル名。不明な場合は null。
+	 * @param header
+	 *            Java ソースの package 宣言と型宣言。package 宣言が無い場合は null。
+	 * @param probe
+	 *            Java ソースの検索
+	 * @return 変更されない場合は true
+	 * @throws SAXException
+	 *             SAX パース例外が発生した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private boolean isUnaffected(String entryName, SourceHeader header, FilterProgram.Probe probe)
+			throws SAXException, IOException {
+
+		if (header != null) {
+			String className = header.getClassName();
+			if (className == null) {
+				// 型宣言が無い場合はマージで例外とする
+				return false;
+			}
+			if (docIndex.contains(className) || classFilters.get(className.replace('.', '/') + ".xml") != null) {
+				return false;
+			}
+		}
+		if (entryName != null && classFilters.get(entryName.substring(0, entryName.length() - 4) + "xml") != null) {
+			return false;
+		}
+		return globalFilter.provesNoMatch(probe);
+	}
+
+	/**
+	 * クラス別置換定義がある場合は適用します。
+	 *
+	 * @param path
+	 *            クラス別置換定義ファイルのコンフィグルートからの相対パス
+	 * @param source
+	 *            Java ソース文字列
+	 * @return 処理後のソース文字列
+	 * @throws SAXException
+	 *             SAX パース例外が発生した場合
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	private String applyClassFilter(String path, String source) throws SAXException, IOException {
+		FilterProgram classFilter = classFilters.get(path);
+		return (classFilter != null) ? classFilter.apply(source) : source;
+	}
+
+	/**
+	 * 統計情報が指定された場合は処理段階の所要時間を記録します。
+	 *
+	 * @param stats
+	 *            統計情報。記録しない場合は null。
+	 * @param stage
+	 *            処理段階
+	 * @param entryName
+	 *            エントリ名
+	 * @param start
+	 *            開始時刻（ナノ秒）
+	 * @param bytes
+	 *            処理したバイト数。不明な場合は -1。
+	 */
+	private static void record(MergeStatistics stats, MergeStatistics.Stage stage, String entryName, long start,
+			long bytes) {
+		if (stats != null) {
+			stats.record(stage, entryName, start, bytes);
+		}
+	}
+
+	/**
+	 * エントリ情報が指定された場合は、Java ソースの package 宣言と型宣言から求めたクラス名を設定します。
+	 *
+	 * @param info
+	 *            エントリ情報。設定しない場合は null。
+	 * @param header
+	 *            Java ソースの package 宣言と型宣言。package 宣言が無い場合は null。
+	 */
+	private static void setClassName(EntryInfo info, SourceHeader header) {
+		if (info != null) {
+			info.className = (header == null) ? null : header.getClassName();
+		}
+	}
+
+	/**
+	 * Java ソースのエントリを処理した結果の情報です。
+	 */
+	static class EntryInfo {
+
+		/** マージした、またはそのまま出力できると判定した Java ソースのクラス名。package 宣言が無い場合は null。 */
+		String className;
+
+		/** バイト列のまま変更されないか判定した場合は true */
+		boolean checked;
+
+		/** バイト列のまま判定した Java ソースの package 宣言と型宣言。package 宣言が無い場合は null。 */
+		SourceHeader header;
+
+		/** バイト列のままでは判定できず、まだ記録していない判定の所要時間（ナノ秒） */
+		long passthroughNanos;
+	}
+
+	/**
+	 * スレッドセーフでないオブジェクトをセッションの中で再利用するプールです。
+	 * <p>
+	 * 使用中でないオブジェクトだけを保持するため、同時に使用したスレッド数より多くは作成しません。
+	 * 使用中に例外が発生したオブジェクトは返却せずに破棄します。
+	 *
+	 * @param <T>
+	 *            オブジェクトの型
+	 */
+	private static abstract class Pool<T> {
+
+		/** 使用中でないオブジェクト */
+		private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<T>();
+
+		/**
+		 * オブジェクトを作成します。
+		 *
+		 * @return オブジェクト
+		 */
+		abstract T create();
+
+		/**
+		 * 使用中でないオブジェクトを取り出します。 無い場合は作成します。
+		 *
+		 * @return オブジェクト
+		 */
+		T acquire() {
+			T obj = idle.poll();
+			return (obj != null) ? obj : create();
+		}
+
+		/**
+		 * 使用を終えたオブジェクトを返却します。
+		 *
+		 * @param obj
+		 *            オブジェクト
+		 */
+		void release(T obj) {
+			idle.offer(obj);
+		}
+	}
+}
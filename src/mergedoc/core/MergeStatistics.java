@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mergedoc.Json;
+
+/**
+ * マージ処理の統計情報です。
+ * <p>
+ * 処理段階ごとの所要時間（ナノ秒）、処理回数、バイト数と、所要時間が長かったエントリを記録します。エントリ数、マージしたコメント数、
+ * 実行中の {@link PatternCache} と {@link CommentCache} の使用状況も記録し、
+ * 実行の終了時に出力アーカイブファイルと同じディレクトリに JSON 形式のレポートファイルを書き込みます。
+ * <p>
+ * 並列マージでは各段階の所要時間はスレッドごとの時間の合計になるため、実行全体の経過時間より長くなる場合があります。
+ * このクラスは並列マージの読み込みスレッドとワーカースレッドから同時に使用できます。
+ *
+ * @author Shinji Kashihara
+ */
+class MergeStatistics {
+
+	/** レポートファイルの拡張子 */
+	private static final String REPORT_SUFFIX = ".report.json";
+
+	/** 段階ごとに記録する所要時間が長かったエントリの数 */
+	private static final int SLOWEST_SIZE = 10;
+
+	/**
+	 * 処理段階です。
+	 */
+	enum Stage {
+
+		/** アーカイブからのエントリの読み込み */
+		READ("read"),
+
+		/** 差分マージでの前回のマージ結果の取り出し */
+		REUSE("reuse"),
+
+		/** マージも置換もされない Java ソースの判定 */
+		PASSTHROUGH("passthrough"),
+
+		/** 入力エンコーディングのデコード、改行コードの統一、タブの展開 */
+		DECODE("decode"),
+
+		/** マージ前の置換 */
+		CHK_FILTER("chkFilter"),
+
+		/** API ドキュメントの読み込み */
+		DOCUMENT("document"),
+
+		/** Java ソースのコメント走査 */
+		SCAN("scan"),
+
+		/** コメントの作成と置き換え */
+		COMMENT("comment"),
+
+		/** マージ後の置換 */
+		DO_FILTER("doFilter"),
+
+		/** マージ結果を出力エンコーディングでエンコードした入力データとの比較（書き込むデータのエンコードは圧縮と同時に行うため書き込みに含む） */
+		ENCODE("encode"),
+
+		/** ZIP アーカイブへの書き込み */
+		WRITE("write");
+
+		/** レポートでの名前 */
+		final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+	}
+
+	/** 段階ごとの集計 */
+	private final StageStatistics[] stages = new StageStatistics[Stage.values().length];
+
+	/** 読み込んだエントリ数 */
+	private final AtomicLong entryCount = new AtomicLong();
+
+	/** マージ対象の Java ソースのエントリ数 */
+	private final AtomicLong sourceCount = new AtomicLong();
+
+	/** 差分マージで前回のマージ結果を再利用したエントリ数 */
+	private final AtomicLong reusedCount = new AtomicLong();
+
+	/** 圧縮データをそのまま書き込んだエントリ数 */
+	private final AtomicLong rawCount = new AtomicLong();
+
+	/** デコードせずにそのまま出力した Java ソースのエントリ数 */
+	private final AtomicLong passthroughCount = new AtomicLong();
+
+	/** マージしたコメント数 */
+	private final AtomicLong mergedComments = new AtomicLong();
+
+	/** マージしなかったコメント数 */
+	private final AtomicLong skippedComments = new AtomicLong();
+
+	/** 開始時刻（ナノ秒） */
+	private final long startTime = System.nanoTime();
+
+	/** 開始時の Pattern キャッシュの統計情報 */
+	private final LruCache.Statistics startPatterns = PatternCache.getStatistics();
+
+	/** 開始時のコメントキャッシュの統計情報 */
+	private final LruCache.Statistics startComments = CommentCache.getStatistics();
+
+	/**
+	 * コンストラクタです。
+	 */
+	MergeStatistics() {
+		for (Stage stage : Stage.values()) {
+			stages[stage.ordinal()] = new StageStatistics();
+		}
+	}
+
+	/**
+	 * 処理段階の所要時間を記録します。
+	 *
+	 * @param stage
+	 *            処理段階
+	 * @param entryName
+	 *            エントリ名。エントリ単位の処理でない場合は null。
+	 * @param start
+	 *            {@link System#nanoTime()} で取得した開始時刻
+	 * @param bytes
+	 *            処理したバイト数。不明な場合は負数。
+	 */
+	void record(Stage stage, String entryName, long start, long bytes) {
+		stages[stage.ordinal()].add(entryName, System.nanoTime() - start, bytes);
+	}
+
+	/**
+	 * 処理段階の所要時間を加算します。
+	 *
+	 * @param stage
+	 *            処理段階
+	 * @param entryName
+	 *            エントリ名。エントリ単位の処理でない場合は null。
+	 * @param nanos
+	 *            所要時間（ナノ秒）
+	 * @param bytes
+	 *            処理したバイト数。不明な場合は負数。
+	 */
+	void addTime(Stage stage, String entryName, long nanos, long bytes) {
+		stages[stage.ordinal()].add(entryName, nanos, bytes);
+	}
+
+	/**
+	 * 読み込んだエントリ数を加算します。
+	 *
+	 * @param source
+	 *            マージ対象の Java ソースの場合は true
+	 */
+	void countEntry(boolean source) {
+		entryCount.incrementAndGet();
+		if (source) {
+			sourceCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 差分マージで前回のマージ結果を再利用したエントリ数を加算します。
+	 */
+	void countReused() {
+		reusedCount.incrementAndGet();
+	}
+
+	/**
+	 * 圧縮データをそのまま書き込んだエントリ数を加算します。
+	 */
+	void countRaw() {
+		rawCount.incrementAndGet();
+	}
+
+	/**
+	 * デコードせずにそのまま出力した Java ソースのエントリ数を加算します。
+	 */
+	void countPassthrough() {
+		passthroughCount.incrementAndGet();
+	}
+
+	/**
+	 * マージしたコメント数とマージしなかったコメント数を加算します。
+	 *
+	 * @param merged
+	 *            マージしたコメント数
+	 * @param skipped
+	 *            マージしなかったコメント数
+	 */
+	void countComments(int merged, int skipped) {
+		mergedComments.addAndGet(merged);
+		skippedComments.addAndGet(skipped);
+	}
+
+	/**
+	 * 出力アーカイブファイルに対応するレポートファイルを取得します。
+	 *
+	 * @param outFile
+	 *            出力アーカイブファイル
+	 * @return レポートファイル
+	 */
+	static File reportFile(File outFile) {
+		return new File(outFile.getPath() + REPORT_SUFFIX);
+	}
+
+	/**
+	 * JSON 形式のレポートをファイルに書き込みます。
+	 *
+	 * @param file
+	 *            レポートファイル
+	 * @param pref
+	 *            マージ設定
+	 * @param threads
+	 *            マージスレッド数
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	void write(File file, Preference pref, int threads) throws IOException {
+
+		long elapsed = System.nanoTime() - startTime;
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		try {
+			out.write("{\n");
+			out.write("  \"input\": " + Json.quote(pref.getInputArchive().getPath()) + ",\n");
+			out.write("  \"output\": " + Json.quote(pref.getOutputArchive().getPath()) + ",\n");
+			out.write("  \"threads\": " + threads + ",\n");
+			out.write("  \"elapsedNanos\": " + elapsed + ",\n");
+			out.write("  \"entries\": {\"total\": " + entryCount + ", \"sources\": " + sourceCount + ", \"reused\": "
+					+ reusedCount + ", \"passthrough\": " + passthroughCount + ", \"raw\": " + rawCount + "},\n");
+			out.write("  \"comments\": {\"merged\": " + mergedComments + ", \"skipped\": " + skippedComments + "},\n");
+			LruCache.Statistics patterns = PatternCache.getStatistics().since(startPatterns);
+			out.write("  \"patternCache\": {\"hits\": " + patterns.getHits() + ", \"misses\": " + patterns.getMisses()
+					+ ", \"compileNanos\": " + patterns.getLoadNanos() + ", \"evictions\": " + patterns.getEvictions()
+					+ ", \"size\": " + patterns.getSize() + "},\n");
+			LruCache.Statistics comments = CommentCache.getStatistics().since(startComments);
+			out.write("  \"commentCache\": {\"hits\": " + comments.getHits() + ", \"misses\": " + comments.getMisses()
+					+ ", \"hitRate\": " + String.format(Locale.ROOT, "%.4f", comments.getHitRate())
+					+ ", \"buildNanos\": " + comments.getLoadNanos() + ", \"evictions\": " + comments.getEvictions()
+					+ ", \"size\": " + comments.getSize() + "},\n");
+			out.write("  \"stages\": [");
+			for (Stage stage : Stage.values()) {
+				StageStatistics stats = stages[stage.ordinal()];
+				out.write(stage.ordinal() == 0 ? "\n" : ",\n");
+				out.write("    {\"name\": " + Json.quote(stage.label) + ", \"nanos\": " + stats.nanos + ", \"count\": "
+						+ stats.count + ", \"bytes\": " + stats.bytes + ", \"slowest\": [");
+				List<EntryTime> slowest = stats.getSlowest();
+				for (int i = 0; i < slowest.size(); i++) {
+					EntryTime time = slowest.get(i);
+					out.write((i == 0 ? "" : ", ") + "{\"entry\": " + Json.quote(time.entryName) + ", \"nanos\": "
+							+ time.nanos + "}");
+				}
+				out.write("]}");
+			}
+			out.write("\n  ]\n");
+			out.write("}\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * 1 つの処理段階の集計です。
+	 */
+	private static class StageStatistics {
+
+		/** 所要時間の短い順の比較 */
+		private static final Comparator<EntryTime> FASTEST_FIRST = new Comparator<EntryTime>() {
+			public int compare(EntryTime o1, EntryTime o2) {
+				return (o1.nanos < o2.nanos) ? -1 : (o1.nanos == o2.nanos) ? 0 : 1;
+			}
+		};
+
+		/** 所要時間の合計（ナノ秒） */
+		final AtomicLong nanos = new AtomicLong();
+
+		/** 処理回数 */
+		final AtomicLong count = new AtomicLong();
+
+		/** 処理したバイト数の合計 */
+		final AtomicLong bytes = new AtomicLong();
+
+		/** 所要時間が長かったエントリ。先頭が最も短い。 */
+		private final PriorityQueue<EntryTime> slowest = new PriorityQueue<EntryTime>(SLOWEST_SIZE + 1, FASTEST_FIRST);
+
+		/**
+		 * 所要時間を加算します。
+		 *
+		 * @param entryName
+		 *            エントリ名。エントリ単位の処理でない場合は null。
+		 * @param time
+		 *            所要時間（ナノ秒）
+		 * @param size
+		 *            処理したバイト数。不明な場合は負数。
+		 */
+		void add(String entryName, long time, long size) {
+			nanos.addAndGet(time);
+			count.incrementAndGet();
+			if (size > 0) {
+				bytes.addAndGet(size);
+			}
+			if (entryName == null) {
+				return;
+			}
+			synchronized (slowest) {
+				if (slowest.size() < SLOWEST_SIZE || slowest.peek().nanos < time) {
+					slowest.add(new EntryTime(entryName, time));
+					if (slowest.size() > SLOWEST_SIZE) {
+						slowest.poll();
+					}
+				}
+			}
+		}
+
+		/**
+		 * 所要時間が長かったエントリを取得します。
+		 *
+		 * @return 所要時間の長い順のエントリ
+		 */
+		List<EntryTime> getSlowest() {
+			List<EntryTime> list;
+			synchronized (slowest) {
+				list = new ArrayList<EntryTime>(slowest);
+			}
+			Collections.sort(list, Collections.reverseOrder(FASTEST_FIRST));
+			return list;
+		}
+	}
+
+	/**
+	 * エントリの所要時間です。
+	 */
+	private static class EntryTime {
+
+		/** エントリ名 */
+		final String entryName;
+
+		/** 所要時間（ナノ秒） */
+		final long nanos;
+
+		EntryTime(String entryName, long nanos) {
+			this.entryName = entryName;
+			this.nanos = nanos;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * マージ用のデーモンスレッドを生成するファクトリです。 スレッド名は "MergeDoc-役割-連番" になります。
+ *
+ * @author Shinji Kashihara
+ */
+class MergeThreadFactory implements ThreadFactory {
+
+	private final String prefix;
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param role
+	 *            スレッド名に含める役割
+	 */
+	MergeThreadFactory(String role) {
+		this.prefix = "MergeDoc-" + role + "-";
+	}
+
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, prefix + count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -7,9 +7,6 @@ package mergedoc.core;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -24,6 +21,12 @@ public class Merger {
 	/** ロガー */
 	private static final Logger logger = LogManager.getLogger(Merger.class);
 
+	/**
+	 * マージ結果の版です。 同じ入力と設定でもマージ結果が変わる変更（コメントの整形、クラス名の判定、置換の適用順など）を行った場合は値を増やしてください。
+	 * 差分マージは版が異なる前回のマージ結果を再利用しません。
+	 */
+	static final int OUTPUT_VERSION = 1;
+
 	/** クラス種類（class|interface|@interface|enum） */
 	private String classKind;
 
@@ -36,16 +39,11 @@ public class Merger {
 	/** API ドキュメントエンコーディング */
 	private String docEncoding = System.getProperty("file.encoding");
 
-	/** クラス種類定数 （class|interface|@interface|enum） */
-	private static final List<String> CLASS_KIND;
-	static {
-		List<String> list = new ArrayList<String>();
-		list.add("class");
-		list.add("interface");
-		list.add("@interface");
-		list.add("enum");
-		CLASS_KIND = Collections.unmodifiableList(list);
-	}
+	/** API ドキュメント索引 */
+	private APIDocumentIndex docIndex;
+
+	/** API ドキュメントのダウンロード設定を参照する場合は true */
+	private boolean download = true;
 
 	/**
 	 * コンストラクタです。
@@ -66,6 +64,27 @@ public class Merger {
 		this.docEncoding = docEncoding;
 	}
 
+	/**
+	 * API ドキュメント索引を設定します。 設定されなかった場合は API ドキュメントの HTML ファイルを都度解析します。
+	 * 
+	 * @param docIndex
+	 *            API ドキュメント索引
+	 */
+	public void setDocumentIndex(APIDocumentIndex docIndex) {
+		this.docIndex = docIndex;
+	}
+
+	/**
+	 * API ドキュメントのダウンロード設定を参照するか設定します。 false を設定した場合は設定ファイルに関わらずダウンロードせず、API
+	 * ドキュメントディレクトリから読み込みます。
+	 * 
+	 * @param download
+	 *            ダウンロード設定を参照する場合は true（デフォルト）
+	 */
+	void setDownload(boolean download) {
+		this.download = download;
+	}
+
 	/**
 	 * Java ソースと Javadoc コメントをマージします。 Java ソースに package 宣言が無い場合や、対応する API
 	 * ドキュメントが見つからない場合はそのまま Java ソースを返します。
@@ -77,53 +96,94 @@ public class Merger {
 	 *             入出力例外が発生した場合
 	 */
 	public String merge(String source) throws IOException {
+		return merge(source, SourceHeader.scan(source), null, null);
+	}
 
-		scanClassName(source);
+	/**
+	 * Java ソースと Javadoc コメントをマージし、処理段階ごとの所要時間を記録します。 package 宣言と型宣言は呼び出し側で走査したものを使用します。
+	 * 
+	 * @param source
+	 *            Java ソース文字列
+	 * @param header
+	 *            Java ソースの package 宣言と型宣言。package 宣言が無い場合は null。
+	 * @param entryName
+	 *            エントリ名
+	 * @param stats
+	 *            統計情報。記録しない場合は null。
+	 * @return マージ後の Java ソース文字列
+	 * @throws IOException
+	 *             入出力例外が発生した場合
+	 */
+	String merge(String source, SourceHeader header, String entryName, MergeStatistics stats) throws IOException {
+
+		setClassName(source, header);
 		if (className == null)
 			return source;
-		APIDocument apiDoc = new APIDocument(docDirectory, className, docEncoding);
+		if (!download && docIndex != null && !docIndex.contains(className)) {
+			// 索引に API ドキュメントが無いクラスは読み込まずに返す
+			return source;
+		}
+		long start = System.nanoTime();
+		APIDocument apiDoc = download ? new APIDocument(docDirectory, className, docEncoding, docIndex)
+				: APIDocument.load(docDirectory, className, docEncoding, docIndex);
+		if (stats != null) {
+			stats.record(MergeStatistics.Stage.DOCUMENT, entryName, start, -1);
+		}
 		if (apiDoc.isEmpty())
 			return source;
 
+		long scanTime = 0;
+		long commentTime = 0;
+		int merged = 0;
+		int skipped = 0;
+		start = System.nanoTime();
 		JavaBuffer javaBuf = new JavaBuffer(classKind, className, source);
 		while (javaBuf.nextComment()) {
+			long time = System.nanoTime();
+			scanTime += time - start;
+			start = time;
+
 			Signature sig = javaBuf.getSignature();
 			Comment com = apiDoc.getComment(sig);
-			javaBuf.setLocalizedComment(sig, com);
+			if (javaBuf.setLocalizedComment(sig, com)) {
+				merged++;
+			} else {
+				skipped++;
+			}
+			time = System.nanoTime();
+			commentTime += time - start;
+			start = time;
 		}
 
 		String result = javaBuf.finishToString();
+		scanTime += System.nanoTime() - start;
+		if (stats != null) {
+			stats.addTime(MergeStatistics.Stage.SCAN, entryName, scanTime, -1);
+			stats.addTime(MergeStatistics.Stage.COMMENT, entryName, commentTime, -1);
+			stats.countComments(merged, skipped);
+		}
 		return result;
 	}
 
 	/**
-	 * Java ソース文字列をスキャンし、クラス名（パッケージを含む）を設定します。 package 宣言が無い場合は常に null になります。
+	 * Java ソースの package 宣言と型宣言から、クラス名（パッケージを含む）を設定します。 package 宣言が無い場合は常に null になります。
 	 * 
 	 * @param source
 	 *            Java ソース文字列
+	 * @param header
+	 *            Java ソースの package 宣言と型宣言。package 宣言が無い場合は null。
 	 */
-	private void scanClassName(String source) {
-		// Java ソース内のコメントを削除
-		String src = delComment(source).trim();
-		// ソース内の改行を削除。
-		src = src.replace("\n", " ");
-
-		String packageName = searchPackage(src);
-		if (!packageName.equals("")) {
-			String tmp[] = searchClass(src).split(" ");
-			int cnt = -1;
-			for (int i = 0; i < tmp.length; i++) {
-				if (CLASS_KIND.contains(tmp[i])) {
-					cnt = i;
-					break;
-				}
+	private void setClassName(String source, SourceHeader header) {
+		// 直前のマージ結果が残らないようにクリア
+		classKind = null;
+		className = null;
+
+		if (header != null) {
+			if (header.getClassKind() == null) {
+				throw new IllegalArgumentException("Java ソースからクラス名を取得することが出来ませんでした。\n" + source);
 			}
-			if (cnt != -1) {
-				classKind = tmp[cnt];
-				className = packageName + "." + tmp[cnt + 1];
-				return;
-			}
-			throw new IllegalArgumentException("Java ソースからクラス名を取得することが出来ませんでした。\n" + source);
+			classKind = header.getClassKind();
+			className = header.getClassName();
 		}
 	}
 
@@ -136,122 +196,4 @@ public class Merger {
 		return className;
 	}
 
-	/**
-	 * 対象文字列からパッケージ名を取得する。
-	 * 
-	 * @param src
-	 *            対象文字列
-	 * @return パッケージ名
-	 */
-	private String searchPackage(String src) {
-		String ret = src;
-
-		int cnt = ret.indexOf("package ");
-		if (cnt == -1) {
-			return "";
-		}
-		int tmp = ret.indexOf(";", cnt);
-		if (tmp != -1) {
-			ret = ret.substring(cnt, tmp);
-		} else {
-			return "";
-		}
-		while (ret.contains("  ")) {
-			ret = ret.replace("  ", " ");
-		}
-
-		// "package " を除く
-		return ret.substring(8).trim();
-	}
-
-	/**
-	 * 対象文字列からクラス型を含む文字列を返す。
-	 * 
-	 * @param src
-	 *            対象文字列
-	 * @return クラス型を含む宣言
-	 */
-	private String searchClass(String src) {
-		String ret = src;
-
-		// 先出のクラス型の位置を検出する。その際に単語であることを保障するために空白を追加。
-		int iCls = -1;
-		for (String strCK : CLASS_KIND) {
-			if (ret.contains(strCK + " ")) {
-				if (iCls == -1 || iCls > ret.indexOf(strCK + " ")) {
-					iCls = ret.indexOf(strCK + " ");
-				}
-			}
-		}
-		if (iCls == -1) {
-			return "";
-		}
-		int cnt = ret.indexOf("{", iCls);
-		if (cnt == -1) {
-			return "";
-		}
-		for (int i = cnt; i >= 0; i--) {
-			if (ret.charAt(i) == ';' || ret.charAt(i) == ')') {
-				ret = ret.substring(i + 1, cnt - 1).trim();
-				while (ret.contains("  ")) {
-					ret = ret.replace("  ", " ");
-				}
-				return ret;
-			}
-		}
-		return "";
-	}
-
-	/**
-	 * 指定した文字列から Java 言語によるコメント文を削除する。
-	 * 
-	 * @param src
-	 *            対象文字列
-	 * @return 修正した対象文字列
-	 */
-	private String delComment(String src) {
-		StringBuilder sb = new StringBuilder();
-
-		char[] c = src.toCharArray();
-		int last = c.length - 1;
-		int cnt;
-		for (cnt = 0; cnt < last; cnt++) {
-			if (c[cnt] == '/' && c[cnt + 1] == '*') {
-				cnt++;
-				// ブロックコメントを読み飛ばし
-				for (cnt++; cnt <= last; cnt++) {
-					if (c[cnt - 1] == '*' && c[cnt] == '/') {
-						cnt++;
-						break;
-					}
-				}
-			} else if (c[cnt] == '/' && c[cnt + 1] == '/') {
-				cnt++;
-				// 行コメントを読み飛ばし
-				for (cnt++; cnt <= last; cnt++) {
-					if (c[cnt] == '\n') {
-						break;
-					}
-				}
-			}
-			if (cnt > last)
-				break;
-			if (sb.length() == 0 && c[cnt] == '\n') {
-			} else if (cnt > 0) {
-				if (c[cnt] != '\n' || c[cnt - 1] != '\n') {
-					sb.append(c[cnt]);
-				}
-			} else {
-				sb.append(c[cnt]);
-			}
-		}
-		if (cnt == last) {
-			if (c[cnt] != '\n') {
-				sb.append(c[cnt]);
-			}
-		}
-
-		return sb.toString();
-	}
-
 }
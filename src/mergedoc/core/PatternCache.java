@@ -5,28 +5,32 @@
  */
 package mergedoc.core;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.regex.Pattern;
 
-import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.LogManager;
-
 /**
- * Pattern オブジェクトのキャッシュです。 キャッシュの同期化は行われません。
- * 
+ * Pattern オブジェクトのキャッシュです。 複数スレッドから使用できます。
+ * <p>
+ * キャッシュ済みの Pattern の取得はロックせずに行います。キャッシュする数はシステムプロパティ {@value #SIZE_KEY}
+ * で制限でき、上限を超えた場合は長く使用されていない Pattern から破棄します（{@link LruCache}）。
+ * <p>
+ * 取得回数、コンパイル回数、コンパイル時間、破棄した回数は {@link #getStatistics()} で取得できます。破棄した正規表現は debug
+ * レベルでログに出力するため、毎回異なる正規表現を使用している呼び出し元を調べることができます。
+ *
  * @author Shinji Kashihara
  */
 public class PatternCache {
 
-	/** ロガー */
-	private static final Logger logger = LogManager.getLogger(PatternCache.class);
+	/** 正規表現とリテラルそれぞれのキャッシュの上限数を指定するシステムプロパティのキー（0 以下は無制限、デフォルト 1024） */
+	public static final String SIZE_KEY = "mergedoc.patterns";
+
+	/** キャッシュの上限数 */
+	private static final int MAX_SIZE = Integer.getInteger(SIZE_KEY, 1024);
 
-	/** 正規表現キャッシュ（キー：正規表現文字列、値：Pattern オブジェクト） */
-	private static final Map<String, Pattern> regexCache = new HashMap<String, Pattern>();
+	/** 正規表現キャッシュ（キー：正規表現文字列） */
+	private static final LruCache<String, Pattern> regexCache = newCache();
 
-	/** リテラルキャッシュ（キー：リテラル文字列、値：Pattern オブジェクト） */
-	private static final Map<String, Pattern> literalCache = new HashMap<String, Pattern>();
+	/** リテラルキャッシュ（キー：リテラル文字列） */
+	private static final LruCache<String, Pattern> literalCache = newCache();
 
 	/**
 	 * コンストラクタです。生成不可。
@@ -35,44 +39,71 @@ public class PatternCache {
 	}
 
 	/**
-	 * 正規表現 Pattern オブジェクトを取得します。 引数の regex が同じ場合は、同じ Pattern オブジェクトが返されます。
-	 * 
+	 * 正規表現 Pattern オブジェクトを取得します。 引数の regex が同じ場合は、破棄されていなければ同じ Pattern オブジェクトが返されます。
+	 *
 	 * <p>
 	 * 注意：<br>
 	 * regex が毎回異なるようなケースでは、無駄な Pattern オブジェクトが キャッシュされるため、使用しないようにしてください。
-	 * 
+	 *
 	 * @param regex
 	 *            正規表現文字列
 	 * @return Pattern オブジェクト
 	 */
 	public static Pattern getPattern(String regex) {
-
-		Pattern pattern = regexCache.get(regex);
-		if (pattern == null) {
-			pattern = Pattern.compile(regex);
-			regexCache.put(regex, pattern);
-		}
-		return pattern;
+		return get(regexCache, regex, 0);
 	}
 
 	/**
-	 * リテラル Pattern オブジェクトを取得します。 引数の target が同じ場合は、同じ Pattern オブジェクトが返されます。
-	 * 
+	 * リテラル Pattern オブジェクトを取得します。 引数の target が同じ場合は、破棄されていなければ同じ Pattern オブジェクトが返されます。
+	 *
 	 * <p>
 	 * 注意：<br>
 	 * target が毎回異なるようなケースでは、無駄な Pattern オブジェクトが キャッシュされるため、使用しないようにしてください。
-	 * 
+	 *
 	 * @param target
 	 *            リテラル文字列
 	 * @return Pattern オブジェクト
 	 */
 	public static Pattern getLiteralPattern(String target) {
+		return get(literalCache, target, Pattern.LITERAL);
+	}
+
+	/**
+	 * 正規表現とリテラルのキャッシュを合計した、現在までの統計情報を取得します。
+	 *
+	 * @return 統計情報
+	 */
+	static LruCache.Statistics getStatistics() {
+		return regexCache.getStatistics().plus(literalCache.getStatistics());
+	}
 
-		Pattern pattern = literalCache.get(target);
-		if (pattern == null) {
-			pattern = Pattern.compile(target, Pattern.LITERAL);
-			literalCache.put(target, pattern);
+	/**
+	 * Pattern を取得します。 キャッシュに無い場合はコンパイルしてキャッシュします。
+	 *
+	 * @param cache
+	 *            キャッシュ
+	 * @param key
+	 *            正規表現またはリテラル文字列
+	 * @param flags
+	 *            コンパイルフラグ
+	 * @return Pattern オブジェクト
+	 */
+	private static Pattern get(LruCache<String, Pattern> cache, String key, int flags) {
+		Pattern pattern = cache.get(key);
+		if (pattern != null) {
+			return pattern;
 		}
-		return pattern;
+		long start = System.nanoTime();
+		pattern = Pattern.compile(key, flags);
+		return cache.put(key, pattern, System.nanoTime() - start);
+	}
+
+	/**
+	 * Pattern のキャッシュを作成します。
+	 *
+	 * @return キャッシュ
+	 */
+	private static LruCache<String, Pattern> newCache() {
+		return new LruCache<String, Pattern>("Pattern", (MAX_SIZE > 0) ? MAX_SIZE : Integer.MAX_VALUE);
 	}
 }
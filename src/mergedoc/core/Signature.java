@@ -5,9 +5,6 @@
  */
 package mergedoc.core;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
@@ -36,6 +33,12 @@ public class Signature {
 	/** インナークラス宣言判定 */
 	private boolean declareInnerClass;
 
+	/** 比較用のキー（属するクラス名#メソッド名(引数型,,,)） */
+	private final String key;
+
+	/** ハッシュコード */
+	private final int hash;
+
 	/**
 	 * コンストラクタです。
 	 * 
@@ -46,74 +49,64 @@ public class Signature {
 	 */
 	public Signature(String className, String sig) {
 
-		// 改行をスペースに置換
-		sig = sig.replace('\n', ' ');
-
-		// 型引数を除去。入れ子があるため無くなるまで繰り返す。
-		// 例）put(List<List<String>> p1, List p2, List<V> p3)
-		// -> put(List p1, List p2, List p3)
-		if (sig.contains("<")) {
-			Pattern pat = PatternCache.getPattern("<[\\w\\s\\?,]+>");
-			for (Matcher mat = pat.matcher(sig); mat.find(); mat = pat.matcher(sig)) {
-				sig = mat.replaceAll(" ");
-			}
-		}
-
-		// クラスの拡張部を除去
-		sig = FastStringUtils.replaceFirst(sig, "\\s(extends|implements)\\s.*", " ");
-
-		// 先頭、末尾にスペース付加
-		sig = " " + sig + " ";
-
-		// "(" ")" "," の前後にスペース付加
-		sig = FastStringUtils.replaceAll(sig, "(\\(|\\)|,)", " $1 ");
-
-		// 複数スペースをスペース1個に置換
-		sig = FastStringUtils.replaceAll(sig, " +", " ");
-
-		// 型がフルクラス名の場合はパッケージ名部分を除去
-		// 例) " java.io.Serializable" -> "Serializable"
-		sig = FastStringUtils.replaceAll(sig, " (\\w+?\\.)+", " ");
-
-		// 引数がある場合
-		if (sig.contains("(")) {
-
-			// final を除去
-			sig = FastStringUtils.replace(sig, " final ", " ");
-
-			// "[]" の前のスペース除去
-			sig = FastStringUtils.replace(sig, " []", "[]");
-
-			// 引数名を取り除き、型のみにする。
-			// 配列の場合、型ではなく変数名に [] がついている場合があるので
-			// 型の後ろに [] をつけるように統一する。
-			// ex) public void get(String str[], int num1, int[] num2)
-			// -> public void get(String[],int,int[])
-			sig = FastStringUtils.replaceAll(sig, " \\w+?( ,| \\)|\\[\\] (,|\\)))", "$1");
-		}
+		// 正規化は文字配列上で行い、途中の文字列は生成しない
+		SignatureNormalizer normalizer = SignatureNormalizer.getInstance();
+		normalizer.normalize(sig);
 
 		// 単純クラス名の取得
-		this.shortClassName = FastStringUtils.replaceFirst(className, ".+\\.", "");
-
-		// クラスシグネチャの場合の宣言クラス名を取得
-		String classRegex = ".*? (class|interface|@interface|enum) (\\w+) .*";
-		if (FastStringUtils.matches(sig, classRegex)) {
-
-			// インナークラス宣言の場合はこのシグネチャの属する
-			// クラス名としてメンバに上書きする
-			String declaClassName = FastStringUtils.replaceFirst(sig, classRegex, "$2");
-			if (!declaClassName.equals(shortClassName)) {
-				this.declareInnerClass = true;
-				this.shortClassName = declaClassName;
-			}
+		this.shortClassName = SignatureNormalizer.toShortClassName(className);
+
+		// インナークラス宣言の場合はこのシグネチャの属する
+		// クラス名としてメンバに上書きする
+		String declaClassName = normalizer.getDeclaredClassName();
+		if (declaClassName != null && !declaClassName.equals(shortClassName)) {
+			this.declareInnerClass = true;
+			this.shortClassName = declaClassName;
 		}
 
-		// name(type,,,) の形式に変換
-		sig = FastStringUtils.replaceFirst(sig, ".* (\\w+?(| \\(.*?\\)))(|\\[\\]) $", "$1");
-		sig = FastStringUtils.replaceAll(sig, " +", "");
+		this.methodName = normalizer.getMethodName();
+		this.arguments = normalizer.getArguments();
+		this.key = shortClassName + "#" + methodName + arguments;
+		this.hash = key.hashCode();
+	}
 
-		this.methodName = FastStringUtils.replaceFirst(sig, "(\\w+).*", "$1");
-		this.arguments = FastStringUtils.replaceFirst(sig, "\\w+(.*)", "$1");
+	/**
+	 * API ドキュメント索引から復元するためのコンストラクタです。
+	 * 
+	 * @param shortClassName
+	 *            短い形式のクラス名
+	 * @param methodName
+	 *            メソッド名
+	 * @param arguments
+	 *            引数
+	 * @param declareInnerClass
+	 *            インナークラス宣言の場合は true
+	 */
+	Signature(String shortClassName, String methodName, String arguments, boolean declareInnerClass) {
+		this.shortClassName = shortClassName;
+		this.methodName = methodName;
+		this.arguments = arguments;
+		this.declareInnerClass = declareInnerClass;
+		this.key = shortClassName + "#" + methodName + arguments;
+		this.hash = key.hashCode();
+	}
+
+	/**
+	 * メソッド名を取得します．
+	 * 
+	 * @return メソッド名
+	 */
+	String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * 引数を取得します．
+	 * 
+	 * @return 引数
+	 */
+	String getArguments() {
+		return arguments;
 	}
 
 	/**
@@ -143,9 +136,15 @@ public class Signature {
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
 	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (obj instanceof Signature) {
+			Signature other = (Signature) obj;
+			return hash == other.hash && key.equals(other.key);
+		}
 		if (obj == null)
 			return false;
-		return toString().equals(obj.toString());
+		return key.equals(obj.toString());
 	}
 
 	/**
@@ -155,7 +154,7 @@ public class Signature {
 	 * @see java.lang.Object#hashCode()
 	 */
 	public int hashCode() {
-		return toString().hashCode();
+		return hash;
 	}
 
 	/**
@@ -165,6 +164,6 @@ public class Signature {
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return shortClassName + "#" + methodName + arguments;
+		return key;
 	}
 }
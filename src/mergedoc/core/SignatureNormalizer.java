@@ -0,0 +1,615 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.util.Arrays;
+
+/**
+ * シグネチャ文字列の正規化処理です。
+ * <p>
+ * Signature の「型引数除去 → 拡張部除去 → 区切り文字の前後に空白付加 → パッケージ名除去 → 引数名除去 → name(type,,,)
+ * 形式に変換」という一連の置換を、正規表現を使わずに文字配列上で行います。文字配列はスレッドごとに再利用するため、
+ * 途中の置換で文字列は生成されません。各処理の結果は従来の正規表現による置換と同じになるようにしています。
+ * <p>
+ * このクラスはスレッドセーフではありません。{@link #getInstance()} でスレッドごとのインスタンスを取得してください。
+ *
+ * @author Shinji Kashihara
+ */
+class SignatureNormalizer {
+
+	/** スレッドごとのインスタンス */
+	private static final ThreadLocal<SignatureNormalizer> instance = new ThreadLocal<SignatureNormalizer>() {
+		@Override
+		protected SignatureNormalizer initialValue() {
+			return new SignatureNormalizer();
+		}
+	};
+
+	/** 作業用文字配列 */
+	private char[] buf = new char[256];
+
+	/** 作業用文字配列（置換先） */
+	private char[] work = new char[256];
+
+	/** 作業用文字配列の有効な長さ */
+	private int len;
+
+	/** 型引数の開始位置のスタック */
+	private int[] typeArgStack = new int[16];
+
+	/** 型引数のスタックの各要素の状態（0:空、1:除去可能、2:除去不可） */
+	private byte[] typeArgState = new byte[16];
+
+	/** 宣言クラス名。クラス宣言で無い場合は null。 */
+	private String declaredClassName;
+
+	/** メソッド名 */
+	private String methodName;
+
+	/** 引数 */
+	private String arguments;
+
+	/**
+	 * コンストラクタです。
+	 */
+	private SignatureNormalizer() {
+	}
+
+	/**
+	 * 現在のスレッドのインスタンスを取得します。
+	 *
+	 * @return 現在のスレッドのインスタンス
+	 */
+	static SignatureNormalizer getInstance() {
+		return instance.get();
+	}
+
+	/**
+	 * シグネチャ文字列を正規化します。結果は各 getter で取得します。
+	 *
+	 * @param sig
+	 *            シグネチャ文字列
+	 */
+	void normalize(String sig) {
+
+		// 改行をスペースに置換
+		int size = sig.length();
+		buf = ensureCapacity(buf, size, 0);
+		sig.getChars(0, size, buf, 0);
+		len = size;
+		for (int i = 0; i < len; i++) {
+			if (buf[i] == '\n') {
+				buf[i] = ' ';
+			}
+		}
+
+		// 型引数を除去。入れ子があるため内側から除去する。
+		// 例）put(List<List<String>> p1, List p2, List<V> p3)
+		// -> put(List p1, List p2, List p3)
+		if (sig.indexOf('<') != -1) {
+			removeTypeArguments();
+		}
+
+		// クラスの拡張部を除去
+		removeExtends();
+
+		// 先頭、末尾にスペース付加、"(" ")" "," の前後にスペース付加し、
+		// 複数スペースをスペース1個に置換
+		separateTokens();
+
+		// 型がフルクラス名の場合はパッケージ名部分を除去
+		// 例) " java.io.Serializable" -> "Serializable"
+		removePackages();
+
+		// 引数がある場合
+		if (indexOf('(') != -1) {
+
+			// final を除去
+			replace(" final ", " ");
+
+			// "[]" の前のスペース除去
+			replace(" []", "[]");
+
+			// 引数名を取り除き、型のみにする。
+			// 配列の場合、型ではなく変数名に [] がついている場合があるので
+			// 型の後ろに [] をつけるように統一する。
+			// ex) public void get(String str[], int num1, int[] num2)
+			// -> public void get(String[],int,int[])
+			removeArgumentNames();
+		}
+
+		// クラスシグネチャの場合の宣言クラス名を取得
+		declaredClassName = searchDeclaredClassName();
+
+		// name(type,,,) の形式に変換
+		extractMember();
+		removeSpaces();
+
+		int wordStart = 0;
+		while (wordStart < len && !isWordChar(buf[wordStart])) {
+			wordStart++;
+		}
+		if (wordStart == len) {
+			methodName = arguments = new String(buf, 0, len);
+		} else {
+			int wordEnd = wordStart;
+			while (wordEnd < len && isWordChar(buf[wordEnd])) {
+				wordEnd++;
+			}
+			int lineEnd = wordEnd;
+			while (lineEnd < len && !isLineTerminator(buf[lineEnd])) {
+				lineEnd++;
+			}
+			methodName = concat(0, wordEnd, lineEnd, len);
+			arguments = concat(0, wordStart, wordEnd, len);
+		}
+	}
+
+	/**
+	 * クラス宣言シグネチャの宣言クラス名を取得します。
+	 *
+	 * @return 宣言クラス名。クラス宣言で無い場合は null。
+	 */
+	String getDeclaredClassName() {
+		return declaredClassName;
+	}
+
+	/**
+	 * メソッド名を取得します。
+	 *
+	 * @return メソッド名
+	 */
+	String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * 引数を取得します。
+	 *
+	 * @return 引数
+	 */
+	String getArguments() {
+		return arguments;
+	}
+
+	/**
+	 * 完全クラス名から単純クラス名を取得します。
+	 *
+	 * @param className
+	 *            クラス名
+	 * @return 単純クラス名
+	 */
+	static String toShortClassName(String className) {
+		for (int i = 0; i < className.length(); i++) {
+			if (isLineTerminator(className.charAt(i))) {
+				return FastStringUtils.replaceFirst(className, ".+\\.", "");
+			}
+		}
+		int pos = className.lastIndexOf('.');
+		return (pos >= 1) ? className.substring(pos + 1) : className;
+	}
+
+	/**
+	 * 型引数 &lt;[\w\s\?,]+&gt; を除去できなくなるまで空白に置換します。
+	 * <p>
+	 * 内側の型引数が除去されると外側の型引数も除去対象になるため、開始位置をスタックに積み、
+	 * 終了位置で内容が条件を満たしていれば空白に置換します。
+	 */
+	private void removeTypeArguments() {
+
+		int depth = 0;
+		int[] stack = typeArgStack;
+		byte[] state = typeArgState;
+		int w = 0;
+		for (int r = 0; r < len; r++) {
+			char c = buf[r];
+			if (c == '<') {
+				if (depth == stack.length) {
+					stack = typeArgStack = Arrays.copyOf(stack, depth * 2);
+					state = typeArgState = Arrays.copyOf(state, depth * 2);
+				}
+				stack[depth] = w;
+				state[depth++] = 0;
+				buf[w++] = c;
+			} else if (c == '>' && depth > 0) {
+				if (state[--depth] == 1) {
+					w = stack[depth];
+					buf[w++] = ' ';
+					if (depth > 0 && state[depth - 1] == 0) {
+						state[depth - 1] = 1;
+					}
+				} else {
+					buf[w++] = c;
+					if (depth > 0) {
+						state[depth - 1] = 2;
+					}
+				}
+			} else {
+				if (depth > 0) {
+					if (isWordChar(c) || isWhitespace(c) || c == '?' || c == ',') {
+						if (state[depth - 1] == 0) {
+							state[depth - 1] = 1;
+						}
+					} else {
+						state[depth - 1] = 2;
+					}
+				}
+				buf[w++] = c;
+			}
+		}
+		len = w;
+	}
+
+	/**
+	 * 最初の \s(extends|implements)\s から行末までを空白 1 個に置換します。
+	 */
+	private void removeExtends() {
+		for (int i = 0; i < len; i++) {
+			if (!isWhitespace(buf[i])) {
+				continue;
+			}
+			int end = -1;
+			if (regionMatches(i + 1, "extends") && i + 8 < len && isWhitespace(buf[i + 8])) {
+				end = i + 9;
+			} else if (regionMatches(i + 1, "implements") && i + 11 < len && isWhitespace(buf[i + 11])) {
+				end = i + 12;
+			}
+			if (end != -1) {
+				while (end < len && !isLineTerminator(buf[end])) {
+					end++;
+				}
+				buf[i] = ' ';
+				System.arraycopy(buf, end, buf, i + 1, len - end);
+				len -= end - i - 1;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 先頭と末尾、および "(" ")" "," の前後にスペースを付加し、連続するスペースを 1 個にします。
+	 */
+	private void separateTokens() {
+		work = ensureCapacity(work, len * 3 + 2, 0);
+		int w = 0;
+		work[w++] = ' ';
+		for (int r = 0; r < len; r++) {
+			char c = buf[r];
+			if (c == '(' || c == ')' || c == ',') {
+				if (work[w - 1] != ' ') {
+					work[w++] = ' ';
+				}
+				work[w++] = c;
+				work[w++] = ' ';
+			} else if (c != ' ' || work[w - 1] != ' ') {
+				work[w++] = c;
+			}
+		}
+		if (work[w - 1] != ' ') {
+			work[w++] = ' ';
+		}
+		swap(w);
+	}
+
+	/**
+	 * " (\w+\.)+" を空白 1 個に置換します。
+	 */
+	private void removePackages() {
+		int w = 0;
+		for (int r = 0; r < len;) {
+			if (buf[r] == ' ') {
+				int end = -1;
+				for (int i = r + 1;;) {
+					int j = i;
+					while (j < len && isWordChar(buf[j])) {
+						j++;
+					}
+					if (j == i || j >= len || buf[j] != '.') {
+						break;
+					}
+					end = i = j + 1;
+				}
+				if (end != -1) {
+					buf[w++] = ' ';
+					r = end;
+					continue;
+				}
+			}
+			buf[w++] = buf[r++];
+		}
+		len = w;
+	}
+
+	/**
+	 * 指定文字列を左から順に重ならないように置換します。置換後の文字列は置換前より短い必要があります。
+	 *
+	 * @param target
+	 *            置換対象文字列
+	 * @param replacement
+	 *            置換後の文字列
+	 */
+	private void replace(String target, String replacement) {
+		int w = 0;
+		for (int r = 0; r < len;) {
+			if (regionMatches(r, target)) {
+				replacement.getChars(0, replacement.length(), buf, w);
+				w += replacement.length();
+				r += target.length();
+			} else {
+				buf[w++] = buf[r++];
+			}
+		}
+		len = w;
+	}
+
+	/**
+	 * 引数名 \w+ の後に " ," " )" "[] ," "[] )" が続く場合に、スペースと引数名を除去します。
+	 */
+	private void removeArgumentNames() {
+		int w = 0;
+		for (int r = 0; r < len;) {
+			if (buf[r] == ' ') {
+				int j = r + 1;
+				while (j < len && isWordChar(buf[j])) {
+					j++;
+				}
+				if (j > r + 1) {
+					int suffix = 0;
+					if (isSeparatorAt(j + 1) && buf[j] == ' ') {
+						suffix = 2;
+					} else if (isSeparatorAt(j + 3) && regionMatches(j, "[] ")) {
+						suffix = 4;
+					}
+					if (suffix > 0) {
+						System.arraycopy(buf, j, buf, w, suffix);
+						w += suffix;
+						r = j + suffix;
+						continue;
+					}
+				}
+			}
+			buf[w++] = buf[r++];
+		}
+		len = w;
+	}
+
+	/**
+	 * 指定位置が "," または ")" か判定します。
+	 *
+	 * @param pos
+	 *            位置
+	 * @return "," または ")" の場合は true
+	 */
+	private boolean isSeparatorAt(int pos) {
+		return pos < len && (buf[pos] == ',' || buf[pos] == ')');
+	}
+
+	/**
+	 * 最初の " (class|interface|@interface|enum) \w+ " の \w+ 部分を取得します。行区切り文字を含む場合は取得しません。
+	 *
+	 * @return 宣言クラス名。無い場合は null。
+	 */
+	private String searchDeclaredClassName() {
+		for (int i = 0; i < len; i++) {
+			if (isLineTerminator(buf[i])) {
+				return null;
+			}
+		}
+		for (int i = 0; i < len; i++) {
+			if (buf[i] != ' ') {
+				continue;
+			}
+			int kindEnd;
+			if (regionMatches(i + 1, "class ")) {
+				kindEnd = i + 7;
+			} else if (regionMatches(i + 1, "interface ")) {
+				kindEnd = i + 11;
+			} else if (regionMatches(i + 1, "@interface ")) {
+				kindEnd = i + 12;
+			} else if (regionMatches(i + 1, "enum ")) {
+				kindEnd = i + 6;
+			} else {
+				continue;
+			}
+			int j = kindEnd;
+			while (j < len && isWordChar(buf[j])) {
+				j++;
+			}
+			if (j > kindEnd && j < len && buf[j] == ' ') {
+				return new String(buf, kindEnd, j - kindEnd);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 末尾の " 名前" " 名前[]" " 名前 (引数)" " 名前 (引数)[]" の "[]" を除く部分だけを残します。 該当しない場合は何もしません。
+	 */
+	private void extractMember() {
+
+		// 最後の行区切り文字より後の部分が対象
+		int lineStart = 0;
+		for (int i = len - 1; i >= 0; i--) {
+			if (isLineTerminator(buf[i])) {
+				lineStart = i + 1;
+				break;
+			}
+		}
+		if (len == 0 || buf[len - 1] != ' ') {
+			return;
+		}
+		int tail = len - 1;
+
+		for (int s = tail - 1; s >= lineStart; s--) {
+			if (buf[s] != ' ') {
+				continue;
+			}
+			int wordEnd = s + 1;
+			while (wordEnd < tail && isWordChar(buf[wordEnd])) {
+				wordEnd++;
+			}
+			if (wordEnd == s + 1) {
+				continue;
+			}
+			int rest = tail - wordEnd;
+			int memberEnd = -1;
+			if (rest == 0) {
+				memberEnd = wordEnd;
+			} else if (rest == 2 && buf[wordEnd] == '[' && buf[wordEnd + 1] == ']') {
+				memberEnd = wordEnd;
+			} else if (rest >= 3 && buf[wordEnd] == ' ' && buf[wordEnd + 1] == '(') {
+				if (buf[tail - 1] == ')') {
+					memberEnd = tail;
+				} else if (rest >= 5 && buf[tail - 3] == ')' && buf[tail - 2] == '[' && buf[tail - 1] == ']') {
+					memberEnd = tail - 2;
+				}
+			}
+			if (memberEnd != -1) {
+				System.arraycopy(buf, s + 1, buf, lineStart, memberEnd - s - 1);
+				len = lineStart + memberEnd - s - 1;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * スペースをすべて除去します。
+	 */
+	private void removeSpaces() {
+		int w = 0;
+		for (int r = 0; r < len; r++) {
+			if (buf[r] != ' ') {
+				buf[w++] = buf[r];
+			}
+		}
+		len = w;
+	}
+
+	/**
+	 * 作業用文字配列の 2 つの範囲を連結した文字列を生成します。
+	 *
+	 * @param start1
+	 *            範囲 1 の開始位置
+	 * @param end1
+	 *            範囲 1 の終了位置
+	 * @param start2
+	 *            範囲 2 の開始位置
+	 * @param end2
+	 *            範囲 2 の終了位置
+	 * @return 連結した文字列
+	 */
+	private String concat(int start1, int end1, int start2, int end2) {
+		if (start2 == end2) {
+			return new String(buf, start1, end1 - start1);
+		}
+		StringBuilder sb = new StringBuilder(end1 - start1 + end2 - start2);
+		sb.append(buf, start1, end1 - start1).append(buf, start2, end2 - start2);
+		return sb.toString();
+	}
+
+	/**
+	 * 作業用文字配列の指定位置から指定文字列が始まるか判定します。
+	 *
+	 * @param pos
+	 *            位置
+	 * @param str
+	 *            文字列
+	 * @return 始まる場合は true
+	 */
+	private boolean regionMatches(int pos, String str) {
+		if (pos + str.length() > len) {
+			return false;
+		}
+		for (int i = 0; i < str.length(); i++) {
+			if (buf[pos + i] != str.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 作業用文字配列で指定文字が最初に現れる位置を取得します。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 位置。無い場合は -1。
+	 */
+	private int indexOf(char c) {
+		for (int i = 0; i < len; i++) {
+			if (buf[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 置換先の作業用文字配列を現在の作業用文字配列にします。
+	 *
+	 * @param length
+	 *            置換先の有効な長さ
+	 */
+	private void swap(int length) {
+		char[] tmp = buf;
+		buf = work;
+		work = tmp;
+		len = length;
+	}
+
+	/**
+	 * 文字配列の長さが足りない場合は拡張します。
+	 *
+	 * @param array
+	 *            文字配列
+	 * @param capacity
+	 *            必要な長さ
+	 * @param copyLength
+	 *            拡張時にコピーする長さ
+	 * @return 必要な長さを持つ文字配列
+	 */
+	private static char[] ensureCapacity(char[] array, int capacity, int copyLength) {
+		if (array.length >= capacity) {
+			return array;
+		}
+		char[] newArray = new char[Math.max(capacity, array.length * 2)];
+		System.arraycopy(array, 0, newArray, 0, copyLength);
+		return newArray;
+	}
+
+	/**
+	 * 正規表現の \s に該当する文字か判定します。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 空白文字の場合は true
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * 正規表現の \w に該当する文字か判定します。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 単語構成文字の場合は true
+	 */
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	/**
+	 * 正規表現の . に該当しない行区切り文字か判定します。
+	 *
+	 * @param c
+	 *            文字
+	 * @return 行区切り文字の場合は true
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+}
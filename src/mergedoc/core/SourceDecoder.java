@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 入力エンコーディングの Java ソースを、改行の統一とタブの展開を行った文字列にするデコーダです。
+ * <p>
+ * {@link String#String(byte[], String)}、{@link FastStringUtils#optimizeLineSeparator(String)}、
+ * {@link FastStringUtils#untabify(String)} を順に呼び出した場合と同じ結果を、デコードしながら 1 回の走査で作成します。
+ * デコーダと作業用の文字バッファは再利用するため、Java ソースごとに生成される文字列は結果の 1 つだけです。
+ * <p>
+ * 作業状態を持つため、複数スレッドから同時に使用することはできません。スレッドごとに生成してください。
+ *
+ * @author Shinji Kashihara
+ */
+class SourceDecoder {
+
+	/** タブの幅 */
+	private static final int TAB_WIDTH = 8;
+
+	/** 一度にデコードする文字数 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/** 文字セット名 */
+	private final String charsetName;
+
+	/** デコーダ。最初のデコード時に生成します。 */
+	private CharsetDecoder decoder;
+
+	/** デコードした文字を受け取るバッファ */
+	private final CharBuffer chunk = CharBuffer.allocate(CHUNK_SIZE);
+
+	/** 変換後の文字のバッファ */
+	private char[] buf = new char[CHUNK_SIZE];
+
+	/** 変換後の文字数 */
+	private int length;
+
+	/** 行頭からの桁位置 */
+	private int column;
+
+	/** 直前の文字が CR の場合は true */
+	private boolean afterCR;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param charsetName
+	 *            入力エンコーディング
+	 */
+	SourceDecoder(String charsetName) {
+		this.charsetName = charsetName;
+	}
+
+	/**
+	 * バイト配列をデコードし、改行を LF に統一してタブをスペースに展開します。 不正なバイト列は
+	 * {@link String#String(byte[], String)} と同様に置換文字に置き換えます。
+	 *
+	 * @param data
+	 *            入力エンコーディングのバイト配列
+	 * @return 変換後の文字列
+	 * @throws UnsupportedEncodingException
+	 *             入力エンコーディングがサポートされていない場合
+	 */
+	String decode(byte[] data) throws UnsupportedEncodingException {
+
+		CharsetDecoder dec = getDecoder();
+		ByteBuffer in = ByteBuffer.wrap(data);
+		start((int) Math.min(Integer.MAX_VALUE - TAB_WIDTH, (long) (data.length * dec.averageCharsPerByte())));
+		dec.reset();
+		while (dec.decode(in, chunk, true).isOverflow()) {
+			drain();
+		}
+		while (dec.flush(chunk).isOverflow()) {
+			drain();
+		}
+		drain();
+		return new String(buf, 0, length);
+	}
+
+	/**
+	 * 文字列の改行を LF に統一してタブをスペースに展開します。
+	 *
+	 * @param str
+	 *            文字列
+	 * @return 変換後の文字列
+	 */
+	String normalize(String str) {
+		int size = str.length();
+		start(size);
+		for (int i = 0; i < size; i++) {
+			append(str.charAt(i));
+		}
+		return new String(buf, 0, length);
+	}
+
+	/**
+	 * デコーダを取得します。
+	 *
+	 * @return デコーダ
+	 * @throws UnsupportedEncodingException
+	 *             入力エンコーディングがサポートされていない場合
+	 */
+	private CharsetDecoder getDecoder() throws UnsupportedEncodingException {
+		if (decoder == null) {
+			try {
+				decoder = Charset.forName(charsetName).newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			} catch (IllegalArgumentException e) {
+				throw new UnsupportedEncodingException(charsetName);
+			}
+		}
+		return decoder;
+	}
+
+	/**
+	 * 変換を開始します。
+	 *
+	 * @param expectSize
+	 *            予想される変換後の文字数
+	 */
+	private void start(int expectSize) {
+		if (buf.length < expectSize) {
+			buf = new char[expectSize];
+		}
+		length = 0;
+		column = 0;
+		afterCR = false;
+	}
+
+	/**
+	 * デコードした文字を変換後のバッファに移します。
+	 */
+	private void drain() {
+		chunk.flip();
+		char[] chars = chunk.array();
+		for (int i = 0, size = chunk.limit(); i < size; i++) {
+			append(chars[i]);
+		}
+		chunk.clear();
+	}
+
+	/**
+	 * 1 文字を変換してバッファに追加します。
+	 *
+	 * @param c
+	 *            文字
+	 */
+	private void append(char c) {
+		if (length + TAB_WIDTH > buf.length) {
+			char[] newBuf = new char[buf.length * 2];
+			System.arraycopy(buf, 0, newBuf, 0, length);
+			buf = newBuf;
+		}
+		if (c == '\n') {
+			// CRLF の LF は CR で追加済み
+			if (!afterCR) {
+				buf[length++] = '\n';
+			}
+			column = 0;
+			afterCR = false;
+		} else if (c == '\r') {
+			buf[length++] = '\n';
+			column = 0;
+			afterCR = true;
+		} else if (c == '\t') {
+			int fillSize = TAB_WIDTH - column % TAB_WIDTH;
+			for (int f = 0; f < fillSize; f++) {
+				buf[length++] = ' ';
+			}
+			column += fillSize;
+			afterCR = false;
+		} else {
+			buf[length++] = c;
+			column++;
+			afterCR = false;
+		}
+	}
+}
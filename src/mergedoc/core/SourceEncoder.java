@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * マージ後の Java ソースを出力エンコーディングで少しずつエンコードするエンコーダです。
+ * <p>
+ * 文字列全体のバイト配列を作成せずに、一定サイズのバッファにエンコードしたバイト列を順に {@link Sink} に渡します。
+ * 結果は {@link String#getBytes(String)} と同じです。エンコーダとバッファは再利用するため、エンコードに使用するメモリは文字列の長さに関わらず一定です。
+ * <p>
+ * 作業状態を持つため、複数スレッドから同時に使用することはできません。スレッドごとに生成してください。
+ *
+ * @author Shinji Kashihara
+ */
+class SourceEncoder {
+
+	/** 一度にエンコードする文字数 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * エンコードしたバイト列の受け取り先です。
+	 */
+	interface Sink {
+
+		/**
+		 * エンコードしたバイト列を受け取ります。 バイト配列は呼び出し後に再利用されるため、保持しないでください。
+		 *
+		 * @param b
+		 *            バイト配列
+		 * @param off
+		 *            開始位置
+		 * @param len
+		 *            バイト数
+		 * @return エンコードを続ける場合は true、中止する場合は false
+		 * @throws IOException
+		 *             入出力例外が発生した場合
+		 */
+		boolean write(byte[] b, int off, int len) throws IOException;
+	}
+
+	/** 文字セット名 */
+	private final String charsetName;
+
+	/** エンコーダ。最初のエンコード時に生成します。 */
+	private CharsetEncoder encoder;
+
+	/** エンコードする文字のバッファ */
+	private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+	/** エンコードしたバイト列のバッファ */
+	private ByteBuffer bytes;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param charsetName
+	 *            出力エンコーディング
+	 */
+	SourceEncoder(String charsetName) {
+		this.charsetName = charsetName;
+	}
+
+	/**
+	 * 文字セット名を取得します。
+	 *
+	 * @return 文字セット名
+	 */
+	String getCharsetName() {
+		return charsetName;
+	}
+
+	/**
+	 * 文字列をエンコードし、バイト列を順に受け取り先に渡します。
+	 *
+	 * @param text
+	 *            文字列
+	 * @param sink
+	 *            受け取り先
+	 * @return エンコードしたバイト数。受け取り先が中止した場合は -1。
+	 * @throws UnsupportedEncodingException
+	 *             出力エンコーディングがサポートされていない場合
+	 * @throws IOException
+	 *             受け取り先で入出力例外が発生した場合
+	 */
+	long encode(CharSequence text, Sink sink) throws IOException {
+
+		CharsetEncoder enc = getEncoder();
+		enc.reset();
+		chars.clear();
+		long total = 0;
+		int length = text.length();
+		int pos = 0;
+		boolean end;
+		do {
+			int size = Math.min(chars.remaining(), length - pos);
+			getChars(text, pos, pos + size, chars.array(), chars.position());
+			chars.position(chars.position() + size);
+			pos += size;
+			end = (pos == length);
+
+			chars.flip();
+			CoderResult result;
+			do {
+				result = enc.encode(chars, bytes, end);
+				int written = drain(sink);
+				if (written == -1) {
+					return -1;
+				}
+				total += written;
+			} while (result.isOverflow());
+			chars.compact();
+		} while (!end);
+
+		CoderResult result;
+		do {
+			result = enc.flush(bytes);
+			int written = drain(sink);
+			if (written == -1) {
+				return -1;
+			}
+			total += written;
+		} while (result.isOverflow());
+		return total;
+	}
+
+	/**
+	 * 文字列をエンコードした結果が指定したバイト配列と同じか判定します。 異なるバイトが見つかった時点でエンコードを中止します。
+	 *
+	 * @param text
+	 *            文字列
+	 * @param data
+	 *            比較するバイト配列
+	 * @return 同じ場合は true
+	 * @throws UnsupportedEncodingException
+	 *             出力エンコーディングがサポートされていない場合
+	 */
+	boolean matches(CharSequence text, final byte[] data) throws UnsupportedEncodingException {
+		final int[] offset = new int[1];
+		try {
+			long size = encode(text, new Sink() {
+				public boolean write(byte[] b, int off, int len) {
+					if (offset[0] + len > data.length) {
+						return false;
+					}
+					for (int i = 0; i < len; i++) {
+						if (b[off + i] != data[offset[0] + i]) {
+							return false;
+						}
+					}
+					offset[0] += len;
+					return true;
+				}
+			});
+			return size == data.length;
+		} catch (UnsupportedEncodingException e) {
+			throw e;
+		} catch (IOException e) {
+			// 比較では発生しない
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 文字列をエンコードしたバイト配列を作成します。
+	 *
+	 * @param text
+	 *            文字列
+	 * @return バイト配列
+	 * @throws UnsupportedEncodingException
+	 *             出力エンコーディングがサポートされていない場合
+	 */
+	byte[] toBytes(CharSequence text) throws UnsupportedEncodingException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(text.length() + 16);
+		try {
+			encode(text, new Sink() {
+				public boolean write(byte[] b, int off, int len) {
+					baos.write(b, off, len);
+					return true;
+				}
+			});
+		} catch (UnsupportedEncodingException e) {
+			throw e;
+		} catch (IOException e) {
+			// ByteArrayOutputStream では発生しない
+			throw new IllegalStateException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * エンコーダを取得します。
+	 *
+	 * @return エンコーダ
+	 * @throws UnsupportedEncodingException
+	 *             出力エンコーディングがサポートされていない場合
+	 */
+	private CharsetEncoder getEncoder() throws UnsupportedEncodingException {
+		if (encoder == null) {
+			try {
+				encoder = Charset.forName(charsetName).newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			} catch (IllegalArgumentException e) {
+				throw new UnsupportedEncodingException(charsetName);
+			}
+			bytes = ByteBuffer.allocate((int) Math.ceil(CHUNK_SIZE * encoder.maxBytesPerChar()) + 16);
+		}
+		return encoder;
+	}
+
+	/**
+	 * エンコードしたバイト列を受け取り先に渡し、バッファを空にします。
+	 *
+	 * @param sink
+	 *            受け取り先
+	 * @return 渡したバイト数。受け取り先が中止した場合は -1。
+	 * @throws IOException
+	 *             受け取り先で入出力例外が発生した場合
+	 */
+	private int drain(Sink sink) throws IOException {
+		int size = bytes.position();
+		bytes.clear();
+		if (size > 0 && !sink.write(bytes.array(), 0, size)) {
+			return -1;
+		}
+		return size;
+	}
+
+	/**
+	 * 文字列の一部を文字配列に複写します。
+	 *
+	 * @param text
+	 *            文字列
+	 * @param begin
+	 *            開始位置
+	 * @param end
+	 *            終了位置
+	 * @param dest
+	 *            複写先
+	 * @param destBegin
+	 *            複写先の開始位置
+	 */
+	private static void getChars(CharSequence text, int begin, int end, char[] dest, int destBegin) {
+		if (text instanceof String) {
+			((String) text).getChars(begin, end, dest, destBegin);
+		} else if (text instanceof StringBuilder) {
+			((StringBuilder) text).getChars(begin, end, dest, destBegin);
+		} else {
+			for (int i = begin; i < end; i++) {
+				dest[destBegin++] = text.charAt(i);
+			}
+		}
+	}
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+/**
+ * Java ソースの先頭にある package 宣言と最初のトップレベル型宣言です。
+ * <p>
+ * {@link #scan(String)} は Java ソースを先頭から字句単位で読み、最初のトップレベル型の名前を読んだ時点で終了します。
+ * コメント、import 宣言、修飾子、アノテーション（引数の文字列を含む）は読み飛ばし、Java ソースの複写は行いません。
+ *
+ * @author Shinji Kashihara
+ */
+class SourceHeader {
+
+	/** {@link #scanPrefix(String)} で先頭部分を読み終える前に終端に達したことを示す結果 */
+	static final SourceHeader INCOMPLETE = new SourceHeader(null, null, null);
+
+	/** パッケージ名 */
+	private final String packageName;
+
+	/** クラス種類（class|interface|@interface|enum）。型宣言が見つからない場合は null。 */
+	private final String classKind;
+
+	/** 単純クラス名（型パラメータを含まない）。型宣言が見つからない場合は null。 */
+	private final String simpleName;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param packageName
+	 *            パッケージ名
+	 * @param classKind
+	 *            クラス種類
+	 * @param simpleName
+	 *            単純クラス名
+	 */
+	private SourceHeader(String packageName, String classKind, String simpleName) {
+		this.packageName = packageName;
+		this.classKind = classKind;
+		this.simpleName = simpleName;
+	}
+
+	/**
+	 * Java ソースの先頭を読み、package 宣言と最初のトップレベル型宣言を取得します。
+	 *
+	 * @param source
+	 *            Java ソース文字列
+	 * @return package 宣言が無い場合は null
+	 */
+	static SourceHeader scan(String source) {
+		SourceHeader header = new Scanner(source).scan();
+		return (header.packageName == null) ? null : header;
+	}
+
+	/**
+	 * Java ソースの先頭部分だけを読み、package 宣言と最初のトップレベル型宣言を取得します。
+	 * 先頭部分の終端で型の名前やコメントが途切れている可能性がある場合は、より長い先頭部分で読み直す必要があります。
+	 *
+	 * @param prefix
+	 *            Java ソースの先頭部分
+	 * @return package 宣言が無い場合は null、先頭部分の終端に達した場合は {@link #INCOMPLETE}
+	 */
+	static SourceHeader scanPrefix(String prefix) {
+		Scanner scanner = new Scanner(prefix);
+		SourceHeader header = scanner.scan();
+		if (scanner.pos >= scanner.length) {
+			return INCOMPLETE;
+		}
+		return (header.packageName == null) ? null : header;
+	}
+
+	/**
+	 * パッケージ名を取得します。
+	 *
+	 * @return パッケージ名
+	 */
+	String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * クラス種類を取得します。
+	 *
+	 * @return クラス種類（class|interface|@interface|enum）。型宣言が見つからない場合は null。
+	 */
+	String getClassKind() {
+		return classKind;
+	}
+
+	/**
+	 * 単純クラス名を取得します。
+	 *
+	 * @return 単純クラス名。型宣言が見つからない場合は null。
+	 */
+	String getSimpleName() {
+		return simpleName;
+	}
+
+	/**
+	 * パッケージを含むクラス名を取得します。
+	 *
+	 * @return クラス名。型宣言が見つからない場合は null。
+	 */
+	String getClassName() {
+		return (simpleName == null) ? null : packageName + "." + simpleName;
+	}
+
+	/**
+	 * Java ソースの先頭を読む字句スキャナです。
+	 */
+	private static class Scanner {
+
+		/** Java ソース文字列 */
+		private final String src;
+
+		/** Java ソースの長さ */
+		private final int length;
+
+		/** 現在位置 */
+		private int pos;
+
+		Scanner(String src) {
+			this.src = src;
+			this.length = src.length();
+		}
+
+		/**
+		 * 最初のトップレベル型の名前まで読みます。
+		 *
+		 * @return 読み取った結果。package 宣言が無い場合はパッケージ名が null。
+		 */
+		SourceHeader scan() {
+			String packageName = null;
+			while (skipSpace()) {
+				char c = src.charAt(pos);
+				if (c == '@') {
+					pos++;
+					skipSpace();
+					String name = readQualifiedName();
+					if (name.equals("interface")) {
+						return declaration(packageName, "@interface");
+					}
+					skipSpace();
+					if (pos < length && src.charAt(pos) == '(') {
+						skipParentheses();
+					}
+				} else if (Character.isJavaIdentifierStart(c)) {
+					String word = readQualifiedName();
+					if (word.equals("package")) {
+						skipSpace();
+						packageName = readQualifiedName();
+						skipStatement();
+					} else if (word.equals("import")) {
+						skipStatement();
+					} else if (word.equals("class") || word.equals("interface") || word.equals("enum")) {
+						return declaration(packageName, word);
+					}
+					// それ以外は修飾子
+				} else if (c == ';' || c == '-') {
+					// 空の宣言、non-sealed 修飾子の区切り
+					pos++;
+				} else {
+					// 型宣言の前に現れない字句（module 宣言の本体など）
+					break;
+				}
+			}
+			return declaration(packageName, null);
+		}
+
+		/**
+		 * 型宣言のクラス種類に続く名前を読み、結果を作成します。
+		 *
+		 * @param packageName
+		 *            パッケージ名
+		 * @param classKind
+		 *            クラス種類。型宣言が見つからなかった場合は null。
+		 * @return 読み取った結果
+		 */
+		private SourceHeader declaration(String packageName, String classKind) {
+			String simpleName = null;
+			if (classKind != null) {
+				skipSpace();
+				simpleName = readIdentifier();
+				if (simpleName.length() == 0) {
+					classKind = null;
+					simpleName = null;
+				}
+			}
+			return new SourceHeader(packageName, classKind, simpleName);
+		}
+
+		/**
+		 * 空白とコメントを読み飛ばします。
+		 *
+		 * @return 終端に達していない場合は true
+		 */
+		private boolean skipSpace() {
+			while (pos < length) {
+				char c = src.charAt(pos);
+				if (c == '/' && pos + 1 < length) {
+					char next = src.charAt(pos + 1);
+					if (next == '*') {
+						int end = src.indexOf("*/", pos + 2);
+						pos = (end == -1) ? length : end + 2;
+						continue;
+					}
+					if (next == '/') {
+						int end = src.indexOf('\n', pos + 2);
+						pos = (end == -1) ? length : end + 1;
+						continue;
+					}
+					return true;
+				}
+				if (!Character.isWhitespace(c) && c != '\uFEFF') {
+					return true;
+				}
+				pos++;
+			}
+			return false;
+		}
+
+		/**
+		 * 識別子を読みます。
+		 *
+		 * @return 識別子。現在位置が識別子でない場合は空文字列。
+		 */
+		private String readIdentifier() {
+			int begin = pos;
+			if (pos < length && Character.isJavaIdentifierStart(src.charAt(pos))) {
+				pos++;
+				while (pos < length && Character.isJavaIdentifierPart(src.charAt(pos))) {
+					pos++;
+				}
+			}
+			return src.substring(begin, pos);
+		}
+
+		/**
+		 * ドットで区切られた名前を読みます。 区切りの前後の空白とコメントは取り除きます。
+		 *
+		 * @return 名前
+		 */
+		private String readQualifiedName() {
+			String name = readIdentifier();
+			StringBuilder sb = null;
+			while (true) {
+				int mark = pos;
+				skipSpace();
+				if (pos >= length || src.charAt(pos) != '.') {
+					pos = mark;
+					break;
+				}
+				pos++;
+				skipSpace();
+				String part = readIdentifier();
+				if (part.length() == 0) {
+					pos = mark;
+					break;
+				}
+				if (sb == null) {
+					sb = new StringBuilder(name);
+				}
+				sb.append('.').append(part);
+			}
+			return (sb == null) ? name : sb.toString();
+		}
+
+		/**
+		 * 次のセミコロンの直後まで読み飛ばします。
+		 */
+		private void skipStatement() {
+			while (skipSpace()) {
+				if (src.charAt(pos++) == ';') {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * 対応する閉じ括弧の直後まで読み飛ばします。 文字列、文字リテラル、コメント内の括弧は数えません。
+		 */
+		private void skipParentheses() {
+			int depth = 0;
+			while (skipSpace()) {
+				char c = src.charAt(pos);
+				if (c == '"' || c == '\'') {
+					skipLiteral(c);
+					continue;
+				}
+				pos++;
+				if (c == '(') {
+					depth++;
+				} else if (c == ')' && --depth == 0) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * 文字列リテラル（テキストブロックを含む）または文字リテラルを読み飛ばします。
+		 *
+		 * @param quote
+		 *            引用符
+		 */
+		private void skipLiteral(char quote) {
+			if (quote == '"' && src.startsWith("\"\"\"", pos)) {
+				int end = pos + 3;
+				while (true) {
+					end = src.indexOf("\"\"\"", end);
+					if (end == -1) {
+						pos = length;
+						return;
+					}
+					if (!isEscaped(end)) {
+						pos = end + 3;
+						return;
+					}
+					end++;
+				}
+			}
+			for (pos++; pos < length; pos++) {
+				char c = src.charAt(pos);
+				if (c == '\\') {
+					pos++;
+				} else if (c == quote || c == '\n') {
+					pos++;
+					return;
+				}
+			}
+		}
+
+		/**
+		 * 指定した位置の文字がバックスラッシュでエスケープされているか判定します。
+		 *
+		 * @param index
+		 *            位置
+		 * @return エスケープされている場合は true
+		 */
+		private boolean isEscaped(int index) {
+			int count = 0;
+			for (int i = index - 1; i >= 0 && src.charAt(i) == '\\'; i--) {
+				count++;
+			}
+			return count % 2 == 1;
+		}
+	}
+}
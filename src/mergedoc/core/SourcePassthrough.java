@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import mergedoc.xml.FilterProgram;
+
+/**
+ * 入力エンコーディングの Java ソースを、デコードせずにバイト列のまま判定する処理です。
+ * <p>
+ * 入力と出力のエンコーディングが同じで、バイト列がタブと CR を含まない正しい UTF-8 （ASCII のみの場合は ASCII
+ * 互換の文字セット）の場合、デコード、改行とタブの変換、エンコードを行ってもバイト列は変わりません。このようなバイト列は
+ * UTF-8 の文字列として package 宣言を読み、置換定義の検索もバイト列のまま行えます。
+ * <p>
+ * 生成後は変更されないため、複数スレッドから同時に使用できます。
+ *
+ * @author Shinji Kashihara
+ */
+class SourcePassthrough {
+
+	/** 最初に package 宣言を読むバイト数。読み終えられない場合は 4 倍ずつ増やします。 */
+	private static final int HEADER_SIZE = 4096;
+
+	/** UTF-8 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** ASCII のみのバイト列を、状態を持たずに 1 バイトずつ ASCII 文字として扱う文字セット */
+	private static final Set<String> ASCII_COMPATIBLE = new HashSet<String>(Arrays.asList("UTF-8", "US-ASCII",
+			"ISO-8859-1", "windows-1252", "windows-31j", "Shift_JIS", "EUC-JP"));
+
+	/** バイト列のまま判定できる場合は true */
+	private final boolean enabled;
+
+	/** 入力エンコーディングが UTF-8 の場合は true */
+	private final boolean utf8;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param inputEncoding
+	 *            入力エンコーディング
+	 * @param outputEncoding
+	 *            出力エンコーディング
+	 */
+	SourcePassthrough(String inputEncoding, String outputEncoding) {
+		Charset input = forName(inputEncoding);
+		Charset output = forName(outputEncoding);
+		this.enabled = input != null && input.equals(output) && isAsciiCompatible(input);
+		this.utf8 = UTF_8.equals(input);
+	}
+
+	/**
+	 * バイト列のまま判定できるエンコーディングの組み合わせか判定します。
+	 *
+	 * @return 判定できる場合は true
+	 */
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * バイト列をデコードして改行とタブを変換し、エンコードした結果が元のバイト列と同じになるか判定します。
+	 * 入力エンコーディングが UTF-8 の場合は正しい UTF-8、それ以外の場合は ASCII のみのバイト列が対象です。
+	 *
+	 * @param data
+	 *            入力エンコーディングのバイト列
+	 * @return 同じになる場合は true
+	 */
+	boolean isVerbatim(byte[] data) {
+		if (!enabled) {
+			return false;
+		}
+		int length = data.length;
+		int i = 0;
+		while (i < length) {
+			int b = data[i] & 0xFF;
+			if (b < 0x80) {
+				if (b == '\t' || b == '\r') {
+					return false;
+				}
+				i++;
+				continue;
+			}
+			if (!utf8) {
+				return false;
+			}
+			int size = utf8SequenceLength(data, i);
+			if (size == 0) {
+				return false;
+			}
+			i += size;
+		}
+		return true;
+	}
+
+	/**
+	 * {@link #isVerbatim(byte[])} が true のバイト列から package 宣言と最初のトップレベル型宣言を取得します。
+	 * 先頭から一定のバイト数だけをデコードして読み、読み終えられない場合は範囲を広げます。
+	 *
+	 * @param data
+	 *            入力エンコーディングのバイト列
+	 * @return package 宣言が無い場合は null
+	 */
+	SourceHeader scanHeader(byte[] data) {
+		for (int size = HEADER_SIZE; size < data.length; size *= 4) {
+			// UTF-8 の文字の途中で区切らない
+			int end = size;
+			while (end > 0 && (data[end] & 0xC0) == 0x80) {
+				end--;
+			}
+			SourceHeader header = SourceHeader.scanPrefix(new String(data, 0, end, UTF_8));
+			if (header != SourceHeader.INCOMPLETE) {
+				return header;
+			}
+		}
+		return SourceHeader.scan(new String(data, UTF_8));
+	}
+
+	/**
+	 * {@link #isVerbatim(byte[])} が true のバイト列を置換対象として検索する処理を作成します。
+	 *
+	 * @param data
+	 *            入力エンコーディングのバイト列
+	 * @return 置換対象の検索
+	 */
+	FilterProgram.Probe probe(final byte[] data) {
+		return new FilterProgram.Probe() {
+			public boolean contains(String literal) {
+				return indexOf(data, literal.getBytes(UTF_8)) != -1;
+			}
+		};
+	}
+
+	/**
+	 * 文字セットを取得します。
+	 *
+	 * @param charsetName
+	 *            文字セット名
+	 * @return 文字セット。サポートされていない場合は null。
+	 */
+	private static Charset forName(String charsetName) {
+		try {
+			return Charset.forName(charsetName);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * ASCII のみのバイト列を ASCII 文字列としてデコードし、元のバイト列にエンコードできる文字セットか判定します。
+	 *
+	 * @param charset
+	 *            文字セット
+	 * @return 判定できる場合は true
+	 */
+	private static boolean isAsciiCompatible(Charset charset) {
+		if (!ASCII_COMPATIBLE.contains(charset.name())) {
+			return false;
+		}
+		byte[] ascii = new byte[0x80];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) i;
+		}
+		String str = new String(ascii, charset);
+		if (str.length() != ascii.length) {
+			return false;
+		}
+		for (int i = 0; i < ascii.length; i++) {
+			if (str.charAt(i) != i) {
+				return false;
+			}
+		}
+		return Arrays.equals(str.getBytes(charset), ascii);
+	}
+
+	/**
+	 * 指定した位置から始まる UTF-8 の 1 文字のバイト数を取得します。 Java の UTF-8 デコーダが不正とするバイト列（冗長な表現、サロゲート、
+	 * U+10FFFF を超える値、途切れたバイト列）は 0 を返します。
+	 *
+	 * @param data
+	 *            バイト列
+	 * @param i
+	 *            先頭バイトの位置
+	 * @return バイト数。不正な場合は 0。
+	 */
+	private static int utf8SequenceLength(byte[] data, int i) {
+		int b = data[i] & 0xFF;
+		int size;
+		int min = 0x80;
+		int max = 0xBF;
+		if (b >= 0xC2 && b <= 0xDF) {
+			size = 2;
+		} else if (b >= 0xE0 && b <= 0xEF) {
+			size = 3;
+			if (b == 0xE0) {
+				min = 0xA0;
+			} else if (b == 0xED) {
+				max = 0x9F;
+			}
+		} else if (b >= 0xF0 && b <= 0xF4) {
+			size = 4;
+			if (b == 0xF0) {
+				min = 0x90;
+			} else if (b == 0xF4) {
+				max = 0x8F;
+			}
+		} else {
+			return 0;
+		}
+		if (i + size > data.length) {
+			return 0;
+		}
+		// 2 バイト目は範囲が狭い場合がある
+		int second = data[i + 1] & 0xFF;
+		if (second < min || second > max) {
+			return 0;
+		}
+		for (int j = 2; j < size; j++) {
+			if ((data[i + j] & 0xC0) != 0x80) {
+				return 0;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * バイト列を検索します。
+	 *
+	 * @param data
+	 *            検索対象のバイト列
+	 * @param pattern
+	 *            検索するバイト列
+	 * @return 見つかった位置。見つからない場合は -1。
+	 */
+	private static int indexOf(byte[] data, byte[] pattern) {
+		if (pattern.length == 0) {
+			return 0;
+		}
+		byte first = pattern[0];
+		int last = data.length - pattern.length;
+		outer: for (int i = 0; i <= last; i++) {
+			if (data[i] != first) {
+				continue;
+			}
+			for (int j = 1; j < pattern.length; j++) {
+				if (data[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * ユーザーのホームディレクトリの .mergedoc ディレクトリに置くファイルです。
+ * <p>
+ * ディレクトリにはトークンファイルなど他のユーザーに読まれてはならないファイルも置くため、起動ユーザーだけがアクセスできるように作成します。
+ *
+ * @author Shinji Kashihara
+ */
+public class UserFiles {
+
+	/**
+	 * コンストラクタです。
+	 */
+	private UserFiles() {
+	}
+
+	/**
+	 * .mergedoc ディレクトリのファイルを取得します。
+	 *
+	 * @param name
+	 *            ファイル名
+	 * @return ファイル
+	 */
+	public static File getFile(String name) {
+		return new File(new File(System.getProperty("user.home"), ".mergedoc"), name);
+	}
+
+	/**
+	 * .mergedoc ディレクトリが無い場合は、起動ユーザーだけがアクセスできるように作成します。
+	 *
+	 * @param file
+	 *            {@link #getFile(String)} で取得したファイル
+	 * @throws IOException
+	 *             ディレクトリを作成できない場合
+	 */
+	public static void createDirectory(File file) throws IOException {
+		Path dir = file.toPath().getParent();
+		if (Files.isDirectory(dir)) {
+			return;
+		}
+		if (dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createDirectories(dir,
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+		} else {
+			Files.createDirectories(dir);
+		}
+	}
+}
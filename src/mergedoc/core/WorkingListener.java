@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+/**
+ * 処理状態の変更を監視するリスナです。
+ * <p>
+ * コアパッケージを GUI に依存させないため、javax.swing.event.ChangeListener の代わりに使用します。
+ * 
+ * @author Shinji Kashihara
+ */
+public interface WorkingListener {
+
+	/**
+	 * 処理対象が変更された場合に呼び出されます。
+	 * 
+	 * @param state
+	 *            処理状態
+	 */
+	void stateChanged(WorkingState state);
+}
@@ -5,8 +5,6 @@
  */
 package mergedoc.core;
 
-import javax.swing.event.ChangeListener;
-
 /**
  * 処理状態を保持するクラスです。
  * 
@@ -15,7 +13,7 @@ import javax.swing.event.ChangeListener;
 public class WorkingState {
 
 	/** 状態監視用のリスナ */
-	private ChangeListener changeListener;
+	private WorkingListener workingListener;
 
 	/** 処理対象文字列 */
 	private String workingText;
@@ -23,8 +21,11 @@ public class WorkingState {
 	/** 処理対象文字列変更回数 */
 	private int changedCount;
 
+	/** 処理済みのエントリの展開後のサイズの合計 */
+	private volatile long workedSize;
+
 	/** キャンセル */
-	private boolean canceled;
+	private volatile boolean canceled;
 
 	/** 処理に要した時間（秒） */
 	private long workTime;
@@ -40,16 +41,18 @@ public class WorkingState {
 	 */
 	void initialize() {
 		canceled = false;
+		changedCount = 0;
+		workedSize = 0;
 	}
 
 	/**
 	 * 進捗監視用のリスナをセットします。
 	 * 
-	 * @param changeListener
+	 * @param workingListener
 	 *            進捗監視用のリスナ
 	 */
-	void setChangeListener(ChangeListener changeListener) {
-		this.changeListener = changeListener;
+	void setWorkingListener(WorkingListener workingListener) {
+		this.workingListener = workingListener;
 	}
 
 	/**
@@ -61,7 +64,37 @@ public class WorkingState {
 	void changeWorkingText(String text) {
 		workingText = text;
 		changedCount++;
-		changeListener.stateChanged(null);
+		if (workingListener != null) {
+			workingListener.stateChanged(this);
+		}
+	}
+
+	/**
+	 * 処理対象ではない、処理の状況を表わす文字列を設定します。 処理対象文字列変更回数は処理したエントリ数として使用されるため加算しません。
+	 * 
+	 * @param text
+	 *            処理の状況を表わす文字列
+	 */
+	void changeStatusText(String text) {
+		workingText = text;
+		if (workingListener != null) {
+			workingListener.stateChanged(this);
+		}
+	}
+
+	/**
+	 * 処理対象を表わす文字列を設定し、処理済みのサイズを加算します。
+	 * 
+	 * @param text
+	 *            処理対象を表わす文字列
+	 * @param size
+	 *            処理対象の展開後のサイズ。不明な場合は負数。
+	 */
+	void changeWorkingText(String text, long size) {
+		if (size > 0) {
+			workedSize += size;
+		}
+		changeWorkingText(text);
 	}
 
 	/**
@@ -98,6 +131,15 @@ public class WorkingState {
 		return changedCount;
 	}
 
+	/**
+	 * 処理済みのエントリの展開後のサイズの合計を取得します．
+	 * 
+	 * @return 処理済みのサイズ（バイト）
+	 */
+	public long getWorkedSize() {
+		return workedSize;
+	}
+
 	/**
 	 * 処理に要した時間をセットします．
 	 * 
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * ZIP アーカイブのランダムアクセスリーダーです。
+ * <p>
+ * セントラルディレクトリからエントリの圧縮方式、CRC-32、圧縮サイズを読み込み、エントリの圧縮データを展開せずにそのまま
+ * {@link ZipArchiveWriter} に書き込めるようにします。データの読み込みは位置指定で行われるため、複数スレッドから同時に使用できます。
+ * <p>
+ * ZIP64 形式のアーカイブには対応していません。
+ *
+ * @author Shinji Kashihara
+ */
+public class ZipArchiveReader {
+
+	/** セントラルディレクトリ終端レコードのシグネチャ */
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	/** セントラルディレクトリファイルヘッダのシグネチャ */
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+	/** ローカルファイルヘッダのシグネチャ */
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+	/** セントラルディレクトリ終端レコードのサイズ（コメントを除く） */
+	private static final int END_SIZE = 22;
+
+	/** ローカルファイルヘッダのサイズ（ファイル名と拡張フィールドを除く） */
+	private static final int LOCAL_SIZE = 30;
+
+	/** ファイルチャネル */
+	private final FileChannel channel;
+
+	/** エントリのリスト（セントラルディレクトリの順） */
+	private final List<Entry> entries;
+
+	/**
+	 * ZIP アーカイブを開き、セントラルディレクトリを読み込みます。
+	 *
+	 * @param file
+	 *            ZIP アーカイブファイル
+	 * @throws ZipException
+	 *             ZIP アーカイブとして読み込めない場合
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public ZipArchiveReader(File file) throws IOException {
+		channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * エントリのリストを取得します。
+	 *
+	 * @return エントリのリスト（セントラルディレクトリの順）
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * ZIP アーカイブを閉じます。
+	 *
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * ZIP アーカイブのエントリです。
+	 */
+	public class Entry implements ArchiveInputStream.Entry {
+
+		private final String name;
+		private final int flags;
+		private final int method;
+		private final int dosTime;
+		private final long crc;
+		private final long compressedSize;
+		private final long size;
+		private final long localHeaderOffset;
+
+		/** 圧縮データの位置。未取得の場合は -1。 */
+		private volatile long dataOffset = -1;
+
+		Entry(String name, int flags, int method, int dosTime, long crc, long compressedSize, long size,
+				long localHeaderOffset) {
+			this.name = name;
+			this.flags = flags;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * 汎用フラグを取得します。
+		 *
+		 * @return 汎用フラグ
+		 */
+		int getFlags() {
+			return flags;
+		}
+
+		/**
+		 * 圧縮方式を取得します。
+		 *
+		 * @return {@link ZipEntry#STORED} または {@link ZipEntry#DEFLATED} など
+		 */
+		public int getMethod() {
+			return method;
+		}
+
+		/**
+		 * MS-DOS 形式の更新日時を取得します。
+		 *
+		 * @return 上位 16 ビットが日付、下位 16 ビットが時刻
+		 */
+		int getDosTime() {
+			return dosTime;
+		}
+
+		/**
+		 * 展開後データの CRC-32 を取得します。
+		 *
+		 * @return CRC-32
+		 */
+		public long getCrc() {
+			return crc;
+		}
+
+		/**
+		 * 圧縮サイズを取得します。
+		 *
+		 * @return 圧縮サイズ
+		 */
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		/**
+		 * 展開後のサイズを取得します。
+		 *
+		 * @return 展開後のサイズ
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * 展開したデータを読み込む入力ストリームを取得します。 最後まで読み込んだ時点で CRC-32 が検証されます。
+		 *
+		 * @return 入力ストリーム
+		 * @throws ZipException
+		 *             対応していない圧縮方式の場合
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		public InputStream getInputStream() throws IOException {
+
+			InputStream raw = new ChannelInputStream(getDataOffset(), compressedSize);
+			InputStream is;
+			if (method == ZipEntry.STORED) {
+				is = raw;
+			} else if (method == ZipEntry.DEFLATED) {
+				// nowrap の Inflater は入力の終わりにダミーの 1 バイトを必要とする場合がある
+				final Inflater inflater = new Inflater(true);
+				is = new InflaterInputStream(new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1])),
+						inflater) {
+					public void close() throws IOException {
+						inflater.end();
+						super.close();
+					}
+				};
+			} else {
+				throw new ZipException(name + " は対応していない圧縮方式です。(" + method + ")");
+			}
+			return new CheckedEntryInputStream(this, is);
+		}
+
+		/**
+		 * 圧縮データを展開せずに出力ストリームに書き込みます。
+		 *
+		 * @param out
+		 *            出力ストリーム
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		void transferRawTo(OutputStream out) throws IOException {
+			InputStream is = new ChannelInputStream(getDataOffset(), compressedSize);
+			byte[] buf = new byte[(int) Math.min(Math.max(compressedSize, 1), 65536)];
+			for (int size = 0; (size = is.read(buf)) > 0;) {
+				out.write(buf, 0, size);
+			}
+		}
+
+		/**
+		 * ローカルファイルヘッダを読み込み、圧縮データの位置を取得します。
+		 *
+		 * @return 圧縮データの位置
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		private long getDataOffset() throws IOException {
+			if (dataOffset < 0) {
+				ByteBuffer header = read(localHeaderOffset, LOCAL_SIZE);
+				if (header.getInt(0) != LOCAL_SIGNATURE) {
+					throw new ZipException(name + " のローカルファイルヘッダが不正です。");
+				}
+				int nameLength = header.getShort(26) & 0xffff;
+				int extraLength = header.getShort(28) & 0xffff;
+				dataOffset = localHeaderOffset + LOCAL_SIZE + nameLength + extraLength;
+			}
+			return dataOffset;
+		}
+	}
+
+	/**
+	 * セントラルディレクトリを読み込みます。
+	 *
+	 * @return エントリのリスト
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private List<Entry> readCentralDirectory() throws IOException {
+
+		// 終端レコードはコメント（最大 65535 バイト）の前にある
+		long fileSize = channel.size();
+		int tailSize = (int) Math.min(fileSize, END_SIZE + 0xffff);
+		ByteBuffer tail = read(fileSize - tailSize, tailSize);
+		int end = -1;
+		for (int i = tailSize - END_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_SIGNATURE) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) {
+			throw new ZipException("ZIP アーカイブのセントラルディレクトリが見つかりません。");
+		}
+		int count = tail.getShort(end + 10) & 0xffff;
+		long cdSize = tail.getInt(end + 12) & 0xffffffffL;
+		long cdOffset = tail.getInt(end + 16) & 0xffffffffL;
+		if (count == 0xffff || cdSize == 0xffffffffL || cdOffset == 0xffffffffL) {
+			throw new ZipException("ZIP64 形式のアーカイブには対応していません。");
+		}
+		if (cdSize > fileSize || cdOffset + cdSize > fileSize || cdSize > Integer.MAX_VALUE) {
+			throw new ZipException("ZIP アーカイブのセントラルディレクトリの位置が不正です。");
+		}
+
+		ByteBuffer cd = read(cdOffset, (int) cdSize);
+		List<Entry> list = new ArrayList<Entry>(count);
+		int pos = 0;
+		for (int i = 0; i < count; i++) {
+			if (pos + 46 > cd.limit() || cd.getInt(pos) != CENTRAL_SIGNATURE) {
+				throw new ZipException("ZIP アーカイブのセントラルディレクトリが不正です。");
+			}
+			int flags = cd.getShort(pos + 8) & 0xffff;
+			int method = cd.getShort(pos + 10) & 0xffff;
+			int dosTime = cd.getInt(pos + 12);
+			long crc = cd.getInt(pos + 16) & 0xffffffffL;
+			long compressedSize = cd.getInt(pos + 20) & 0xffffffffL;
+			long size = cd.getInt(pos + 24) & 0xffffffffL;
+			int nameLength = cd.getShort(pos + 28) & 0xffff;
+			int extraLength = cd.getShort(pos + 30) & 0xffff;
+			int commentLength = cd.getShort(pos + 32) & 0xffff;
+			long localHeaderOffset = cd.getInt(pos + 42) & 0xffffffffL;
+			if (compressedSize == 0xffffffffL || size == 0xffffffffL || localHeaderOffset == 0xffffffffL) {
+				throw new ZipException("ZIP64 形式のアーカイブには対応していません。");
+			}
+			if (pos + 46 + nameLength + extraLength + commentLength > cd.limit()) {
+				throw new ZipException("ZIP アーカイブのセントラルディレクトリが不正です。");
+			}
+
+			byte[] nameBytes = new byte[nameLength];
+			cd.position(pos + 46);
+			cd.get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			list.add(new Entry(name, flags, method, dosTime, crc, compressedSize, size, localHeaderOffset));
+			pos += 46 + nameLength + extraLength + commentLength;
+		}
+		return list;
+	}
+
+	/**
+	 * 指定した位置からデータを読み込みます。
+	 *
+	 * @param position
+	 *            ファイル内の位置
+	 * @param length
+	 *            読み込むバイト数
+	 * @return リトルエンディアンのバッファ
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new ZipException("ZIP アーカイブが途中で終わっています。");
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * ファイルチャネルの指定範囲を位置指定で読み込む入力ストリームです。
+	 */
+	private class ChannelInputStream extends InputStream {
+
+		private long position;
+		private long remaining;
+
+		ChannelInputStream(long position, long length) {
+			this.position = position;
+			this.remaining = length;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) > 0) ? b[0] & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+			int size = channel.read(buf, position);
+			if (size < 0) {
+				throw new ZipException("ZIP アーカイブが途中で終わっています。");
+			}
+			position += size;
+			remaining -= size;
+			return size;
+		}
+	}
+
+	/**
+	 * 展開したデータの CRC-32 を検証する入力ストリームです。
+	 */
+	private static class CheckedEntryInputStream extends InputStream {
+
+		private final Entry entry;
+		private final InputStream is;
+		private final CRC32 crc = new CRC32();
+		private long count;
+
+		CheckedEntryInputStream(Entry entry, InputStream is) {
+			this.entry = entry;
+			this.is = is;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) > 0) ? b[0] & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int size = is.read(b, off, len);
+			if (size > 0) {
+				crc.update(b, off, size);
+				count += size;
+			} else if (size < 0) {
+				if (count != entry.getSize() || crc.getValue() != entry.getCrc()) {
+					throw new ZipException(entry.getName() + " の CRC-32 またはサイズが一致しません。");
+				}
+			}
+			return size;
+		}
+
+		public void close() throws IOException {
+			is.close();
+		}
+	}
+}
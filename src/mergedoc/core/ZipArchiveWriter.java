@@ -0,0 +1,678 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * ZIP アーカイブのライターです。
+ * <p>
+ * ZipOutputStream と異なり、{@link ZipArchiveReader} から読み込んだエントリの圧縮データを展開せずにそのまま書き込むことができます。
+ * 内容を変更したエントリのみを {@link #putEntry(String, byte[])} で圧縮します。圧縮はスレッドプールで並列に行うことができます。
+ * <p>
+ * エントリのサイズや位置が 4G バイトを超える ZIP64 形式には対応していません。エントリ数が 65535 を超える場合は ZIP64
+ * 形式の終端レコードを書き込みます。
+ *
+ * @author Shinji Kashihara
+ */
+public class ZipArchiveWriter {
+
+	/** ローカルファイルヘッダのシグネチャ */
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+	/** セントラルディレクトリファイルヘッダのシグネチャ */
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+	/** セントラルディレクトリ終端レコードのシグネチャ */
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	/** ZIP64 セントラルディレクトリ終端レコードのシグネチャ */
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+	/** ZIP64 セントラルディレクトリ終端ロケータのシグネチャ */
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+	/** ファイル名が UTF-8 であることを示す汎用フラグ */
+	private static final int UTF8_FLAG = 0x0800;
+
+	/** 圧縮データの後にデータ記述子があることを示す汎用フラグ */
+	private static final int DATA_DESCRIPTOR_FLAG = 0x0008;
+
+	/** このサイズ未満のエントリは圧縮せずに格納する */
+	private static final int STORE_THRESHOLD = 128;
+
+	/** このサイズ未満のエントリは標準の圧縮レベル、以上は最高速の圧縮レベルで圧縮する */
+	private static final int SMALL_ENTRY_SIZE = 16 * 1024;
+
+	/** 並列圧縮でスレッドあたりに書き込みを保留するエントリ数 */
+	private static final int PENDING_SIZE_PER_THREAD = 4;
+
+	/** 出力ストリーム */
+	private final CountingOutputStream out;
+
+	/** 圧縮スレッドプール。呼び出しスレッドで圧縮する場合は null。 */
+	private final ExecutorService executor;
+
+	/** 書き込みを保留しているエントリの最大数 */
+	private final int maxPending;
+
+	/** 書き込みを保留しているエントリ（書き込み順） */
+	private final LinkedList<PendingWrite> pending = new LinkedList<PendingWrite>();
+
+	/** 生成した Deflater（クローズ時に解放する） */
+	private final List<Deflater> deflaters = Collections.synchronizedList(new ArrayList<Deflater>());
+
+	/** スレッドごとの Deflater */
+	private final ThreadLocal<Deflater> localDeflater = new ThreadLocal<Deflater>() {
+		protected Deflater initialValue() {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+			deflaters.add(deflater);
+			return deflater;
+		}
+	};
+
+	/** スレッドごとのエンコーダ */
+	private final ThreadLocal<SourceEncoder> localEncoder = new ThreadLocal<SourceEncoder>();
+
+	/** 書き込んだエントリのセントラルディレクトリ情報 */
+	private final List<CentralEntry> centralEntries = new ArrayList<CentralEntry>();
+
+	/** 書き込んだエントリ名 */
+	private final Set<String> names = new HashSet<String>();
+
+	/**
+	 * ZIP アーカイブファイルを作成します。
+	 * <p>
+	 * 圧縮スレッド数に 2 以上を指定した場合は、エントリをスレッドプールで並列に圧縮し、圧縮が完了したものから追加した順に書き込みます。
+	 * ZIP アーカイブリーダーのエントリは {@link #close()} まで読み込まれる場合があるため、リーダーはこのライターを閉じた後に閉じてください。
+	 *
+	 * @param file
+	 *            ZIP アーカイブファイル
+	 * @param threads
+	 *            圧縮スレッド数
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public ZipArchiveWriter(File file, int threads) throws IOException {
+		this(new FileOutputStream(file), threads);
+	}
+
+	/**
+	 * 出力ストリームに ZIP アーカイブを書き込みます。 出力ストリームは {@link #close()} で閉じられます。
+	 *
+	 * @param out
+	 *            出力ストリーム
+	 * @param threads
+	 *            圧縮スレッド数
+	 * @see #ZipArchiveWriter(File, int)
+	 */
+	public ZipArchiveWriter(OutputStream out, int threads) {
+		this.out = new CountingOutputStream(new BufferedOutputStream(out, 65536));
+		if (threads > 1) {
+			this.executor = Executors.newFixedThreadPool(threads, new MergeThreadFactory("deflater"));
+			this.maxPending = threads * PENDING_SIZE_PER_THREAD;
+		} else {
+			this.executor = null;
+			this.maxPending = 0;
+		}
+	}
+
+	/**
+	 * データを圧縮してエントリとして書き込みます。 エントリの更新日時は現在日時になります。
+	 * <p>
+	 * 圧縮方式はサイズにより選択します。 小さなエントリは圧縮せずに格納し、それ以外は小さいほど高い圧縮レベルで圧縮します。
+	 * 圧縮してもサイズが小さくならない場合も格納します。
+	 *
+	 * @param name
+	 *            エントリ名
+	 * @param data
+	 *            展開後のデータ
+	 * @throws ZipException
+	 *             エントリ名が重複している場合
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public void putEntry(final String name, final byte[] data) throws IOException {
+
+		addName(name);
+		final int dosTime = toDosTime(System.currentTimeMillis());
+		if (executor == null) {
+			write(compress(name, data, dosTime));
+			return;
+		}
+		pending.add(new PendingWrite(executor.submit(new Callable<CompressedEntry>() {
+			public CompressedEntry call() {
+				return compress(name, data, dosTime);
+			}
+		})));
+		flush(false);
+	}
+
+	/**
+	 * 文字列をエンコードしながら圧縮してエントリとして書き込みます。 エントリの更新日時は現在日時になります。
+	 * <p>
+	 * エンコードしたバイト列は一定サイズごとに CRC-32 の計算と圧縮に渡すため、文字列全体のバイト配列は作成しません。
+	 * 圧縮方式は {@link #putEntry(String, byte[])} と同様に選択しますが、圧縮レベルはエンコード前の文字数で選択します。
+	 *
+	 * @param name
+	 *            エントリ名
+	 * @param text
+	 *            展開後のデータの文字列
+	 * @param charsetName
+	 *            エンコーディング
+	 * @throws ZipException
+	 *             エントリ名が重複している場合
+	 * @throws IOException
+	 *             入出力エラーが発生した場合や、エンコーディングがサポートされていない場合
+	 */
+	public void putEntry(final String name, final CharSequence text, final String charsetName) throws IOException {
+
+		addName(name);
+		final int dosTime = toDosTime(System.currentTimeMillis());
+		if (executor == null) {
+			write(compress(name, text, charsetName, dosTime));
+			return;
+		}
+		pending.add(new PendingWrite(executor.submit(new Callable<CompressedEntry>() {
+			public CompressedEntry call() throws IOException {
+				return compress(name, text, charsetName, dosTime);
+			}
+		})));
+		flush(false);
+	}
+
+	/**
+	 * ZIP アーカイブリーダーのエントリを、圧縮データを展開せずにそのまま書き込みます。 エントリの更新日時も引き継がれます。
+	 *
+	 * @param source
+	 *            ZIP アーカイブリーダーのエントリ
+	 * @throws ZipException
+	 *             エントリ名が重複している場合
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public void putRawEntry(ZipArchiveReader.Entry source) throws IOException {
+
+		addName(source.getName());
+		if (executor == null) {
+			writeRaw(source);
+			return;
+		}
+		pending.add(new PendingWrite(source));
+		flush(false);
+	}
+
+	/**
+	 * エントリを圧縮します。 このメソッドは圧縮スレッドから呼び出されます。
+	 *
+	 * @param name
+	 *            エントリ名
+	 * @param data
+	 *            展開後のデータ
+	 * @param dosTime
+	 *            MS-DOS 形式の更新日時
+	 * @return 圧縮したエントリ
+	 */
+	private CompressedEntry compress(String name, byte[] data, int dosTime) {
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+
+		if (data.length >= STORE_THRESHOLD) {
+			Deflater deflater = localDeflater.get();
+			deflater.reset();
+			deflater.setLevel(data.length < SMALL_ENTRY_SIZE ? Deflater.DEFAULT_COMPRESSION : Deflater.BEST_SPEED);
+			deflater.setInput(data, 0, data.length);
+			deflater.finish();
+
+			ByteArrayOutputStream deflated = new ByteArrayOutputStream(data.length / 3 + 64);
+			byte[] buf = new byte[Math.min(data.length, 65536)];
+			while (!deflater.finished() && deflated.size() < data.length) {
+				int size = deflater.deflate(buf);
+				deflated.write(buf, 0, size);
+			}
+			if (deflater.finished() && deflated.size() < data.length) {
+				CentralEntry entry = new CentralEntry(name, 0, ZipEntry.DEFLATED, dosTime, crc.getValue(),
+						deflated.size(), data.length);
+				return new CompressedEntry(entry, deflated.toByteArray());
+			}
+		}
+
+		CentralEntry entry = new CentralEntry(name, 0, ZipEntry.STORED, dosTime, crc.getValue(), data.length,
+				data.length);
+		return new CompressedEntry(entry, data);
+	}
+
+	/**
+	 * 文字列をエンコードしながら圧縮します。 このメソッドは圧縮スレッドから呼び出されます。
+	 *
+	 * @param name
+	 *            エントリ名
+	 * @param text
+	 *            展開後のデータの文字列
+	 * @param charsetName
+	 *            エンコーディング
+	 * @param dosTime
+	 *            MS-DOS 形式の更新日時
+	 * @return 圧縮したエントリ
+	 * @throws IOException
+	 *             エンコーディングがサポートされていない場合
+	 */
+	private CompressedEntry compress(String name, CharSequence text, String charsetName, int dosTime)
+			throws IOException {
+
+		SourceEncoder encoder = localEncoder.get();
+		if (encoder == null || !encoder.getCharsetName().equals(charsetName)) {
+			encoder = new SourceEncoder(charsetName);
+			localEncoder.set(encoder);
+		}
+
+		final CRC32 crc = new CRC32();
+		final Deflater deflater = localDeflater.get();
+		deflater.reset();
+		deflater.setLevel(text.length() < SMALL_ENTRY_SIZE ? Deflater.DEFAULT_COMPRESSION : Deflater.BEST_SPEED);
+		final ByteArrayOutputStream deflated = new ByteArrayOutputStream(text.length() / 3 + 64);
+		final byte[] buf = new byte[8192];
+
+		long size = encoder.encode(text, new SourceEncoder.Sink() {
+			public boolean write(byte[] b, int off, int len) {
+				crc.update(b, off, len);
+				deflater.setInput(b, off, len);
+				while (!deflater.needsInput()) {
+					deflated.write(buf, 0, deflater.deflate(buf));
+				}
+				return true;
+			}
+		});
+		deflater.finish();
+		while (!deflater.finished()) {
+			deflated.write(buf, 0, deflater.deflate(buf));
+		}
+
+		if (size >= STORE_THRESHOLD && deflated.size() < size) {
+			CentralEntry entry = new CentralEntry(name, 0, ZipEntry.DEFLATED, dosTime, crc.getValue(),
+					deflated.size(), size);
+			return new CompressedEntry(entry, deflated.toByteArray());
+		}
+
+		// 小さなエントリや圧縮しても小さくならないエントリは格納する
+		byte[] data = encoder.toBytes(text);
+		CentralEntry entry = new CentralEntry(name, 0, ZipEntry.STORED, dosTime, crc.getValue(), data.length,
+				data.length);
+		return new CompressedEntry(entry, data);
+	}
+
+	/**
+	 * 書き込みを保留しているエントリを書き込みます。
+	 *
+	 * @param all
+	 *            すべて書き込む場合は true。false の場合は圧縮済みの先頭エントリと、保留数の上限を超えた分のみ書き込む。
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void flush(boolean all) throws IOException {
+		while (!pending.isEmpty() && (all || pending.size() > maxPending || pending.getFirst().isDone())) {
+			PendingWrite first = pending.removeFirst();
+			if (first.rawEntry != null) {
+				writeRaw(first.rawEntry);
+			} else {
+				write(first.get());
+			}
+		}
+	}
+
+	/**
+	 * 圧縮したエントリを書き込みます。
+	 *
+	 * @param compressed
+	 *            圧縮したエントリ
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void write(CompressedEntry compressed) throws IOException {
+		writeLocalHeader(compressed.entry);
+		out.write(compressed.data);
+	}
+
+	/**
+	 * ZIP アーカイブリーダーのエントリの圧縮データを書き込みます。
+	 *
+	 * @param source
+	 *            ZIP アーカイブリーダーのエントリ
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void writeRaw(ZipArchiveReader.Entry source) throws IOException {
+
+		// データ記述子は書き込まないため、サイズと CRC-32 はローカルファイルヘッダに書き込む
+		int flags = source.getFlags() & ~(DATA_DESCRIPTOR_FLAG | UTF8_FLAG);
+		CentralEntry entry = new CentralEntry(source.getName(), flags, source.getMethod(), source.getDosTime(),
+				source.getCrc(), source.getCompressedSize(), source.getSize());
+		writeLocalHeader(entry);
+		source.transferRawTo(out);
+	}
+
+	/**
+	 * エントリ名を登録します。
+	 *
+	 * @param name
+	 *            エントリ名
+	 * @throws ZipException
+	 *             エントリ名が重複している場合
+	 */
+	private void addName(String name) throws ZipException {
+		if (!names.add(name)) {
+			throw new ZipException("duplicate entry: " + name);
+		}
+	}
+
+	/**
+	 * セントラルディレクトリを書き込み、ZIP アーカイブファイルを閉じます。
+	 *
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public void close() throws IOException {
+		try {
+			flush(true);
+			long cdOffset = out.getCount();
+			for (CentralEntry entry : centralEntries) {
+				writeInt(CENTRAL_SIGNATURE);
+				writeShort(20); // 作成バージョン
+				writeShort(entry.versionNeeded());
+				writeShort(entry.flags);
+				writeShort(entry.method);
+				writeInt(entry.dosTime);
+				writeInt((int) entry.crc);
+				writeInt((int) entry.compressedSize);
+				writeInt((int) entry.size);
+				writeShort(entry.nameBytes.length);
+				writeShort(0); // 拡張フィールド長
+				writeShort(0); // コメント長
+				writeShort(0); // ディスク番号
+				writeShort(0); // 内部属性
+				writeInt(0); // 外部属性
+				writeInt((int) entry.localHeaderOffset);
+				out.write(entry.nameBytes);
+			}
+			long cdEnd = out.getCount();
+			long cdSize = cdEnd - cdOffset;
+			int count = centralEntries.size();
+			if (cdEnd >= 0xffffffffL) {
+				throw new ZipException("4G バイトを超える ZIP アーカイブには対応していません。");
+			}
+
+			if (count >= 0xffff) {
+				// ZIP64 セントラルディレクトリ終端レコードとロケータ
+				writeInt(ZIP64_END_SIGNATURE);
+				writeLong(44);
+				writeShort(45);
+				writeShort(45);
+				writeInt(0);
+				writeInt(0);
+				writeLong(count);
+				writeLong(count);
+				writeLong(cdSize);
+				writeLong(cdOffset);
+				writeInt(ZIP64_LOCATOR_SIGNATURE);
+				writeInt(0);
+				writeLong(cdEnd);
+				writeInt(1);
+			}
+
+			writeInt(END_SIGNATURE);
+			writeShort(0);
+			writeShort(0);
+			writeShort(Math.min(count, 0xffff));
+			writeShort(Math.min(count, 0xffff));
+			writeInt((int) cdSize);
+			writeInt((int) cdOffset);
+			writeShort(0);
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * セントラルディレクトリを書き込まずに ZIP アーカイブファイルを閉じます。 書き込みの途中でエラーが発生した場合に、圧縮スレッドと
+	 * Deflater を解放するために使用します。 書き込みを保留しているエントリは破棄し、出力ストリームを閉じる際のエラーは無視します。
+	 */
+	public void abort() {
+		for (PendingWrite write : pending) {
+			if (write.future != null) {
+				write.future.cancel(true);
+			}
+		}
+		pending.clear();
+		try {
+			release();
+		} catch (IOException e) {
+			// 呼び出し元で発生したエラーを優先するため無視する
+		}
+	}
+
+	/**
+	 * 圧縮スレッドを停止し、Deflater を解放して出力ストリームを閉じます。
+	 *
+	 * @throws IOException
+	 *             出力ストリームを閉じる際に入出力エラーが発生した場合
+	 */
+	private void release() throws IOException {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		synchronized (deflaters) {
+			for (Deflater deflater : deflaters) {
+				deflater.end();
+			}
+		}
+		out.close();
+	}
+
+	/**
+	 * ローカルファイルヘッダを書き込み、セントラルディレクトリ情報を記録します。
+	 *
+	 * @param entry
+	 *            エントリ
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void writeLocalHeader(CentralEntry entry) throws IOException {
+
+		entry.localHeaderOffset = out.getCount();
+		if (entry.localHeaderOffset >= 0xffffffffL || entry.compressedSize >= 0xffffffffL
+				|| entry.size >= 0xffffffffL) {
+			throw new ZipException("4G バイトを超える ZIP アーカイブには対応していません。");
+		}
+		centralEntries.add(entry);
+
+		writeInt(LOCAL_SIGNATURE);
+		writeShort(entry.versionNeeded());
+		writeShort(entry.flags);
+		writeShort(entry.method);
+		writeInt(entry.dosTime);
+		writeInt((int) entry.crc);
+		writeInt((int) entry.compressedSize);
+		writeInt((int) entry.size);
+		writeShort(entry.nameBytes.length);
+		writeShort(0);
+		out.write(entry.nameBytes);
+	}
+
+	private void writeShort(int v) throws IOException {
+		out.write(v & 0xff);
+		out.write((v >>> 8) & 0xff);
+	}
+
+	private void writeInt(int v) throws IOException {
+		writeShort(v & 0xffff);
+		writeShort((v >>> 16) & 0xffff);
+	}
+
+	private void writeLong(long v) throws IOException {
+		writeInt((int) v);
+		writeInt((int) (v >>> 32));
+	}
+
+	/**
+	 * Java の日時を MS-DOS 形式の日時に変換します。
+	 *
+	 * @param time
+	 *            Java の日時
+	 * @return 上位 16 ビットが日付、下位 16 ビットが時刻
+	 */
+	private static int toDosTime(long time) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(time);
+		int year = cal.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (cal.get(Calendar.MONTH) + 1) << 21 | cal.get(Calendar.DAY_OF_MONTH) << 16
+				| cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+	}
+
+	/**
+	 * 圧縮したエントリです。
+	 */
+	private static class CompressedEntry {
+		final CentralEntry entry;
+		final byte[] data;
+
+		CompressedEntry(CentralEntry entry, byte[] data) {
+			this.entry = entry;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * 並列圧縮で書き込みを保留しているエントリです。
+	 */
+	private static class PendingWrite {
+
+		/** 圧縮中のエントリ */
+		final Future<CompressedEntry> future;
+
+		/** 圧縮データをそのまま書き込むエントリ */
+		final ZipArchiveReader.Entry rawEntry;
+
+		PendingWrite(Future<CompressedEntry> future) {
+			this.future = future;
+			this.rawEntry = null;
+		}
+
+		PendingWrite(ZipArchiveReader.Entry rawEntry) {
+			this.future = null;
+			this.rawEntry = rawEntry;
+		}
+
+		boolean isDone() {
+			return future == null || future.isDone();
+		}
+
+		/**
+		 * 圧縮したエントリを取得します。 圧縮中の場合は完了するまで待機します。
+		 *
+		 * @return 圧縮したエントリ
+		 * @throws IOException
+		 *             圧縮が中断された場合
+		 */
+		CompressedEntry get() throws IOException {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("圧縮が中断されました。");
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	/**
+	 * セントラルディレクトリに書き込むエントリ情報です。
+	 */
+	private static class CentralEntry {
+		final String name;
+		final byte[] nameBytes;
+		final int flags;
+		final int method;
+		final int dosTime;
+		final long crc;
+		final long compressedSize;
+		final long size;
+		long localHeaderOffset;
+
+		CentralEntry(String name, int flags, int method, int dosTime, long crc, long compressedSize, long size) {
+			this.name = name;
+			this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			this.flags = (nameBytes.length != name.length()) ? flags | UTF8_FLAG : flags;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+		}
+
+		int versionNeeded() {
+			return (method == ZipEntry.STORED) ? 10 : 20;
+		}
+	}
+
+	/**
+	 * 書き込んだバイト数を数える出力ストリームです。
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+}
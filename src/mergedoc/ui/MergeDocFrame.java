@@ -24,12 +24,11 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 import javax.swing.border.BevelBorder;
-import javax.swing.event.ChangeEvent;
-import javax.swing.event.ChangeListener;
 
 import mergedoc.MergeDocException;
 import mergedoc.core.MergeManager;
 import mergedoc.core.Preference;
+import mergedoc.core.WorkingListener;
 import mergedoc.core.WorkingState;
 import mergedoc.xml.ConfigManager;
 import mergedoc.xml.Persister;
@@ -59,6 +58,9 @@ public class MergeDocFrame extends JFrame {
 	/** 進捗パネル */
 	private ProgressPanel progressPanel = new ProgressPanel();
 
+	/** 進捗をバイト数で表示する場合は true、エントリ数で表示する場合は false */
+	private volatile boolean progressBySize;
+
 	/** ボタンバー */
 	private ButtonBar buttonBar = new ButtonBar();
 
@@ -170,10 +172,10 @@ public class MergeDocFrame extends JFrame {
 		});
 
 		// 進捗表示のリスナー
-		mergeManager.setChangeListener(new ChangeListener() {
-			public void stateChanged(ChangeEvent e) {
-				WorkingState state = mergeManager.getWorkingState();
-				progressPanel.addListText(state.getWorkingText());
+		mergeManager.setWorkingListener(new WorkingListener() {
+			public void stateChanged(WorkingState state) {
+				long progress = progressBySize ? state.getWorkedSize() : state.getChangedCount();
+				progressPanel.addListText(state.getWorkingText(), progress);
 				setTitle(progressPanel.getBarText());
 			}
 		});
@@ -222,7 +224,10 @@ public class MergeDocFrame extends JFrame {
 		// 設定値の検証
 		try {
 			mergeManager.validate();
-			progressPanel.setMaximum(mergeManager.entrySize());
+			// 展開後のサイズが分かる場合はバイト数で進捗を表示
+			long totalSize = mergeManager.totalSize();
+			progressBySize = totalSize > 0;
+			progressPanel.setMaximum(progressBySize ? totalSize : mergeManager.entrySize());
 		} catch (MergeDocException e) {
 			dialog.showErrorMessage(e.getMessage());
 			back();
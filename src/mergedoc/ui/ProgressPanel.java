@@ -24,6 +24,9 @@ public class ProgressPanel extends JPanel {
 	/** 進捗バー */
 	private JProgressBar progressBar = new JProgressBar();
 
+	/** 進捗バーの 1 目盛りあたりの進捗量 */
+	private volatile long unit = 1;
+
 	/** 進捗テキストエリア */
 	private JTextArea textArea = new JTextArea(3, 100);
 
@@ -64,13 +67,14 @@ public class ProgressPanel extends JPanel {
 
 	/**
 	 * 進捗の最大値をセットします。 進捗バーは確定モードとなり、アニメーションを停止します。<br>
-	 * このメソッドはスレッドに対して安全です。
+	 * 進捗の単位はエントリ数やバイト数など任意です。このメソッドはスレッドに対して安全です。
 	 * 
 	 * @param max
 	 *            進捗の最大値
 	 */
-	public void setMaximum(int max) {
-		progressBar.setMaximum(max);
+	public void setMaximum(long max) {
+		unit = max / Integer.MAX_VALUE + 1;
+		progressBar.setMaximum((int) (max / unit));
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				progressBar.setIndeterminate(false);
@@ -79,18 +83,19 @@ public class ProgressPanel extends JPanel {
 	}
 
 	/**
-	 * 進捗リストに文字列を追加します。<br>
+	 * 進捗リストに文字列を追加し、進捗を更新します。<br>
 	 * このメソッドはスレッドに対して安全です。
 	 * 
 	 * @param text
 	 *            進捗リストに追加する文字列
+	 * @param value
+	 *            {@link #setMaximum(long)} と同じ単位の進捗
 	 */
-	public void addListText(final String text) {
+	public void addListText(final String text, final long value) {
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
-				int value = progressBar.getValue() + 1;
-				progressBar.setValue(value);
-				if (value > 1)
+				progressBar.setValue((int) (value / unit));
+				if (textArea.getDocument().getLength() > 0)
 					textArea.append("\n");
 				textArea.append(text);
 			}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.parsers.SAXParser;
+
+import mergedoc.MergeDocException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * クラス別置換定義ファイルの索引です。
+ * <p>
+ * 生成時にコンフィグルート配下のディレクトリからクラス別置換定義ファイルを探し、それぞれを置換処理にコンパイルして
+ * コンフィグルートからの相対パスで保持します。Java ソースごとにファイルの有無を確認したり、XML をパースしたりする必要はありません。
+ * <p>
+ * 複数スレッドから同時に使用できます。再読み込みを有効にした場合は、取得のたびにファイルの更新日時を確認し、追加、変更、
+ * 削除されたファイルを反映します。
+ *
+ * @author Shinji Kashihara
+ */
+public class ClassFilterIndex {
+
+	/** コンフィグルート */
+	private final File configRoot;
+
+	/** 更新されたファイルを再読み込みする場合は true */
+	private final boolean reload;
+
+	/** 索引（キー：コンフィグルートからの相対パス、値：置換定義） */
+	private final ConcurrentMap<String, ClassFilter> filters = new ConcurrentHashMap<String, ClassFilter>();
+
+	/** SAX パーサ。使用時はこのインスタンスで同期化します。 */
+	private final SAXParser saxParser;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param reload
+	 *            更新されたファイルを再読み込みする場合は true
+	 * @throws MergeDocException
+	 *             コンフィグ情報の取得に失敗した場合
+	 */
+	public ClassFilterIndex(boolean reload) throws MergeDocException {
+		ConfigManager config = ConfigManager.getInstance();
+		this.configRoot = config.getFile("");
+		this.reload = reload;
+		this.saxParser = config.newSAXParser();
+
+		// グローバル置換定義などルート直下のファイルはクラス別置換定義ではない
+		File[] dirs = configRoot.listFiles();
+		if (dirs != null) {
+			for (File dir : dirs) {
+				if (dir.isDirectory()) {
+					scan(dir, dir.getName() + "/");
+				}
+			}
+		}
+	}
+
+	/**
+	 * ディレクトリ配下のクラス別置換定義ファイルを再帰的に索引に追加します。
+	 *
+	 * @param dir
+	 *            ディレクトリ
+	 * @param prefix
+	 *            ディレクトリのコンフィグルートからの相対パス（末尾 /）
+	 */
+	private void scan(File dir, String prefix) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String path = prefix + file.getName();
+			if (file.isDirectory()) {
+				scan(file, path + "/");
+			} else if (path.endsWith(".xml")) {
+				filters.put(path, load(file));
+			}
+		}
+	}
+
+	/**
+	 * 指定したパスのクラス別置換定義を取得します。
+	 *
+	 * @param path
+	 *            コンフィグルートからの相対パス（区切り文字は /）
+	 * @return 置換処理。クラス別置換定義ファイルが無い場合は null。
+	 * @throws SAXException
+	 *             クラス別置換定義ファイルのパースに失敗した場合
+	 * @throws IOException
+	 *             クラス別置換定義ファイルの読み込みに失敗した場合
+	 */
+	public FilterProgram get(String path) throws SAXException, IOException {
+
+		ClassFilter filter = filters.get(path);
+		if (reload) {
+			File file = new File(configRoot, path);
+			if (!file.isFile()) {
+				if (filter != null) {
+					filters.remove(path, filter);
+				}
+				return null;
+			}
+			if (filter == null || filter.lastModified != file.lastModified()) {
+				filter = load(file);
+				filters.put(path, filter);
+			}
+		}
+		return (filter == null) ? null : filter.getProgram();
+	}
+
+	/**
+	 * クラス別置換定義ファイルを読み込みます。 失敗した場合は、そのファイルが使用されるときに例外を投げる置換定義を返します。
+	 *
+	 * @param file
+	 *            クラス別置換定義ファイル
+	 * @return 置換定義
+	 */
+	private ClassFilter load(File file) {
+		long lastModified = file.lastModified();
+		try {
+			ListingHandler handler = new ListingHandler();
+			synchronized (saxParser) {
+				saxParser.parse(file, handler);
+			}
+			List<ReplaceEntry> entries = handler.getReplaceEntries();
+			return new ClassFilter(lastModified, FilterProgram.compile(entries.toArray(new ReplaceEntry[entries.size()])),
+					null);
+		} catch (Exception e) {
+			return new ClassFilter(lastModified, null, e);
+		}
+	}
+
+	/**
+	 * 1 つのクラス別置換定義ファイルの読み込み結果です。
+	 */
+	private static class ClassFilter {
+
+		/** 読み込み時のファイルの更新日時 */
+		final long lastModified;
+
+		/** 置換処理。読み込みに失敗した場合は null。 */
+		final FilterProgram program;
+
+		/** 読み込みに失敗した場合の例外 */
+		final Exception error;
+
+		ClassFilter(long lastModified, FilterProgram program, Exception error) {
+			this.lastModified = lastModified;
+			this.program = program;
+			this.error = error;
+		}
+
+		/**
+		 * 置換処理を取得します。
+		 *
+		 * @return 置換処理
+		 * @throws SAXException
+		 *             パースに失敗していた場合
+		 * @throws IOException
+		 *             読み込みに失敗していた場合
+		 */
+		FilterProgram getProgram() throws SAXException, IOException {
+			if (error instanceof SAXException)
+				throw (SAXException) error;
+			if (error instanceof IOException)
+				throw (IOException) error;
+			if (error instanceof RuntimeException)
+				throw (RuntimeException) error;
+			return program;
+		}
+	}
+}
@@ -93,6 +93,23 @@ public class ConfigManager {
 		return saxParser;
 	}
 
+	/**
+	 * 新しい SAX パーサを生成します。
+	 * <p>
+	 * SAX パーサはスレッドに対して安全ではないため、複数スレッドでパースする場合はスレッドごとにこのメソッドで生成したパーサを使用してください。
+	 * 
+	 * @return SAX パーサ
+	 * @throws MergeDocException
+	 *             SAX パーサの生成に失敗した場合
+	 */
+	public SAXParser newSAXParser() throws MergeDocException {
+		try {
+			return SAXParserFactory.newInstance().newSAXParser();
+		} catch (Exception e) {
+			throw new MergeDocException("SAX パーサの生成に失敗しました。\n" + e, e);
+		}
+	}
+
 	/**
 	 * コンフィグルートの子相対パスを指定してファイルを取得します。
 	 * 
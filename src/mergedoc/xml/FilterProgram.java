@@ -0,0 +1,655 @@
+/*
+ * Copyright (c) 2003- Shinji Kashihara. All rights reserved.
+ * This program are made available under the terms of the Common Public License
+ * v1.0 which accompanies this distribution, and is available at cpl-v10.html.
+ */
+package mergedoc.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 置換エントリをコンパイルした置換処理です。
+ * <p>
+ * 置換エントリとその子を処理順に並べ、正規表現を事前にコンパイルしておきます。正規表現が特殊文字を含まない場合は
+ * 正規表現を使用せずに文字列検索で置換します。処理結果は {@link ReplaceEntry#replace(String)} と同じです。
+ * <p>
+ * 対象が Javadoc コメントの置換規則が連続する場合は、Javadoc コメントを一度だけ検索し、コメントごとに連続する置換規則を
+ * 順に適用して 1 つのバッファに組み立てます。
+ * <p>
+ * 生成後は変更されないため、複数スレッドから同時に使用できます。置換エントリごとに一致したかどうかを記録し、
+ * {@link #getUnmatchedEntries()} で一度も一致しなかった置換エントリを確認できます。
+ * <p>
+ * 置換規則ごとに、一致する文字列が必ず含む部分文字列を正規表現から求めておきます。{@link #provesNoMatch(Probe)}
+ * はその部分文字列を検索するだけで、どの置換規則も一致しないことを確認します。
+ * <p>
+ * 置換後文字列が CR を含む置換規則（「改行を CRLF にする」など）は改行を変換する置換規則として区別し、
+ * {@link #withoutLineBreakRules()} と {@link #lineBreakRules()} で分けて適用できます。
+ *
+ * @author Shinji Kashihara
+ */
+public final class FilterProgram {
+
+	/** Javadoc コメントの開始文字列 */
+	private static final String JAVADOC_START = "/**";
+
+	/** Javadoc コメントの終了文字列 */
+	private static final String JAVADOC_END = "*/";
+
+	/** 処理順の置換規則 */
+	private final Rule[] rules;
+
+	/**
+	 * コンストラクタです。
+	 *
+	 * @param rules
+	 *            処理順の置換規則
+	 */
+	private FilterProgram(List<Rule> rules) {
+		this.rules = rules.toArray(new Rule[rules.size()]);
+	}
+
+	/**
+	 * 置換エントリをコンパイルします。子を持つ場合は子もコンパイルされます。
+	 *
+	 * @param entries
+	 *            置換エントリ
+	 * @return 置換処理
+	 * @throws IllegalStateException
+	 *             置換エントリの正規表現の構文が無効な場合
+	 */
+	public static FilterProgram compile(ReplaceEntry... entries) {
+		List<Rule> rules = new ArrayList<Rule>();
+		for (ReplaceEntry entry : entries) {
+			compile(entry, entry.getDescription(), rules);
+		}
+		return new FilterProgram(rules);
+	}
+
+	/**
+	 * 置換エントリを処理順に置換規則に変換します。
+	 *
+	 * @param entry
+	 *            置換エントリ
+	 * @param description
+	 *            説明。置換エントリに説明が無い場合は親の説明。
+	 * @param rules
+	 *            置換規則の追加先
+	 */
+	private static void compile(ReplaceEntry entry, String description, List<Rule> rules) {
+		if (entry.getDescription().length() > 0) {
+			description = entry.getDescription();
+		}
+		if (entry.getBefore().length() > 0) {
+			try {
+				rules.add(new Rule(entry, description));
+			} catch (PatternSyntaxException e) {
+				throw new IllegalStateException("置換エントリの処理でエラーが発生しました。\n" + "原因: " + e.getMessage() + "\n" + "前: "
+						+ entry.getBefore() + "\n" + "後: " + entry.getAfter());
+			}
+		}
+		for (ReplaceEntry child : entry.getChildren()) {
+			compile(child, description, rules);
+		}
+	}
+
+	/**
+	 * 改行を変換する置換規則を除いた置換処理を取得します。 置換規則はこの置換処理と共有するため、一致の記録も共有されます。
+	 * <p>
+	 * Java ソースの字句解析は改行が LF であることを前提としているため、マージ前の置換にはこの置換処理を使用します。
+	 *
+	 * @return 改行を変換する置換規則を除いた置換処理。該当する置換規則が無い場合はこの置換処理。
+	 */
+	public FilterProgram withoutLineBreakRules() {
+		return select(false);
+	}
+
+	/**
+	 * 改行を変換する置換規則だけの置換処理を取得します。 置換規則はこの置換処理と共有するため、一致の記録も共有されます。
+	 *
+	 * @return 改行を変換する置換規則だけの置換処理
+	 */
+	public FilterProgram lineBreakRules() {
+		return select(true);
+	}
+
+	/**
+	 * 改行を変換する置換規則かどうかで置換規則を選択した置換処理を取得します。
+	 *
+	 * @param lineBreak
+	 *            改行を変換する置換規則を選択する場合は true
+	 * @return 選択した置換規則の置換処理
+	 */
+	private FilterProgram select(boolean lineBreak) {
+		List<Rule> list = new ArrayList<Rule>(rules.length);
+		for (Rule rule : rules) {
+			if (rule.lineBreak == lineBreak) {
+				list.add(rule);
+			}
+		}
+		return (list.size() == rules.length) ? this : new FilterProgram(list);
+	}
+
+	/**
+	 * 指定した文字列を置換します。
+	 *
+	 * @param source
+	 *            ソース文字列
+	 * @return 処理後のソース文字列
+	 */
+	public String apply(String source) {
+		int i = 0;
+		while (i < rules.length) {
+			if (!rules[i].javadoc) {
+				source = rules[i].replaceAll(source);
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			while (end < rules.length && rules[end].javadoc) {
+				end++;
+			}
+			source = applyJavadoc(source, i, end);
+			i = end;
+		}
+		return source;
+	}
+
+	/**
+	 * 対象が Javadoc コメントの連続する置換規則で置換します。
+	 * <p>
+	 * Javadoc コメントは正規表現 <code>(?s)/\*\*.+?\*&#47;</code> に一致する範囲です。途中の置換規則によってコメントの
+	 * 範囲が変わった場合は、置換規則を 1 つずつ適用する処理に切り替えます。
+	 *
+	 * @param source
+	 *            ソース文字列
+	 * @param from
+	 *            最初の置換規則のインデックス
+	 * @param to
+	 *            最後の置換規則の次のインデックス
+	 * @return 処理後のソース文字列
+	 */
+	private String applyJavadoc(String source, int from, int to) {
+
+		int start = source.indexOf(JAVADOC_START);
+		int end = findJavadocEnd(source, start);
+		if (end == -1) {
+			return source;
+		}
+		StringBuilder sb = new StringBuilder(source.length());
+		int last = 0;
+		do {
+			String comment = source.substring(start, end);
+			for (int i = from; i < to; i++) {
+				comment = rules[i].replaceAll(comment);
+				if (i + 1 < to && !isJavadoc(comment)) {
+					// コメントの範囲が変わったため後続の置換規則には再検索が必要
+					return applyJavadocEach(source, from, to);
+				}
+			}
+			sb.append(source, last, start).append(comment);
+			last = end;
+			start = source.indexOf(JAVADOC_START, end);
+			end = findJavadocEnd(source, start);
+		} while (end != -1);
+		sb.append(source, last, source.length());
+		return sb.toString();
+	}
+
+	/**
+	 * 対象が Javadoc コメントの連続する置換規則を 1 つずつ適用し、置換規則ごとに Javadoc コメントを検索します。
+	 *
+	 * @param source
+	 *            ソース文字列
+	 * @param from
+	 *            最初の置換規則のインデックス
+	 * @param to
+	 *            最後の置換規則の次のインデックス
+	 * @return 処理後のソース文字列
+	 */
+	private String applyJavadocEach(String source, int from, int to) {
+		for (int i = from; i < to; i++) {
+			source = applyJavadoc(source, i, i + 1);
+		}
+		return source;
+	}
+
+	/**
+	 * Javadoc コメントの終了位置を検索します。
+	 *
+	 * @param source
+	 *            ソース文字列
+	 * @param start
+	 *            Javadoc コメントの開始位置。-1 の場合は検索しません。
+	 * @return Javadoc コメントの終了文字列の次の位置。見つからない場合は -1。
+	 */
+	private static int findJavadocEnd(String source, int start) {
+		if (start == -1) {
+			return -1;
+		}
+		// 開始文字列の後に 1 文字以上必要
+		int pos = source.indexOf(JAVADOC_END, start + JAVADOC_START.length() + 1);
+		return pos == -1 ? -1 : pos + JAVADOC_END.length();
+	}
+
+	/**
+	 * 指定した文字列全体がちょうど 1 つの Javadoc コメントか判定します。
+	 *
+	 * @param comment
+	 *            文字列
+	 * @return 1 つの Javadoc コメントの場合は true
+	 */
+	private static boolean isJavadoc(String comment) {
+		return comment.startsWith(JAVADOC_START) && findJavadocEnd(comment, 0) == comment.length();
+	}
+
+	/**
+	 * 置換対象が指定した文字列を含むか判定する検索です。
+	 */
+	public interface Probe {
+
+		/**
+		 * 置換対象が指定した文字列を含むか判定します。
+		 *
+		 * @param literal
+		 *            文字列
+		 * @return 含む場合、または含むかどうか判定できない場合は true
+		 */
+		boolean contains(String literal);
+	}
+
+	/**
+	 * どの置換規則も一致しないことを、一致に必要な部分文字列が置換対象に含まれないことで確認します。
+	 * <p>
+	 * 置換規則は前の置換規則の結果に適用されますが、どの置換規則も一致しなければ置換対象は変わらないため、元の置換対象だけを検索します。
+	 * 一致に必要な部分文字列を正規表現から求められない置換規則がある場合は常に false を返します。
+	 *
+	 * @param probe
+	 *            置換対象の検索
+	 * @return どの置換規則も一致しないことが確認できた場合は true
+	 */
+	public boolean provesNoMatch(Probe probe) {
+		Boolean hasJavadoc = null;
+		for (Rule rule : rules) {
+			if (rule.javadoc) {
+				if (hasJavadoc == null) {
+					hasJavadoc = probe.contains(JAVADOC_START);
+				}
+				if (!hasJavadoc) {
+					// Javadoc コメントが無ければ対象が Javadoc コメントの置換規則は一致しない
+					continue;
+				}
+			}
+			if (rule.required == null || probe.contains(rule.required)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 一度も一致しなかった置換エントリを取得します。子の置換エントリに説明が無い場合は親の説明を使用します。
+	 *
+	 * @return 一度も一致しなかった置換エントリの「説明 [置換前文字列]」のリスト（処理順）
+	 */
+	public List<String> getUnmatchedEntries() {
+		List<String> list = new ArrayList<String>();
+		for (Rule rule : rules) {
+			if (!rule.matched) {
+				list.add(rule.description + " [" + rule.entry.getBefore() + "]");
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 1 つの置換エントリ自身の置換規則です。
+	 */
+	private static class Rule {
+
+		/** 置換エントリ */
+		final ReplaceEntry entry;
+
+		/** 説明 */
+		final String description;
+
+		/** 対象が Javadoc コメントの場合は true */
+		final boolean javadoc;
+
+		/** 置換前の正規表現 */
+		final Pattern pattern;
+
+		/** 置換後文字列（正規表現の置換文字列） */
+		final String replacement;
+
+		/** 置換前の正規表現が特殊文字を含まない場合の検索文字列。含む場合は null。 */
+		final String literal;
+
+		/** 置換後文字列がグループ参照を含まない場合の置換文字列。含む場合は null。 */
+		final String literalReplacement;
+
+		/** 一致する文字列が必ず含む部分文字列。求められない場合は null。 */
+		final String required;
+
+		/** 置換後文字列が CR を含む（改行を変換する）場合は true */
+		final boolean lineBreak;
+
+		/** 一度でも一致した場合は true */
+		volatile boolean matched;
+
+		/**
+		 * コンストラクタです。
+		 *
+		 * @param entry
+		 *            置換エントリ
+		 * @param description
+		 *            説明
+		 * @throws PatternSyntaxException
+		 *             置換エントリの正規表現の構文が無効な場合
+		 */
+		Rule(ReplaceEntry entry, String description) {
+			this.entry = entry;
+			this.description = description;
+			this.javadoc = "Javadocコメント".equalsIgnoreCase(entry.getTarget());
+			String regex = entry.getBefore();
+			String after = entry.getAfter();
+			if (!javadoc) {
+				regex = escapeSequence(regex);
+				after = escapeSequence(after);
+			}
+			this.pattern = Pattern.compile(regex);
+			this.replacement = after;
+			this.lineBreak = after.indexOf('\r') != -1;
+			this.literal = toLiteral(regex);
+			this.literalReplacement = toLiteralReplacement(after);
+			this.required = (literal != null) ? literal : toRequiredLiteral(regex);
+		}
+
+		/**
+		 * 置換前の正規表現に一致するすべての文字列を置換します。
+		 *
+		 * @param source
+		 *            ソース文字列
+		 * @return 処理後のソース文字列
+		 */
+		String replaceAll(String source) {
+
+			// 文字列検索で置換できる場合
+			if (literal != null && literalReplacement != null) {
+				int pos = source.indexOf(literal);
+				if (pos == -1) {
+					return source;
+				}
+				matched = true;
+				StringBuilder sb = new StringBuilder(source.length());
+				int last = 0;
+				do {
+					sb.append(source, last, pos).append(literalReplacement);
+					last = pos + literal.length();
+					pos = source.indexOf(literal, last);
+				} while (pos != -1);
+				sb.append(source, last, source.length());
+				return sb.toString();
+			}
+
+			Matcher mat = pattern.matcher(source);
+			if (!mat.find()) {
+				return source;
+			}
+			matched = true;
+			StringBuffer sb = new StringBuffer(source.length());
+			do {
+				mat.appendReplacement(sb, replacement);
+			} while (mat.find());
+			mat.appendTail(sb);
+			return sb.toString();
+		}
+
+		/**
+		 * 正規表現が特殊文字を含まない場合に、一致する文字列を取得します。
+		 *
+		 * @param regex
+		 *            正規表現
+		 * @return 一致する文字列。特殊文字を含む場合は null。
+		 */
+		private static String toLiteral(String regex) {
+			StringBuilder sb = new StringBuilder(regex.length());
+			for (int i = 0; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+				if (c == '\\') {
+					// 英数字以外のエスケープはその文字自身
+					if (++i == regex.length() || Character.isLetterOrDigit(regex.charAt(i))) {
+						return null;
+					}
+					sb.append(regex.charAt(i));
+				} else if ("^$.|?*+()[]{}".indexOf(c) != -1) {
+					return null;
+				} else {
+					sb.append(c);
+				}
+			}
+			return sb.length() > 0 ? sb.toString() : null;
+		}
+
+		/**
+		 * 正規表現に一致する文字列が必ず含む部分文字列のうち、最も長いものを取得します。
+		 * <p>
+		 * 最上位の連続するリテラル文字だけを対象とし、グループ、文字クラス、0 回を許す量指定子が付いた文字は区切りとして扱います。
+		 * 最上位に選択（|）がある場合や、大文字小文字を区別しないフラグなど判定できない構文を含む場合は求めません。
+		 *
+		 * @param regex
+		 *            正規表現
+		 * @return 部分文字列。求められない場合は null。
+		 */
+		private static String toRequiredLiteral(String regex) {
+			if (hasUnsupportedFlag(regex)) {
+				return null;
+			}
+			String best = "";
+			StringBuilder run = new StringBuilder();
+			int length = regex.length();
+			int i = 0;
+			while (i < length) {
+				char c = regex.charAt(i);
+				String atom = null;
+				int next;
+				if (c == '\\') {
+					if (i + 1 == length) {
+						return null;
+					}
+					char e = regex.charAt(i + 1);
+					if (!Character.isLetterOrDigit(e)) {
+						atom = String.valueOf(e);
+					} else if ("ntrfae".indexOf(e) != -1) {
+						atom = String.valueOf("\n\t\r\f\u0007\u001B".charAt("ntrfae".indexOf(e)));
+					} else if ("dDsSwWbBAGZzhHvVRX".indexOf(e) == -1) {
+						// 後方参照、8 進数、16 進数、Unicode プロパティ、引用など複数文字の構文
+						return null;
+					}
+					next = i + 2;
+				} else if (c == '(') {
+					next = skipGroup(regex, i);
+				} else if (c == '[') {
+					next = skipCharClass(regex, i);
+				} else if (c == '|') {
+					return null;
+				} else if ("^$.)*+?{}".indexOf(c) != -1) {
+					next = i + 1;
+				} else {
+					atom = String.valueOf(c);
+					next = i + 1;
+				}
+				if (next == -1) {
+					return null;
+				}
+
+				// 量指定子
+				boolean endRun = (atom == null);
+				if (next < length) {
+					char q = regex.charAt(next);
+					if (q == '?' || q == '*' || q == '{') {
+						atom = null;
+						endRun = true;
+						next = (q == '{') ? regex.indexOf('}', next) : next;
+						if (next == -1) {
+							return null;
+						}
+						next++;
+					} else if (q == '+') {
+						endRun = true;
+						next++;
+					}
+					if (q != '+' && endRun && next < length && (regex.charAt(next) == '?' || regex.charAt(next) == '+')) {
+						// 最短一致、強欲な量指定子
+						next++;
+					}
+				}
+				if (atom != null) {
+					run.append(atom);
+				}
+				if (endRun) {
+					if (run.length() > best.length()) {
+						best = run.toString();
+					}
+					run.setLength(0);
+				}
+				i = next;
+			}
+			if (run.length() > best.length()) {
+				best = run.toString();
+			}
+			return best.length() > 0 ? best : null;
+		}
+
+		/**
+		 * 大文字小文字の区別やコメントの許可など、リテラル文字の一致を変えるフラグを含むか判定します。
+		 *
+		 * @param regex
+		 *            正規表現
+		 * @return 含む場合は true
+		 */
+		private static boolean hasUnsupportedFlag(String regex) {
+			for (int i = regex.indexOf("(?"); i != -1; i = regex.indexOf("(?", i + 2)) {
+				for (int j = i + 2; j < regex.length(); j++) {
+					char c = regex.charAt(j);
+					if (c == 'i' || c == 'x' || c == 'u' || c == 'U') {
+						return true;
+					}
+					if (!Character.isLetter(c) && c != '-') {
+						break;
+					}
+				}
+			}
+			return regex.contains("\\Q");
+		}
+
+		/**
+		 * グループを読み飛ばします。
+		 *
+		 * @param regex
+		 *            正規表現
+		 * @param start
+		 *            開き括弧の位置
+		 * @return 閉じ括弧の次の位置。閉じていない場合は -1。
+		 */
+		private static int skipGroup(String regex, int start) {
+			int depth = 0;
+			for (int i = start; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+				if (c == '\\') {
+					i++;
+				} else if (c == '[') {
+					i = skipCharClass(regex, i);
+					if (i == -1) {
+						return -1;
+					}
+					i--;
+				} else if (c == '(') {
+					depth++;
+				} else if (c == ')' && --depth == 0) {
+					return i + 1;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * 文字クラスを読み飛ばします。
+		 *
+		 * @param regex
+		 *            正規表現
+		 * @param start
+		 *            開き角括弧の位置
+		 * @return 閉じ角括弧の次の位置。閉じていない場合は -1。
+		 */
+		private static int skipCharClass(String regex, int start) {
+			int i = start + 1;
+			if (i < regex.length() && regex.charAt(i) == '^') {
+				i++;
+			}
+			if (i < regex.length() && regex.charAt(i) == ']') {
+				// 先頭の ] は文字
+				i++;
+			}
+			int depth = 1;
+			for (; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+				if (c == '\\') {
+					i++;
+				} else if (c == '[') {
+					depth++;
+				} else if (c == ']' && --depth == 0) {
+					return i + 1;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * 置換文字列がグループ参照を含まない場合に、置換後の文字列を取得します。
+		 *
+		 * @param replacement
+		 *            正規表現の置換文字列
+		 * @return 置換後の文字列。グループ参照を含む場合は null。
+		 */
+		private static String toLiteralReplacement(String replacement) {
+			StringBuilder sb = new StringBuilder(replacement.length());
+			for (int i = 0; i < replacement.length(); i++) {
+				char c = replacement.charAt(i);
+				if (c == '$') {
+					return null;
+				}
+				if (c == '\\') {
+					if (++i == replacement.length()) {
+						return null;
+					}
+					c = replacement.charAt(i);
+				}
+				sb.append(c);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * 対象が指定されていない置換エントリの正規表現をエスケープします。
+	 *
+	 * @param value
+	 *            置換前または置換後文字列
+	 * @return エスケープした文字列
+	 */
+	static String escapeSequence(String value) {
+		String ret = value;
+		ret = ret.replaceAll("\\@", "\\\\@");
+		ret = ret.replaceAll("\\{", "\\\\{");
+		ret = ret.replaceAll("\\}", "\\\\}");
+		ret = ret.replaceAll("\\#", "\\\\#");
+		ret = ret.replaceAll("\\.", "\\\\.");
+		ret = ret.replaceAll("\\(", "\\\\(");
+		ret = ret.replaceAll("\\)", "\\\\)");
+		return ret;
+	}
+}
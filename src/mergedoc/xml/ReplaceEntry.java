@@ -5,14 +5,9 @@
  */
 package mergedoc.xml;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
-
-import mergedoc.core.FastStringUtils;
-import mergedoc.core.PatternCache;
 
 /**
  * 置換エントリです。置換エントリは子を階層的に持つことが出来ます。
@@ -132,69 +127,31 @@ public class ReplaceEntry {
 	}
 
 	/**
-	 * 指定した文字列をこの置換エントリの設定で処理します。 子を持つ場合は再起的に処理されます。
+	 * 子となる置換エントリのリストを取得します。
 	 * 
-	 * @param source
-	 *            ソース文字列
-	 * @return 処理後のソース文字列
-	 * @throws IllegalStateException
-	 *             置換エントリの正規表現の構文が無効な場合
+	 * @return 子となる置換エントリのリスト。子を持たない場合は空のリスト。
 	 */
-	public String replace(String source) {
-
-		// この置換エントリの処理
-		if (before.length() > 0) {
-			try {
-				source = replaceSelf(source);
-			} catch (PatternSyntaxException e) {
-				throw new IllegalStateException("置換エントリの処理でエラーが発生しました。\n" + "原因: " + e.getMessage() + "\n" + "前: "
-						+ before + "\n" + "後: " + after);
-			}
-		}
-		// 子置換エントリの処理
-		if (entries != null) {
-			for (ReplaceEntry entry : entries) {
-				source = entry.replace(source);
-			}
+	public List<ReplaceEntry> getChildren() {
+		if (entries == null) {
+			return Collections.emptyList();
 		}
-		return source;
+		return Collections.unmodifiableList(entries);
 	}
 
 	/**
-	 * 指定した文字列をこの置換エントリの設定で処理します。
+	 * 指定した文字列をこの置換エントリの設定で処理します。 子を持つ場合は再起的に処理されます。
+	 * <p>
+	 * 呼び出しごとに正規表現をコンパイルします。同じ置換エントリで複数の文字列を処理する場合は
+	 * {@link FilterProgram#compile(ReplaceEntry...)} でコンパイルした置換処理を使用してください。
 	 * 
 	 * @param source
 	 *            ソース文字列
 	 * @return 処理後のソース文字列
-	 * @throws PatternSyntaxException
+	 * @throws IllegalStateException
 	 *             置換エントリの正規表現の構文が無効な場合
 	 */
-	private String replaceSelf(String source) {
-
-		if ("Javadocコメント".equalsIgnoreCase(target)) {
-
-			// 対象が Javadocコメント の場合
-			Pattern pat = PatternCache.getPattern("(?s)/\\*\\*.+?\\*/");
-			Matcher mat = pat.matcher(source);
-			StringBuffer sb = new StringBuffer(source.length());
-			while (mat.find()) {
-				String str = mat.group();
-				str = FastStringUtils.replaceAll(str, before, after);
-				str = FastStringUtils.quoteReplacement(str);
-				mat.appendReplacement(sb, str);
-			}
-			mat.appendTail(sb);
-			source = sb.toString();
-
-		} else {
-
-			// 対象が指定されていない場合
-			before = escapeSequence(before);
-			after = escapeSequence(after);
-			source = source.replaceAll(before, after);
-			// source = FastStringUtils.replaceAll(source, before, after);
-		}
-		return source;
+	public String replace(String source) {
+		return FilterProgram.compile(this).apply(source);
 	}
 
 	/**
@@ -218,16 +175,4 @@ public class ReplaceEntry {
 		}
 		return sb.toString();
 	}
-
-	private String escapeSequence(String value) {
-		String ret = value;
-		ret = ret.replaceAll("\\@", "\\\\@");
-		ret = ret.replaceAll("\\{", "\\\\{");
-		ret = ret.replaceAll("\\}", "\\\\}");
-		ret = ret.replaceAll("\\#", "\\\\#");
-		ret = ret.replaceAll("\\.", "\\\\.");
-		ret = ret.replaceAll("\\(", "\\\\(");
-		ret = ret.replaceAll("\\)", "\\\\)");
-		return ret;
-	}
 }